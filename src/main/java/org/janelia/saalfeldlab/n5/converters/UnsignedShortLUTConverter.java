@@ -1,25 +1,37 @@
 package org.janelia.saalfeldlab.n5.converters;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
 import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converter;
 import net.imglib2.type.numeric.integer.AbstractIntegerType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
 
 /**
  * Simple sorted look-up-table {@link Converter} from an {@link AbstractIntegerType} to an {@link UnsignedShortType}.
  * When constructed from an {@link IterableInterval}, this will map the unique values found to [0,N-1] such that ordering is preserved.
+ * <p>
+ * Values are handled as primitive longs: the unique values are collected in primitive hash sets, one per
+ * slab of the image when an {@link ExecutorService} is given, merged as sorted arrays, and looked up in an
+ * open-addressing table, so that neither construction nor conversion allocates per pixel.
  *
- * 
- *  
  * Performs no error checking. Calling convert with a value not in the look-up-table
  * will throw an error.
- * 
+ *
  * @author John Bogovic
  *
  * @param <T> input type
@@ -27,27 +39,39 @@ import net.imglib2.type.numeric.integer.UnsignedShortType;
 public class UnsignedShortLUTConverter< T extends AbstractIntegerType< T > > implements Converter< T, UnsignedShortType >, BiConsumer< T, UnsignedShortType >
 {
 
-	private Map< T, Integer > lut;
+	private final LongIntHashMap lut;
 
 	public UnsignedShortLUTConverter( Map< T, Integer > lut )
 	{
-		this.lut = lut;
+		this.lut = new LongIntHashMap( lut.size() );
+		for( Map.Entry< T, Integer > e : lut.entrySet() )
+			this.lut.put( e.getKey().getIntegerLong(), e.getValue() );
 	}
 
 	public UnsignedShortLUTConverter( final IterableInterval< T > img )
 	{
-		TreeSet< T > values = uniqueValues( img );
-		lut = new HashMap<>();
+		final LongIntHashMap values = new LongIntHashMap( 1024 );
+		addValues( img, values );
+		lut = lookupTable( values.keys(), isUnsignedLong( img.firstElement() ) );
+	}
 
-		int i = 0;
-		for( T t : values )
-			lut.put( t, i++ );
+	/**
+	 * Collects the unique values of slabs of the image in parallel.
+	 *
+	 * @param img the image
+	 * @param exec the executor service
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException reading the image failed
+	 */
+	public UnsignedShortLUTConverter( final RandomAccessibleInterval< T > img, final ExecutorService exec ) throws InterruptedException, ExecutionException
+	{
+		lut = lookupTable( uniqueValues( img, exec ), isUnsignedLong( Util.getTypeFromInterval( img ) ) );
 	}
-	
+
 	/**
 	 * Returns the unique values in the {@link IterableInterval}, sorted as a {@link TreeSet}.
-	 * 
-	 * @param <T> the image data type 
+	 *
+	 * @param <T> the image data type
 	 * @param img the iterable
 	 * @return the unique values
 	 */
@@ -61,6 +85,38 @@ public class UnsignedShortLUTConverter< T extends AbstractIntegerType< T > > imp
 		return uniqueValues;
 	}
 
+	/**
+	 * Returns the unique values in the image as longs, in the order of {@link AbstractIntegerType#getIntegerLong()}
+	 * except for {@link UnsignedLongType}, whose values are ordered as unsigned.
+	 *
+	 * @param <T> the image data type
+	 * @param img the image
+	 * @param exec the executor service
+	 * @return the sorted unique values
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException reading the image failed
+	 */
+	public static < T extends AbstractIntegerType< T > > long[] uniqueValues( final RandomAccessibleInterval< T > img, final ExecutorService exec ) throws InterruptedException, ExecutionException
+	{
+		final boolean unsigned = isUnsignedLong( Util.getTypeFromInterval( img ) );
+
+		final List< Future< long[] > > futures = new ArrayList<>();
+		for( final FinalInterval slab : slabs( img, 4 * Runtime.getRuntime().availableProcessors() ) )
+		{
+			futures.add( exec.submit( () -> {
+				final LongIntHashMap values = new LongIntHashMap( 1024 );
+				addValues( Views.flatIterable( Views.interval( img, slab ) ), values );
+				return sorted( values.keys(), unsigned );
+			}));
+		}
+
+		long[] merged = new long[ 0 ];
+		for( final Future< long[] > f : futures )
+			merged = merge( merged, f.get(), unsigned );
+
+		return merged;
+	}
+
 	@Override
 	public void accept( T t, UnsignedShortType out )
 	{
@@ -70,7 +126,243 @@ public class UnsignedShortLUTConverter< T extends AbstractIntegerType< T > > imp
 	@Override
 	public void convert( T t, UnsignedShortType output )
 	{
-		output.setInteger( lut.get( t ));
+		final int index = lut.get( t.getIntegerLong() );
+		if( index < 0 )
+			throw new IllegalArgumentException( "value " + t + " is not in the look-up-table" );
+
+		output.setInteger( index );
+	}
+
+	private static < T extends AbstractIntegerType< T > > void addValues( final IterableInterval< T > img, final LongIntHashMap values )
+	{
+		final Cursor< T > c = img.cursor();
+		while( c.hasNext() )
+			values.put( c.next().getIntegerLong(), 0 );
+	}
+
+	private static boolean isUnsignedLong( final Object type )
+	{
+		return type instanceof UnsignedLongType;
+	}
+
+	private static LongIntHashMap lookupTable( final long[] values, final boolean unsigned )
+	{
+		final long[] sortedValues = sorted( values, unsigned );
+		final LongIntHashMap lut = new LongIntHashMap( sortedValues.length );
+		for( int i = 0; i < sortedValues.length; i++ )
+			lut.put( sortedValues[ i ], i );
+
+		return lut;
+	}
+
+	/**
+	 * Sorts in place, as unsigned if requested.
+	 */
+	private static long[] sorted( final long[] values, final boolean unsigned )
+	{
+		if( unsigned )
+		{
+			for( int i = 0; i < values.length; i++ )
+				values[ i ] ^= Long.MIN_VALUE;
+		}
+
+		Arrays.sort( values );
+
+		if( unsigned )
+		{
+			for( int i = 0; i < values.length; i++ )
+				values[ i ] ^= Long.MIN_VALUE;
+		}
+
+		return values;
+	}
+
+	/**
+	 * Merges two sorted arrays of unique values, dropping duplicates.
+	 */
+	static long[] merge( final long[] a, final long[] b, final boolean unsigned )
+	{
+		final long[] out = new long[ a.length + b.length ];
+		int i = 0, j = 0, n = 0;
+		while( i < a.length && j < b.length )
+		{
+			final int cmp = unsigned ? Long.compareUnsigned( a[ i ], b[ j ] ) : Long.compare( a[ i ], b[ j ] );
+			if( cmp < 0 )
+				out[ n++ ] = a[ i++ ];
+			else if( cmp > 0 )
+				out[ n++ ] = b[ j++ ];
+			else
+			{
+				out[ n++ ] = a[ i++ ];
+				j++;
+			}
+		}
+		while( i < a.length )
+			out[ n++ ] = a[ i++ ];
+		while( j < b.length )
+			out[ n++ ] = b[ j++ ];
+
+		return n == out.length ? out : Arrays.copyOf( out, n );
+	}
+
+	/**
+	 * Splits an interval into at most n slabs along its last dimension with more than one element, or the first.
+	 */
+	static List< FinalInterval > slabs( final RandomAccessibleInterval< ? > img, final int n )
+	{
+		final List< FinalInterval > slabs = new ArrayList<>();
+		int d = img.numDimensions() - 1;
+		while( d > 0 && img.dimension( d ) == 1 )
+			d--;
+
+		final long size = img.dimension( d );
+		final long step = Math.max( 1, ( size + n - 1 ) / n );
+		final long[] min = img.minAsLongArray();
+		final long[] max = img.maxAsLongArray();
+		for( long start = img.min( d ); start <= img.max( d ); start += step )
+		{
+			min[ d ] = start;
+			max[ d ] = Math.min( img.max( d ), start + step - 1 );
+			slabs.add( new FinalInterval( min, max ) );
+		}
+		return slabs;
+	}
+
+	/**
+	 * An open-addressing hash map from long to non-negative int.
+	 */
+	static class LongIntHashMap
+	{
+		private static final long EMPTY = 0;
+
+		private long[] keys;
+
+		private int[] values;
+
+		private int mask;
+
+		private int size;
+
+		private boolean hasEmptyKey;
+
+		private int emptyKeyValue;
+
+		LongIntHashMap( final int expectedSize )
+		{
+			allocate( capacity( expectedSize ) );
+		}
+
+		private static int capacity( final int expectedSize )
+		{
+			// load factor of at most one half
+			int capacity = 16;
+			while( capacity < 2L * expectedSize )
+				capacity <<= 1;
+
+			return capacity;
+		}
+
+		private void allocate( final int capacity )
+		{
+			keys = new long[ capacity ];
+			values = new int[ capacity ];
+			mask = capacity - 1;
+		}
+
+		private int slot( final long key )
+		{
+			final long h = key * 0x9E3779B97F4A7C15L;
+			return ( int ) ( h ^ ( h >>> 32 ) ) & mask;
+		}
+
+		void put( final long key, final int value )
+		{
+			if( key == EMPTY )
+			{
+				if( !hasEmptyKey )
+				{
+					hasEmptyKey = true;
+					size++;
+				}
+				emptyKeyValue = value;
+				return;
+			}
+
+			int i = slot( key );
+			while( keys[ i ] != EMPTY )
+			{
+				if( keys[ i ] == key )
+				{
+					values[ i ] = value;
+					return;
+				}
+				i = ( i + 1 ) & mask;
+			}
+
+			keys[ i ] = key;
+			values[ i ] = value;
+			if( ++size * 2 > keys.length )
+				rehash();
+		}
+
+		/**
+		 * @return the value, or -1 if the key is not in the map
+		 */
+		int get( final long key )
+		{
+			if( key == EMPTY )
+				return hasEmptyKey ? emptyKeyValue : -1;
+
+			int i = slot( key );
+			long k;
+			while( ( k = keys[ i ] ) != EMPTY )
+			{
+				if( k == key )
+					return values[ i ];
+
+				i = ( i + 1 ) & mask;
+			}
+			return -1;
+		}
+
+		int size()
+		{
+			return size;
+		}
+
+		long[] keys()
+		{
+			final long[] out = new long[ size ];
+			int n = 0;
+			if( hasEmptyKey )
+				out[ n++ ] = EMPTY;
+
+			for( final long k : keys )
+				if( k != EMPTY )
+					out[ n++ ] = k;
+
+			return out;
+		}
+
+		private void rehash()
+		{
+			final long[] oldKeys = keys;
+			final int[] oldValues = values;
+			allocate( keys.length * 2 );
+			for( int j = 0; j < oldKeys.length; j++ )
+			{
+				final long key = oldKeys[ j ];
+				if( key == EMPTY )
+					continue;
+
+				int i = slot( key );
+				while( keys[ i ] != EMPTY )
+					i = ( i + 1 ) & mask;
+
+				keys[ i ] = key;
+				values[ i ] = oldValues[ j ];
+			}
+		}
 	}
 
 }
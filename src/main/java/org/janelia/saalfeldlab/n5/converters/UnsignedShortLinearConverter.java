@@ -1,13 +1,23 @@
 package org.janelia.saalfeldlab.n5.converters;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 
 import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
 import net.imglib2.IterableInterval;
+import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.converter.Converter;
 import net.imglib2.type.numeric.integer.AbstractIntegerType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
 
 public class UnsignedShortLinearConverter< T extends AbstractIntegerType< T > > implements Converter< T, UnsignedShortType >, BiConsumer< T, UnsignedShortType >
 {
@@ -28,10 +38,46 @@ public class UnsignedShortLinearConverter< T extends AbstractIntegerType< T > >
 
 	public UnsignedShortLinearConverter( final IterableInterval<T> img )
 	{
-		TreeSet< Long > values = uniqueValues( img );
-		long min = values.first();
-		long max = values.last();
+		this( minMax( img ) );
+	}
+
+	/**
+	 * Computes the range of the image blockwise in parallel.
+	 *
+	 * @param img the image
+	 * @param exec the executor service
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException reading the image failed
+	 */
+	public UnsignedShortLinearConverter( final RandomAccessibleInterval<T> img, final ExecutorService exec ) throws InterruptedException, ExecutionException
+	{
+		this( minMax( img, exec, Long.MIN_VALUE, Long.MAX_VALUE ) );
+	}
+
+	/**
+	 * Computes the range of the image blockwise in parallel, stopping as soon as values at the bounds
+	 * of known statistics (for example stored with the dataset) have been found.
+	 *
+	 * @param img the image
+	 * @param exec the executor service
+	 * @param lowerBound no value of the image is less than this
+	 * @param upperBound no value of the image is greater than this
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException reading the image failed
+	 */
+	public UnsignedShortLinearConverter( final RandomAccessibleInterval<T> img, final ExecutorService exec,
+			final long lowerBound, final long upperBound ) throws InterruptedException, ExecutionException
+	{
+		this( minMax( img, exec, lowerBound, upperBound ) );
+	}
 
+	private UnsignedShortLinearConverter( final long[] minMax )
+	{
+		this( minMax[ 0 ], minMax[ 1 ] );
+	}
+
+	public UnsignedShortLinearConverter( final long min, final long max )
+	{
 		if( min > 0 && max <= MAXUSHORT )
 		{
 			isIdentity = true;
@@ -48,7 +94,90 @@ public class UnsignedShortLinearConverter< T extends AbstractIntegerType< T > >
 				m = (double)MAXUSHORT / diff;
 		}
 	}
-	
+
+	/**
+	 * Returns the minimum and maximum of the {@link IterableInterval} in a single pass.
+	 *
+	 * @param <T> the image data type
+	 * @param img the iterable
+	 * @return the minimum and maximum
+	 */
+	public static < T extends AbstractIntegerType< T > > long[] minMax( final IterableInterval<T> img )
+	{
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		final Cursor< T > c = img.cursor();
+		while( c.hasNext() )
+		{
+			final long v = c.next().getIntegerLong();
+			if( v < min )
+				min = v;
+			if( v > max )
+				max = v;
+		}
+		return new long[]{ min, max };
+	}
+
+	/**
+	 * Returns the minimum and maximum of the image, computed over slabs of the image in parallel.
+	 * All slabs stop once the minimum reaches the lower bound and the maximum reaches the upper bound,
+	 * so with bounds from known statistics only part of the image may have to be read.
+	 *
+	 * @param <T> the image data type
+	 * @param img the image
+	 * @param exec the executor service
+	 * @param lowerBound no value of the image is less than this, {@link Long#MIN_VALUE} if unknown
+	 * @param upperBound no value of the image is greater than this, {@link Long#MAX_VALUE} if unknown
+	 * @return the minimum and maximum
+	 * @throws InterruptedException interrupted
+	 * @throws ExecutionException reading the image failed
+	 */
+	public static < T extends AbstractIntegerType< T > > long[] minMax( final RandomAccessibleInterval<T> img, final ExecutorService exec,
+			final long lowerBound, final long upperBound ) throws InterruptedException, ExecutionException
+	{
+		final AtomicLong globalMin = new AtomicLong( Long.MAX_VALUE );
+		final AtomicLong globalMax = new AtomicLong( Long.MIN_VALUE );
+		final AtomicBoolean done = new AtomicBoolean( false );
+
+		final List< Future< ? > > futures = new ArrayList<>();
+		for( final FinalInterval slab : UnsignedShortLUTConverter.slabs( img, 4 * Runtime.getRuntime().availableProcessors() ) )
+		{
+			futures.add( exec.submit( () -> {
+				long min = Long.MAX_VALUE;
+				long max = Long.MIN_VALUE;
+				long i = 0;
+				final Cursor< T > c = Views.flatIterable( Views.interval( img, slab ) ).cursor();
+				while( c.hasNext() && !done.get() )
+				{
+					final long v = c.next().getIntegerLong();
+					if( v < min )
+						min = v;
+					if( v > max )
+						max = v;
+
+					// share progress now and then so that all slabs can stop
+					if( ( ++i & 0xfff ) == 0 )
+						publish( min, max, globalMin, globalMax, done, lowerBound, upperBound );
+				}
+				publish( min, max, globalMin, globalMax, done, lowerBound, upperBound );
+			}));
+		}
+
+		for( final Future< ? > f : futures )
+			f.get();
+
+		return new long[]{ globalMin.get(), globalMax.get() };
+	}
+
+	private static void publish( final long min, final long max, final AtomicLong globalMin, final AtomicLong globalMax,
+			final AtomicBoolean done, final long lowerBound, final long upperBound )
+	{
+		final long gmin = globalMin.accumulateAndGet( min, Math::min );
+		final long gmax = globalMax.accumulateAndGet( max, Math::max );
+		if( gmin <= lowerBound && gmax >= upperBound )
+			done.set( true );
+	}
+
 	/**
 	 * Returns the unique values in the {@link IterableInterval}, sorted as a {@link TreeSet}.
 	 * 
@@ -0,0 +1,340 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.metadata.imagej.ImageplusMetadata;
+import org.janelia.saalfeldlab.n5.metadata.imagej.N5ImagePlusMetadata;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.axes.AxisMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.axes.AxisUtils;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.measure.Calibration;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.imageplus.ImagePlusImg;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+/**
+ * Extracts many crops from one dataset at once.
+ * <p>
+ * The container is opened and the metadata of the dataset is parsed once for
+ * all crops. The crops are grouped by the blocks they intersect, and every
+ * block is read and decoded once and copied into all crops that intersect
+ * it; blocks are processed in parallel. Crops of types that can not be
+ * loaded blockwise (see
+ * {@link BlockwiseImagePlusLoader#isSupported(org.janelia.saalfeldlab.n5.DataType, boolean)})
+ * are read one by one with {@link N5Importer#read}, still from the one
+ * container.
+ * <p>
+ * Crops are given in dataset coordinates, as the importer's crop interval,
+ * and can be created from ImageJ ROIs with
+ * {@link #intervals(Roi[], N5DatasetMetadata)} or read from a CSV file with
+ * {@link #readCsv(String)}.
+ */
+public class BatchCropExtractor {
+
+	private final N5Reader n5;
+
+	private final N5DatasetMetadata meta;
+
+	private final ImageplusMetadata<?> ipMeta;
+
+	/**
+	 * @param n5
+	 *            the reader
+	 * @param meta
+	 *            the metadata of the dataset
+	 * @param ipMeta
+	 *            the writer of the metadata to the crops, may be null
+	 */
+	public BatchCropExtractor(final N5Reader n5, final N5DatasetMetadata meta, final ImageplusMetadata<?> ipMeta) {
+
+		this.n5 = n5;
+		this.meta = meta;
+		this.ipMeta = ipMeta;
+	}
+
+	/**
+	 * Extracts crops from a dataset.
+	 *
+	 * @param uri
+	 *            the uri of the dataset, for example
+	 *            "/path/to/container.zarr?dataset"
+	 * @param crops
+	 *            the crops in dataset coordinates
+	 * @param exec
+	 *            the executor service
+	 * @return the crops, null for crops outside of the dataset
+	 * @throws IOException
+	 *             reading the dataset failed
+	 */
+	public static List<ImagePlus> extract(final String uri, final List<? extends Interval> crops, final ExecutorService exec)
+			throws IOException {
+
+		final N5URI n5uri;
+		try {
+			n5uri = new N5URI(uri);
+		} catch (final URISyntaxException e) {
+			throw new IOException("unable to parse url: " + uri, e);
+		}
+
+		try (final N5Reader n5 = new N5Factory().openReader(n5uri.getContainerPath())) {
+			final String dataset = n5uri.getGroupPath();
+			final N5DatasetMetadata meta = DatasetMetadataResolver.resolve(n5, dataset);
+			if (meta == null)
+				throw new IOException("not a dataset: " + uri);
+
+			return new BatchCropExtractor(n5, meta, N5Importer.defaultImagePlusMetadataWriters().get(meta.getClass()))
+					.extract(crops, exec);
+		} catch (final N5Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Extracts crops from the dataset.
+	 *
+	 * @param crops
+	 *            the crops in dataset coordinates
+	 * @param exec
+	 *            the executor service
+	 * @return the crops, null for crops outside of the dataset
+	 * @throws IOException
+	 *             reading the dataset failed
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public List<ImagePlus> extract(final List<? extends Interval> crops, final ExecutorService exec) throws IOException {
+
+		final String dataset = meta.getPath();
+		final DatasetAttributes attributes = meta.getAttributes();
+		final Interval bounds = new FinalInterval(attributes.getDimensions());
+		final boolean isRGB = (meta instanceof N5ImagePlusMetadata)
+				&& ((N5ImagePlusMetadata)meta).getType() == ImagePlus.COLOR_RGB;
+
+		final List<Interval> intervals = new ArrayList<>();
+		for (final Interval crop : crops) {
+			final Interval interval = Intervals.intersect(crop, bounds);
+			intervals.add(Intervals.isEmpty(interval) ? null : interval);
+		}
+
+		final List<ImagePlus> result = new ArrayList<>();
+		if (!BlockwiseImagePlusLoader.isSupported(attributes.getDataType(), isRGB)) {
+			for (final Interval interval : intervals)
+				result.add(interval == null ? null : N5Importer.read(n5, exec, meta, interval, false, (ImageplusMetadata)ipMeta, false));
+
+			return result;
+		}
+
+		// the axis permutation for ImageJ, and the metadata in that order
+		final UnaryOperator<RandomAccessibleInterval<LongType>> permutation;
+		final N5DatasetMetadata permutedMeta;
+		if (meta instanceof AxisMetadata) {
+			final int[] p = AxisUtils.findImagePlusPermutation((AxisMetadata)meta);
+			permutation = x -> AxisUtils.permuteImageAndMetadataForImagePlus(p, x, meta).getA();
+			permutedMeta = (N5DatasetMetadata)AxisUtils.permuteImageAndMetadataForImagePlus(
+					p, BlockwiseImagePlusLoader.probe(bounds), meta).getB();
+		} else {
+			permutation = null;
+			permutedMeta = meta;
+		}
+
+		// the crops by the flat index of the blocks they intersect, in storage order
+		final int nd = bounds.numDimensions();
+		final int[] blockSize = attributes.getBlockSize();
+		final long[] grid = new long[nd];
+		for (int d = 0; d < nd; d++)
+			grid[d] = (bounds.dimension(d) + blockSize[d] - 1) / blockSize[d];
+
+		final List<ImagePlusImg<?, ?>> imgs = new ArrayList<>();
+		final Map<Long, List<BlockwiseImagePlusLoader.Target>> targetsByBlock = new TreeMap<>();
+		for (final Interval interval : intervals) {
+			if (interval == null) {
+				imgs.add(null);
+				continue;
+			}
+
+			final long[] dimensions = (permutation == null
+					? BlockwiseImagePlusLoader.probe(interval)
+					: permutation.apply(BlockwiseImagePlusLoader.probe(interval))).dimensionsAsLongArray();
+			final ImagePlusImg<?, ?> img = BlockwiseImagePlusLoader.createImg(
+					BlockwiseImagePlusLoader.imagePlusType(attributes.getDataType(), isRGB), dimensions);
+			imgs.add(img);
+
+			final BlockwiseImagePlusLoader.Target target = new BlockwiseImagePlusLoader.Target(attributes, interval, permutation, img);
+			final long[] gridMin = new long[nd];
+			final long[] gridMax = new long[nd];
+			for (int d = 0; d < nd; d++) {
+				gridMin[d] = interval.min(d) / blockSize[d];
+				gridMax[d] = interval.max(d) / blockSize[d];
+			}
+
+			final FinalInterval cropGrid = new FinalInterval(gridMin, gridMax);
+			final long[] cropGridDimensions = cropGrid.dimensionsAsLongArray();
+			final long[] gridPosition = new long[nd];
+			for (long i = 0; i < Intervals.numElements(cropGrid); i++) {
+				IntervalIndexer.indexToPositionWithOffset(i, cropGridDimensions, gridMin, gridPosition);
+				targetsByBlock.computeIfAbsent(IntervalIndexer.positionToIndex(gridPosition, grid), k -> new ArrayList<>())
+						.add(target);
+			}
+		}
+
+		// read every block once, and copy it into all crops it intersects
+		final List<Future<?>> futures = new ArrayList<>();
+		for (final Map.Entry<Long, List<BlockwiseImagePlusLoader.Target>> entry : targetsByBlock.entrySet()) {
+			final long[] gridPosition = new long[nd];
+			IntervalIndexer.indexToPosition(entry.getKey(), grid, gridPosition);
+			futures.add(exec.submit(() -> {
+				final DataBlock<?> block = n5.readBlock(dataset, attributes, gridPosition);
+				for (final BlockwiseImagePlusLoader.Target target : entry.getValue())
+					target.copy(block);
+			}));
+		}
+
+		try {
+			for (final Future<?> f : futures)
+				f.get();
+		} catch (final InterruptedException e) {
+			futures.forEach(f -> f.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (final ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+
+		final int[] axes = ReslicedVirtualStack.imagePlusAxes(meta);
+		for (int i = 0; i < imgs.size(); i++) {
+			final ImagePlusImg<?, ?> img = imgs.get(i);
+			if (img == null) {
+				result.add(null);
+				continue;
+			}
+
+			final ImagePlus imp = img.getImagePlus();
+			if (ipMeta != null) {
+				try {
+					((ImageplusMetadata)ipMeta).writeMetadata(permutedMeta, imp);
+				} catch (final Exception e) {
+					System.err.println("Failed to convert metadata to Imageplus for " + dataset);
+				}
+			}
+
+			final Interval interval = intervals.get(i);
+			final Calibration cal = imp.getCalibration();
+			if (axes[0] >= 0)
+				cal.xOrigin -= interval.min(axes[0]);
+			if (axes[1] >= 0)
+				cal.yOrigin -= interval.min(axes[1]);
+			if (axes[3] >= 0)
+				cal.zOrigin -= interval.min(axes[3]);
+
+			result.add(imp);
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the crops of the bounding boxes of ROIs. ROIs that are
+	 * associated with a channel, slice, or frame only crop that position, all
+	 * others the whole extent of the non-spatial axes.
+	 *
+	 * @param rois
+	 *            the ROIs, for example from the RoiManager
+	 * @param meta
+	 *            the metadata of the dataset
+	 * @return the crops in dataset coordinates
+	 */
+	public static List<Interval> intervals(final Roi[] rois, final N5DatasetMetadata meta) {
+
+		final long[] dimensions = meta.getAttributes().getDimensions();
+		final int[] axes = ReslicedVirtualStack.imagePlusAxes(meta);
+		final List<Interval> intervals = new ArrayList<>();
+		for (final Roi roi : rois) {
+			final long[] min = new long[dimensions.length];
+			final long[] max = new long[dimensions.length];
+			for (int d = 0; d < dimensions.length; d++)
+				max[d] = dimensions[d] - 1;
+
+			final Rectangle bounds = roi.getBounds();
+			set(min, max, axes[0], bounds.x, bounds.x + bounds.width - 1);
+			set(min, max, axes[1], bounds.y, bounds.y + bounds.height - 1);
+			if (roi.getCPosition() > 0)
+				set(min, max, axes[2], roi.getCPosition() - 1, roi.getCPosition() - 1);
+			if (roi.getZPosition() > 0)
+				set(min, max, axes[3], roi.getZPosition() - 1, roi.getZPosition() - 1);
+			if (roi.getTPosition() > 0)
+				set(min, max, axes[4], roi.getTPosition() - 1, roi.getTPosition() - 1);
+
+			intervals.add(new FinalInterval(min, max));
+		}
+		return intervals;
+	}
+
+	private static void set(final long[] min, final long[] max, final int d, final long from, final long to) {
+
+		if (d < 0)
+			return;
+
+		min[d] = from;
+		max[d] = to;
+	}
+
+	/**
+	 * Reads crops from a CSV file, one crop per line with the minimum and
+	 * then the maximum (inclusive) of every dimension in dataset coordinates,
+	 * for example "0,0,0,63,63,9". Lines that are empty, or do not start with
+	 * a number (such as a header), are skipped.
+	 *
+	 * @param path
+	 *            the path of the file
+	 * @return the crops
+	 * @throws IOException
+	 *             reading the file failed
+	 */
+	public static List<Interval> readCsv(final String path) throws IOException {
+
+		final List<Interval> intervals = new ArrayList<>();
+		for (final String line : Files.readAllLines(
+				path.startsWith("file:") ? Paths.get(URI.create(path)) : Paths.get(path),
+				StandardCharsets.UTF_8)) {
+
+			final String trimmed = line.trim();
+			if (trimmed.isEmpty() || !(Character.isDigit(trimmed.charAt(0)) || trimmed.charAt(0) == '-'))
+				continue;
+
+			final long[] values = Arrays.stream(trimmed.split(",")).map(String::trim).mapToLong(Long::parseLong).toArray();
+			if (values.length % 2 != 0)
+				throw new IOException("expected a minimum and maximum per dimension: " + line);
+
+			final int nd = values.length / 2;
+			intervals.add(new FinalInterval(Arrays.copyOfRange(values, 0, nd), Arrays.copyOfRange(values, nd, 2 * nd)));
+		}
+		return intervals;
+	}
+
+}
@@ -0,0 +1,516 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+
+/**
+ * Reads (an interval of) a dataset binned by integer factors, block by block.
+ * <p>
+ * Only the blocks that intersect the interval are read, and each decoded
+ * block is reduced into the binned image right away, so no image at the
+ * original resolution is ever built. The binned image is split into slabs
+ * along its last dimension that are reduced in parallel; slabs are as thick
+ * as a block, so every block is read once if the bins are aligned to the
+ * blocks, and at most twice otherwise.
+ * <p>
+ * Bins at the upper border of the interval may be smaller than the factors,
+ * and a factor larger than the interval bins the whole extent, such that
+ * projections are binnings too, see {@link BlockProjection}. Missing blocks
+ * are read as zeros. The standard deviation is that of a sample, as by
+ * ImageJ's Z Project.
+ */
+public class BlockBinning {
+
+	public enum Mode {
+		MEAN, MAX, MIN, SUM, STD
+	}
+
+	private final long[] factors;
+
+	private final Mode mode;
+
+	private final boolean floatOutput;
+
+	/**
+	 * Bins to the type of the dataset, except for sums and standard
+	 * deviations, which are binned to float32.
+	 *
+	 * @param factors
+	 *            the binning factors, per dimension of the dataset; missing
+	 *            trailing factors are one
+	 * @param mode
+	 *            how values in a bin are combined
+	 */
+	public BlockBinning(final long[] factors, final Mode mode) {
+
+		this(factors, mode, mode == Mode.SUM || mode == Mode.STD);
+	}
+
+	/**
+	 * @param factors
+	 *            the binning factors, per dimension of the dataset; missing
+	 *            trailing factors are one
+	 * @param mode
+	 *            how values in a bin are combined
+	 * @param floatOutput
+	 *            whether to bin to float32 rather than the type of the dataset
+	 */
+	public BlockBinning(final long[] factors, final Mode mode, final boolean floatOutput) {
+
+		this.factors = factors;
+		this.mode = mode;
+		this.floatOutput = floatOutput;
+	}
+
+	/**
+	 * Parses binning options as given to the importer.
+	 *
+	 * @param factors
+	 *            comma separated factors, for example "4,4,1"
+	 * @param mode
+	 *            "mean" or "max", empty for mean
+	 * @return the binning, or null if no factor is greater than one
+	 */
+	public static BlockBinning parse(final String factors, final String mode) {
+
+		if (factors == null || factors.trim().isEmpty())
+			return null;
+
+		final long[] f = Arrays.stream(factors.split(",")).map(String::trim).mapToLong(Long::parseLong).toArray();
+		if (Arrays.stream(f).allMatch(x -> x == 1))
+			return null;
+
+		for (final long x : f)
+			if (x < 1)
+				throw new IllegalArgumentException("binning factors must be positive: " + factors);
+
+		final Mode m = mode == null || mode.trim().isEmpty() ? Mode.MEAN
+				: Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+
+		return new BlockBinning(f, m);
+	}
+
+	public long[] getFactors() {
+
+		return factors;
+	}
+
+	public Mode getMode() {
+
+		return mode;
+	}
+
+	/**
+	 * @return whether this binning bins to float32
+	 */
+	public boolean isFloatOutput() {
+
+		return floatOutput;
+	}
+
+	/**
+	 * @param dataType
+	 *            the data type of the dataset
+	 * @return the data type of the binned image
+	 */
+	public DataType binnedType(final DataType dataType) {
+
+		return floatOutput ? DataType.FLOAT32 : dataType;
+	}
+
+	/**
+	 * @param d
+	 *            the dimension
+	 * @return the binning factor of the dimension
+	 */
+	public long factor(final int d) {
+
+		return d < factors.length ? factors[d] : 1;
+	}
+
+	/**
+	 * @param d
+	 *            the dimension
+	 * @param interval
+	 *            the interval of the dataset
+	 * @return the binning factor of the dimension, at most the size of the
+	 *         interval
+	 */
+	public long factor(final int d, final Interval interval) {
+
+		return Math.min(factor(d), interval.dimension(d));
+	}
+
+	/**
+	 * @param interval
+	 *            the interval of the dataset
+	 * @return the dimensions of the binned interval
+	 */
+	public long[] binnedDimensions(final Interval interval) {
+
+		final long[] dimensions = new long[interval.numDimensions()];
+		for (int d = 0; d < dimensions.length; d++)
+			dimensions[d] = 1 + (interval.dimension(d) - 1) / factor(d);
+
+		return dimensions;
+	}
+
+	/**
+	 * Returns the binning for a dataset. Binnings that depend on the axes of
+	 * a dataset override this.
+	 *
+	 * @param datasetMeta
+	 *            the metadata of the dataset
+	 * @return this binning
+	 */
+	public BlockBinning forDataset(final N5DatasetMetadata datasetMeta) {
+
+		return this;
+	}
+
+	/**
+	 * Returns the dataset to bin instead of the given one, for example a
+	 * level of its pyramid. Binnings that read other levels override this.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param datasetMeta
+	 *            the metadata of the dataset
+	 * @return the metadata of the dataset to bin, this one
+	 */
+	public N5DatasetMetadata sourceLevel(final N5Reader n5, final N5DatasetMetadata datasetMeta) {
+
+		return datasetMeta;
+	}
+
+	/**
+	 * Maps an interval of a dataset to the dataset returned by
+	 * {@link #sourceLevel(N5Reader, N5DatasetMetadata)}, scaled by the
+	 * downsampling factors between them, as estimated from their dimensions.
+	 *
+	 * @param datasetMeta
+	 *            the metadata of the requested dataset
+	 * @param sourceMeta
+	 *            the metadata of the dataset to bin
+	 * @param interval
+	 *            an interval of the requested dataset, may be null
+	 * @return the interval of the dataset to bin, null if interval is null
+	 */
+	public Interval sourceInterval(final N5DatasetMetadata datasetMeta, final N5DatasetMetadata sourceMeta,
+			final Interval interval) {
+
+		if (interval == null || sourceMeta == datasetMeta)
+			return interval;
+
+		final long[] dimensions = datasetMeta.getAttributes().getDimensions();
+		final long[] sourceDimensions = sourceMeta.getAttributes().getDimensions();
+		final int nd = interval.numDimensions();
+		if (nd != dimensions.length || nd != sourceDimensions.length)
+			throw new IllegalArgumentException("can not map a crop of " + datasetMeta.getPath() + " to "
+					+ sourceMeta.getPath() + " with a different number of dimensions");
+
+		final long[] min = new long[nd];
+		final long[] max = new long[nd];
+		for (int d = 0; d < nd; d++) {
+			final long f = Math.max(1, Math.round((double)dimensions[d] / sourceDimensions[d]));
+			min[d] = Math.min(sourceDimensions[d] - 1, interval.min(d) / f);
+			max[d] = Math.max(min[d], Math.min(sourceDimensions[d] - 1, interval.max(d) / f));
+		}
+		return new FinalInterval(min, max);
+	}
+
+	/**
+	 * @param dataType
+	 *            the data type
+	 * @return true if datasets of this type can be binned
+	 */
+	public static boolean isSupported(final DataType dataType) {
+
+		return dataType != DataType.OBJECT && dataType != DataType.STRING;
+	}
+
+	/**
+	 * Reads an interval of a dataset, binned.
+	 *
+	 * @param <T>
+	 *            the image type
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param interval
+	 *            the interval to read, or null for the whole dataset
+	 * @param exec
+	 *            the executor service
+	 * @return the binned image, with its origin at zero
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             reading a block failed
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends RealType<T> & NativeType<T>> ArrayImg<T, ?> read(
+			final N5Reader n5,
+			final String dataset,
+			final Interval interval,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final Interval source = interval == null ? new FinalInterval(attributes.getDimensions()) : interval;
+		if (factors.length > source.numDimensions())
+			throw new IllegalArgumentException("more binning factors than dimensions");
+
+		final int nd = source.numDimensions();
+		final long[] outDimensions = binnedDimensions(source);
+		final long numElements = Intervals.numElements(outDimensions);
+		if (numElements > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("the binned image is too large");
+
+		final double[] bins = new double[(int)numElements];
+		final double[] squares = mode == Mode.STD ? new double[(int)numElements] : null;
+		if (mode == Mode.MAX)
+			Arrays.fill(bins, Double.NEGATIVE_INFINITY);
+		else if (mode == Mode.MIN)
+			Arrays.fill(bins, Double.POSITIVE_INFINITY);
+
+		// slabs along the last dimension with more than one bin, about a block thick
+		int slabDim = nd - 1;
+		while (slabDim > 0 && outDimensions[slabDim] == 1)
+			slabDim--;
+
+		final long slabFactor = factor(slabDim, source);
+		final long thickness = Math.max(1, attributes.getBlockSize()[slabDim] / slabFactor);
+		final List<Future<?>> futures = new ArrayList<>();
+		for (long o = 0; o < outDimensions[slabDim]; o += thickness) {
+			final long[] min = source.minAsLongArray();
+			final long[] max = source.maxAsLongArray();
+			min[slabDim] = source.min(slabDim) + o * slabFactor;
+			max[slabDim] = Math.min(source.max(slabDim), source.min(slabDim) + (o + thickness) * slabFactor - 1);
+			final FinalInterval slab = new FinalInterval(min, max);
+			futures.add(exec.submit(() -> {
+				binSlab(n5, dataset, attributes, source, slab, outDimensions, bins, squares);
+				return null;
+			}));
+		}
+
+		for (final Future<?> f : futures)
+			f.get();
+
+		final T type = (T)N5Utils.type(binnedType(attributes.getDataType()));
+		final ArrayImg<T, ?> img = (ArrayImg<T, ?>)new ArrayImgFactory<>(type).create(outDimensions);
+		final Cursor<T> c = img.localizingCursor();
+		for (int i = 0; c.hasNext(); i++) {
+			c.fwd();
+			if (mode == Mode.MEAN || mode == Mode.STD) {
+				long count = 1;
+				for (int d = 0; d < nd; d++) {
+					final long f = factor(d, source);
+					count *= Math.min(f, source.dimension(d) - c.getLongPosition(d) * f);
+				}
+
+				final double mean = bins[i] / count;
+				if (mode == Mode.MEAN)
+					c.get().setReal(mean);
+				else
+					c.get().setReal(count > 1 ? Math.sqrt(Math.max(0, (squares[i] - count * mean * mean) / (count - 1))) : 0);
+			} else
+				c.get().setReal(bins[i]);
+		}
+		return img;
+	}
+
+	/**
+	 * Reduces all blocks that intersect a slab into the bins of the slab.
+	 */
+	private void binSlab(
+			final N5Reader n5,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final Interval source,
+			final Interval slab,
+			final long[] outDimensions,
+			final double[] bins,
+			final double[] squares) {
+
+		final int nd = slab.numDimensions();
+		final int[] blockSize = attributes.getBlockSize();
+		final long[] gridMin = new long[nd];
+		final long[] gridMax = new long[nd];
+		for (int d = 0; d < nd; d++) {
+			gridMin[d] = slab.min(d) / blockSize[d];
+			gridMax[d] = slab.max(d) / blockSize[d];
+		}
+
+		final long[] gridPosition = gridMin.clone();
+		while (true) {
+			final DataBlock<?> block = n5.readBlock(dataset, attributes, gridPosition);
+			binBlock(block, attributes.getDataType(), gridPosition, blockSize, source, slab, outDimensions, bins, squares);
+
+			// next grid position
+			int d = 0;
+			for (; d < nd; d++) {
+				if (++gridPosition[d] <= gridMax[d])
+					break;
+				gridPosition[d] = gridMin[d];
+			}
+			if (d == nd)
+				break;
+		}
+	}
+
+	/**
+	 * Reduces the part of a block within a slab into the bins, row by row.
+	 */
+	private void binBlock(
+			final DataBlock<?> block,
+			final DataType dataType,
+			final long[] gridPosition,
+			final int[] blockSize,
+			final Interval source,
+			final Interval slab,
+			final long[] outDimensions,
+			final double[] bins,
+			final double[] squares) {
+
+		final int nd = slab.numDimensions();
+
+		// the intersection of block and slab, in block coordinates
+		final int[] size = block == null ? blockSize : block.getSize();
+		final long[] offset = new long[nd];
+		final int[] from = new int[nd];
+		final int[] to = new int[nd];
+		for (int d = 0; d < nd; d++) {
+			offset[d] = gridPosition[d] * blockSize[d];
+			from[d] = (int)Math.max(0, slab.min(d) - offset[d]);
+			to[d] = (int)Math.min(size[d] - 1, slab.max(d) - offset[d]);
+			if (from[d] > to[d])
+				return;
+		}
+
+		final Values values = block == null ? i -> 0 : values(block.getData(), dataType);
+		final long f0 = factor(0, source);
+		final long min0 = source.min(0);
+
+		final int[] position = from.clone();
+		while (true) {
+			// the start of the row in the block, and of its bins
+			int blockIndex = 0;
+			long binIndex = 0;
+			for (int d = nd - 1; d >= 0; d--) {
+				blockIndex = blockIndex * size[d] + position[d];
+				final long bin = d == 0 ? 0 : (offset[d] + position[d] - source.min(d)) / factor(d, source);
+				binIndex = binIndex * outDimensions[d] + bin;
+			}
+
+			for (int x = from[0]; x <= to[0]; x++) {
+				final int i = (int)(binIndex + (offset[0] + x - min0) / f0);
+				final double v = values.get(blockIndex + x - from[0]);
+				switch (mode) {
+				case MAX:
+					if (v > bins[i])
+						bins[i] = v;
+					break;
+				case MIN:
+					if (v < bins[i])
+						bins[i] = v;
+					break;
+				case STD:
+					squares[i] += v * v;
+					bins[i] += v;
+					break;
+				default:
+					bins[i] += v;
+				}
+			}
+
+			// next row
+			int d = 1;
+			for (; d < nd; d++) {
+				if (++position[d] <= to[d])
+					break;
+				position[d] = from[d];
+			}
+			if (d >= nd)
+				break;
+		}
+	}
+
+	@FunctionalInterface
+	interface Values {
+
+		double get(int i);
+	}
+
+	static Values values(final Object data, final DataType dataType) {
+
+		switch (dataType) {
+		case UINT8: {
+			final byte[] a = (byte[])data;
+			return i -> a[i] & 0xff;
+		}
+		case INT8: {
+			final byte[] a = (byte[])data;
+			return i -> a[i];
+		}
+		case UINT16: {
+			final short[] a = (short[])data;
+			return i -> a[i] & 0xffff;
+		}
+		case INT16: {
+			final short[] a = (short[])data;
+			return i -> a[i];
+		}
+		case UINT32: {
+			final int[] a = (int[])data;
+			return i -> a[i] & 0xffffffffL;
+		}
+		case INT32: {
+			final int[] a = (int[])data;
+			return i -> a[i];
+		}
+		case UINT64: {
+			final long[] a = (long[])data;
+			return i -> {
+				final long v = a[i];
+				return v >= 0 ? v : (v >>> 1) * 2.0 + (v & 1);
+			};
+		}
+		case INT64: {
+			final long[] a = (long[])data;
+			return i -> a[i];
+		}
+		case FLOAT32: {
+			final float[] a = (float[])data;
+			return i -> a[i];
+		}
+		case FLOAT64: {
+			final double[] a = (double[])data;
+			return i -> a[i];
+		}
+		default:
+			throw new IllegalArgumentException("can not bin data of type " + dataType);
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+
+/**
+ * Sizes of block grids and of the elements of data types, shared by the
+ * exporters, importers, and caches of this package.
+ */
+final class BlockGrid {
+
+	private BlockGrid() {}
+
+	/**
+	 * Returns the number of blocks (or shards) needed to cover the given
+	 * dimensions in every dimension.
+	 *
+	 * @param dimensions
+	 *            the dataset dimensions
+	 * @param blockSize
+	 *            the size of a block (or shard)
+	 * @return the grid dimensions
+	 */
+	static long[] gridDimensions(final long[] dimensions, final int[] blockSize) {
+
+		final long[] grid = new long[dimensions.length];
+		for (int d = 0; d < grid.length; d++)
+			grid[d] = (dimensions[d] + blockSize[d] - 1) / blockSize[d];
+
+		return grid;
+	}
+
+	/**
+	 * @param attributes
+	 *            the dataset attributes
+	 * @return the dimensions of the block grid of the dataset
+	 */
+	static long[] gridDimensions(final DatasetAttributes attributes) {
+
+		return gridDimensions(attributes.getDimensions(), attributes.getBlockSize());
+	}
+
+	/**
+	 * @param attributes
+	 *            the dataset attributes
+	 * @return the number of blocks of the dataset
+	 */
+	static long numBlocks(final DatasetAttributes attributes) {
+
+		long n = 1;
+		for (final long g : gridDimensions(attributes))
+			n *= g;
+
+		return n;
+	}
+
+	/**
+	 * @param dataType
+	 *            the data type
+	 * @return the number of bytes of an element of the data type as stored,
+	 *         8 for types without a fixed size
+	 */
+	static int bytesPerElement(final DataType dataType) {
+
+		switch (dataType) {
+		case UINT8:
+		case INT8:
+			return 1;
+		case UINT16:
+		case INT16:
+			return 2;
+		case UINT32:
+		case INT32:
+		case FLOAT32:
+			return 4;
+		default:
+			return 8;
+		}
+	}
+
+	/**
+	 * @param dataType
+	 *            the data type of a dataset
+	 * @return the number of bytes per element of the {@link ij.ImagePlus}
+	 *         the importer creates for the data type
+	 */
+	static int imagePlusBytesPerElement(final DataType dataType) {
+
+		switch (dataType) {
+		case UINT8:
+		case INT8:
+			return 1;
+		case UINT32:
+		case FLOAT32:
+		case FLOAT64:
+			// uint32 may be packed RGB
+			return 4;
+		default:
+			// other integer types are converted to uint16
+			return 2;
+		}
+	}
+
+}
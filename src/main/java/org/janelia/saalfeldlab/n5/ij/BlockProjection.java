@@ -0,0 +1,154 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+
+import net.imglib2.Interval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+
+/**
+ * An axis-aligned projection (maximum, minimum, mean, sum, or standard
+ * deviation) of a dataset, computed block by block while the blocks are read
+ * as a {@link BlockBinning} over the whole extent of the projected axis.
+ * <p>
+ * The axis is one of the axes x, y, z, c, or t of the image the importer
+ * opens by default, and is mapped to a dimension of each dataset by
+ * {@link #forDataset(N5DatasetMetadata)}. The projected axis is kept as a
+ * singleton dimension, so that the result has the axis order and metadata of
+ * the dataset. Projections can be computed from a coarser level of the
+ * dataset's pyramid, see {@link #sourceLevel(N5Reader, N5DatasetMetadata)}.
+ * <p>
+ * Maximum and minimum projections have the type of the dataset, all others
+ * are float32, as by ImageJ's Z Project.
+ */
+public class BlockProjection extends BlockBinning {
+
+	private static final String AXES = "xyczt";
+
+	private final char axis;
+
+	private final int level;
+
+	/**
+	 * @param axis
+	 *            the axis to project along, one of x, y, c, z, or t
+	 * @param mode
+	 *            the projection
+	 * @param level
+	 *            the number of pyramid levels coarser than the requested
+	 *            dataset to project, zero for the requested dataset
+	 */
+	public BlockProjection(final char axis, final Mode mode, final int level) {
+
+		super(new long[0], mode, mode != Mode.MAX && mode != Mode.MIN);
+
+		this.axis = Character.toLowerCase(axis);
+		if (AXES.indexOf(this.axis) < 0)
+			throw new IllegalArgumentException("The projection axis must be one of x, y, c, z, or t: " + axis);
+
+		this.level = Math.max(0, level);
+	}
+
+	/**
+	 * Parses projection options as given to the importer.
+	 *
+	 * @param mode
+	 *            "max", "min", "mean", "sum", or "std"
+	 * @param axis
+	 *            the axis, empty for z
+	 * @param level
+	 *            the pyramid level relative to the requested dataset, empty
+	 *            for zero
+	 * @return the projection, or null if no mode is given
+	 */
+	public static BlockProjection parse(final String mode, final String axis, final String level) {
+
+		if (mode == null || mode.trim().isEmpty())
+			return null;
+
+		return new BlockProjection(
+				axis == null || axis.trim().isEmpty() ? 'z' : axis.trim().charAt(0),
+				Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT)),
+				level == null || level.trim().isEmpty() ? 0 : Integer.parseInt(level.trim()));
+	}
+
+	public char getAxis() {
+
+		return axis;
+	}
+
+	public int getLevel() {
+
+		return level;
+	}
+
+	/**
+	 * @return a binning over the whole extent of the dimension of the
+	 *         dataset that is the projected axis
+	 */
+	@Override
+	public BlockBinning forDataset(final N5DatasetMetadata datasetMeta) {
+
+		final int d = ReslicedVirtualStack.imagePlusAxes(datasetMeta)[AXES.indexOf(axis)];
+		final long[] factors = new long[datasetMeta.getAttributes().getNumDimensions()];
+		Arrays.fill(factors, 1);
+		if (d >= 0)
+			factors[d] = Long.MAX_VALUE;
+
+		return new BlockBinning(factors, getMode(), isFloatOutput());
+	}
+
+	/**
+	 * @return the level of the dataset's pyramid {@link #getLevel()} levels
+	 *         coarser than the dataset, or the coarsest, or the dataset itself
+	 *         if it is not part of a pyramid
+	 */
+	@Override
+	public N5DatasetMetadata sourceLevel(final N5Reader n5, final N5DatasetMetadata datasetMeta) {
+
+		if (level == 0)
+			return datasetMeta;
+
+		final List<N5DatasetMetadata> levels;
+		try {
+			levels = PyramidLevelSelector.levels(n5, DatasetMetadataResolver.discoverer(n5), datasetMeta.getPath());
+		} catch (final N5Exception e) {
+			return datasetMeta;
+		}
+
+		final String path = N5URI.normalizeGroupPath(datasetMeta.getPath());
+		for (int i = 0; i < levels.size(); i++)
+			if (N5URI.normalizeGroupPath(levels.get(i).getPath()).equals(path))
+				return levels.get(Math.min(levels.size() - 1, i + level));
+
+		return datasetMeta;
+	}
+
+	/**
+	 * Projects (an interval of) a dataset, with the axes of its metadata.
+	 */
+	@Override
+	public <T extends RealType<T> & NativeType<T>> ArrayImg<T, ?> read(
+			final N5Reader n5,
+			final String dataset,
+			final Interval interval,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		final N5DatasetMetadata datasetMeta = DatasetMetadataResolver.resolve(n5, dataset);
+		if (datasetMeta == null)
+			throw new N5Exception("not a dataset : " + dataset);
+
+		return forDataset(datasetMeta).read(n5, dataset, interval, exec);
+	}
+
+}
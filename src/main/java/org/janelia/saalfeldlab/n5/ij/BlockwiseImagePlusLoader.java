@@ -0,0 +1,490 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+
+import ij.ImagePlus;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
+import net.imglib2.img.imageplus.ImagePlusImg;
+import net.imglib2.img.imageplus.ImagePlusImgFactory;
+import net.imglib2.position.FunctionRandomAccessible;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.integer.ByteType;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.ShortType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Loads a dataset into a non-virtual {@link ImagePlus} block by block.
+ * <p>
+ * Every task reads and decodes one storage block and copies its primitive
+ * array straight into the planes of the target image, applying the axis
+ * permutation for ImageJ on the way. No cell cache or view stack is involved,
+ * and tasks write disjoint pixels, so loading scales with the number of
+ * threads.
+ * <p>
+ * Only types that ImageJ can show without a global conversion are supported,
+ * see {@link #isSupported(DataType, boolean)}. float64 is narrowed to
+ * float32, as by {@link N5Importer#convertDouble}.
+ */
+public class BlockwiseImagePlusLoader {
+
+	private BlockwiseImagePlusLoader() {}
+
+	/**
+	 * @param dataType
+	 *            the data type of the dataset
+	 * @param isRGB
+	 *            whether a uint32 dataset holds packed RGB values
+	 * @return true if datasets of this type can be loaded blockwise
+	 */
+	public static boolean isSupported(final DataType dataType, final boolean isRGB) {
+
+		switch (dataType) {
+		case UINT8:
+		case INT8:
+		case UINT16:
+		case INT16:
+		case FLOAT32:
+		case FLOAT64:
+			return true;
+		case UINT32:
+			return isRGB;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Loads (an interval of) a dataset.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param interval
+	 *            the interval to load in dataset coordinates, or null for the
+	 *            whole dataset
+	 * @param permutation
+	 *            the view transformation from dataset to ImageJ axis order,
+	 *            such as a permutation or adding singleton dimensions, or
+	 *            null for none
+	 * @param isRGB
+	 *            whether a uint32 dataset holds packed RGB values
+	 * @param exec
+	 *            the executor service, may be null to load on the calling
+	 *            thread
+	 * @return the image
+	 * @throws InterruptedException
+	 *             if interrupted
+	 * @throws ExecutionException
+	 *             if reading a block failed
+	 */
+	public static ImagePlus load(
+			final N5Reader n5,
+			final String dataset,
+			final Interval interval,
+			final UnaryOperator<RandomAccessibleInterval<LongType>> permutation,
+			final boolean isRGB,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final DataType dataType = attributes.getDataType();
+		if (!isSupported(dataType, isRGB))
+			throw new IllegalArgumentException("Cannot load datasets of type " + dataType + " blockwise");
+
+		final Interval source = interval == null ? new FinalInterval(attributes.getDimensions()) : interval;
+		final long[] outDimensions = (permutation == null ? probe(source) : permutation.apply(probe(source)))
+				.dimensionsAsLongArray();
+
+		final ImagePlusImg<?, ?> img = createImg(imagePlusType(dataType, isRGB), outDimensions);
+		copyBlocks(n5, dataset, attributes, source, permutation, img, exec);
+
+		return img.getImagePlus();
+	}
+
+	/**
+	 * Copies (an interval of) a dataset into an existing image, block by
+	 * block.
+	 * <p>
+	 * The planes of the image must have the primitive type of the dataset,
+	 * except for float64, int64 and uint64 datasets, which are converted to
+	 * float32 planes.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param attributes
+	 *            the dataset attributes
+	 * @param interval
+	 *            the interval to copy in dataset coordinates, or null for the
+	 *            whole dataset
+	 * @param permutation
+	 *            the view transformation from dataset to image axis order, or
+	 *            null for none
+	 * @param img
+	 *            the target image, with the dimensions of the transformed
+	 *            interval
+	 * @param exec
+	 *            the executor service, may be null to copy on the calling
+	 *            thread
+	 * @throws InterruptedException
+	 *             if interrupted
+	 * @throws ExecutionException
+	 *             if reading a block failed
+	 */
+	public static void copyBlocks(
+			final N5Reader n5,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final Interval interval,
+			final UnaryOperator<RandomAccessibleInterval<LongType>> permutation,
+			final ImagePlusImg<?, ?> img,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		copyBlocks(gridPosition -> n5.readBlock(dataset, attributes, gridPosition), attributes, interval, permutation,
+				img, exec);
+	}
+
+	/**
+	 * As
+	 * {@link #copyBlocks(N5Reader, String, DatasetAttributes, Interval, UnaryOperator, ImagePlusImg, ExecutorService)},
+	 * with the blocks provided by a function of their grid position, for
+	 * example from a cache.
+	 */
+	static void copyBlocks(
+			final Function<long[], DataBlock<?>> blocks,
+			final DatasetAttributes attributes,
+			final Interval interval,
+			final UnaryOperator<RandomAccessibleInterval<LongType>> permutation,
+			final ImagePlusImg<?, ?> img,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		final Target target = new Target(attributes, interval, permutation, img);
+		final Interval source = target.source;
+		final int nd = source.numDimensions();
+
+		final int[] blockSize = attributes.getBlockSize();
+		final long[] gridMin = new long[nd];
+		final long[] gridMax = new long[nd];
+		for (int d = 0; d < nd; d++) {
+			gridMin[d] = source.min(d) / blockSize[d];
+			gridMax[d] = source.max(d) / blockSize[d];
+		}
+
+		final List<Runnable> tasks = new ArrayList<>();
+		final FinalInterval grid = new FinalInterval(gridMin, gridMax);
+		final long numBlocks = Intervals.numElements(grid);
+		final long[] gridDims = grid.dimensionsAsLongArray();
+		for (long i = 0; i < numBlocks; i++) {
+			final long[] gridPosition = new long[nd];
+			IntervalIndexer.indexToPositionWithOffset(i, gridDims, gridMin, gridPosition);
+			tasks.add(() -> target.copy(blocks.apply(gridPosition)));
+		}
+
+		if (exec == null) {
+			for (final Runnable task : tasks)
+				task.run();
+		} else {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (final Runnable task : tasks)
+				futures.add(exec.submit(task));
+
+			for (final Future<?> f : futures)
+				f.get();
+		}
+	}
+
+	/**
+	 * An image that (an interval of) a dataset is copied into, block by block.
+	 * Blocks may be copied concurrently, as they fill disjoint pixels.
+	 */
+	static final class Target {
+
+		final Interval source;
+
+		private final int[] blockSize;
+
+		private final long[] offsetStrides;
+
+		private final long[] planeStrides;
+
+		private final Object[] planes;
+
+		private final boolean unsigned;
+
+		/**
+		 * @param attributes
+		 *            the dataset attributes
+		 * @param interval
+		 *            the interval to copy in dataset coordinates, or null
+		 *            for the whole dataset
+		 * @param permutation
+		 *            the view transformation from dataset to image axis
+		 *            order, or null for none
+		 * @param img
+		 *            the target image, with the dimensions of the
+		 *            transformed interval
+		 */
+		Target(
+				final DatasetAttributes attributes,
+				final Interval interval,
+				final UnaryOperator<RandomAccessibleInterval<LongType>> permutation,
+				final ImagePlusImg<?, ?> img) {
+
+			source = interval == null ? new FinalInterval(attributes.getDimensions()) : interval;
+			blockSize = attributes.getBlockSize();
+			final int nd = source.numDimensions();
+
+			// find which dataset dimension ends up in which image dimension
+			final RandomAccessibleInterval<LongType> probe = permutation == null ? probe(source) : permutation.apply(probe(source));
+			final long[] outDimensions = probe.dimensionsAsLongArray();
+			final int[] sourceDimensions = sourceDimensions(probe, source);
+			if (!Arrays.equals(outDimensions, img.dimensionsAsLongArray()))
+				throw new IllegalArgumentException("Image dimensions " + Arrays.toString(img.dimensionsAsLongArray())
+						+ " do not match " + Arrays.toString(outDimensions));
+
+			planes = new Object[img.numSlices()];
+			for (int i = 0; i < planes.length; i++)
+				planes[i] = ((ArrayDataAccess<?>)img.getPlane(i)).getCurrentStorageArray();
+
+			unsigned = attributes.getDataType() == DataType.UINT64;
+
+			// strides of every dataset dimension within a plane and across planes
+			offsetStrides = new long[nd];
+			planeStrides = new long[nd];
+			long planeStride = 1;
+			for (int o = 0; o < outDimensions.length; o++) {
+				final int d = sourceDimensions[o];
+				if (d >= 0) {
+					if (o == 0)
+						offsetStrides[d] = 1;
+					else if (o == 1)
+						offsetStrides[d] = outDimensions[0];
+					else
+						planeStrides[d] = planeStride;
+				}
+				if (o >= 2)
+					planeStride *= outDimensions[o];
+			}
+		}
+
+		/**
+		 * Copies the part of a block inside the interval, nothing for a
+		 * missing block.
+		 */
+		void copy(final DataBlock<?> block) {
+
+			copyBlock(block, blockSize, source, offsetStrides, planeStrides, planes, unsigned);
+		}
+	}
+
+	/**
+	 * Returns an image whose values at unit steps from its minimum identify
+	 * the dataset dimension that was stepped along.
+	 */
+	static RandomAccessibleInterval<LongType> probe(final Interval source) {
+
+		final int nd = source.numDimensions();
+		final long[] min = source.minAsLongArray();
+		return Views.interval(new FunctionRandomAccessible<>(nd, (pos, t) -> {
+			long v = 0;
+			for (int d = 0; d < nd; d++)
+				v += (pos.getLongPosition(d) - min[d]) << d;
+
+			t.set(v);
+		}, LongType::new), source);
+	}
+
+	/**
+	 * For every dimension of a transformed probe image, returns the dataset
+	 * dimension it comes from, or -1 for singleton dimensions.
+	 */
+	static int[] sourceDimensions(final RandomAccessibleInterval<LongType> probe, final Interval source) {
+
+		final int n = probe.numDimensions();
+		final int[] sourceDimensions = new int[n];
+		final boolean[] mapped = new boolean[source.numDimensions()];
+
+		final long[] min = probe.minAsLongArray();
+		final RandomAccess<LongType> ra = probe.randomAccess();
+		ra.setPosition(min);
+		final long v0 = ra.get().get();
+		for (int o = 0; o < n; o++) {
+			sourceDimensions[o] = -1;
+			if (probe.dimension(o) > 1) {
+				ra.setPosition(min);
+				ra.fwd(o);
+				final long delta = ra.get().get() - v0;
+				if (delta <= 0 || Long.bitCount(delta) != 1)
+					throw new IllegalArgumentException("Only axis permutations are supported");
+
+				sourceDimensions[o] = Long.numberOfTrailingZeros(delta);
+				mapped[sourceDimensions[o]] = true;
+			}
+		}
+
+		for (int d = 0; d < mapped.length; d++)
+			if (!mapped[d] && source.dimension(d) > 1)
+				throw new IllegalArgumentException("Dataset dimension " + d + " is not part of the image");
+
+		return sourceDimensions;
+	}
+
+	static NativeType<?> imagePlusType(final DataType dataType, final boolean isRGB) {
+
+		switch (dataType) {
+		case UINT8:
+			return new UnsignedByteType();
+		case INT8:
+			return new ByteType();
+		case UINT16:
+			return new UnsignedShortType();
+		case INT16:
+			return new ShortType();
+		case UINT32:
+			return new ARGBType();
+		default:
+			return new FloatType();
+		}
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	static ImagePlusImg<?, ?> createImg(final NativeType<?> type, final long[] dimensions) {
+
+		return new ImagePlusImgFactory(type).create(dimensions);
+	}
+
+	private static void copyBlock(
+			final DataBlock<?> block,
+			final int[] blockSize,
+			final Interval source,
+			final long[] offsetStrides,
+			final long[] planeStrides,
+			final Object[] planes,
+			final boolean unsigned) {
+
+		// missing blocks stay empty
+		if (block == null)
+			return;
+
+		final int nd = source.numDimensions();
+		final int[] size = block.getSize();
+		final long[] gridPosition = block.getGridPosition();
+
+		// the part of the block inside the source interval
+		final long[] blockMin = new long[nd];
+		final long[] min = new long[nd];
+		final long[] max = new long[nd];
+		for (int d = 0; d < nd; d++) {
+			blockMin[d] = gridPosition[d] * blockSize[d];
+			min[d] = Math.max(blockMin[d], source.min(d));
+			max[d] = Math.min(blockMin[d] + size[d] - 1, source.max(d));
+			if (min[d] > max[d])
+				return;
+		}
+
+		final Object data = block.getData();
+		final int rowLength = (int)(max[0] - min[0] + 1);
+		final long[] position = min.clone();
+		while (true) {
+
+			int blockIndex = 0;
+			int stride = 1;
+			long offset = 0;
+			long plane = 0;
+			for (int d = 0; d < nd; d++) {
+				blockIndex += (int)(position[d] - blockMin[d]) * stride;
+				stride *= size[d];
+
+				final long p = position[d] - source.min(d);
+				offset += p * offsetStrides[d];
+				plane += p * planeStrides[d];
+			}
+
+			copyRow(data, blockIndex, planes, (int)plane, (int)offset, rowLength,
+					(int)planeStrides[0], (int)offsetStrides[0], unsigned);
+
+			int d = 1;
+			for (; d < nd; d++) {
+				if (++position[d] <= max[d])
+					break;
+
+				position[d] = min[d];
+			}
+			if (d >= nd)
+				break;
+		}
+	}
+
+	private static void copyRow(
+			final Object src,
+			final int srcIndex,
+			final Object[] planes,
+			final int plane,
+			final int offset,
+			final int length,
+			final int planeStep,
+			final int offsetStep,
+			final boolean unsigned) {
+
+		if (planeStep == 0 && offsetStep == 1 && src.getClass() == planes[plane].getClass()) {
+			System.arraycopy(src, srcIndex, planes[plane], offset, length);
+			return;
+		}
+
+		if (src instanceof byte[]) {
+			final byte[] s = (byte[])src;
+			for (int i = 0; i < length; i++)
+				((byte[])planes[plane + i * planeStep])[offset + i * offsetStep] = s[srcIndex + i];
+		} else if (src instanceof short[]) {
+			final short[] s = (short[])src;
+			for (int i = 0; i < length; i++)
+				((short[])planes[plane + i * planeStep])[offset + i * offsetStep] = s[srcIndex + i];
+		} else if (src instanceof int[]) {
+			final int[] s = (int[])src;
+			for (int i = 0; i < length; i++)
+				((int[])planes[plane + i * planeStep])[offset + i * offsetStep] = s[srcIndex + i];
+		} else if (src instanceof float[]) {
+			final float[] s = (float[])src;
+			for (int i = 0; i < length; i++)
+				((float[])planes[plane + i * planeStep])[offset + i * offsetStep] = s[srcIndex + i];
+		} else if (src instanceof double[]) {
+			final double[] s = (double[])src;
+			for (int i = 0; i < length; i++)
+				((float[])planes[plane + i * planeStep])[offset + i * offsetStep] = (float)s[srcIndex + i];
+		} else if (src instanceof long[]) {
+			final long[] s = (long[])src;
+			for (int i = 0; i < length; i++) {
+				final long v = s[srcIndex + i];
+				((float[])planes[plane + i * planeStep])[offset + i * offsetStep] = unsigned && v < 0
+						? (float)((v >>> 1) * 2.0 + (v & 1))
+						: (float)v;
+			}
+		} else
+			throw new IllegalArgumentException("Unsupported block data " + src.getClass());
+	}
+
+}
@@ -0,0 +1,126 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.janelia.saalfeldlab.n5.KeyValueAccess;
+import org.janelia.saalfeldlab.n5.LockedChannel;
+
+/**
+ * A {@link KeyValueAccess} that reads blocks through a
+ * {@link DiskBlockCache}, and passes metadata and all other calls on to the
+ * key value access of the container.
+ */
+class CachingKeyValueAccess implements KeyValueAccess {
+
+	private final KeyValueAccess kva;
+
+	private final DiskBlockCache cache;
+
+	CachingKeyValueAccess(final KeyValueAccess kva, final DiskBlockCache cache) {
+
+		this.kva = kva;
+		this.cache = cache;
+	}
+
+	@Override
+	public LockedChannel lockForReading(final String normalPath) throws IOException {
+
+		if (DiskBlockCache.isBlock(normalPath))
+			return cache.lockForReading(kva, normalPath);
+		else
+			return kva.lockForReading(normalPath);
+	}
+
+	@Override
+	public String[] components(final String path) {
+
+		return kva.components(path);
+	}
+
+	@Override
+	public String compose(final String... components) {
+
+		return kva.compose(components);
+	}
+
+	@Override
+	public String compose(final URI uri, final String... components) {
+
+		return kva.compose(uri, components);
+	}
+
+	@Override
+	public String parent(final String path) {
+
+		return kva.parent(path);
+	}
+
+	@Override
+	public String relativize(final String path, final String base) {
+
+		return kva.relativize(path, base);
+	}
+
+	@Override
+	public String normalize(final String path) {
+
+		return kva.normalize(path);
+	}
+
+	@Override
+	public URI uri(final String normalPath) throws URISyntaxException {
+
+		return kva.uri(normalPath);
+	}
+
+	@Override
+	public boolean exists(final String normalPath) {
+
+		return kva.exists(normalPath);
+	}
+
+	@Override
+	public boolean isDirectory(final String normalPath) {
+
+		return kva.isDirectory(normalPath);
+	}
+
+	@Override
+	public boolean isFile(final String normalPath) {
+
+		return kva.isFile(normalPath);
+	}
+
+	@Override
+	public LockedChannel lockForWriting(final String normalPath) throws IOException {
+
+		return kva.lockForWriting(normalPath);
+	}
+
+	@Override
+	public String[] listDirectories(final String normalPath) throws IOException {
+
+		return kva.listDirectories(normalPath);
+	}
+
+	@Override
+	public String[] list(final String normalPath) throws IOException {
+
+		return kva.list(normalPath);
+	}
+
+	@Override
+	public void createDirectories(final String normalPath) throws IOException {
+
+		kva.createDirectories(normalPath);
+	}
+
+	@Override
+	public void delete(final String normalPath) throws IOException {
+
+		kva.delete(normalPath);
+	}
+
+}
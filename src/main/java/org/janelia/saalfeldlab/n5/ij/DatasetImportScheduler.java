@@ -0,0 +1,139 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import ij.Prefs;
+
+/**
+ * Runs the imports of several datasets concurrently, limited by a number of
+ * datasets that are read at the same time and by the total number of bytes
+ * of the images being read.
+ * <p>
+ * Tasks are started in the order in which they are submitted. A task waits
+ * until its bytes fit into the budget, except when no other task is running,
+ * so that a single dataset larger than the budget is still read. Block-level
+ * parallelism within each import is left to the executor service passed to
+ * the importer, which must not be the one of this scheduler.
+ * <p>
+ * The defaults are read from the ImageJ preferences {@value #PARALLEL_PREF}
+ * and {@value #MAX_BYTES_PREF}.
+ */
+public class DatasetImportScheduler implements AutoCloseable {
+
+	public static final String PARALLEL_PREF = "n5.import.parallelDatasets";
+
+	public static final String MAX_BYTES_PREF = "n5.import.maxBytes";
+
+	private final ExecutorService exec;
+
+	private final long maxBytes;
+
+	private long bytes = 0;
+
+	/**
+	 * @param numParallel
+	 *            the maximum number of datasets read at the same time, if one
+	 *            or less, tasks run on the submitting thread
+	 * @param maxBytes
+	 *            the maximum total number of bytes of the datasets read at
+	 *            the same time
+	 */
+	public DatasetImportScheduler(final int numParallel, final long maxBytes) {
+
+		this.maxBytes = maxBytes;
+		if (numParallel > 1) {
+			exec = Executors.newFixedThreadPool(numParallel, r -> {
+				final Thread t = new Thread(r, "n5-import");
+				t.setDaemon(true);
+				return t;
+			});
+		} else
+			exec = null;
+	}
+
+	/**
+	 * Creates a scheduler with the limits from the preferences, by default
+	 * up to a quarter of the processors (at least two) and half of the
+	 * maximum heap size.
+	 *
+	 * @param numDatasets
+	 *            the number of datasets to import
+	 * @return the scheduler
+	 */
+	public static DatasetImportScheduler create(final int numDatasets) {
+
+		final int numParallel = Prefs.getInt(PARALLEL_PREF,
+				Math.max(2, Runtime.getRuntime().availableProcessors() / 4));
+		final long maxBytes = (long)Prefs.get(MAX_BYTES_PREF, Runtime.getRuntime().maxMemory() / 2);
+
+		return new DatasetImportScheduler(Math.min(numDatasets, numParallel), maxBytes);
+	}
+
+	/**
+	 * Submits an import.
+	 *
+	 * @param <T>
+	 *            the result type
+	 * @param taskBytes
+	 *            the number of bytes the import allocates
+	 * @param task
+	 *            the import
+	 * @return the future result
+	 */
+	public <T> Future<T> submit(final long taskBytes, final Callable<T> task) {
+
+		final FutureTask<T> future = new FutureTask<>(() -> {
+			acquire(taskBytes);
+			try {
+				return task.call();
+			} finally {
+				release(taskBytes);
+			}
+		});
+
+		if (exec == null)
+			future.run();
+		else
+			exec.execute(future);
+
+		return future;
+	}
+
+	/**
+	 * @return the total number of bytes of the imports that are running
+	 */
+	public synchronized long getBytes() {
+
+		return bytes;
+	}
+
+	private synchronized void acquire(final long taskBytes) throws InterruptedException {
+
+		while (bytes > 0 && bytes + taskBytes > maxBytes)
+			wait();
+
+		bytes += taskBytes;
+	}
+
+	private synchronized void release(final long taskBytes) {
+
+		bytes -= taskBytes;
+		notifyAll();
+	}
+
+	/**
+	 * Stops the threads of this scheduler once all submitted imports are
+	 * done.
+	 */
+	@Override
+	public void close() {
+
+		if (exec != null)
+			exec.shutdown();
+	}
+
+}
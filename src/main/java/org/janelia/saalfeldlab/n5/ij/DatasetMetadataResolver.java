@@ -0,0 +1,142 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5Metadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.OmeNgffMetadataParser;
+
+import com.google.gson.JsonElement;
+
+/**
+ * Finds the metadata for a single dataset without discovering the whole
+ * container.
+ * <p>
+ * Most metadata styles store everything needed to open a dataset on the
+ * dataset itself. OME-NGFF stores it on the multiscales group that contains
+ * the dataset, so the nearest ancestor group with multiscales metadata, if
+ * any, is parsed together with its (small) subtree. Other ancestors are only
+ * checked for attributes, so the cost is proportional to the depth of the
+ * path rather than to the size of the container.
+ */
+public class DatasetMetadataResolver {
+
+	private static final String[] MULTISCALES_KEYS = new String[]{"multiscales", "ome/multiscales"};
+
+	private DatasetMetadataResolver() {}
+
+	/**
+	 * Returns the metadata for the given dataset using {@link N5Importer#PARSERS}.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset path
+	 * @return the metadata, or null if the path is not a dataset with
+	 *         supported metadata
+	 */
+	public static N5DatasetMetadata resolve(final N5Reader n5, final String dataset) {
+
+		return resolve(n5, discoverer(n5), dataset);
+	}
+
+	/**
+	 * @param n5
+	 *            the reader
+	 * @return a discoverer with {@link N5Importer#PARSERS} and the OME-NGFF
+	 *         group parser
+	 */
+	static N5DatasetDiscoverer discoverer(final N5Reader n5) {
+
+		return new N5DatasetDiscoverer(n5,
+				N5DatasetDiscoverer.fromParsers(N5Importer.PARSERS),
+				Collections.singletonList(new OmeNgffMetadataParser(n5)));
+	}
+
+	/**
+	 * Returns the metadata for the given dataset.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param discoverer
+	 *            the discoverer holding the metadata parsers to use
+	 * @param dataset
+	 *            the dataset path
+	 * @return the metadata, or null if the path is not a dataset with
+	 *         supported metadata
+	 */
+	public static N5DatasetMetadata resolve(final N5Reader n5, final N5DatasetDiscoverer discoverer, final String dataset) {
+
+		final String path = N5URI.normalizeGroupPath(dataset);
+		try {
+			final String metadataGroup = nearestMultiscalesGroup(n5, path);
+			final N5Metadata meta;
+			if (metadataGroup != null) {
+				final N5TreeNode groupNode = discoverer.discoverAndParseRecursive(metadataGroup);
+				final Optional<N5TreeNode> node = N5TreeNode.flattenN5Tree(groupNode)
+						.filter(x -> N5URI.normalizeGroupPath(x.getPath()).equals(path))
+						.findFirst();
+
+				meta = node.map(N5TreeNode::getMetadata).orElse(null);
+			} else
+				meta = discoverer.parse(path).getMetadata();
+
+			return meta instanceof N5DatasetMetadata ? (N5DatasetMetadata)meta : null;
+
+		} catch (final Exception e) {
+			throw new N5Exception("Failure to parse or find data at " + dataset, e);
+		}
+	}
+
+	/**
+	 * Returns the closest strict ancestor of the path that holds multiscales
+	 * metadata, or null if there is none.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param path
+	 *            a normalized path
+	 * @return the group path or null
+	 */
+	static String nearestMultiscalesGroup(final N5Reader n5, final String path) {
+
+		for (final String ancestor : ancestors(path)) {
+			for (final String key : MULTISCALES_KEYS) {
+				try {
+					if (n5.getAttribute(ancestor, key, JsonElement.class) != null)
+						return ancestor;
+				} catch (final N5Exception e) {
+					// not json, or not readable as an attribute path
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param path
+	 *            a normalized path
+	 * @return the strict ancestors of the path, closest first, ending with
+	 *         the root ""
+	 */
+	static List<String> ancestors(final String path) {
+
+		final List<String> ancestors = new ArrayList<>();
+		String p = path;
+		while (!p.isEmpty()) {
+			final int i = p.lastIndexOf('/');
+			p = i < 0 ? "" : p.substring(0, i);
+			ancestors.add(p);
+		}
+		return ancestors;
+	}
+
+}
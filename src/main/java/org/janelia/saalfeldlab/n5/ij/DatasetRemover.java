@@ -0,0 +1,280 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Writer;
+
+/**
+ * Removes groups and datasets that are about to be overwritten.
+ * <p>
+ * Removing a large dataset file by file can take much longer than writing
+ * its replacement. For containers on the local file system, the
+ * {@link Strategy#ASYNC} strategy atomically renames the path into a hidden
+ * trash directory in the container root, which makes the path immediately
+ * available for writing, and deletes the trash in parallel in the background.
+ * Other backends remove the children of the path in parallel.
+ * <p>
+ * Background deletions run on daemon threads, so applications that exit the
+ * JVM should call {@link #awaitPendingRemovals(long, TimeUnit)} first.
+ */
+public class DatasetRemover {
+
+	public static enum Strategy {
+		/** Remove with a single call to {@link N5Writer#remove(String)}. */
+		SYNCHRONOUS,
+		/** Remove the children of the path in parallel, then the path. */
+		PARALLEL,
+		/**
+		 * Move the path to a trash directory and delete it in the background.
+		 * Falls back to {@link #PARALLEL} when the path can not be moved.
+		 */
+		ASYNC
+	};
+
+	private static final String TRASH_PREFIX = ".n5-ij-trash-";
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private static ThreadPoolExecutor backgroundExecutor;
+
+	private static final List<Future<?>> pending = new ArrayList<>();
+
+	private static final Set<Path> inProgress = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Removes the given path from the container.
+	 *
+	 * @param n5
+	 *            the writer
+	 * @param path
+	 *            the group or dataset to remove
+	 * @param strategy
+	 *            the removal strategy
+	 * @param nThreads
+	 *            number of threads for parallel removal
+	 */
+	public static void remove(final N5Writer n5, final String path, final Strategy strategy, final int nThreads) {
+
+		final String normalPath = N5URI.normalizeGroupPath(path);
+		try {
+			removePath(n5, normalPath, strategy, nThreads);
+		} finally {
+			// virtual imports must not keep showing the removed blocks
+			SharedBlockCache.getInstance().invalidate(n5.getURI().toString(), normalPath);
+		}
+	}
+
+	private static void removePath(final N5Writer n5, final String normalPath, final Strategy strategy, final int nThreads) {
+
+		// hdf5 files can not be modified externally, and removing the
+		// container root must also remove its root attributes
+		if (strategy == Strategy.SYNCHRONOUS || n5 instanceof N5HDF5Writer || normalPath.isEmpty()) {
+			n5.remove(normalPath);
+			return;
+		}
+
+		if (strategy == Strategy.ASYNC && moveToTrash(n5, normalPath, nThreads)) {
+			// the path no longer exists, so this is fast, but keeps the
+			// writer's attribute cache consistent
+			n5.remove(normalPath);
+			return;
+		}
+
+		removeParallel(n5, normalPath, nThreads);
+	}
+
+	/**
+	 * Blocks until background deletions started so far have completed.
+	 *
+	 * @param timeout
+	 *            the maximum time to wait
+	 * @param unit
+	 *            the time unit of the timeout
+	 * @return true if all deletions completed
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public static boolean awaitPendingRemovals(final long timeout, final TimeUnit unit) throws InterruptedException {
+
+		final List<Future<?>> toWait;
+		synchronized (pending) {
+			toWait = new ArrayList<>(pending);
+		}
+
+		final long end = System.nanoTime() + unit.toNanos(timeout);
+		for (final Future<?> f : toWait) {
+			try {
+				f.get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+			} catch (final ExecutionException e) {
+				e.printStackTrace();
+			} catch (final TimeoutException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void removeParallel(final N5Writer n5, final String path, final int nThreads) {
+
+		if (!n5.exists(path))
+			return;
+
+		final String[] children = n5.list(path);
+		if (nThreads > 1 && children.length > 1) {
+
+			final ExecutorService exec = Executors.newFixedThreadPool(Math.min(nThreads, children.length));
+			try {
+				final List<Future<?>> futures = new ArrayList<>();
+				for (final String child : children)
+					futures.add(exec.submit(() -> n5.remove(path + "/" + child)));
+
+				for (final Future<?> f : futures)
+					f.get();
+
+			} catch (final InterruptedException | ExecutionException e) {
+				throw new N5Exception("Failed to remove " + path, e);
+			} finally {
+				exec.shutdown();
+			}
+		}
+		n5.remove(path);
+	}
+
+	/**
+	 * Moves the path into a trash directory in the container root and
+	 * schedules its deletion.
+	 *
+	 * @return true if the path was moved
+	 */
+	private static boolean moveToTrash(final N5Writer n5, final String path, final int nThreads) {
+
+		final URI uri = n5.getURI();
+		if (uri == null || !"file".equals(uri.getScheme()))
+			return false;
+
+		try {
+			final Path root = Paths.get(uri);
+			final Path source = root.resolve(path);
+			if (!Files.isDirectory(source))
+				return false;
+
+			// the container root is on the same file system, and a directory
+			// that only this process knows about is never written to
+			final Path trash = root.resolve(TRASH_PREFIX + UUID.randomUUID());
+			Files.move(source, trash, StandardCopyOption.ATOMIC_MOVE);
+
+			deleteInBackground(trash, nThreads);
+			return true;
+
+		} catch (final IOException | UnsupportedOperationException | IllegalArgumentException e) {
+			// e.g. AtomicMoveNotSupportedException
+			return false;
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getBackgroundExecutor(final int nThreads) {
+
+		if (backgroundExecutor == null) {
+			// daemon threads never keep the jvm alive, and idle threads time out
+			backgroundExecutor = new ThreadPoolExecutor(1, 1, 10L, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(),
+					r -> {
+						final Thread t = new Thread(r, "n5-ij-remove-" + threadCount.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					});
+			backgroundExecutor.allowCoreThreadTimeOut(true);
+		}
+
+		// deletion is io bound, so use a few threads even if the export is single threaded
+		final int n = Math.max(nThreads, Math.min(4, Runtime.getRuntime().availableProcessors()));
+		if (n > backgroundExecutor.getMaximumPoolSize()) {
+			backgroundExecutor.setMaximumPoolSize(n);
+			backgroundExecutor.setCorePoolSize(n);
+		}
+
+		return backgroundExecutor;
+	}
+
+	private static void deleteInBackground(final Path trash, final int nThreads) {
+
+		if (!inProgress.add(trash))
+			return;
+
+		final ThreadPoolExecutor exec = getBackgroundExecutor(nThreads);
+
+		// delete top level subtrees in parallel, then the trash directory
+		final List<CompletableFuture<Void>> subtrees = new ArrayList<>();
+		try (final DirectoryStream<Path> children = Files.newDirectoryStream(trash)) {
+			for (final Path child : children)
+				subtrees.add(CompletableFuture.runAsync(() -> deleteRecursive(child), exec));
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+
+		final CompletableFuture<Void> f = CompletableFuture
+				.allOf(subtrees.toArray(new CompletableFuture[subtrees.size()]))
+				.thenRunAsync(() -> deleteRecursive(trash), exec)
+				.whenComplete((x, e) -> inProgress.remove(trash));
+
+		synchronized (pending) {
+			pending.removeIf(Future::isDone);
+			pending.add(f);
+		}
+	}
+
+	private static void deleteRecursive(final Path path) {
+
+		if (!Files.exists(path))
+			return;
+
+		try {
+			Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+
+					Files.deleteIfExists(file);
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(final Path dir, final IOException e) throws IOException {
+
+					Files.deleteIfExists(dir);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,764 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GsonKeyValueN5Reader;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.converters.UnsignedShortLinearConverter;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.integer.AbstractIntegerType;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Global statistics of a dataset: the range, the number of (non-zero)
+ * values, their sum, and a histogram, computed block by block in parallel
+ * without loading the dataset.
+ * <p>
+ * {@link #update(N5Writer, String, ExecutorService)} stores the statistics
+ * as the attribute {@value #STATISTICS_KEY} of the dataset, where
+ * {@link #load(N5Reader, String)} finds them again, for example to set the
+ * display range of an import. Per-block summaries are stored together with
+ * the modification time of every block in the hidden file
+ * {@value #SUMMARIES_FILE} in the directory of the dataset, such that later
+ * updates only read the blocks that were written since. The file is not a
+ * group or dataset of the container, so readers and the dataset discovery
+ * ignore it. Modification times are only known for containers on the local
+ * file system; other containers (for example HDF5 files or cloud storage)
+ * are always summarized completely, and no summaries are written for them.
+ * <p>
+ * The stored statistics include a token made of the data type, dimensions,
+ * and block size of the dataset and, on the local file system, the
+ * modification times of all of its blocks. Statistics whose token does not
+ * match the dataset any more, because it was changed after the last update,
+ * are not loaded. Writes to other containers that keep the attributes of the
+ * dataset can not be detected.
+ * <p>
+ * The histogram has {@value #NUM_BINS} bins over the range of the data type
+ * for 8- and 16-bit integers, and over the range of the data otherwise.
+ * Missing blocks count as zeros, and NaNs are ignored.
+ */
+public class DatasetStatistics {
+
+	public static final String STATISTICS_KEY = "statistics";
+
+	public static final String SUMMARIES_FILE = ".n5-ij-statistics";
+
+	public static final int NUM_BINS = 256;
+
+	/**
+	 * Per-block summaries are stored as rows of longs: modification time,
+	 * count, non-zero count, the bits of min, max, and sum, then the
+	 * histogram.
+	 */
+	private static final int MTIME = 0, COUNT = 1, NON_ZERO = 2, MIN = 3, MAX = 4, SUM = 5, HEADER = 6;
+
+	private static final int NUM_FIELDS = HEADER + NUM_BINS;
+
+	/**
+	 * The modification time of a block whose modification time is unknown.
+	 */
+	static final long UNKNOWN = Long.MIN_VALUE;
+
+	/**
+	 * Separates the description of the dataset from the hash of the
+	 * modification times of its blocks in tokens.
+	 */
+	private static final String MTIMES_INFIX = " mtimes ";
+
+	private long count;
+
+	private long nonZeroCount;
+
+	private double min;
+
+	private double max;
+
+	private double sum;
+
+	private double mean;
+
+	private double histogramMin;
+
+	private double histogramMax;
+
+	private long[] histogram;
+
+	private String token;
+
+	private transient int numBlocksRead;
+
+	public long getCount() {
+
+		return count;
+	}
+
+	public long getNonZeroCount() {
+
+		return nonZeroCount;
+	}
+
+	public double getMin() {
+
+		return min;
+	}
+
+	public double getMax() {
+
+		return max;
+	}
+
+	public double getSum() {
+
+		return sum;
+	}
+
+	public double getMean() {
+
+		return mean;
+	}
+
+	/**
+	 * @return the lower edge of the first bin of the histogram
+	 */
+	public double getHistogramMin() {
+
+		return histogramMin;
+	}
+
+	/**
+	 * @return the upper edge of the last bin of the histogram
+	 */
+	public double getHistogramMax() {
+
+		return histogramMax;
+	}
+
+	public long[] getHistogram() {
+
+		return histogram;
+	}
+
+	/**
+	 * @return the number of blocks read to compute these statistics, the
+	 *         others were summarized before
+	 */
+	public int getNumBlocksRead() {
+
+		return numBlocksRead;
+	}
+
+	/**
+	 * @param upperPercentile
+	 *            the percentile for the maximum of the range, in [0,1]
+	 * @return the display range from the minimum to a percentile of the
+	 *         histogram
+	 */
+	public double[] displayRange(final double upperPercentile) {
+
+		final double binWidth = (histogramMax - histogramMin) / NUM_BINS;
+		final double upper = DisplayRangeEstimator.percentile(histogram, upperPercentile, histogramMin, max, binWidth, true);
+		return new double[]{min, Math.max(min, upper)};
+	}
+
+	/**
+	 * @param dataType
+	 *            the data type
+	 * @return true if statistics can be computed for the data type
+	 */
+	public static boolean isSupported(final DataType dataType) {
+
+		return BlockBinning.isSupported(dataType);
+	}
+
+	/**
+	 * Loads the statistics stored with a dataset, if they are still up to
+	 * date. On the local file system, this checks the modification time of
+	 * every block.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @return the statistics, or null if none are stored or the dataset
+	 *         changed since
+	 */
+	public static DatasetStatistics load(final N5Reader n5, final String dataset) {
+
+		try {
+			final DatasetStatistics stats = n5.getAttribute(dataset, STATISTICS_KEY, DatasetStatistics.class);
+			if (stats == null || stats.histogram == null || stats.histogram.length != NUM_BINS || stats.token == null)
+				return null;
+
+			final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+			return attributes != null && stats.token.equals(token(n5, dataset, attributes)) ? stats : null;
+		} catch (final N5Exception | ClassCastException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a linear conversion of an integer image of a dataset to
+	 * unsigned shorts. The range of the image is still computed, but with the
+	 * range of the statistics stored with the dataset as bounds, such that it
+	 * usually stops after reading part of the image. The pass stops as soon
+	 * as it finds the bounds, so they are only used if the statistics were
+	 * checked against the modification times of the blocks, i.e. on the
+	 * local file system.
+	 *
+	 * @param <T>
+	 *            the image data type
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param img
+	 *            the image of the dataset
+	 * @param exec
+	 *            the executor service
+	 * @return the converter
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             reading the image failed
+	 */
+	public static <T extends AbstractIntegerType<T>> UnsignedShortLinearConverter<T> linearConverter(
+			final N5Reader n5,
+			final String dataset,
+			final RandomAccessibleInterval<T> img,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		final DatasetStatistics stats = load(n5, dataset);
+		if (stats == null || stats.count == 0 || !stats.token.contains(MTIMES_INFIX))
+			return new UnsignedShortLinearConverter<>(img, exec);
+
+		return new UnsignedShortLinearConverter<>(img, exec, (long)Math.floor(stats.min), (long)Math.ceil(stats.max));
+	}
+
+	/**
+	 * Computes the statistics of a dataset from all of its blocks, without
+	 * storing them.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param exec
+	 *            the executor service
+	 * @return the statistics
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             reading a block failed
+	 */
+	public static DatasetStatistics compute(final N5Reader n5, final String dataset, final ExecutorService exec)
+			throws InterruptedException, ExecutionException {
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final long[][] summaries = summarize(n5, dataset, attributes, null, null, false, exec);
+		return merge(summaries, histogramRange(attributes.getDataType(), summaries), summaries.length);
+	}
+
+	/**
+	 * Computes the statistics of a dataset, reading only the blocks that were
+	 * modified since the last update, and stores them with the dataset.
+	 *
+	 * @param n5
+	 *            the writer
+	 * @param dataset
+	 *            the dataset
+	 * @param exec
+	 *            the executor service
+	 * @return the statistics
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             reading a block failed
+	 */
+	public static DatasetStatistics update(final N5Writer n5, final String dataset, final ExecutorService exec)
+			throws InterruptedException, ExecutionException {
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final Path summariesFile = summariesFile(n5, dataset);
+		final boolean incremental = summariesFile != null && modificationTime(n5, dataset, new long[attributes.getNumDimensions()]) != UNKNOWN;
+
+		final double[] storedRange = new double[2];
+		final long[][] stored = incremental ? readSummaries(summariesFile, source(attributes), storedRange) : null;
+
+		final long[][] summaries = summarize(n5, dataset, attributes, stored, stored == null ? null : storedRange, incremental, exec);
+		final double[] range = histogramRange(attributes.getDataType(), summaries);
+
+		int numBlocksRead = 0;
+		for (int i = 0; i < summaries.length; i++)
+			if (stored == null || summaries[i] != stored[i])
+				numBlocksRead++;
+
+		final DatasetStatistics stats = merge(summaries, range, numBlocksRead);
+		if (incremental) {
+			final long[] mtimes = new long[summaries.length];
+			for (int i = 0; i < mtimes.length; i++)
+				mtimes[i] = summaries[i][MTIME];
+
+			stats.token = token(attributes, mtimes);
+			writeSummaries(summariesFile, source(attributes), range, summaries);
+		} else
+			stats.token = token(n5, dataset, attributes);
+
+		n5.setAttribute(dataset, STATISTICS_KEY, stats);
+		return stats;
+	}
+
+	/**
+	 * @return the token of the current state of a dataset
+	 */
+	private static String token(final N5Reader n5, final String dataset, final DatasetAttributes attributes) {
+
+		final long[] grid = BlockGrid.gridDimensions(attributes);
+		final long numBlocks = BlockGrid.numBlocks(attributes);
+		if (numBlocks > Integer.MAX_VALUE)
+			return source(attributes);
+
+		final long[] mtimes = new long[(int)numBlocks];
+		final long[] gridPosition = new long[grid.length];
+		for (int i = 0; i < mtimes.length; i++) {
+			IntervalIndexer.indexToPosition(i, grid, gridPosition);
+			mtimes[i] = modificationTime(n5, dataset, gridPosition);
+			if (mtimes[i] == UNKNOWN)
+				return source(attributes);
+		}
+		return token(attributes, mtimes);
+	}
+
+	/**
+	 * @return the token of a dataset whose blocks in flat order have the
+	 *         given modification times
+	 */
+	private static String token(final DatasetAttributes attributes, final long[] mtimes) {
+
+		long hash = 17;
+		for (final long mtime : mtimes) {
+			if (mtime == UNKNOWN)
+				return source(attributes);
+
+			hash = 31 * hash + mtime;
+		}
+		return source(attributes) + MTIMES_INFIX + Long.toHexString(hash);
+	}
+
+	/**
+	 * @return the file with the per-block summaries in the directory of a
+	 *         dataset, or null if the container is not on the local file
+	 *         system
+	 */
+	static Path summariesFile(final N5Reader n5, final String dataset) {
+
+		final URI uri = n5.getURI();
+		if (!(n5 instanceof GsonKeyValueN5Reader) || uri == null || !"file".equals(uri.getScheme()))
+			return null;
+
+		try {
+			final String groupPath = ((GsonKeyValueN5Reader)n5).absoluteGroupPath(N5URI.normalizeGroupPath(dataset));
+			final Path path = groupPath.startsWith("file:") ? Paths.get(URI.create(groupPath)) : Paths.get(groupPath);
+			return path.resolve(SUMMARIES_FILE);
+		} catch (final RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the modification time of a block in nanoseconds, zero if the
+	 * block does not exist, or {@link #UNKNOWN} if the container is not on
+	 * the local file system.
+	 */
+	static long modificationTime(final N5Reader n5, final String dataset, final long[] gridPosition) {
+
+		final URI uri = n5.getURI();
+		if (!(n5 instanceof GsonKeyValueN5Reader) || uri == null || !"file".equals(uri.getScheme()))
+			return UNKNOWN;
+
+		try {
+			final String blockPath = ((GsonKeyValueN5Reader)n5).absoluteDataBlockPath(N5URI.normalizeGroupPath(dataset), gridPosition);
+			final Path path = blockPath.startsWith("file:") ? Paths.get(URI.create(blockPath)) : Paths.get(blockPath);
+			if (!Files.exists(path))
+				return 0;
+
+			return Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+		} catch (final IOException | RuntimeException e) {
+			return UNKNOWN;
+		}
+	}
+
+	/**
+	 * Summarizes all blocks in parallel, reusing stored summaries of blocks
+	 * that were not modified since. For data types without a fixed histogram
+	 * range, the histograms are computed in a second pass once the range is
+	 * known.
+	 */
+	private static long[][] summarize(
+			final N5Reader n5,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final long[][] stored,
+			final double[] storedRange,
+			final boolean trackModification,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		final DataType dataType = attributes.getDataType();
+		if (!isSupported(dataType))
+			throw new IllegalArgumentException("can not compute statistics of data type " + dataType);
+
+		final long[] grid = BlockGrid.gridDimensions(attributes);
+		long n = 1;
+		for (final long g : grid)
+			n *= g;
+
+		if (n > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("too many blocks");
+
+		final int numBlocks = (int)n;
+		final double[] fixedRange = fixedHistogramRange(dataType);
+		final long[][] summaries = new long[numBlocks][];
+		final boolean[] modified = new boolean[numBlocks];
+		forEachBlock(numBlocks, exec, i -> {
+			final long[] gridPosition = new long[grid.length];
+			IntervalIndexer.indexToPosition(i, grid, gridPosition);
+			final long mtime = trackModification ? modificationTime(n5, dataset, gridPosition) : UNKNOWN;
+			if (stored != null && mtime != UNKNOWN && i < stored.length && stored[i][MTIME] == mtime)
+				summaries[i] = stored[i];
+			else {
+				final DataBlock<?> block = n5.readBlock(dataset, attributes, gridPosition);
+				summaries[i] = summarizeBlock(block, attributes, gridPosition, fixedRange);
+				summaries[i][MTIME] = mtime;
+				modified[i] = true;
+			}
+		});
+
+		if (fixedRange == null) {
+			// histograms of unmodified blocks are still valid if the range did not change
+			final double[] range = histogramRange(dataType, summaries);
+			final boolean sameRange = Arrays.equals(range, storedRange);
+			forEachBlock(numBlocks, exec, i -> {
+				if (sameRange && !modified[i])
+					return;
+
+				final long[] gridPosition = new long[grid.length];
+				IntervalIndexer.indexToPosition(i, grid, gridPosition);
+				final DataBlock<?> block = n5.readBlock(dataset, attributes, gridPosition);
+				Arrays.fill(summaries[i], HEADER, NUM_FIELDS, 0);
+				histogramBlock(block, attributes, gridPosition, range, summaries[i]);
+			});
+		}
+		return summaries;
+	}
+
+	@FunctionalInterface
+	private interface BlockTask {
+
+		void run(int index);
+	}
+
+	/**
+	 * Runs a task for every block, in as many parallel runs of consecutive
+	 * blocks as there are processors.
+	 */
+	private static void forEachBlock(final int numBlocks, final ExecutorService exec, final BlockTask task)
+			throws InterruptedException, ExecutionException {
+
+		final int numTasks = Math.max(1, Math.min(numBlocks, 4 * Runtime.getRuntime().availableProcessors()));
+		final List<Future<?>> futures = new ArrayList<>();
+		for (int t = 0; t < numTasks; t++) {
+			final int from = (int)((long)t * numBlocks / numTasks);
+			final int to = (int)((long)(t + 1) * numBlocks / numTasks);
+			futures.add(exec.submit(() -> {
+				for (int i = from; i < to; i++)
+					task.run(i);
+
+				return null;
+			}));
+		}
+
+		for (final Future<?> f : futures)
+			f.get();
+	}
+
+	/**
+	 * Summarizes the part of a block within the dataset, and histograms it if
+	 * the range is given.
+	 */
+	private static long[] summarizeBlock(
+			final DataBlock<?> block,
+			final DatasetAttributes attributes,
+			final long[] gridPosition,
+			final double[] range) {
+
+		final long[] summary = new long[NUM_FIELDS];
+		final double[] minMaxSum = new double[]{Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0};
+		final long[] counts = new long[2];
+		forEachValue(block, attributes, gridPosition, v -> {
+			if (Double.isNaN(v))
+				return;
+
+			counts[0]++;
+			if (v != 0)
+				counts[1]++;
+			if (v < minMaxSum[0])
+				minMaxSum[0] = v;
+			if (v > minMaxSum[1])
+				minMaxSum[1] = v;
+			minMaxSum[2] += v;
+			if (range != null)
+				summary[HEADER + bin(v, range)]++;
+		});
+
+		summary[COUNT] = counts[0];
+		summary[NON_ZERO] = counts[1];
+		summary[MIN] = Double.doubleToLongBits(minMaxSum[0]);
+		summary[MAX] = Double.doubleToLongBits(minMaxSum[1]);
+		summary[SUM] = Double.doubleToLongBits(minMaxSum[2]);
+		return summary;
+	}
+
+	private static void histogramBlock(
+			final DataBlock<?> block,
+			final DatasetAttributes attributes,
+			final long[] gridPosition,
+			final double[] range,
+			final long[] summary) {
+
+		forEachValue(block, attributes, gridPosition, v -> {
+			if (!Double.isNaN(v))
+				summary[HEADER + bin(v, range)]++;
+		});
+	}
+
+	@FunctionalInterface
+	private interface ValueConsumer {
+
+		void accept(double value);
+	}
+
+	/**
+	 * Visits the values of the part of a block within the dataset, zeros for
+	 * a missing block.
+	 */
+	private static void forEachValue(
+			final DataBlock<?> block,
+			final DatasetAttributes attributes,
+			final long[] gridPosition,
+			final ValueConsumer consumer) {
+
+		final long[] dimensions = attributes.getDimensions();
+		final int[] blockSize = attributes.getBlockSize();
+		final int nd = dimensions.length;
+		final int[] size = block == null ? blockSize : block.getSize();
+		final int[] valid = new int[nd];
+		long numValues = 1;
+		for (int d = 0; d < nd; d++) {
+			valid[d] = (int)Math.min(size[d], dimensions[d] - gridPosition[d] * blockSize[d]);
+			numValues *= Math.max(0, valid[d]);
+		}
+
+		if (numValues == 0)
+			return;
+
+		if (block == null) {
+			for (long i = 0; i < numValues; i++)
+				consumer.accept(0);
+			return;
+		}
+
+		final BlockBinning.Values values = BlockBinning.values(block.getData(), attributes.getDataType());
+		final int[] position = new int[nd];
+		while (true) {
+			int rowStart = 0;
+			for (int d = nd - 1; d >= 0; d--)
+				rowStart = rowStart * size[d] + position[d];
+
+			for (int x = 0; x < valid[0]; x++)
+				consumer.accept(values.get(rowStart + x));
+
+			// next row
+			int d = 1;
+			for (; d < nd; d++) {
+				if (++position[d] < valid[d])
+					break;
+				position[d] = 0;
+			}
+			if (d >= nd)
+				break;
+		}
+	}
+
+	private static int bin(final double v, final double[] range) {
+
+		final int i = (int)Math.floor((v - range[0]) * NUM_BINS / (range[1] - range[0]));
+		return Math.max(0, Math.min(NUM_BINS - 1, i));
+	}
+
+	/**
+	 * @return the histogram range of the data type, or null if it depends on
+	 *         the data
+	 */
+	private static double[] fixedHistogramRange(final DataType dataType) {
+
+		switch (dataType) {
+		case UINT8:
+			return new double[]{0, 256};
+		case INT8:
+			return new double[]{-128, 128};
+		case UINT16:
+			return new double[]{0, 65536};
+		case INT16:
+			return new double[]{-32768, 32768};
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * @return the histogram range of the data type, or the range of the
+	 *         summarized blocks
+	 */
+	private static double[] histogramRange(final DataType dataType, final long[][] summaries) {
+
+		final double[] fixedRange = fixedHistogramRange(dataType);
+		if (fixedRange != null)
+			return fixedRange;
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (final long[] summary : summaries) {
+			if (summary[COUNT] == 0)
+				continue;
+
+			min = Math.min(min, Double.longBitsToDouble(summary[MIN]));
+			max = Math.max(max, Double.longBitsToDouble(summary[MAX]));
+		}
+
+		if (min > max)
+			return new double[]{0, 1};
+
+		return new double[]{min, max > min ? max : min + 1};
+	}
+
+	private static DatasetStatistics merge(final long[][] summaries, final double[] range, final int numBlocksRead) {
+
+		final DatasetStatistics stats = new DatasetStatistics();
+		stats.min = Double.POSITIVE_INFINITY;
+		stats.max = Double.NEGATIVE_INFINITY;
+		stats.histogram = new long[NUM_BINS];
+		for (final long[] summary : summaries) {
+			if (summary[COUNT] == 0)
+				continue;
+
+			stats.count += summary[COUNT];
+			stats.nonZeroCount += summary[NON_ZERO];
+			stats.min = Math.min(stats.min, Double.longBitsToDouble(summary[MIN]));
+			stats.max = Math.max(stats.max, Double.longBitsToDouble(summary[MAX]));
+			stats.sum += Double.longBitsToDouble(summary[SUM]);
+			for (int b = 0; b < NUM_BINS; b++)
+				stats.histogram[b] += summary[HEADER + b];
+		}
+
+		if (stats.count == 0) {
+			stats.min = 0;
+			stats.max = 0;
+		}
+
+		stats.mean = stats.count == 0 ? 0 : stats.sum / stats.count;
+		stats.histogramMin = range[0];
+		stats.histogramMax = range[1];
+		stats.numBlocksRead = numBlocksRead;
+		return stats;
+	}
+
+	/**
+	 * @return a description of the dataset that changes whenever its stored
+	 *         summaries become invalid
+	 */
+	private static String source(final DatasetAttributes attributes) {
+
+		return attributes.getDataType() + " " + Arrays.toString(attributes.getDimensions()) + " "
+				+ Arrays.toString(attributes.getBlockSize());
+	}
+
+	/**
+	 * Reads the per-block summaries and the range of their histograms.
+	 *
+	 * @return the summaries, or null if there are none for this source
+	 */
+	private static long[][] readSummaries(final Path file, final String source, final double[] range) {
+
+		if (!Files.exists(file))
+			return null;
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+			if (!source.equals(in.readUTF()))
+				return null;
+
+			range[0] = in.readDouble();
+			range[1] = in.readDouble();
+			final int numBlocks = in.readInt();
+			if (in.readInt() != NUM_FIELDS)
+				return null;
+
+			final long[][] summaries = new long[numBlocks][NUM_FIELDS];
+			for (final long[] summary : summaries)
+				for (int k = 0; k < NUM_FIELDS; k++)
+					summary[k] = in.readLong();
+
+			return summaries;
+		} catch (final IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Replaces the per-block summaries. The statistics stay valid if this
+	 * fails, only the next update has to read all blocks again.
+	 */
+	private static void writeSummaries(final Path file, final String source, final double[] range, final long[][] summaries) {
+
+		final Path tmp = file.resolveSibling(SUMMARIES_FILE + ".tmp");
+		try {
+			try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+				out.writeUTF(source);
+				out.writeDouble(range[0]);
+				out.writeDouble(range[1]);
+				out.writeInt(summaries.length);
+				out.writeInt(NUM_FIELDS);
+				for (final long[] summary : summaries)
+					for (final long v : summary)
+						out.writeLong(v);
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			System.err.println("Could not store the block summaries of " + file.getParent() + ": " + e.getMessage());
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.scijava.command.Command;
+import org.scijava.command.ContextCommand;
+import org.scijava.log.LogService;
+import org.scijava.plugin.Parameter;
+import org.scijava.plugin.Plugin;
+
+import ij.IJ;
+
+@Plugin(type = Command.class, menuPath = "Analyze>HDF5/N5/Zarr/OME-NGFF statistics", description = "Compute the range, counts, and histogram "
+		+ "of a dataset block by block, and store them with the dataset.")
+public class DatasetStatisticsCommand extends ContextCommand {
+
+	@Parameter
+	private LogService log;
+
+	@Parameter(label = "Root url")
+	private String containerRoot;
+
+	@Parameter(label = "Dataset")
+	private String dataset;
+
+	@Parameter(label = "Thread count", required = true, min = "1", max = "256")
+	private int nThreads = Runtime.getRuntime().availableProcessors();
+
+	public DatasetStatisticsCommand() {}
+
+	public DatasetStatisticsCommand(final String containerRoot, final String dataset, final int nThreads) {
+
+		this.containerRoot = containerRoot;
+		this.dataset = dataset;
+		this.nThreads = nThreads;
+	}
+
+	public DatasetStatistics process() throws InterruptedException, ExecutionException {
+
+		final ExecutorService exec = Executors.newFixedThreadPool(Math.max(1, nThreads));
+		try (final N5Writer n5 = new N5Factory().openWriter(containerRoot)) {
+			return DatasetStatistics.update(n5, dataset, exec);
+		} finally {
+			exec.shutdown();
+		}
+	}
+
+	@Override
+	public void run() {
+
+		try {
+			final DatasetStatistics stats = process();
+			IJ.log(String.format("%s: min %s, max %s, mean %s, %d values, %d non-zero (%d blocks read)",
+					dataset, stats.getMin(), stats.getMax(), stats.getMean(), stats.getCount(),
+					stats.getNonZeroCount(), stats.getNumBlocksRead()));
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException | N5Exception | IllegalArgumentException e) {
+			if (log != null)
+				log.error("Could not compute the statistics of " + dataset, e);
+			else
+				e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,686 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import org.janelia.saalfeldlab.n5.KeyValueAccess;
+import org.janelia.saalfeldlab.n5.LockedChannel;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.util.CacheUtils;
+
+import ij.IJ;
+import ij.Prefs;
+
+/**
+ * A persistent cache of blocks on the local disk, for containers that are
+ * read again and again across sessions from cloud storage.
+ * <p>
+ * The cache sits under the reader: {@link #wrap(KeyValueAccess)} returns a
+ * key value access that reads blocks through the cache and passes all other
+ * calls on to the wrapped one, and {@link Factory} opens readers of remote
+ * containers on top of it, so they keep their class. Every block is stored,
+ * with its bytes as they are stored in the container, in a file of its own
+ * under the cache directory, together with a validation token of the block
+ * (see {@link ValidationToken}) and a checksum. Cached blocks are only used
+ * if their token still matches, and are verified against the checksum when
+ * they are read; entries that fail are read from the container again.
+ * Missing blocks are cached as well, since asking a remote store for them
+ * costs a round trip, too.
+ * <p>
+ * By default the token is the modification time of the block for containers
+ * on the local file system, and its ETag or Last-Modified header, from a HEAD
+ * request, for containers served over http(s). The token of a block is asked
+ * for at most once per cache instance, i.e. once per session for the
+ * {@link #getShared() shared} cache; after that, the block is trusted until
+ * the next session. Other object stores do not expose a token through the
+ * key value access, so their blocks are not cached, unless the ImageJ
+ * preference {@value #UNVALIDATED_PREF} is set, in which case they are
+ * trusted for {@value #MAX_AGE_PREF} hours after they were cached. The cache
+ * is bounded by {@value #MAX_BYTES_PREF} bytes and evicts the least recently
+ * used blocks.
+ * <p>
+ * The importer reads remote containers through the cache in the directory
+ * {@value #DIRECTORY_PREF} if the ImageJ preference {@value #ENABLED_PREF}
+ * is set, see {@link #factory()}.
+ */
+public class DiskBlockCache {
+
+	public static final String ENABLED_PREF = "n5.diskCache.enabled";
+
+	public static final String DIRECTORY_PREF = "n5.diskCache.directory";
+
+	public static final String MAX_BYTES_PREF = "n5.diskCache.maxBytes";
+
+	public static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024 * 1024;
+
+	public static final String MAX_AGE_PREF = "n5.diskCache.maxAgeHours";
+
+	public static final double DEFAULT_MAX_AGE_HOURS = 24 * 7;
+
+	public static final String UNVALIDATED_PREF = "n5.diskCache.cacheUnvalidated";
+
+	private static final String MISSING_TOKEN = "missing";
+
+	private static final int HEAD_TIMEOUT_MILLIS = 10000;
+
+	private static final int MAGIC = 0x4e35424b;
+
+	private static final int VERSION = 2;
+
+	private static final String SUFFIX = ".block";
+
+	/**
+	 * Keys of metadata, which are read through.
+	 */
+	private static final Set<String> METADATA_KEYS = Stream.of(
+			"attributes.json", ".zarray", ".zattrs", ".zgroup", ".zmetadata", "zarr.json")
+			.collect(Collectors.toSet());
+
+	/**
+	 * Identifies the version of a block in a container, such that a cached
+	 * block is valid as long as its token does not change.
+	 */
+	@FunctionalInterface
+	public interface ValidationToken {
+
+		/**
+		 * @param uri
+		 *            the URI of the block
+		 * @return the token of the block, or an empty string or null if the
+		 *         version of the block is not known
+		 */
+		String get(URI uri);
+	}
+
+	/**
+	 * An {@link N5Factory} that reads remote containers through a cache.
+	 */
+	public static class Factory extends N5Factory {
+
+		private final transient DiskBlockCache cache;
+
+		/**
+		 * @param cache
+		 *            the cache
+		 */
+		public Factory(final DiskBlockCache cache) {
+
+			this.cache = cache;
+		}
+
+		@Override
+		public KeyValueAccess getKeyValueAccess(final URI uri) {
+
+			final KeyValueAccess kva = super.getKeyValueAccess(uri);
+			return kva == null || !isRemote(uri) ? kva : cache.wrap(kva);
+		}
+	}
+
+	private static DiskBlockCache shared;
+
+	private final Path directory;
+
+	private final long maxBytes;
+
+	private final long maxAgeMillis;
+
+	private final ValidationToken token;
+
+	/**
+	 * The tokens of blocks that were validated or cached by this instance.
+	 */
+	private final ConcurrentHashMap<String, String> validated = new ConcurrentHashMap<>();
+
+	private final AtomicLong size = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param directory
+	 *            the directory of the cache, created if it does not exist
+	 * @param maxBytes
+	 *            the maximum size of the cache in bytes
+	 * @param maxAgeMillis
+	 *            how long blocks without a validation token are valid, zero
+	 *            to not cache them
+	 * @param token
+	 *            the validation token of blocks, null for the default
+	 * @throws IOException
+	 *             the directory can not be created or read
+	 */
+	public DiskBlockCache(final Path directory, final long maxBytes, final long maxAgeMillis, final ValidationToken token)
+			throws IOException {
+
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.maxAgeMillis = maxAgeMillis;
+		this.token = token == null ? DiskBlockCache::defaultToken : token;
+
+		Files.createDirectories(directory);
+		size.set(entries().stream().mapToLong(DiskBlockCache::fileSize).sum());
+	}
+
+	/**
+	 * @return whether the importer reads remote containers through the
+	 *         shared cache, read from the ImageJ preference
+	 *         {@value #ENABLED_PREF}
+	 */
+	public static boolean isEnabled() {
+
+		return Prefs.get(ENABLED_PREF, false);
+	}
+
+	/**
+	 * @param enabled
+	 *            whether the importer reads remote containers through the
+	 *            shared cache
+	 */
+	public static void setEnabled(final boolean enabled) {
+
+		Prefs.set(ENABLED_PREF, enabled);
+	}
+
+	/**
+	 * @return whether blocks without a validation token are cached and
+	 *         trusted until they expire, read from the ImageJ preference
+	 *         {@value #UNVALIDATED_PREF}
+	 */
+	public static boolean isCachingUnvalidated() {
+
+		return Prefs.get(UNVALIDATED_PREF, false);
+	}
+
+	/**
+	 * @param cacheUnvalidated
+	 *            whether blocks without a validation token are cached and
+	 *            trusted until they expire
+	 */
+	public static void setCachingUnvalidated(final boolean cacheUnvalidated) {
+
+		Prefs.set(UNVALIDATED_PREF, cacheUnvalidated);
+	}
+
+	/**
+	 * @return the cache in the directory and with the limits of the ImageJ
+	 *         preferences
+	 * @throws IOException
+	 *             the directory can not be created or read
+	 */
+	public static synchronized DiskBlockCache getShared() throws IOException {
+
+		if (shared == null) {
+			final String defaultDirectory = Paths.get(System.getProperty("user.home"), ".cache", "n5-ij", "blocks").toString();
+			shared = new DiskBlockCache(
+					Paths.get(Prefs.get(DIRECTORY_PREF, defaultDirectory)),
+					(long)Prefs.get(MAX_BYTES_PREF, DEFAULT_MAX_BYTES),
+					isCachingUnvalidated() ? (long)(Prefs.get(MAX_AGE_PREF, DEFAULT_MAX_AGE_HOURS) * 3600 * 1000) : 0,
+					null);
+		}
+		return shared;
+	}
+
+	/**
+	 * @return a factory that opens remote containers on top of the shared
+	 *         cache if the cache is enabled, and a plain factory otherwise
+	 */
+	public static N5Factory factory() {
+
+		if (!isEnabled())
+			return new N5Factory();
+
+		try {
+			return new Factory(getShared());
+		} catch (final IOException | IllegalArgumentException e) {
+			IJ.log("Could not open the disk cache: " + e.getMessage());
+			return new N5Factory();
+		}
+	}
+
+	static boolean isRemote(final URI uri) {
+
+		return uri != null && uri.getScheme() != null && !"file".equals(uri.getScheme());
+	}
+
+	/**
+	 * @param kva
+	 *            the key value access of a container
+	 * @return a key value access that reads blocks through this cache
+	 */
+	public KeyValueAccess wrap(final KeyValueAccess kva) {
+
+		return new CachingKeyValueAccess(kva, this);
+	}
+
+	/**
+	 * @param normalPath
+	 *            a normalized path of a container
+	 * @return whether the path is a block rather than metadata
+	 */
+	static boolean isBlock(final String normalPath) {
+
+		return !METADATA_KEYS.contains(normalPath.substring(normalPath.lastIndexOf('/') + 1));
+	}
+
+	/**
+	 * Reads a block from the cache if a valid entry exists, and from the
+	 * container otherwise, and caches it. The token of the block is only
+	 * asked for if this cache has not validated or cached the block before.
+	 *
+	 * @param kva
+	 *            the key value access of the container
+	 * @param normalPath
+	 *            the normalized path of the block
+	 * @return a channel to read the block from
+	 * @throws N5Exception.N5NoSuchKeyException
+	 *             the block does not exist
+	 * @throws IOException
+	 *             the block can not be read from the container
+	 */
+	public LockedChannel lockForReading(final KeyValueAccess kva, final String normalPath) throws IOException {
+
+		final URI uri;
+		try {
+			uri = kva.uri(normalPath);
+		} catch (final URISyntaxException e) {
+			return kva.lockForReading(normalPath);
+		}
+
+		final String key = uri.toString();
+		String blockToken = validated.get(key);
+		if (blockToken == null) {
+			final String t = token.get(uri);
+			blockToken = t == null ? "" : t;
+		}
+		if (blockToken.isEmpty() && maxAgeMillis <= 0)
+			return kva.lockForReading(normalPath);
+
+		final Path entry = entryPath(key);
+		final Entry cached = load(entry, key, blockToken);
+		if (cached != null) {
+			hits.incrementAndGet();
+			validated.put(key, blockToken);
+			touch(entry);
+			if (cached.bytes == null)
+				throw new N5Exception.N5NoSuchKeyException("No such key: " + key);
+
+			return new CachedChannel(cached.bytes);
+		}
+
+		misses.incrementAndGet();
+		final byte[] bytes;
+		try (final LockedChannel channel = kva.lockForReading(normalPath);
+				final InputStream in = channel.newInputStream()) {
+			bytes = readAll(in);
+		} catch (final N5Exception.N5NoSuchKeyException e) {
+			store(entry, key, blockToken, null);
+			validated.put(key, blockToken);
+			throw e;
+		}
+		store(entry, key, blockToken, bytes);
+		validated.put(key, blockToken);
+		return new CachedChannel(bytes);
+	}
+
+	/**
+	 * @return the number of bytes of all cached blocks
+	 */
+	public long getSize() {
+
+		return size.get();
+	}
+
+	public long getHits() {
+
+		return hits.get();
+	}
+
+	public long getMisses() {
+
+		return misses.get();
+	}
+
+	/**
+	 * Removes all cached blocks.
+	 *
+	 * @throws IOException
+	 *             a block could not be removed
+	 */
+	public synchronized void clear() throws IOException {
+
+		for (final Path p : entries())
+			Files.deleteIfExists(p);
+
+		validated.clear();
+		size.set(0);
+	}
+
+	/**
+	 * @param key
+	 *            the URI of a block
+	 * @return the file of the cached block
+	 */
+	Path entryPath(final String key) {
+
+		final String hash = CacheUtils.sha1(key);
+		return directory
+				.resolve(hash.substring(0, 2))
+				.resolve(hash + SUFFIX);
+	}
+
+	/**
+	 * The modification time of the block for containers on the local file
+	 * system, its ETag or Last-Modified header for containers served over
+	 * http(s), unknown otherwise.
+	 */
+	static String defaultToken(final URI uri) {
+
+		final String scheme = uri.getScheme();
+		if ("http".equals(scheme) || "https".equals(scheme))
+			return httpToken(uri.toString());
+		else if (!"file".equals(scheme))
+			return "";
+
+		try {
+			final Path path = Paths.get(uri);
+			if (!Files.exists(path))
+				return MISSING_TOKEN;
+
+			return Long.toString(Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS));
+		} catch (final IOException | RuntimeException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * Asks the server for the ETag, or else the modification time, of a block
+	 * with a HEAD request.
+	 *
+	 * @return the token, {@value #MISSING_TOKEN} if the block does not exist,
+	 *         or an empty string if the server returns neither
+	 */
+	static String httpToken(final String blockUrl) {
+
+		HttpURLConnection connection = null;
+		try {
+			connection = (HttpURLConnection)new URL(blockUrl).openConnection();
+			connection.setRequestMethod("HEAD");
+			connection.setConnectTimeout(HEAD_TIMEOUT_MILLIS);
+			connection.setReadTimeout(HEAD_TIMEOUT_MILLIS);
+
+			final int code = connection.getResponseCode();
+			if (code == HttpURLConnection.HTTP_NOT_FOUND)
+				return MISSING_TOKEN;
+			else if (code / 100 != 2)
+				return "";
+
+			final String etag = connection.getHeaderField("ETag");
+			if (etag != null && !etag.isEmpty())
+				return "etag:" + etag;
+
+			final long lastModified = connection.getLastModified();
+			return lastModified > 0 ? "modified:" + lastModified : "";
+
+		} catch (final IOException | RuntimeException e) {
+			return "";
+		} finally {
+			if (connection != null)
+				connection.disconnect();
+		}
+	}
+
+	private static final class Entry {
+
+		private final byte[] bytes;
+
+		private Entry(final byte[] bytes) {
+
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * A read-only channel of the bytes of a cached block.
+	 */
+	private static final class CachedChannel implements LockedChannel {
+
+		private final byte[] bytes;
+
+		private CachedChannel(final byte[] bytes) {
+
+			this.bytes = bytes;
+		}
+
+		@Override
+		public Reader newReader() {
+
+			return new InputStreamReader(newInputStream(), StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public InputStream newInputStream() {
+
+			return new ByteArrayInputStream(bytes);
+		}
+
+		@Override
+		public Writer newWriter() {
+
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public OutputStream newOutputStream() {
+
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public void close() {}
+	}
+
+	/**
+	 * Reads and verifies a cache entry.
+	 *
+	 * @return the entry, or null if there is none, or it is not valid
+	 */
+	private Entry load(final Path entry, final String key, final String blockToken) {
+
+		if (!Files.isRegularFile(entry))
+			return null;
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(key))
+				return invalid(entry);
+
+			final String entryToken = in.readUTF();
+			final long created = in.readLong();
+			if (!entryToken.equals(blockToken)
+					|| (blockToken.isEmpty() && System.currentTimeMillis() - created > maxAgeMillis))
+				return invalid(entry);
+
+			if (!in.readBoolean())
+				return new Entry(null);
+
+			final byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			final CRC32 crc = new CRC32();
+			crc.update(bytes);
+			if (crc.getValue() != in.readLong())
+				return invalid(entry);
+
+			return new Entry(bytes);
+
+		} catch (final IOException | RuntimeException e) {
+			return invalid(entry);
+		}
+	}
+
+	private Entry invalid(final Path entry) {
+
+		remove(entry);
+		return null;
+	}
+
+	/**
+	 * Writes a cache entry atomically, and evicts the least recently used
+	 * entries if the cache is full.
+	 */
+	private void store(final Path entry, final String key, final String blockToken, final byte[] block) {
+
+		try {
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			try (final DataOutputStream out = new DataOutputStream(bytes)) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeUTF(key);
+				out.writeUTF(blockToken);
+				out.writeLong(System.currentTimeMillis());
+				out.writeBoolean(block != null);
+				if (block != null) {
+					final CRC32 crc = new CRC32();
+					crc.update(block);
+					out.writeInt(block.length);
+					out.write(block);
+					out.writeLong(crc.getValue());
+				}
+			}
+
+			Files.createDirectories(entry.getParent());
+			final Path tmp = entry.resolveSibling(entry.getFileName() + "." + UUID.randomUUID() + ".tmp");
+			try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+				out.write(bytes.toByteArray());
+			}
+
+			final long previous = fileSize(entry);
+			Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			if (size.addAndGet(bytes.size() - previous) > maxBytes)
+				evict();
+
+		} catch (final IOException | RuntimeException e) {
+			// caching is optional
+			IJ.log("Could not cache block " + key + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until the cache is at 90% of
+	 * its maximum size.
+	 */
+	private synchronized void evict() {
+
+		if (size.get() <= maxBytes)
+			return;
+
+		final List<Path> files = entries();
+		files.sort(Comparator.comparingLong(DiskBlockCache::lastModified));
+
+		long total = files.stream().mapToLong(DiskBlockCache::fileSize).sum();
+		final long target = maxBytes / 10 * 9;
+		for (final Path p : files) {
+			if (total <= target)
+				break;
+
+			final long s = fileSize(p);
+			try {
+				if (Files.deleteIfExists(p))
+					total -= s;
+			} catch (final IOException e) {}
+		}
+		size.set(total);
+	}
+
+	private void remove(final Path entry) {
+
+		final long s = fileSize(entry);
+		try {
+			if (Files.deleteIfExists(entry))
+				size.addAndGet(-s);
+		} catch (final IOException e) {}
+	}
+
+	private List<Path> entries() {
+
+		try (final Stream<Path> files = Files.walk(directory)) {
+			return files.filter(p -> p.getFileName().toString().endsWith(SUFFIX) && Files.isRegularFile(p))
+					.collect(Collectors.toCollection(ArrayList::new));
+		} catch (final IOException e) {
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * Marks an entry as recently used.
+	 */
+	private static void touch(final Path entry) {
+
+		try {
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (final IOException e) {}
+	}
+
+	private static long fileSize(final Path p) {
+
+		try {
+			return Files.size(p);
+		} catch (final IOException e) {
+			return 0;
+		}
+	}
+
+	private static long lastModified(final Path p) {
+
+		try {
+			return Files.getLastModifiedTime(p).toMillis();
+		} catch (final IOException e) {
+			return 0;
+		}
+	}
+
+	private static byte[] readAll(final InputStream in) throws IOException {
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			out.write(buffer, 0, n);
+
+		return out.toByteArray();
+	}
+
+}
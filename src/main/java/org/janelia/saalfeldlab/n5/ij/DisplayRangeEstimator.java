@@ -0,0 +1,320 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+
+import ij.Prefs;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Estimates a display range for a dataset from a sample of its blocks.
+ * <p>
+ * The blocks are spread evenly over the block grid of the coarsest level of
+ * the dataset's pyramid that has at least as many blocks as there are
+ * samples, so that they represent the whole volume while the number of
+ * blocks read is bounded. The blocks are read and histogrammed in parallel,
+ * and the histograms merged before the percentiles are taken.
+ * <p>
+ * Only data types that are shown with their own values (uint8, uint16,
+ * float32, float64) are supported. The number of samples is read from the
+ * ImageJ preference {@value #SAMPLES_PREF}.
+ */
+public class DisplayRangeEstimator {
+
+	public static final String SAMPLES_PREF = "n5.displayRange.samples";
+
+	public static final int DEFAULT_SAMPLES = 32;
+
+	private static final int FLOAT_BINS = 4096;
+
+	private static final int MAX_INTEGER_BINS = 65536;
+
+	private final int numSamples;
+
+	private final double lowerPercentile;
+
+	private final double upperPercentile;
+
+	/**
+	 * @param numSamples
+	 *            the maximum number of blocks to read
+	 * @param lowerPercentile
+	 *            the percentile for the minimum of the range, in [0,1]
+	 * @param upperPercentile
+	 *            the percentile for the maximum of the range, in [0,1]
+	 */
+	public DisplayRangeEstimator(final int numSamples, final double lowerPercentile, final double upperPercentile) {
+
+		this.numSamples = Math.max(1, numSamples);
+		this.lowerPercentile = lowerPercentile;
+		this.upperPercentile = upperPercentile;
+	}
+
+	/**
+	 * @return an estimator with the number of samples from the preferences
+	 *         that, like the importer always has, sets the range from the
+	 *         minimum to the 98th percentile
+	 */
+	public static DisplayRangeEstimator getDefault() {
+
+		return new DisplayRangeEstimator(Prefs.getInt(SAMPLES_PREF, DEFAULT_SAMPLES), 0.0, 0.98);
+	}
+
+	/**
+	 * @param dataType
+	 *            the data type
+	 * @return true if a range can be estimated for the data type
+	 */
+	public static boolean isSupported(final DataType dataType) {
+
+		switch (dataType) {
+		case UINT8:
+		case UINT16:
+		case FLOAT32:
+		case FLOAT64:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Estimates the display range of a dataset.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param meta
+	 *            the metadata of the dataset
+	 * @param exec
+	 *            the executor service
+	 * @return the minimum and maximum, or null if the type is not supported
+	 *         or all sampled blocks are empty
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             reading a block failed
+	 */
+	public double[] estimate(final N5Reader n5, final N5DatasetMetadata meta, final ExecutorService exec)
+			throws InterruptedException, ExecutionException {
+
+		final DataType dataType = meta.getAttributes().getDataType();
+		if (!isSupported(dataType))
+			return null;
+
+		final N5DatasetMetadata level = samplingLevel(n5, meta);
+		final String path = level.getPath();
+		final DatasetAttributes attributes = level.getAttributes();
+		final long[][] positions = sampleGridPositions(attributes, numSamples);
+
+		// one task per group of blocks, each keeps its blocks for the histogram
+		final int numTasks = Math.min(positions.length, Runtime.getRuntime().availableProcessors());
+		final List<Future<Sample>> reads = new ArrayList<>();
+		for (int t = 0; t < numTasks; t++) {
+			final int task = t;
+			reads.add(exec.submit(() -> {
+				final Sample sample = new Sample();
+				for (int i = task; i < positions.length; i += numTasks)
+					sample.add(n5.readBlock(path, attributes, positions[i]));
+
+				return sample;
+			}));
+		}
+
+		final List<Sample> samples = new ArrayList<>();
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (final Future<Sample> f : reads) {
+			final Sample sample = f.get();
+			samples.add(sample);
+			min = Math.min(min, sample.min);
+			max = Math.max(max, sample.max);
+		}
+
+		if (min > max)
+			return null;
+
+		final boolean isInteger = dataType == DataType.UINT8 || dataType == DataType.UINT16;
+		final int numBins = isInteger
+				? (int)Math.min(MAX_INTEGER_BINS, (long)(max - min) + 1)
+				: FLOAT_BINS;
+		final double binWidth = isInteger ? 1 : (max - min) / numBins;
+
+		final double histMin = min;
+		final List<Future<long[]>> histograms = new ArrayList<>();
+		for (final Sample sample : samples)
+			histograms.add(exec.submit(() -> sample.histogram(histMin, binWidth, numBins)));
+
+		final long[] histogram = new long[numBins];
+		for (final Future<long[]> f : histograms) {
+			final long[] h = f.get();
+			for (int i = 0; i < numBins; i++)
+				histogram[i] += h[i];
+		}
+
+		return new double[]{
+				percentile(histogram, lowerPercentile, min, max, binWidth, false),
+				percentile(histogram, upperPercentile, min, max, binWidth, true)};
+	}
+
+	/**
+	 * @return the coarsest level of the pyramid of the dataset with at least
+	 *         as many blocks as samples, the dataset itself if it is not
+	 *         part of a pyramid
+	 */
+	private N5DatasetMetadata samplingLevel(final N5Reader n5, final N5DatasetMetadata meta) {
+
+		final List<N5DatasetMetadata> levels;
+		try {
+			levels = PyramidLevelSelector.levels(n5, DatasetMetadataResolver.discoverer(n5), meta.getPath());
+		} catch (final N5Exception e) {
+			return meta;
+		}
+
+		final DataType dataType = meta.getAttributes().getDataType();
+		for (int i = levels.size() - 1; i >= 0; i--) {
+			final N5DatasetMetadata level = levels.get(i);
+			final DatasetAttributes attributes = level.getAttributes();
+			if (attributes.getDataType() == dataType && BlockGrid.numBlocks(attributes) >= numSamples)
+				return level;
+		}
+		return meta;
+	}
+
+	/**
+	 * Returns up to n grid positions spread evenly over the block grid in
+	 * flat order.
+	 *
+	 * @param attributes
+	 *            the dataset attributes
+	 * @param n
+	 *            the maximum number of positions
+	 * @return the grid positions
+	 */
+	static long[][] sampleGridPositions(final DatasetAttributes attributes, final int n) {
+
+		final long[] grid = BlockGrid.gridDimensions(attributes);
+		final long numBlocks = BlockGrid.numBlocks(attributes);
+		final int numPositions = (int)Math.min(n, numBlocks);
+
+		final long[][] positions = new long[numPositions][grid.length];
+		for (int i = 0; i < numPositions; i++) {
+			// the middle of each of the n equal parts of the grid
+			final long index = (long)((i + 0.5) * numBlocks / numPositions);
+			IntervalIndexer.indexToPosition(Math.min(index, numBlocks - 1), grid, positions[i]);
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns the value at a percentile of a histogram, the lower edge of
+	 * the bin for the minimum of a range, the upper edge for the maximum.
+	 */
+	static double percentile(final long[] histogram, final double p, final double min, final double max,
+			final double binWidth, final boolean upper) {
+
+		if (p <= 0)
+			return min;
+		if (p >= 1)
+			return max;
+
+		long total = 0;
+		for (final long h : histogram)
+			total += h;
+
+		final double target = p * total;
+		long cumulative = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			cumulative += histogram[i];
+			if (cumulative >= target) {
+				final double v = min + (upper ? i + 1 : i) * binWidth;
+				return Math.min(max, v);
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * The blocks read by one task, with their range.
+	 */
+	private static class Sample {
+
+		private final List<Object> data = new ArrayList<>();
+
+		private double min = Double.POSITIVE_INFINITY;
+
+		private double max = Double.NEGATIVE_INFINITY;
+
+		private void add(final DataBlock<?> block) {
+
+			if (block == null)
+				return;
+
+			final Object array = block.getData();
+			data.add(array);
+			if (array instanceof byte[]) {
+				for (final byte v : (byte[])array)
+					update(v & 0xff);
+			} else if (array instanceof short[]) {
+				for (final short v : (short[])array)
+					update(v & 0xffff);
+			} else if (array instanceof float[]) {
+				for (final float v : (float[])array)
+					update(v);
+			} else if (array instanceof double[]) {
+				for (final double v : (double[])array)
+					update(v);
+			}
+		}
+
+		private void update(final double v) {
+
+			if (!Double.isFinite(v))
+				return;
+
+			if (v < min)
+				min = v;
+			if (v > max)
+				max = v;
+		}
+
+		private long[] histogram(final double histMin, final double binWidth, final int numBins) {
+
+			final long[] histogram = new long[numBins];
+			final double scale = binWidth > 0 ? 1.0 / binWidth : 0;
+			for (final Object array : data) {
+				if (array instanceof byte[]) {
+					for (final byte v : (byte[])array)
+						histogram[bin(v & 0xff, histMin, scale, numBins)]++;
+				} else if (array instanceof short[]) {
+					for (final short v : (short[])array)
+						histogram[bin(v & 0xffff, histMin, scale, numBins)]++;
+				} else if (array instanceof float[]) {
+					for (final float v : (float[])array)
+						if (Float.isFinite(v))
+							histogram[bin(v, histMin, scale, numBins)]++;
+				} else if (array instanceof double[]) {
+					for (final double v : (double[])array)
+						if (Double.isFinite(v))
+							histogram[bin(v, histMin, scale, numBins)]++;
+				}
+			}
+			return histogram;
+		}
+
+		private static int bin(final double v, final double histMin, final double scale, final int numBins) {
+
+			return Math.max(0, Math.min(numBins - 1, (int)((v - histMin) * scale)));
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Describes which part of an export a single process is responsible for.
+ * <p>
+ * The write units (blocks, or shards for sharded datasets) of every dataset
+ * are enumerated in flat (first dimension fastest) order, and partition
+ * {@code i} of {@code n} writes the contiguous range
+ * {@code [ i * N / n, (i+1) * N / n )} of the {@code N} units. The assignment
+ * depends only on the dataset dimensions, the unit size, and the partition, so
+ * independent processes agree on it without communicating, and together the
+ * {@code n} partitions write every unit exactly once.
+ */
+public class ExportPartition {
+
+	private final int index;
+
+	private final int count;
+
+	/**
+	 * @param index
+	 *            the zero-based index of this partition
+	 * @param count
+	 *            the total number of partitions
+	 */
+	public ExportPartition(final int index, final int count) {
+
+		if (count < 1)
+			throw new IllegalArgumentException("Number of partitions must be positive, got " + count);
+
+		if (index < 0 || index >= count)
+			throw new IllegalArgumentException(
+					String.format("Partition index must be in [0, %d), got %d", count, index));
+
+		this.index = index;
+		this.count = count;
+	}
+
+	/**
+	 * Parses a partition from a string of the form "i/n", for example "0/4".
+	 *
+	 * @param partition
+	 *            the partition string
+	 * @return the partition
+	 */
+	public static ExportPartition parse(final String partition) {
+
+		final String[] parts = partition.trim().split("/");
+		if (parts.length != 2)
+			throw new IllegalArgumentException("Partition must have the form i/n, got " + partition);
+
+		try {
+			return new ExportPartition(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+		} catch (final NumberFormatException e) {
+			throw new IllegalArgumentException("Partition must have the form i/n, got " + partition);
+		}
+	}
+
+	public int getIndex() {
+
+		return index;
+	}
+
+	public int getCount() {
+
+		return count;
+	}
+
+	/**
+	 * Returns the first (inclusive) and last (exclusive) flat unit index
+	 * assigned to this partition.
+	 *
+	 * @param numUnits
+	 *            the total number of units
+	 * @return the range {start, end}
+	 */
+	public long[] range(final long numUnits) {
+
+		// split with long arithmetic so that very large grids do not overflow
+		final long start = splitPoint(numUnits, index);
+		final long end = splitPoint(numUnits, index + 1);
+		return new long[]{start, end};
+	}
+
+	private long splitPoint(final long numUnits, final int i) {
+
+		return (numUnits / count) * i + ((numUnits % count) * i) / count;
+	}
+
+	/**
+	 * Returns the grid positions of the write units assigned to this
+	 * partition.
+	 *
+	 * @param dimensions
+	 *            the dataset dimensions
+	 * @param unitSize
+	 *            the size of a write unit (block or shard)
+	 * @return the grid positions
+	 */
+	public List<long[]> gridPositions(final long[] dimensions, final int[] unitSize) {
+
+		final long[] gridDims = BlockGrid.gridDimensions(dimensions, unitSize);
+		long numUnits = 1;
+		for (final long g : gridDims)
+			numUnits *= g;
+
+		final long[] range = range(numUnits);
+		final List<long[]> positions = new ArrayList<>();
+		for (long i = range[0]; i < range[1]; i++) {
+			final long[] position = new long[gridDims.length];
+			IntervalIndexer.indexToPosition(i, gridDims, position);
+			positions.add(position);
+		}
+		return positions;
+	}
+
+	/**
+	 * Returns the interval in pixel coordinates covered by the unit at the
+	 * given grid position, clipped to the dataset dimensions.
+	 *
+	 * @param gridPosition
+	 *            the unit grid position
+	 * @param dimensions
+	 *            the dataset dimensions
+	 * @param unitSize
+	 *            the size of a write unit (block or shard)
+	 * @return the interval
+	 */
+	public static Interval unitInterval(final long[] gridPosition, final long[] dimensions, final int[] unitSize) {
+
+		final int nd = dimensions.length;
+		final long[] min = new long[nd];
+		final long[] max = new long[nd];
+		for (int d = 0; d < nd; d++) {
+			min[d] = gridPosition[d] * unitSize[d];
+			max[d] = Math.min(min[d] + unitSize[d], dimensions[d]) - 1;
+		}
+		return new FinalInterval(min, max);
+	}
+
+	@Override
+	public String toString() {
+
+		return index + "/" + count;
+	}
+
+}
@@ -0,0 +1,287 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.janelia.saalfeldlab.n5.DataType;
+
+/**
+ * The result of a dry run of {@link N5ScalePyramidExporter}: the datasets an
+ * export would write, with their block and object counts and estimates of
+ * the stored size and the time to write them.
+ * <p>
+ * Estimates are extrapolated from a few sample blocks per scale level that
+ * are compressed and written to a temporary location. The time estimate
+ * assumes the export scales linearly with the number of threads and that the
+ * target storage is as fast as the temporary location.
+ */
+public class ExportPlan {
+
+	/**
+	 * The plan for a single dataset (one scale level of one channel).
+	 */
+	public static class ScaleLevel {
+
+		private final String dataset;
+
+		private final long[] dimensions;
+
+		private final int[] blockSize;
+
+		private final int[] shardSize;
+
+		private final DataType dataType;
+
+		private long sampledRawBytes = 0;
+
+		private long sampledStoredBytes = 0;
+
+		private long sampledNanos = 0;
+
+		public ScaleLevel(final String dataset, final long[] dimensions, final int[] blockSize, final int[] shardSize,
+				final DataType dataType) {
+
+			this.dataset = dataset;
+			this.dimensions = dimensions.clone();
+			this.blockSize = blockSize.clone();
+			this.shardSize = shardSize == null ? null : shardSize.clone();
+			this.dataType = dataType;
+		}
+
+		public String getDataset() {
+
+			return dataset;
+		}
+
+		public long[] getDimensions() {
+
+			return dimensions;
+		}
+
+		public int[] getBlockSize() {
+
+			return blockSize;
+		}
+
+		/**
+		 * @return the shard size, or null if not sharded
+		 */
+		public int[] getShardSize() {
+
+			return shardSize;
+		}
+
+		public DataType getDataType() {
+
+			return dataType;
+		}
+
+		public long getNumBlocks() {
+
+			return numUnits(blockSize);
+		}
+
+		/**
+		 * @return the number of shards, zero if not sharded
+		 */
+		public long getNumShards() {
+
+			return shardSize == null ? 0 : numUnits(shardSize);
+		}
+
+		/**
+		 * @return the number of stored objects (files or keys), excluding
+		 *         metadata
+		 */
+		public long getNumObjects() {
+
+			return shardSize == null ? getNumBlocks() : getNumShards();
+		}
+
+		public long getRawBytes() {
+
+			long n = BlockGrid.bytesPerElement(dataType);
+			for (final long d : dimensions)
+				n *= d;
+
+			return n;
+		}
+
+		void addSample(final long rawBytes, final long storedBytes, final long nanos) {
+
+			sampledRawBytes += rawBytes;
+			sampledStoredBytes += storedBytes;
+			sampledNanos += nanos;
+		}
+
+		public boolean isSampled() {
+
+			return sampledRawBytes > 0;
+		}
+
+		private long numUnits(final int[] unitSize) {
+
+			long n = 1;
+			for (int i = 0; i < dimensions.length; i++)
+				n *= (dimensions[i] + unitSize[i] - 1) / unitSize[i];
+
+			return n;
+		}
+	}
+
+	private final String compression;
+
+	private final int numThreads;
+
+	private final List<ScaleLevel> levels = new ArrayList<>();
+
+	public ExportPlan(final String compression, final int numThreads) {
+
+		this.compression = compression;
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	void add(final ScaleLevel level) {
+
+		levels.add(level);
+	}
+
+	public List<ScaleLevel> getLevels() {
+
+		return Collections.unmodifiableList(levels);
+	}
+
+	/**
+	 * @return the ratio of stored to raw bytes over all sampled blocks
+	 */
+	public double getCompressionRatio() {
+
+		long raw = 0;
+		long stored = 0;
+		for (final ScaleLevel l : levels) {
+			raw += l.sampledRawBytes;
+			stored += l.sampledStoredBytes;
+		}
+		return raw > 0 ? (double)stored / raw : 1.0;
+	}
+
+	/**
+	 * Estimates the number of bytes stored for the given level, using the
+	 * compression ratio of that level's samples if any, otherwise the
+	 * overall ratio.
+	 *
+	 * @param level
+	 *            the scale level
+	 * @return the estimated number of bytes
+	 */
+	public long getEstimatedBytes(final ScaleLevel level) {
+
+		final double ratio = level.isSampled() ? (double)level.sampledStoredBytes / level.sampledRawBytes
+				: getCompressionRatio();
+		return (long)Math.ceil(ratio * level.getRawBytes());
+	}
+
+	/**
+	 * Estimates the wall time in seconds to write the given level.
+	 *
+	 * @param level
+	 *            the scale level
+	 * @return the estimated time in seconds
+	 */
+	public double getEstimatedSeconds(final ScaleLevel level) {
+
+		final double nanosPerByte;
+		if (level.isSampled())
+			nanosPerByte = (double)level.sampledNanos / level.sampledRawBytes;
+		else {
+			long raw = 0;
+			long nanos = 0;
+			for (final ScaleLevel l : levels) {
+				raw += l.sampledRawBytes;
+				nanos += l.sampledNanos;
+			}
+			nanosPerByte = raw > 0 ? (double)nanos / raw : 0;
+		}
+		return nanosPerByte * level.getRawBytes() / numThreads / 1e9;
+	}
+
+	public long getNumObjects() {
+
+		return levels.stream().mapToLong(ScaleLevel::getNumObjects).sum();
+	}
+
+	public long getRawBytes() {
+
+		return levels.stream().mapToLong(ScaleLevel::getRawBytes).sum();
+	}
+
+	public long getEstimatedBytes() {
+
+		return levels.stream().mapToLong(this::getEstimatedBytes).sum();
+	}
+
+	public double getEstimatedSeconds() {
+
+		return levels.stream().mapToDouble(this::getEstimatedSeconds).sum();
+	}
+
+	@Override
+	public String toString() {
+
+		final StringBuilder sb = new StringBuilder();
+		sb.append(String.format("Export plan (%s compression, %d thread%s)%n", compression, numThreads, numThreads == 1 ? "" : "s"));
+		for (final ScaleLevel l : levels) {
+			sb.append(String.format("%s%n", l.getDataset()));
+			sb.append(String.format("    size %s %s, blocks %s", Arrays.toString(l.getDimensions()), l.getDataType(),
+					Arrays.toString(l.getBlockSize())));
+			if (l.getShardSize() != null)
+				sb.append(String.format(", shards %s", Arrays.toString(l.getShardSize())));
+			sb.append(String.format("%n"));
+
+			sb.append(String.format("    %d blocks", l.getNumBlocks()));
+			if (l.getShardSize() != null)
+				sb.append(String.format(" in %d shards", l.getNumShards()));
+			sb.append(String.format(", %d objects, %s raw, ~%s stored, ~%s%n",
+					l.getNumObjects(),
+					humanReadableBytes(l.getRawBytes()),
+					humanReadableBytes(getEstimatedBytes(l)),
+					humanReadableSeconds(getEstimatedSeconds(l))));
+		}
+		sb.append(String.format("Total: %d objects, %s raw, ~%s stored (ratio %.2f), ~%s%n",
+				getNumObjects(),
+				humanReadableBytes(getRawBytes()),
+				humanReadableBytes(getEstimatedBytes()),
+				getCompressionRatio(),
+				humanReadableSeconds(getEstimatedSeconds())));
+
+		return sb.toString();
+	}
+
+	private static String humanReadableBytes(final long bytes) {
+
+		if (bytes < 1000)
+			return bytes + " B";
+
+		final String units = "kMGTPE";
+		double b = bytes;
+		int i = -1;
+		while (b >= 999.95 && i < units.length() - 1) {
+			b /= 1000;
+			i++;
+		}
+		return String.format("%.1f %cB", b, units.charAt(i));
+	}
+
+	private static String humanReadableSeconds(final double seconds) {
+
+		if (seconds < 60)
+			return String.format("%.1f s", seconds);
+		else if (seconds < 3600)
+			return String.format("%.1f min", seconds / 60);
+		else
+			return String.format("%.1f h", seconds / 3600);
+	}
+
+}
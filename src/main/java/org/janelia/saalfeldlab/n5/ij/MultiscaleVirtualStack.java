@@ -0,0 +1,625 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.metadata.imagej.ImageplusMetadata;
+import org.janelia.saalfeldlab.n5.metadata.imagej.N5ImagePlusMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+
+import ij.CompositeImage;
+import ij.IJ;
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+import ij.VirtualStack;
+import ij.gui.ImageCanvas;
+import ij.process.ImageProcessor;
+
+/**
+ * A virtual stack over all levels of a multiscale pyramid that serves each
+ * plane from the coarsest level that is sufficient for the magnification at
+ * which the image is shown.
+ * <p>
+ * A plane of a coarser level is upsampled (nearest neighbor) to the size of
+ * the finest level. If the plane of the level needed for the current
+ * magnification is not loaded yet, the finest loaded level, or else the
+ * coarsest level, is shown while the needed level is loaded in the
+ * background, and the display is updated once it is available. Zooming in
+ * is picked up by polling the magnification of the canvas. Polling stops
+ * when the image is closed or its window goes away, and it does not keep
+ * images alive that are no longer used.
+ * <p>
+ * Until the image is shown, and for images that are not shown, all planes
+ * are served from the finest level. While the image is shown zoomed out,
+ * plugins that read planes through the stack see upsampled data, so the
+ * stack is for display only: images opened with it are labelled with
+ * {@value #DISPLAY_ONLY_LABEL} in their title and info, and
+ * {@link #getFullResolutionProcessor(int)} reads the finest level regardless
+ * of the display. The importer only uses this stack if enabled by the ImageJ
+ * preference {@value #ENABLED_PREF}, see {@link #setEnabled(boolean)}.
+ * <p>
+ * The levels must have the same number of channels and frames, while the
+ * number of slices may be reduced. Only data types that are not rescaled on
+ * import are supported, since the levels are converted independently.
+ */
+public class MultiscaleVirtualStack extends VirtualStack {
+
+	public static final String ENABLED_PREF = "n5.virtual.multiscale";
+
+	public static final String DISPLAY_ONLY_LABEL = "[display only]";
+
+	private static final long CHECK_INTERVAL_MILLIS = 200;
+
+	private static ScheduledExecutorService sharedExecutor;
+
+	private final ImageStack[] levels;
+
+	private final int[] levelSlices;
+
+	private final double[] downsamplingFactors;
+
+	private final int nChannels;
+
+	private final int nSlices;
+
+	private final int nFrames;
+
+	private final ExecutorService exec;
+
+	private final LinkedHashMap<Long, ImageProcessor> planes;
+
+	private final int maxPlanes;
+
+	private final Set<Long> loading = new HashSet<>();
+
+	private volatile ImagePlus imp;
+
+	/**
+	 * @param levels
+	 *            the virtual images of the levels, finest first
+	 * @param exec
+	 *            the executor service that loads finer levels
+	 */
+	public MultiscaleVirtualStack(final List<ImagePlus> levels, final ExecutorService exec) {
+
+		super(levels.get(0).getWidth(), levels.get(0).getHeight(), null, null);
+
+		final ImagePlus finest = levels.get(0);
+		nChannels = finest.getNChannels();
+		nSlices = finest.getNSlices();
+		nFrames = finest.getNFrames();
+		this.exec = exec;
+
+		final int n = levels.size();
+		this.levels = new ImageStack[n];
+		levelSlices = new int[n];
+		downsamplingFactors = new double[n];
+		for (int l = 0; l < n; l++) {
+			final ImagePlus level = levels.get(l);
+			this.levels[l] = level.getStack();
+			levelSlices[l] = level.getStackSize() / (nChannels * nFrames);
+			downsamplingFactors[l] = Math.min(
+					(double)finest.getWidth() / level.getWidth(),
+					(double)finest.getHeight() / level.getHeight());
+		}
+
+		maxPlanes = Math.max(8, 4 * nChannels);
+		planes = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * @return true if virtual imports of multiscale datasets use this stack,
+	 *         read from the ImageJ preference {@value #ENABLED_PREF}
+	 */
+	public static boolean isEnabled() {
+
+		return Prefs.get(ENABLED_PREF, false);
+	}
+
+	/**
+	 * @param enabled
+	 *            whether virtual imports of multiscale datasets use this stack
+	 */
+	public static void setEnabled(final boolean enabled) {
+
+		Prefs.set(ENABLED_PREF, enabled);
+	}
+
+	/**
+	 * Opens a dataset as a virtual image. If the dataset is a level of a
+	 * multiscale pyramid, the image is backed by a
+	 * {@link MultiscaleVirtualStack} over this and all coarser levels,
+	 * otherwise it is opened as by
+	 * {@link N5Importer#read(N5Reader, ExecutorService, N5DatasetMetadata, net.imglib2.Interval, boolean, ImageplusMetadata)}.
+	 *
+	 * @param <M>
+	 *            the metadata type
+	 * @param n5
+	 *            the reader
+	 * @param exec
+	 *            the executor service
+	 * @param datasetMeta
+	 *            the metadata of the dataset
+	 * @param ipMeta
+	 *            the metadata writer for the image, may be null
+	 * @return the image
+	 * @throws IOException
+	 *             io
+	 */
+	public static <M extends N5DatasetMetadata> ImagePlus open(
+			final N5Reader n5,
+			final ExecutorService exec,
+			final N5DatasetMetadata datasetMeta,
+			final ImageplusMetadata<M> ipMeta) throws IOException {
+
+		final List<N5DatasetMetadata> levels = coarserLevels(n5, datasetMeta);
+		if (levels.size() < 2)
+			return N5Importer.read(n5, exec, datasetMeta, null, true, ipMeta);
+
+		final ImagePlus imp = N5Importer.read(n5, exec, datasetMeta, null, true, ipMeta, false);
+		final List<ImagePlus> levelImps = new ArrayList<>();
+		levelImps.add(imp);
+		for (final N5DatasetMetadata level : levels.subList(1, levels.size())) {
+			final ImagePlus levelImp = N5Importer.read(n5, exec, level, null, true, null, false);
+			if (!isCompatible(imp, levelImp))
+				break;
+
+			levelImps.add(levelImp);
+		}
+
+		if (levelImps.size() < 2)
+			return N5Importer.read(n5, exec, datasetMeta, null, true, ipMeta);
+
+		final MultiscaleVirtualStack stack = new MultiscaleVirtualStack(levelImps, getSharedExecutor());
+		stack.setImagePlus(imp);
+		label(imp);
+		return imp;
+	}
+
+	/**
+	 * Returns the given level and all coarser levels of its pyramid, finest
+	 * first, or an empty list if the dataset is not part of a pyramid or its
+	 * type is rescaled on import.
+	 */
+	private static List<N5DatasetMetadata> coarserLevels(final N5Reader n5, final N5DatasetMetadata datasetMeta) {
+
+		final List<N5DatasetMetadata> none = new ArrayList<>();
+		final boolean isRGB = (datasetMeta instanceof N5ImagePlusMetadata) &&
+				((N5ImagePlusMetadata)datasetMeta).getType() == ImagePlus.COLOR_RGB;
+		if (!BlockwiseImagePlusLoader.isSupported(datasetMeta.getAttributes().getDataType(), isRGB))
+			return none;
+
+		final String path = N5URI.normalizeGroupPath(datasetMeta.getPath());
+		final List<N5DatasetMetadata> levels;
+		try {
+			levels = PyramidLevelSelector.levels(n5, DatasetMetadataResolver.discoverer(n5), path);
+		} catch (final N5Exception e) {
+			return none;
+		}
+
+		for (int i = 0; i < levels.size(); i++)
+			if (N5URI.normalizeGroupPath(levels.get(i).getPath()).equals(path))
+				return levels.subList(i, levels.size());
+
+		return none;
+	}
+
+	/**
+	 * Marks an image as display only, since plugins may read upsampled
+	 * planes from it while it is shown.
+	 */
+	static void label(final ImagePlus imp) {
+
+		imp.setTitle(imp.getTitle() + " " + DISPLAY_ONLY_LABEL);
+		final String info = imp.getInfoProperty();
+		final String note = "Display only: planes are read from coarser levels while zoomed out, "
+				+ "duplicate or process it after opening without " + ENABLED_PREF + ".";
+		imp.setProperty("Info", info == null || info.isEmpty() ? note : note + "\n" + info);
+	}
+
+	/**
+	 * Checks that a level has the channels and frames of the finest level,
+	 * and is not larger, and sets its dimensions accordingly.
+	 */
+	private static boolean isCompatible(final ImagePlus finest, final ImagePlus level) {
+
+		if (level.getBitDepth() != finest.getBitDepth() ||
+				level.getWidth() > finest.getWidth() ||
+				level.getHeight() > finest.getHeight())
+			return false;
+
+		final int nct = finest.getNChannels() * finest.getNFrames();
+		final int size = level.getStackSize();
+		if (size % nct != 0 || size / nct > finest.getNSlices())
+			return false;
+
+		level.setDimensions(finest.getNChannels(), size / nct, finest.getNFrames());
+		return true;
+	}
+
+	private static synchronized ScheduledExecutorService getSharedExecutor() {
+
+		if (sharedExecutor == null) {
+			sharedExecutor = Executors.newScheduledThreadPool(
+					Math.max(2, Runtime.getRuntime().availableProcessors() / 4),
+					r -> {
+						final Thread t = new Thread(r, "n5-multiscale");
+						t.setDaemon(true);
+						return t;
+					});
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * Sets this stack as the stack of an image and, if the executor service
+	 * of this stack can schedule tasks, starts watching the magnification of
+	 * the image until it is closed.
+	 *
+	 * @param imp
+	 *            the image, with the dimensions of the finest level
+	 */
+	public void setImagePlus(final ImagePlus imp) {
+
+		imp.setStack(this, nChannels, nSlices, nFrames);
+		this.imp = imp;
+
+		if (exec instanceof ScheduledExecutorService)
+			new MagnificationWatcher(this).start((ScheduledExecutorService)exec);
+	}
+
+	/**
+	 * Polls the magnification of the image of a stack. Only weakly refers to
+	 * the stack, so that the executor and the image listeners do not keep a
+	 * stack and its image alive, and stops once the stack is gone, its image
+	 * is closed, or the window of its image was closed.
+	 */
+	private static class MagnificationWatcher implements Runnable, ImageListener {
+
+		private final WeakReference<MultiscaleVirtualStack> stackRef;
+
+		private ScheduledFuture<?> future;
+
+		private boolean stopped = false;
+
+		private boolean wasShown = false;
+
+		public MagnificationWatcher(final MultiscaleVirtualStack stack) {
+
+			stackRef = new WeakReference<>(stack);
+		}
+
+		public synchronized void start(final ScheduledExecutorService exec) {
+
+			ImagePlus.addImageListener(this);
+			future = exec.scheduleWithFixedDelay(this, CHECK_INTERVAL_MILLIS, CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run() {
+
+			final MultiscaleVirtualStack stack = stackRef.get();
+			if (stack == null) {
+				stop(null);
+				return;
+			}
+
+			if (stack.isShown())
+				wasShown = true;
+			else if (wasShown) {
+				stop(stack);
+				return;
+			}
+
+			stack.checkMagnification();
+		}
+
+		@Override
+		public void imageOpened(final ImagePlus opened) {}
+
+		@Override
+		public void imageUpdated(final ImagePlus updated) {}
+
+		@Override
+		public void imageClosed(final ImagePlus closed) {
+
+			final MultiscaleVirtualStack stack = stackRef.get();
+			if (stack == null || closed == stack.imp)
+				stop(stack);
+		}
+
+		private synchronized void stop(final MultiscaleVirtualStack stack) {
+
+			if (stopped)
+				return;
+
+			stopped = true;
+			ImagePlus.removeImageListener(this);
+			if (future != null)
+				future.cancel(false);
+
+			if (stack != null) {
+				synchronized (stack.planes) {
+					stack.planes.clear();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of levels
+	 */
+	public int getNumLevels() {
+
+		return levels.length;
+	}
+
+	/**
+	 * @param level
+	 *            the level
+	 * @return the factor by which the level is downsampled in X and Y
+	 *         relative to the finest level
+	 */
+	public double getDownsamplingFactor(final int level) {
+
+		return downsamplingFactors[level];
+	}
+
+	/**
+	 * @return the coarsest level that is sufficient for the magnification at
+	 *         which the image is shown, or 0 if it is not shown
+	 */
+	public int getTargetLevel() {
+
+		final ImagePlus imp = this.imp;
+		final ImageCanvas canvas = imp == null ? null : imp.getCanvas();
+		if (canvas == null)
+			return 0;
+
+		return targetLevel(canvas.getMagnification());
+	}
+
+	/**
+	 * @param magnification
+	 *            the magnification
+	 * @return the coarsest level with at most one pixel per screen pixel at
+	 *         that magnification
+	 */
+	int targetLevel(final double magnification) {
+
+		int target = 0;
+		for (int l = 1; l < levels.length; l++)
+			if (downsamplingFactors[l] * magnification <= 1.0 + 1e-6)
+				target = l;
+
+		return target;
+	}
+
+	/**
+	 * @param n
+	 *            the stack index, starting at 1
+	 * @return the finest level of which the plane is loaded, or -1 if none is
+	 */
+	public int getLoadedLevel(final int n) {
+
+		synchronized (planes) {
+			for (int l = 0; l < levels.length; l++)
+				if (planes.containsKey(key(l, n)))
+					return l;
+		}
+		return -1;
+	}
+
+	@Override
+	public ImageProcessor getProcessor(final int n) {
+
+		final int target = getTargetLevel();
+		final int loaded = getLoadedLevel(n);
+		if (loaded >= 0 && loaded <= target)
+			return upsample(plane(loaded, n), loaded);
+
+		if (!isShown())
+			return upsample(plane(target, n), target);
+
+		// show what is available now, the coarsest level if nothing is
+		final int level = loaded >= 0 ? loaded : levels.length - 1;
+		if (level > target)
+			loadInBackground(target, n);
+
+		return upsample(plane(level, n), level);
+	}
+
+	/**
+	 * Reads a plane from the finest level, whatever the image shows.
+	 *
+	 * @param n
+	 *            the stack index, starting at 1
+	 * @return the plane at full resolution
+	 */
+	public ImageProcessor getFullResolutionProcessor(final int n) {
+
+		return plane(0, n).duplicate();
+	}
+
+	@Override
+	public int getSize() {
+
+		return levels[0].getSize();
+	}
+
+	@Override
+	public String getSliceLabel(final int n) {
+
+		return levels[0].getSliceLabel(n);
+	}
+
+	@Override
+	public int getBitDepth() {
+
+		return levels[0].getBitDepth();
+	}
+
+	@Override
+	public void setPixels(final Object pixels, final int n) {}
+
+	/**
+	 * Returns the plane of a level, loading it if necessary.
+	 */
+	private ImageProcessor plane(final int level, final int n) {
+
+		final long key = key(level, n);
+		synchronized (planes) {
+			final ImageProcessor ip = planes.get(key);
+			if (ip != null)
+				return ip;
+		}
+
+		final ImageProcessor ip = levels[level].getProcessor(levelIndex(level, n));
+		synchronized (planes) {
+			planes.put(key, ip);
+			while (planes.size() > maxPlanes)
+				planes.remove(planes.keySet().iterator().next());
+		}
+		return ip;
+	}
+
+	/**
+	 * @return the stack index in a level of a stack index of the finest level
+	 */
+	int levelIndex(final int level, final int n) {
+
+		final int i = n - 1;
+		final int c = i % nChannels;
+		final int z = (i / nChannels) % nSlices;
+		final int t = i / (nChannels * nSlices);
+		final int zl = (int)((long)z * levelSlices[level] / nSlices);
+		return 1 + c + nChannels * (zl + levelSlices[level] * t);
+	}
+
+	/**
+	 * Upsamples a plane of a level to the size of the finest level with
+	 * nearest neighbor interpolation.
+	 */
+	ImageProcessor upsample(final ImageProcessor ip, final int level) {
+
+		final int w = getWidth();
+		final int h = getHeight();
+		if (level == 0 || (ip.getWidth() == w && ip.getHeight() == h))
+			return ip.duplicate();
+
+		final int lw = ip.getWidth();
+		final int lh = ip.getHeight();
+		final int[] xs = new int[w];
+		for (int x = 0; x < w; x++)
+			xs[x] = (int)Math.min(lw - 1, (long)x * lw / w);
+
+		// get and set transfer the bits of any pixel type, including float
+		final ImageProcessor out = ip.createProcessor(w, h);
+		for (int y = 0; y < h; y++) {
+			final int offset = (int)Math.min(lh - 1, (long)y * lh / h) * lw;
+			final int row = y * w;
+			for (int x = 0; x < w; x++)
+				out.set(row + x, ip.get(offset + xs[x]));
+		}
+		return out;
+	}
+
+	private boolean isShown() {
+
+		final ImagePlus imp = this.imp;
+		return imp != null && imp.getCanvas() != null;
+	}
+
+	private void checkMagnification() {
+
+		final ImagePlus imp = this.imp;
+		if (!isShown())
+			return;
+
+		final int target = getTargetLevel();
+		for (final int n : shownIndexes(imp)) {
+			final int level = getLoadedLevel(n);
+			if (level < 0 || level > target)
+				loadInBackground(target, n);
+		}
+	}
+
+	/**
+	 * @return the stack indexes of the planes the image shows
+	 */
+	private static List<Integer> shownIndexes(final ImagePlus imp) {
+
+		final List<Integer> indexes = new ArrayList<>();
+		if (imp.isComposite() && ((CompositeImage)imp).getMode() == IJ.COMPOSITE) {
+			for (int c = 1; c <= imp.getNChannels(); c++)
+				indexes.add(imp.getStackIndex(c, imp.getSlice(), imp.getFrame()));
+		} else
+			indexes.add(imp.getCurrentSlice());
+
+		return indexes;
+	}
+
+	private void loadInBackground(final int level, final int n) {
+
+		final long key = key(level, n);
+		synchronized (loading) {
+			if (!loading.add(key))
+				return;
+		}
+
+		exec.submit(() -> {
+			try {
+				plane(level, n);
+				refresh(n);
+			} finally {
+				synchronized (loading) {
+					loading.remove(key);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Shows a newly loaded plane if the image still shows it.
+	 */
+	private void refresh(final int n) {
+
+		final ImagePlus imp = this.imp;
+		if (!isShown() || !shownIndexes(imp).contains(n))
+			return;
+
+		final ImageProcessor ip = getProcessor(n);
+		if (imp.isComposite() && ((CompositeImage)imp).getMode() == IJ.COMPOSITE) {
+			final CompositeImage composite = (CompositeImage)imp;
+			final ImageProcessor channel = composite.getProcessor(imp.convertIndexToPosition(n)[0]);
+			if (channel != null) {
+				channel.setPixels(ip.getPixels());
+				composite.updateAllChannelsAndDraw();
+			}
+		} else {
+			imp.getProcessor().setPixels(ip.getPixels());
+			imp.updateAndDraw();
+		}
+	}
+
+	private long key(final int level, final int n) {
+
+		return ((long)level << 32) | n;
+	}
+
+}
@@ -3,12 +3,14 @@ package org.janelia.saalfeldlab.n5.ij;
 import java.io.IOException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.function.UnaryOperator;
 
 import org.janelia.saalfeldlab.n5.Compression;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.metadata.MetadataTransaction;
 import org.janelia.saalfeldlab.n5.metadata.imagej.ImagePlusLegacyMetadataParser;
 import org.janelia.saalfeldlab.n5.metadata.imagej.ImageplusMetadata;
 import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
@@ -32,7 +34,7 @@ import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.NumericType;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.util.Pair;
 import net.imglib2.view.Views;
@@ -178,6 +180,179 @@ public class N5IJUtils {
 		return imp;
 	}
 
+	/**
+	 * Loads an N5 dataset into an {@link ImagePlus}, reading blocks in
+	 * parallel using an {@link ExecutorService}.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param exec
+	 *            the executor
+	 * @return the ImagePlus
+	 * @throws IOException
+	 *             io exception
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             execution
+	 */
+	public static ImagePlus loadParallel(
+			final N5Reader n5,
+			final String dataset,
+			final ExecutorService exec) throws IOException, InterruptedException, ExecutionException {
+
+		final ImagePlusLegacyMetadataParser nullReader = null;
+		return loadParallel(n5, dataset, exec, nullReader, nullReader);
+	}
+
+	/**
+	 * Loads an N5 dataset into an {@link ImagePlus}, reading blocks in
+	 * parallel using an {@link ExecutorService}.
+	 *
+	 * @param <M>
+	 *            the metadata type
+	 * @param <W>
+	 *            the metadata parser type
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param exec
+	 *            the executor
+	 * @param metaReader
+	 *            an optional metadata reader
+	 * @return the ImagePlus
+	 * @throws IOException
+	 *             io exception
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             execution
+	 */
+	public static <M extends N5DatasetMetadata, W extends N5MetadataParser<M> & ImageplusMetadata<M>> ImagePlus loadParallel(
+			final N5Reader n5,
+			final String dataset,
+			final ExecutorService exec,
+			final W metaReader) throws IOException, InterruptedException, ExecutionException {
+
+		return loadParallel(n5, dataset, exec, metaReader, metaReader);
+	}
+
+	/**
+	 * Loads an N5 dataset into an {@link ImagePlus}, reading blocks in
+	 * parallel using an {@link ExecutorService}. Each block is decoded once
+	 * and copied directly into the planes of the ImagePlus.
+	 * <p>
+	 * Other than {@link #load(N5Reader, String, N5MetadataParser, ImageplusMetadata)},
+	 * int64, uint64, and float64 datasets are supported, and are converted to
+	 * float32.
+	 *
+	 * @param <T>
+	 *            the image data type.
+	 * @param <M>
+	 *            the metadata type
+	 * @param <W>
+	 *            the metadata parser type
+	 * @param <I>
+	 *            the ImageplusMetadata type
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param exec
+	 *            the executor
+	 * @param metaReader
+	 *            an optional metadata reader
+	 * @param ipMeta
+	 *            an optional image plus metadata writer
+	 * @return the ImagePlus
+	 * @throws IOException
+	 *             io exception
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             execution
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static <T extends NativeType<T> & NumericType<T>, M extends N5DatasetMetadata, W extends N5MetadataParser<M>, I extends ImageplusMetadata<M>> ImagePlus loadParallel(
+			final N5Reader n5,
+			final String dataset,
+			final ExecutorService exec,
+			final W metaReader,
+			final I ipMeta) throws IOException, InterruptedException, ExecutionException {
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		long[] dimensions = attributes.getDimensions();
+
+		M metadata = null;
+		UnaryOperator<RandomAccessibleInterval<LongType>> permutation = null;
+		if (metaReader != null) {
+			try {
+				final M datasetMetadata = metaReader.parseMetadata(n5, dataset).get();
+				metadata = datasetMetadata;
+
+				if (metadata != null && metadata instanceof AxisMetadata) {
+
+					// this permutation will be applied to the image whose dimensions
+					// are padded to 5d with a canonical axis order
+					final int[] p = AxisUtils.findImagePlusPermutation((AxisMetadata)metadata);
+
+					final Pair<RandomAccessibleInterval<T>, M> res = AxisUtils.permuteImageAndMetadataForImagePlus(p,
+							(RandomAccessibleInterval<T>)N5Utils.open(n5, dataset), metadata);
+					dimensions = res.getA().dimensionsAsLongArray();
+					metadata = res.getB();
+					permutation = x -> AxisUtils.permuteImageAndMetadataForImagePlus(p, x, datasetMetadata).getA();
+				}
+			} catch (final Exception e) {
+				System.err.println("Warning: could not read metadata.");
+				metadata = null;
+				permutation = null;
+				dimensions = attributes.getDimensions();
+			}
+		}
+
+		final ImagePlusImg<T, ?> impImg;
+		switch (attributes.getDataType()) {
+		case UINT8:
+			impImg = (ImagePlusImg)ImagePlusImgs.unsignedBytes(dimensions);
+			break;
+		case INT8:
+			impImg = (ImagePlusImg)ImagePlusImgs.bytes(dimensions);
+			break;
+		case UINT16:
+			impImg = (ImagePlusImg)ImagePlusImgs.unsignedShorts(dimensions);
+			break;
+		case INT16:
+			impImg = (ImagePlusImg)ImagePlusImgs.shorts(dimensions);
+			break;
+		case UINT32:
+			impImg = (ImagePlusImg)ImagePlusImgs.unsignedInts(dimensions);
+			break;
+		case INT32:
+			impImg = (ImagePlusImg)ImagePlusImgs.ints(dimensions);
+			break;
+		case FLOAT32:
+		case FLOAT64:
+		case INT64:
+		case UINT64:
+			impImg = (ImagePlusImg)ImagePlusImgs.floats(dimensions);
+			break;
+		default:
+			System.err.println("Data type " + attributes.getDataType() + " not supported in ImageJ.");
+			return null;
+		}
+
+		BlockwiseImagePlusLoader.copyBlocks(n5, dataset, attributes, null, permutation, impImg, exec);
+
+		final ImagePlus imp = impImg.getImagePlus();
+		if (metadata != null)
+			ipMeta.writeMetadata(metadata, imp);
+
+		return imp;
+	}
+
 	/**
 	 * Save an {@link ImagePlus} as an N5 dataset.
 	 *
@@ -280,23 +455,27 @@ public class N5IJUtils {
 			final W metaWriter,
 			final I ipMetadata) throws IOException {
 
-		final Img<T> rai;
-		if (imp.getType() == ImagePlus.COLOR_RGB)
-			rai = (Img<T>)wrapRgbAsInt(imp);
-		else
-			rai = ImageJFunctions.wrap(imp);
-
-		N5Utils.save(
-				rai,
-				n5,
-				datasetName,
-				blockSize,
-				compression);
+		if (imp.getType() == ImagePlus.COLOR_RGB) {
+			// packed uint32 blocks directly from the int[] planes
+			try {
+				RgbBlockWriter.save(imp, n5, datasetName, blockSize, compression, RgbBlockWriter.Mode.PACKED, null);
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IOException(e);
+			}
+		} else {
+			final Img<T> rai = ImageJFunctions.wrap(imp);
+			N5Utils.save(
+					rai,
+					n5,
+					datasetName,
+					blockSize,
+					compression);
+		}
 
 		if (metaWriter != null && metaWriter != null) {
 			try {
 				final M metadata = ipMetadata.readMetadata(imp);
-				metaWriter.writeMetadata(metadata, n5, datasetName);
+				MetadataTransaction.writeMetadata(metaWriter, metadata, n5, datasetName);
 			} catch (final Exception e) {
 				e.printStackTrace();
 			}
@@ -429,24 +608,24 @@ public class N5IJUtils {
 			final I ipMetadata)
 			throws IOException, InterruptedException, ExecutionException {
 
-		final Img<T> rai;
-		if (imp.getType() == ImagePlus.COLOR_RGB)
-			rai = (Img<T>)wrapRgbAsInt(imp);
-		else
-			rai = ImageJFunctions.wrap(imp);
-
-		N5Utils.save(
-				rai,
-				n5,
-				datasetName,
-				blockSize,
-				compression,
-				exec);
+		if (imp.getType() == ImagePlus.COLOR_RGB) {
+			// packed uint32 blocks directly from the int[] planes
+			RgbBlockWriter.save(imp, n5, datasetName, blockSize, compression, RgbBlockWriter.Mode.PACKED, exec);
+		} else {
+			final Img<T> rai = ImageJFunctions.wrap(imp);
+			N5Utils.save(
+					rai,
+					n5,
+					datasetName,
+					blockSize,
+					compression,
+					exec);
+		}
 
 		if (metaWriter != null && metaWriter != null) {
 			try {
 				final M metadata = ipMetadata.readMetadata(imp);
-				metaWriter.writeMetadata(metadata, n5, datasetName);
+				MetadataTransaction.writeMetadata(metaWriter, metadata, n5, datasetName);
 			} catch (final Exception e) {
 				e.printStackTrace();
 			}
@@ -478,40 +657,11 @@ public class N5IJUtils {
 			final int[] blockSize,
 			final Compression compression) throws IOException {
 
-		final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
-
-		final RandomAccessibleInterval<UnsignedByteType> mask = Converters.convert(
-				(RandomAccessibleInterval<ARGBType>)rai,
-				(argb, uint8) -> {
-					final int argbValue = argb.get();
-					final int r = ARGBType.red(argbValue);
-					final int g = ARGBType.green(argbValue);
-					final int b = ARGBType.blue(argbValue);
-					if (r == g && g == b)
-						uint8.set(1);
-					else
-						uint8.set(0);
-				},
-				new UnsignedByteType());
-
-		final RandomAccessibleInterval<UnsignedByteType> gray = Converters.convert(
-				(RandomAccessibleInterval<ARGBType>)rai,
-				(argb, uint8) -> {
-					uint8.set(ARGBType.red(argb.get()));
-				},
-				new UnsignedByteType());
-
-		n5.createGroup(groupName);
-		N5Utils.save(
-				mask,
-				n5, groupName + "/mask",
-				blockSize,
-				compression);
-		N5Utils.save(
-				gray,
-				n5, groupName + "/gray",
-				blockSize,
-				compression);
+		try {
+			RgbBlockWriter.save(imp, n5, groupName, blockSize, compression, RgbBlockWriter.Mode.MASKED_GRAY, null);
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IOException(e);
+		}
 	}
 
 	/**
@@ -547,42 +697,8 @@ public class N5IJUtils {
 			final Compression compression,
 			final ExecutorService exec) throws IOException, InterruptedException, ExecutionException {
 
-		final ImagePlusImg<ARGBType, ?> rai = ImagePlusImgs.from(imp);
-
-		final RandomAccessibleInterval<UnsignedByteType> mask = Converters.convert(
-				(RandomAccessibleInterval<ARGBType>)rai,
-				(argb, uint8) -> {
-					final int argbValue = argb.get();
-					final int r = ARGBType.red(argbValue);
-					final int g = ARGBType.green(argbValue);
-					final int b = ARGBType.blue(argbValue);
-					if (r == g && g == b)
-						uint8.set(1);
-					else
-						uint8.set(0);
-				},
-				new UnsignedByteType());
-
-		final RandomAccessibleInterval<UnsignedByteType> gray = Converters.convert(
-				(RandomAccessibleInterval<ARGBType>)rai,
-				(argb, uint8) -> {
-					uint8.set(ARGBType.red(argb.get()));
-				},
-				new UnsignedByteType());
-
-		n5.createGroup(groupName);
-		N5Utils.save(
-				mask,
-				n5, groupName + "/mask",
-				blockSize,
-				compression,
-				exec);
-		N5Utils.save(
-				gray,
-				n5, groupName + "/gray",
-				blockSize,
-				compression,
-				exec);
+		// mask and gray from a single pass over the int[] planes
+		RgbBlockWriter.save(imp, n5, groupName, blockSize, compression, RgbBlockWriter.Mode.MASKED_GRAY, exec);
 	}
 
 	/**
@@ -8,12 +8,17 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.swing.JTree;
@@ -64,6 +69,7 @@ import ij.Macro;
 import ij.Prefs;
 import ij.gui.GenericDialog;
 import ij.io.FileInfo;
+import ij.measure.Calibration;
 import ij.plugin.PlugIn;
 import ij.plugin.frame.Recorder;
 import ij.process.ImageStatistics;
@@ -82,11 +88,13 @@ import net.imglib2.parallel.DefaultTaskExecutor;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.type.numeric.NumericType;
+import net.imglib2.type.numeric.integer.LongType;
 import net.imglib2.type.numeric.integer.UnsignedIntType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.view.Views;
 
@@ -99,6 +107,14 @@ public class N5Importer implements PlugIn {
 	public static final String hideKey = "hide";
 	public static final String minKey = "min";
 	public static final String maxKey = "max";
+	public static final String maxBytesKey = "max_bytes";
+	public static final String maxXYKey = "max_xy";
+	public static final String binKey = "bin";
+	public static final String binModeKey = "bin_mode";
+	public static final String axisOrderKey = "axis_order";
+	public static final String projectionKey = "projection";
+	public static final String projectionAxisKey = "projection_axis";
+	public static final String projectionLevelKey = "projection_level";
 	public static final String COMMAND_NAME = "HDF5/N5/Zarr/OME-NGFF ... ";
 
 	public static final String BDV_OPTION = "BigDataViewer";
@@ -143,6 +159,14 @@ public class N5Importer implements PlugIn {
 
 	private boolean cropOption;
 
+	private long maxBytes = 0;
+
+	private long maxXY = 0;
+
+	private BlockBinning binning;
+
+	private String axisOrder;
+
 	private Thread loaderThread;
 
 	private final ExecutorService exec;
@@ -173,7 +197,7 @@ public class N5Importer implements PlugIn {
 		exec = Executors.newFixedThreadPool(Prefs.getThreads());
 	}
 
-	private static HashMap<Class<?>, ImageplusMetadata<?>> defaultImagePlusMetadataWriters()
+	static HashMap<Class<?>, ImageplusMetadata<?>> defaultImagePlusMetadataWriters()
 	{
 		final HashMap<Class<?>, ImageplusMetadata<?>> impMetaWriterTypes = new HashMap<>();
 		impMetaWriterTypes.put(N5ImagePlusMetadata.class, new ImagePlusLegacyMetadataParser());
@@ -217,6 +241,63 @@ public class N5Importer implements PlugIn {
 		this.show = show;
 	}
 
+	/**
+	 * Limits the size of images opened from multiscale groups. The finest
+	 * scale level that fits both limits is opened instead of the requested
+	 * dataset, see {@link PyramidLevelSelector}. Not applied to cropped
+	 * imports.
+	 *
+	 * @param maxBytes
+	 *            the maximum size in bytes, zero for no limit
+	 * @param maxXY
+	 *            the maximum width and height, zero for no limit
+	 */
+	public void setScaleLevelBudget(final long maxBytes, final long maxXY) {
+
+		this.maxBytes = maxBytes;
+		this.maxXY = maxXY;
+	}
+
+	/**
+	 * Bins imported images by integer factors while their blocks are read,
+	 * see {@link BlockBinning}. Binned images are always loaded into memory.
+	 *
+	 * @param binning
+	 *            the binning, or null to import at full resolution
+	 */
+	public void setBinning(final BlockBinning binning) {
+
+		this.binning = binning;
+	}
+
+	/**
+	 * Imports projections of datasets computed while their blocks are read,
+	 * see {@link BlockProjection}. Replaces any binning.
+	 *
+	 * @param projection
+	 *            the projection, or null to import the datasets
+	 */
+	public void setProjection(final BlockProjection projection) {
+
+		this.binning = projection;
+	}
+
+	/**
+	 * Opens virtual imports in another axis order, see
+	 * {@link ReslicedVirtualStack}. Not applied to cropped or binned imports.
+	 *
+	 * @param axisOrder
+	 *            a permutation of "XYZ", for example "XZY", or null for the
+	 *            default order
+	 */
+	public void setAxisOrder(final String axisOrder) {
+
+		if (axisOrder != null)
+			ReslicedVirtualStack.parseAxisOrder(axisOrder);
+
+		this.axisOrder = axisOrder;
+	}
+
 	public void runWithDialog(final String pathToContainer, final List<String> selectThisSubPath) {
 		lastOpenedContainer = pathToContainer;
 		selectionDialog = null;
@@ -332,6 +413,10 @@ public class N5Importer implements PlugIn {
 						gd.addNumericField("max_" + axisNames[i], Double.POSITIVE_INFINITY);
 				}
 
+				gd.addMessage("Binning factors, e.g. 4,4,1 (empty for none):");
+				gd.addStringField("Bin", "");
+				gd.addChoice("Bin mode", new String[]{"mean", "max"}, "mean");
+
 				gd.showDialog();
 				if (gd.wasCanceled()) {
 					// set back recorder state if canceled
@@ -354,6 +439,7 @@ public class N5Importer implements PlugIn {
 				}
 
 				thisDatasetCropInterval = new FinalInterval(cropMin, cropMax);
+				binning = BlockBinning.parse(gd.getNextString(), gd.getNextChoice());
 			} else {
 				final String minString = Macro.getValue(options, minKey, "");
 				final String maxString = Macro.getValue(options, maxKey, "");
@@ -361,8 +447,30 @@ public class N5Importer implements PlugIn {
 					thisDatasetCropInterval = parseCropParameters(minString, maxString);
 				}
 				show = !options.contains(" " + hideKey);
+
+				final String binString = Macro.getValue(options, binKey, "");
+				if (!binString.isEmpty())
+					binning = BlockBinning.parse(binString, Macro.getValue(options, binModeKey, ""));
 			}
 
+			final String projectionString = Macro.getValue(options, projectionKey, "");
+			if (!projectionString.isEmpty())
+				binning = BlockProjection.parse(projectionString,
+						Macro.getValue(options, projectionAxisKey, ""),
+						Macro.getValue(options, projectionLevelKey, ""));
+
+			final String axisOrderString = Macro.getValue(options, axisOrderKey, "");
+			if (!axisOrderString.isEmpty())
+				setAxisOrder(axisOrderString);
+
+			final String maxBytesString = Macro.getValue(options, maxBytesKey, "");
+			if (!maxBytesString.isEmpty())
+				maxBytes = PyramidLevelSelector.parseBytes(maxBytesString);
+
+			final String maxXYString = Macro.getValue(options, maxXYKey, "");
+			if (!maxXYString.isEmpty())
+				maxXY = Long.parseLong(maxXYString);
+
 			// set recorder back
 			Recorder.record = initialRecorderState;
 
@@ -373,29 +481,31 @@ public class N5Importer implements PlugIn {
 			final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(n5ForThisDataset, N5DatasetDiscoverer.fromParsers(PARSERS),
 					Collections.singletonList(new OmeNgffMetadataParser()));
 
-			N5Metadata meta = null;
-			try {
-				final N5TreeNode root = discoverer.discoverAndParseRecursive("");
-				final Optional<N5Metadata> metaOpt = root.getDescendant(dset)
-						.filter(x -> {
-							return x.getMetadata() != null;
-						}).map(N5TreeNode::getMetadata);
-
-				if (metaOpt.isPresent())
-					meta = metaOpt.get();
-
-			} catch (final Exception e) {
-				throw new N5Exception("Failure to parse or find data at " + dset, e);
-			}
-
-			if (meta != null && meta instanceof N5DatasetMetadata)
-				lastResult = process(n5ForThisDataset, rootPath, exec, Collections.singletonList((N5DatasetMetadata)meta), openAsVirtual, thisDatasetCropInterval,
-						show, impMetaWriterTypes);
+			// only parse the requested dataset and its multiscales group, if any
+			final N5DatasetMetadata meta = thisDatasetCropInterval == null
+					? resolveWithinBudget(n5ForThisDataset, discoverer, dset)
+					: DatasetMetadataResolver.resolve(n5ForThisDataset, discoverer, dset);
+			if (meta != null)
+				lastResult = process(n5ForThisDataset, rootPath, exec, Collections.singletonList(meta), openAsVirtual, thisDatasetCropInterval,
+						show, impMetaWriterTypes, binning, axisOrder);
 			else
 				System.err.println("not a dataset : " + n5Path);
 		}
 	}
 
+	/**
+	 * Returns the metadata for a dataset, or for the finest scale level of
+	 * its multiscale group that fits the budget if one is set.
+	 */
+	private N5DatasetMetadata resolveWithinBudget(final N5Reader n5, final N5DatasetDiscoverer discoverer, final String path) {
+
+		final PyramidLevelSelector selector = new PyramidLevelSelector(maxBytes, maxXY);
+		if (selector.isLimited())
+			return selector.select(n5, discoverer, path);
+		else
+			return DatasetMetadataResolver.resolve(n5, discoverer, path);
+	}
+
 	public static boolean isTypeOpenable(final N5DatasetMetadata meta, final boolean showMessage) {
 
 		final DataType type = meta.getAttributes().getDataType();
@@ -436,6 +546,12 @@ public class N5Importer implements PlugIn {
 	public static String generateAndStoreOptions(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval,
 			final boolean hide) {
 
+		return generateAndStoreOptions(n5RootAndDataset, virtual, cropInterval, hide, null, null);
+	}
+
+	public static String generateAndStoreOptions(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval,
+			final boolean hide, final BlockBinning binning, final String axisOrder) {
+
 		Recorder.resetCommandOptions();
 		Recorder.recordOption(n5PathKey, n5RootAndDataset);
 
@@ -450,6 +566,20 @@ public class N5Importer implements PlugIn {
 			Recorder.recordOption(minKey, cropParams[0]);
 			Recorder.recordOption(maxKey, cropParams[1]);
 		}
+
+		if (binning instanceof BlockProjection) {
+			final BlockProjection projection = (BlockProjection)binning;
+			Recorder.recordOption(projectionKey, projection.getMode().toString().toLowerCase(Locale.ROOT));
+			Recorder.recordOption(projectionAxisKey, Character.toString(projection.getAxis()));
+			if (projection.getLevel() > 0)
+				Recorder.recordOption(projectionLevelKey, Integer.toString(projection.getLevel()));
+		} else if (binning != null) {
+			Recorder.recordOption(binKey, Arrays.stream(binning.getFactors()).mapToObj(Long::toString).collect(Collectors.joining(",")));
+			Recorder.recordOption(binModeKey, binning.getMode().toString().toLowerCase(Locale.ROOT));
+		}
+
+		if (axisOrder != null)
+			Recorder.recordOption(axisOrderKey, axisOrder);
 		return Recorder.getCommandOptions();
 	}
 
@@ -475,11 +605,17 @@ public class N5Importer implements PlugIn {
 
 	public static void record(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval) {
 
+		record(n5RootAndDataset, virtual, cropInterval, null, null);
+	}
+
+	public static void record(final String n5RootAndDataset, final boolean virtual, final Interval cropInterval,
+			final BlockBinning binning, final String axisOrder) {
+
 		if (!Recorder.record)
 			return;
 
 		Recorder.setCommand(COMMAND_NAME);
-		generateAndStoreOptions(n5RootAndDataset, virtual, cropInterval);
+		generateAndStoreOptions(n5RootAndDataset, virtual, cropInterval, false, binning, axisOrder);
 
 		Recorder.saveCommand();
 	}
@@ -516,11 +652,55 @@ public class N5Importer implements PlugIn {
 			final N5DatasetMetadata datasetMetaArg, final Interval cropIntervalIn, final boolean asVirtual,
 			final ImageplusMetadata<M> ipMeta) throws IOException {
 
+		return read(n5, exec, datasetMetaArg, cropIntervalIn, asVirtual, ipMeta, true);
+	}
+
+	/**
+	 * As {@link #read(N5Reader, ExecutorService, N5DatasetMetadata, Interval, boolean, ImageplusMetadata)},
+	 * optionally without prefetching planes of virtual images.
+	 */
+	static <T extends NumericType<T> & NativeType<T>, M extends N5DatasetMetadata, A extends AxisMetadata & N5Metadata> ImagePlus read(
+			final N5Reader n5,
+			final ExecutorService exec,
+			final N5DatasetMetadata datasetMetaArg, final Interval cropIntervalIn, final boolean asVirtual,
+			final ImageplusMetadata<M> ipMeta, final boolean prefetch) throws IOException {
+
+		return read(n5, exec, datasetMetaArg, cropIntervalIn, asVirtual, ipMeta, prefetch, null);
+	}
+
+	/**
+	 * As {@link #read(N5Reader, ExecutorService, N5DatasetMetadata, Interval, boolean, ImageplusMetadata)},
+	 * optionally without prefetching planes of virtual images, and binned
+	 * while the blocks are read if a binning is given. Binned images are
+	 * always loaded into memory; label multisets and RGB images are not
+	 * binned.
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	static <T extends NumericType<T> & NativeType<T>, M extends N5DatasetMetadata, A extends AxisMetadata & N5Metadata> ImagePlus read(
+			final N5Reader n5,
+			final ExecutorService exec,
+			final N5DatasetMetadata datasetMetaArg, final Interval cropIntervalIn, final boolean asVirtual,
+			final ImageplusMetadata<M> ipMeta, final boolean prefetch, final BlockBinning binningArg) throws IOException {
+
 		final String d = datasetMetaArg.getPath();
-		final CachedCellImg imgNorm = N5Utils.open(n5, d);
+		final boolean isLabelMultiset = N5LabelMultisets.isLabelMultisetType(n5, d);
+		final boolean isRGBArg = (datasetMetaArg instanceof N5ImagePlusMetadata)
+				&& ((N5ImagePlusMetadata)datasetMetaArg).getType() == ImagePlus.COLOR_RGB;
+
+		BlockBinning binning = binningArg;
+		if (binning != null && (isLabelMultiset || isRGBArg
+				|| !BlockBinning.isSupported(datasetMetaArg.getAttributes().getDataType()))) {
+			IJ.log("Can not bin " + d + ", reading it at full resolution.");
+			binning = null;
+		}
+
+		// virtual images share one memory-bounded block cache
+		final CachedCellImg imgNorm = asVirtual && !isLabelMultiset && binning == null
+				? SharedBlockCache.getInstance().open(n5, d)
+				: N5Utils.open(n5, d);
 
 		// crop if necessary
-		final RandomAccessibleInterval imgC;
+		RandomAccessibleInterval imgC;
 		Interval cropInterval = null;
 		if (cropIntervalIn != null) {
 			cropInterval = processCropInterval(imgNorm, cropIntervalIn);
@@ -528,13 +708,25 @@ public class N5Importer implements PlugIn {
 		} else
 			imgC = imgNorm;
 
+		// bin the blocks that intersect the crop as they are read
+		final Interval sourceInterval = new FinalInterval(imgC);
+		if (binning != null) {
+			try {
+				imgC = binning.read(n5, d, sourceInterval, exec);
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IOException(e);
+			}
+		}
+
 		final RandomAccessibleInterval img;
 		final M datasetMeta;
+		int[] axisPermutation = null;
 		if (datasetMetaArg != null && datasetMetaArg instanceof AxisMetadata) {
 
 			// this permutation will be applied to the image whose dimensions
 			// are padded to 5d with a canonical axis order
 			final int[] p = AxisUtils.findImagePlusPermutation((AxisMetadata)datasetMetaArg);
+			axisPermutation = p;
 
 			final Pair<RandomAccessibleInterval<T>, M> res = AxisUtils.permuteImageAndMetadataForImagePlus(p, imgC, datasetMetaArg);
 			img = res.getA();
@@ -545,38 +737,60 @@ public class N5Importer implements PlugIn {
 		}
 
 		RandomAccessibleInterval<T> convImg;
-		final DataType type = datasetMeta.getAttributes().getDataType();
+		final DataType type = binning == null
+				? datasetMeta.getAttributes().getDataType()
+				: binning.binnedType(datasetMeta.getAttributes().getDataType());
 
 		final boolean isRGB = (datasetMeta instanceof N5ImagePlusMetadata) && ((N5ImagePlusMetadata)datasetMeta).getType() == ImagePlus.COLOR_RGB;
 
 		// convert label multisets to ulong, then converts to ushort with LUT
-		if (N5LabelMultisets.isLabelMultisetType(n5, datasetMeta.getPath())) {
-
-			// why is this cast necessary?
-			convImg = (RandomAccessibleInterval<T>)convertToUShortLUT(
-					Converters.convert2(
-							img,
-							new LabelMultisetLongConverter(),
-							UnsignedLongType::new));
-		} else {
-
-			// Compute LUT after crop
-			if (type == DataType.FLOAT64) {
-				convImg = convertDouble(img);
-			} else if (isRGB && type == DataType.UINT32) {
-				convImg = convertToRGB(img);
-			} else if ( type == DataType.INT32 || type == DataType.UINT32 ||
-					    type == DataType.INT64 || type == DataType.UINT64) {
-				convImg = convertToUShortLUT(img);
+		try {
+			if (isLabelMultiset) {
+
+				// why is this cast necessary?
+				convImg = (RandomAccessibleInterval<T>)convertToUShortLUT(
+						Converters.convert2(
+								img,
+								new LabelMultisetLongConverter(),
+								UnsignedLongType::new),
+						exec);
 			} else {
-				// this covers int8 -> uint8 and int16 -> uint16
-				convImg = img;
+
+				// Compute LUT after crop
+				if (type == DataType.FLOAT64) {
+					convImg = convertDouble(img);
+				} else if (isRGB && type == DataType.UINT32) {
+					convImg = convertToRGB(img);
+				} else if ( type == DataType.INT32 || type == DataType.UINT32 ||
+						    type == DataType.INT64 || type == DataType.UINT64) {
+					convImg = convertToUShortLUT(img, exec);
+				} else {
+					// this covers int8 -> uint8 and int16 -> uint16
+					convImg = img;
+				}
 			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new IOException(e);
 		}
 
+		// the axis permutation for views of other images over the dataset
+		final int[] p = axisPermutation;
+		final UnaryOperator<RandomAccessibleInterval<LongType>> permutation = p == null ? null
+				: x -> AxisUtils.permuteImageAndMetadataForImagePlus(p, x, datasetMetaArg).getA();
+
 		ImagePlus imp;
-		if (asVirtual) {
+		if (asVirtual && binning == null) {
 			imp = ImageJFunctions.wrap(convImg, d, exec);
+			if (prefetch)
+				VirtualStackPrefetcher.attach(imp, imgNorm, imgC, permutation);
+		} else if (binning == null && !isLabelMultiset && BlockwiseImagePlusLoader.isSupported(type, isRGB)) {
+
+			// copy decoded blocks directly into the image planes
+			try {
+				imp = BlockwiseImagePlusLoader.load(n5, d, imgC, permutation, isRGB, exec);
+			} catch (InterruptedException | ExecutionException e) {
+				throw new IOException(e);
+			}
 		} else {
 			final ImagePlusImg<T, ?> ipImg = new ImagePlusImgFactory<>(convImg.getType()).create(convImg);
 			LoopBuilder.setImages(convImg, ipImg)
@@ -586,6 +800,8 @@ public class N5Importer implements PlugIn {
 			imp = ipImg.getImagePlus();
 		}
 
+		// the metadata describes the dimensions of the dataset, not of the binned image
+		final int[] binnedDimensions = imp.getDimensions();
 		if (ipMeta != null) {
 			try {
 				ipMeta.writeMetadata((M)datasetMeta, imp);
@@ -594,6 +810,9 @@ public class N5Importer implements PlugIn {
 			}
 		}
 
+		if (binning != null && img.numDimensions() == 5)
+			imp.setDimensions(binnedDimensions[2], binnedDimensions[3], binnedDimensions[4]);
+
 		if (cropInterval != null) {
 			imp.getCalibration().xOrigin -= cropInterval.min(0);
 			imp.getCalibration().yOrigin -= cropInterval.min(1);
@@ -602,9 +821,45 @@ public class N5Importer implements PlugIn {
 				imp.getCalibration().zOrigin -= cropInterval.min(2);
 		}
 
+		if (binning != null)
+			calibrateBinned(imp, binning, sourceInterval, permutation);
+
 		return imp;
 	}
 
+	/**
+	 * Scales the calibration of a binned image, such that each binned pixel
+	 * is at the center of the pixels it is binned from.
+	 */
+	private static void calibrateBinned(final ImagePlus imp, final BlockBinning binning, final Interval source,
+			final UnaryOperator<RandomAccessibleInterval<LongType>> permutation) {
+
+		// the dataset dimensions of the x, y, and z axes of the image
+		final int[] s;
+		if (permutation == null)
+			s = new int[]{0, 1, -1, source.numDimensions() > 2 ? 2 : -1};
+		else
+			s = BlockwiseImagePlusLoader.sourceDimensions(
+					permutation.apply(BlockwiseImagePlusLoader.probe(source)), source);
+
+		final Calibration cal = imp.getCalibration();
+		if (s[0] >= 0) {
+			final long f = binning.factor(s[0], source);
+			cal.pixelWidth *= f;
+			cal.xOrigin = (cal.xOrigin - (f - 1) / 2.0) / f;
+		}
+		if (s.length > 1 && s[1] >= 0) {
+			final long f = binning.factor(s[1], source);
+			cal.pixelHeight *= f;
+			cal.yOrigin = (cal.yOrigin - (f - 1) / 2.0) / f;
+		}
+		if (s.length > 3 && s[3] >= 0) {
+			final long f = binning.factor(s[3], source);
+			cal.pixelDepth *= f;
+			cal.zOrigin = (cal.zOrigin - (f - 1) / 2.0) / f;
+		}
+	}
+
 	public static RandomAccessibleInterval<FloatType> convertDouble(
 			final RandomAccessibleInterval<DoubleType> img) {
 
@@ -632,6 +887,35 @@ public class N5Importer implements PlugIn {
 				new UnsignedShortType());
 	}
 
+	/**
+	 * Converts to {@link UnsignedShortType} with a look-up-table of the
+	 * unique values of the image, collected in parallel.
+	 *
+	 * @param <T>
+	 *            the image type
+	 * @param img
+	 *            the image
+	 * @param exec
+	 *            the executor service, or null to collect the values on the
+	 *            calling thread
+	 * @return the converted image
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             reading the image failed
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public static <T extends NumericType<T> & NativeType<T>> RandomAccessibleInterval<UnsignedShortType> convertToUShortLUT(
+			final RandomAccessibleInterval<T> img, final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		return Converters.convert(
+				img,
+				exec == null
+						? new UnsignedShortLUTConverter(Views.flatIterable(img))
+						: new UnsignedShortLUTConverter((RandomAccessibleInterval)img, exec),
+				new UnsignedShortType());
+	}
+
 	private static Interval processCropInterval(final RandomAccessibleInterval<?> img, final Interval cropInterval) {
 
 		assert img.numDimensions() == cropInterval.numDimensions();
@@ -753,6 +1037,22 @@ public class N5Importer implements PlugIn {
 
 	public static ImagePlus open(final N5Reader n5, final String dataset, final boolean show) {
 
+		N5DatasetMetadata targetMetadata = null;
+		try {
+			targetMetadata = DatasetMetadataResolver.resolve(n5, dataset);
+		} catch (final N5Exception e) {
+			// fall back to discovering the whole container below
+		}
+
+		if (targetMetadata != null) {
+			try {
+				return open(n5, N5URI.from(n5.getURI().toString(), dataset, null).toString(), targetMetadata, show);
+			} catch (URISyntaxException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+
 		final N5TreeNode node = N5DatasetDiscoverer.discover(n5);
 		final Optional<N5TreeNode> requestedNodeOpt = node.getDescendant(N5URI.normalizeGroupPath(dataset));
 		if (requestedNodeOpt.isPresent()) {
@@ -873,6 +1173,22 @@ public class N5Importer implements PlugIn {
 
 	public static ImagePlus openVirtual(final N5Reader n5, final String dataset, final boolean show) {
 
+		N5DatasetMetadata targetMetadata = null;
+		try {
+			targetMetadata = DatasetMetadataResolver.resolve(n5, dataset);
+		} catch (final N5Exception e) {
+			// fall back to discovering the whole container below
+		}
+
+		if (targetMetadata != null) {
+			try {
+				return openVirtual(n5, N5URI.from(n5.getURI().toString(), dataset, null).toString(), targetMetadata, show);
+			} catch (URISyntaxException e) {
+				e.printStackTrace();
+				return null;
+			}
+		}
+
 		final N5TreeNode node = N5DatasetDiscoverer.discover(n5);
 		final Optional<N5TreeNode> requestedNodeOpt = node.getDescendant(N5URI.normalizeGroupPath(dataset));
 		if (requestedNodeOpt.isPresent()) {
@@ -976,58 +1292,188 @@ public class N5Importer implements PlugIn {
 			final boolean show,
 			final Map<Class<?>, ImageplusMetadata<?>> impMetaWriterTypes) {
 
+		return process(n5, rootPathArg, exec, datasetMetadataList, asVirtual, cropInterval, show, impMetaWriterTypes, null,
+				null);
+	}
+
+	/*
+	 * Read one or more N5 dataset into ImagePlus object(s), binned while their
+	 * blocks are read if a binning is given, or as virtual images in another
+	 * axis order if one is given, and show them, if requested.
+	 */
+	public static List<ImagePlus> process(final N5Reader n5,
+			final String rootPathArg,
+			final ExecutorService exec,
+			final List<N5DatasetMetadata> datasetMetadataList,
+			final boolean asVirtual,
+			final Interval cropInterval,
+			final boolean show,
+			final Map<Class<?>, ImageplusMetadata<?>> impMetaWriterTypes,
+			final BlockBinning binning,
+			final String axisOrder) {
+
 		// determine if the root path contains a query
 		final String rootPath = rootPathArg;
 		final ArrayList<ImagePlus> imgList = new ArrayList<>();
-		for (final N5DatasetMetadata datasetMeta : datasetMetadataList) {
-			// is this check necessary?
-			if (datasetMeta == null)
-				continue;
 
-			final String d = normalPathName(datasetMeta.getPath(), n5.getGroupSeparator());
-			try {
-			
-				final StorageFormat fmt = StorageFormat.guessStorageFromUri(URI.create(rootPathArg));
-				final String fmtPrefix = fmt == null ? "" : fmt.toString().toLowerCase() + "://";
-
-				final String n5Url = fmtPrefix + N5URI.from(n5.getURI().toString(), d, null).toString();
-				final ImageplusMetadata<?> impMeta = impMetaWriterTypes.get(datasetMeta.getClass());
-
-				// datasetMeta must have absolute path
-				ImagePlus imp;
-				imp = N5Importer.read(n5, exec, datasetMeta, cropInterval, asVirtual, impMeta);
-
-				FileInfo fileInfo = imp.getOriginalFileInfo();
-				if (fileInfo == null)
-					fileInfo = new FileInfo();
-
-				fileInfo.url = n5Url;
-				imp.setFileInfo(fileInfo);
-
-				record(n5Url, asVirtual, cropInterval);
-				imgList.add(imp);
-				if (show) {
-					// set the display min and max with a heuristic:
-					// set the min of the range to the min value and the max range to the 98th
-					// percentile
-					final ImageStatistics stats = ImageStatistics.getStatistics(imp.getProcessor());
-					final double[] hist = stats.histogram();
-					toCumulativeHistogram(hist);
-					final double min = stats.histMin;
-					final double max = min + (stats.binSize * nthPercentile(hist, 0.98));
-					imp.setDisplayRange(min, max);
-					imp.show();
-				}
+		// is this check necessary?
+		final List<N5DatasetMetadata> selected = datasetMetadataList.stream()
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+
+		// read datasets concurrently, but add and show them in the order of the selection
+		try (final DatasetImportScheduler scheduler = DatasetImportScheduler.create(selected.size())) {
+
+			final List<Future<ImagePlus>> reads = new ArrayList<>();
+			for (final N5DatasetMetadata datasetMeta : selected) {
+
+				// binnings such as projections may read another level, with axes of its own
+				final N5DatasetMetadata sourceMeta = binning == null ? datasetMeta : binning.sourceLevel(n5, datasetMeta);
+				final BlockBinning sourceBinning = binning == null ? null : binning.forDataset(sourceMeta);
+				final Interval sourceCrop = binning == null ? cropInterval : binning.sourceInterval(datasetMeta, sourceMeta, cropInterval);
+				final ImageplusMetadata<?> impMeta = impMetaWriterTypes.get(sourceMeta.getClass());
+				reads.add(scheduler.submit(
+						asVirtual && binning == null ? 0 : importBytes(sourceMeta, sourceCrop, sourceBinning),
+						() -> {
+							// datasetMeta must have absolute path
+							if (asVirtual && cropInterval == null && binning == null && axisOrder != null)
+								return ReslicedVirtualStack.open(n5, exec, datasetMeta, axisOrder, impMeta);
+							else if (asVirtual && cropInterval == null && binning == null && PlaybackVirtualStack.isEnabled()
+									&& PlaybackVirtualStack.isSupported(datasetMeta))
+								return PlaybackVirtualStack.open(n5, exec, datasetMeta, impMeta);
+							else if (asVirtual && cropInterval == null && binning == null && MultiscaleVirtualStack.isEnabled())
+								return MultiscaleVirtualStack.open(n5, exec, datasetMeta, impMeta);
+							else
+								return N5Importer.read(n5, exec, sourceMeta, sourceCrop, asVirtual, impMeta, true, sourceBinning);
+						}));
+			}
+
+			for (int i = 0; i < selected.size(); i++) {
+
+				final N5DatasetMetadata datasetMeta = selected.get(i);
+				final String d = normalPathName(datasetMeta.getPath(), n5.getGroupSeparator());
+				try {
 
-			} catch (final IOException e) {
-				IJ.error("failed to read n5");
-			} catch (final URISyntaxException e1) {
-				IJ.error("unable to parse url: " + rootPath + "?" + d );
+					final StorageFormat fmt = StorageFormat.guessStorageFromUri(URI.create(rootPathArg));
+					final String fmtPrefix = fmt == null ? "" : fmt.toString().toLowerCase() + "://";
+
+					final String n5Url = fmtPrefix + N5URI.from(n5.getURI().toString(), d, null).toString();
+
+					final ImagePlus imp = awaitImport(reads.get(i));
+
+					FileInfo fileInfo = imp.getOriginalFileInfo();
+					if (fileInfo == null)
+						fileInfo = new FileInfo();
+
+					fileInfo.url = n5Url;
+					imp.setFileInfo(fileInfo);
+
+					record(n5Url, asVirtual, cropInterval, binning, asVirtual ? axisOrder : null);
+					imgList.add(imp);
+					if (show) {
+						// set the display min and max with a heuristic:
+						// set the min of the range to the min value and the max range to the 98th
+						// percentile, of blocks sampled over the whole dataset if possible
+						final double[] range = cropInterval == null && binning == null
+								? estimateDisplayRange(n5, datasetMeta, exec)
+								: null;
+						if (range != null)
+							imp.setDisplayRange(range[0], range[1]);
+						else {
+							final ImageStatistics stats = ImageStatistics.getStatistics(imp.getProcessor());
+							final double[] hist = stats.histogram();
+							toCumulativeHistogram(hist);
+							final double min = stats.histMin;
+							final double max = min + (stats.binSize * nthPercentile(hist, 0.98));
+							imp.setDisplayRange(min, max);
+						}
+						imp.show();
+					}
+
+				} catch (final IOException e) {
+					IJ.error("failed to read n5");
+				} catch (final URISyntaxException e1) {
+					IJ.error("unable to parse url: " + rootPath + "?" + d );
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+					reads.forEach(f -> f.cancel(true));
+					break;
+				}
 			}
 		}
 		return imgList;
 	}
 
+	/**
+	 * Waits for an import, unwrapping the exceptions of the read.
+	 */
+	private static ImagePlus awaitImport(final Future<ImagePlus> read) throws IOException, InterruptedException {
+
+		try {
+			return read.get();
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException)cause;
+			else if (cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			else if (cause instanceof Error)
+				throw (Error)cause;
+
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * @return the number of bytes of the image of a non-virtual import
+	 */
+	private static long importBytes(final N5DatasetMetadata datasetMeta, final Interval cropInterval,
+			final BlockBinning binning) {
+
+		if (cropInterval == null && binning == null)
+			return PyramidLevelSelector.imagePlusBytes(datasetMeta);
+
+		final Interval interval = cropInterval == null
+				? new FinalInterval(datasetMeta.getAttributes().getDimensions())
+				: cropInterval;
+		final long numElements = binning == null
+				? Intervals.numElements(interval)
+				: Intervals.numElements(binning.binnedDimensions(interval));
+
+		final DataType dataType = datasetMeta.getAttributes().getDataType();
+		return numElements * BlockGrid.imagePlusBytesPerElement(
+				binning == null ? dataType : binning.binnedType(dataType));
+	}
+
+	/**
+	 * @return the display range from the stored statistics of the dataset, or
+	 *         estimated from sampled blocks, or null if it can not be
+	 *         estimated
+	 */
+	private static double[] estimateDisplayRange(final N5Reader n5, final N5DatasetMetadata datasetMeta,
+			final ExecutorService exec) {
+
+		if (!DisplayRangeEstimator.isSupported(datasetMeta.getAttributes().getDataType()))
+			return null;
+
+		final DatasetStatistics stats = DatasetStatistics.load(n5, datasetMeta.getPath());
+		if (stats != null)
+			return stats.displayRange(0.98);
+
+		if (exec == null)
+			return null;
+
+		try {
+			return DisplayRangeEstimator.getDefault().estimate(n5, datasetMeta, exec);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (final ExecutionException | N5Exception e) {
+			System.err.println("Could not estimate the display range of " + datasetMeta.getPath());
+			return null;
+		}
+	}
+
 	/**
 	 * Turns a histogram into a cumulative histogram, in place and returns the total sum.
 	 * <p>
@@ -1078,7 +1524,8 @@ public class N5Importer implements PlugIn {
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	public void process() {
 
-		process(n5, selectionDialog.getN5RootPath(), exec, (List)selection.metadata, asVirtual, cropInterval, impMetaWriterTypes);
+		process(n5, selectionDialog.getN5RootPath(), exec, (List)selection.metadata, asVirtual, cropInterval, true,
+				impMetaWriterTypes, binning, axisOrder);
 	}
 
 	public List<ImagePlus> process(final String n5FullPath, final boolean asVirtual) {
@@ -1090,6 +1537,12 @@ public class N5Importer implements PlugIn {
 		return process( n5FullPath, asVirtual, cropInterval, true );
 	}
 
+	/**
+	 * @param parseAllMetadata
+	 *            whether to discover and parse the whole container, or only
+	 *            the dataset and its multiscales group, see
+	 *            {@link DatasetMetadataResolver}
+	 */
 	public List<ImagePlus> process(final String n5FullPath, final boolean asVirtual, final Interval cropInterval,
 			final boolean parseAllMetadata) {
 
@@ -1107,7 +1560,9 @@ public class N5Importer implements PlugIn {
 				metadata = (N5DatasetMetadata)root.getDescendant(dataset).get().getMetadata();
 			}
 			else {
-				metadata = (N5DatasetMetadata)discoverer.parse(dataset).getMetadata();
+				metadata = cropInterval == null
+						? resolveWithinBudget(n5, discoverer, dataset)
+						: DatasetMetadataResolver.resolve(n5, discoverer, dataset);
 			}
 		} catch (final Exception e) {
 			System.err.println("Could not parse metadata.");
@@ -1115,7 +1570,7 @@ public class N5Importer implements PlugIn {
 		}
 
 		final List<ImagePlus> result = process(n5, dataset, exec, Collections.singletonList(metadata),
-				asVirtual, cropInterval, show, getImagePlusMetadataWriterMap());
+				asVirtual, cropInterval, show, getImagePlusMetadataWriterMap(), binning, axisOrder);
 
 		n5.close();
 
@@ -1130,7 +1585,7 @@ public class N5Importer implements PlugIn {
 			return null;
 
 		final List<ImagePlus> result = process(n5, dataset, exec, metadataList,
-				asVirtual, cropInterval, show, getImagePlusMetadataWriterMap());
+				asVirtual, cropInterval, show, getImagePlusMetadataWriterMap(), binning, axisOrder);
 
 		n5.close();
 		return result;
@@ -1176,7 +1631,7 @@ public class N5Importer implements PlugIn {
 				rootPath = n5UriOrPath;
 			}
 
-			final N5Factory factory = new N5Factory().cacheAttributes(true);
+			final N5Factory factory = DiskBlockCache.factory().cacheAttributes(true);
 			try {
 				n5 = factory.openReader(rootPath);
 			} catch (final N5Exception e) {
@@ -0,0 +1,115 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import ij.IJ;
+import ij.ImagePlus;
+import picocli.CommandLine;
+import picocli.CommandLine.Option;
+
+/**
+ * Command line entry point for {@link N5ScalePyramidExporter}.
+ * <p>
+ * Large exports can be split across processes (or machines sharing storage)
+ * by a single run with {@code --prepare} that removes existing data and
+ * creates the datasets, then one process per partition with
+ * {@code --partition i/n}, followed by a single run with {@code --finalize}
+ * that writes the metadata:
+ *
+ * <pre>
+ * java ... N5ScalePyramidExportCli -i img.tif -o out.zarr -d data --prepare
+ * java ... N5ScalePyramidExportCli -i img.tif -o out.zarr -d data --partition 0/2
+ * java ... N5ScalePyramidExportCli -i img.tif -o out.zarr -d data --partition 1/2
+ * java ... N5ScalePyramidExportCli -i img.tif -o out.zarr -d data --finalize
+ * </pre>
+ *
+ * All runs must use the same options.
+ */
+public class N5ScalePyramidExportCli implements Callable<Void> {
+
+	@Option( names = { "-i", "--input" }, required = true, description = "Image file readable by ImageJ." )
+	private String input;
+
+	@Option( names = { "-o", "--output" }, required = true, description = "Output container root." )
+	private String containerRoot;
+
+	@Option( names = { "-d", "--dataset" }, required = false, description = "Output dataset." )
+	private String dataset = "";
+
+	@Option( names = { "-f", "--format" }, required = false, description = "Storage format (Auto, HDF5, N5, ZarrV2, ZarrV3)." )
+	private String storageFormat = N5ScalePyramidExporter.AUTO_FORMAT;
+
+	@Option( names = { "-c", "--chunk-size" }, required = false, description = "Chunk size." )
+	private String chunkSize = "64";
+
+	@Option( names = { "-s", "--shard-size" }, required = false, description = "Shard size, in chunks." )
+	private String shardSize = "";
+
+	@Option( names = { "-p", "--pyramid" }, required = false, description = "Create a multiscale pyramid if possible." )
+	private boolean pyramid = false;
+
+	@Option( names = { "--downsample" }, required = false, description = "Downsampling method (Sample, Average)." )
+	private String downsampleMethod = N5ScalePyramidExporter.DOWN_SAMPLE;
+
+	@Option( names = { "-m", "--metadata" }, required = false, description = "Metadata style." )
+	private String metadataStyle = N5Importer.MetadataOmeZarrV05Key;
+
+	@Option( names = { "-z", "--compression" }, required = false, description = "Compression." )
+	private String compression = N5ScalePyramidExporter.GZIP_COMPRESSION;
+
+	@Option( names = { "-t", "--threads" }, required = false, description = "Number of threads." )
+	private int nThreads = 1;
+
+	@Option( names = { "--overwrite" }, required = false, description = "Overwrite existing data (only for unpartitioned and prepare runs)." )
+	private boolean overwrite = false;
+
+	@Option( names = { "--async-remove" }, required = false, description = "When overwriting, move existing data aside and delete it in the background." )
+	private boolean asyncRemove = false;
+
+	@Option( names = { "--partition" }, required = false, description = "Write only partition i of n, given as i/n." )
+	private String partition;
+
+	@Option( names = { "--prepare" }, required = false, description = "Remove existing data and create the datasets before partitioned runs." )
+	private boolean prepareOnly = false;
+
+	@Option( names = { "--finalize" }, required = false, description = "Write metadata after partitioned runs." )
+	private boolean finalizeOnly = false;
+
+	@Override
+	public Void call() throws Exception {
+
+		if ((partition != null ? 1 : 0) + (prepareOnly ? 1 : 0) + (finalizeOnly ? 1 : 0) > 1)
+			throw new IllegalArgumentException("only one of --prepare, --partition, and --finalize can be used");
+
+		final ImagePlus imp = IJ.openImage(input);
+		if (imp == null)
+			throw new IllegalArgumentException("Could not open image: " + input);
+
+		final N5ScalePyramidExporter exporter = new N5ScalePyramidExporter();
+		exporter.setOptions(imp, containerRoot, dataset, storageFormat, chunkSize, shardSize, pyramid,
+				downsampleMethod, metadataStyle, compression);
+		exporter.setNumThreads(nThreads);
+		exporter.setOverwrite(overwrite);
+		if (asyncRemove)
+			exporter.setRemovalStrategy(DatasetRemover.Strategy.ASYNC);
+
+		if (partition != null)
+			exporter.setPartition(ExportPartition.parse(partition));
+
+		exporter.setPrepareOnly(prepareOnly);
+		exporter.setFinalizeOnly(finalizeOnly);
+		exporter.run();
+
+		// background deletions run on daemon threads that exit with the jvm
+		DatasetRemover.awaitPendingRemovals(Long.MAX_VALUE, TimeUnit.DAYS);
+		return null;
+	}
+
+	public static void main(String[] args) {
+
+		final int exitCode = new CommandLine(new N5ScalePyramidExportCli()).execute(args);
+		System.exit(exitCode);
+	}
+
+}
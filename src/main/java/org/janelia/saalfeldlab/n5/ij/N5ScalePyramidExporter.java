@@ -9,6 +9,9 @@ import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -17,10 +20,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import javax.annotation.Nullable;
 import javax.swing.Icon;
@@ -37,6 +42,8 @@ import javax.swing.UIManager;
 import net.imglib2.algorithm.blocks.BlockAlgoUtils;
 import net.imglib2.algorithm.blocks.BlockSupplier;
 import net.imglib2.algorithm.blocks.downsample.Downsample;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Util;
 import net.imglib2.util.ValuePair;
@@ -44,9 +51,11 @@ import net.imglib2.view.fluent.RandomAccessibleIntervalView.Extension;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 
 import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.GzipCompression;
 import org.janelia.saalfeldlab.n5.Lz4Compression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
 import org.janelia.saalfeldlab.n5.N5Exception;
 import org.janelia.saalfeldlab.n5.N5Reader;
 import org.janelia.saalfeldlab.n5.N5URI;
@@ -54,7 +63,9 @@ import org.janelia.saalfeldlab.n5.N5Writer;
 import org.janelia.saalfeldlab.n5.RawCompression;
 import org.janelia.saalfeldlab.n5.XzCompression;
 import org.janelia.saalfeldlab.n5.blosc.BloscCompression;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Writer;
 import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.metadata.MetadataTransaction;
 import org.janelia.saalfeldlab.n5.metadata.imagej.CosemToImagePlus;
 import org.janelia.saalfeldlab.n5.metadata.imagej.ImagePlusLegacyMetadataParser;
 import org.janelia.saalfeldlab.n5.metadata.imagej.ImagePlusMetadataTemplate;
@@ -270,6 +281,13 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 			required = false)
 	private boolean overwrite = false;
 
+	@Parameter(
+			label = "Dry run",
+			description = "When selected, nothing is written. Instead, reports the datasets, blocks, and objects\n"
+					+ "that would be written, with estimates of the stored size and time to write.",
+			required = false)
+	private boolean dryRun = false;
+
 	private boolean overwriteSet = false;
 
 	private int[][] baseBlockSizes;
@@ -284,6 +302,8 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 
 	private long[] currentAbsoluteDownsampling;
 
+	private MetadataTransaction metadataTransaction;
+
 	private double[] baseResolution;
 
 	private double[] currentResolution;
@@ -314,6 +334,21 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 
 	private Function<int[], int[]> blockSizeUpdate = null;
 
+	private ExportPartition partition = null;
+
+	private boolean finalizeOnly = false;
+
+	private boolean prepareOnly = false;
+
+	private DatasetRemover.Strategy removalStrategy = DatasetRemover.Strategy.SYNCHRONOUS;
+
+	private int numPlanSamples = 4;
+
+	// non-null while planning a dry run
+	private ExportPlan exportPlan = null;
+
+	private N5Writer planSampleWriter = null;
+
 	public N5ScalePyramidExporter() {
 
 		styles = new HashMap<String, N5MetadataWriter<?>>();
@@ -451,6 +486,90 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 		this.nThreads = nThreads;
 	}
 
+	/**
+	 * If true, {@link #run()} reports an {@link ExportPlan} instead of writing.
+	 *
+	 * @param dryRun
+	 *            whether to only plan the export
+	 * @see #plan()
+	 */
+	public void setDryRun(final boolean dryRun) {
+
+		this.dryRun = dryRun;
+	}
+
+	/**
+	 * Sets the number of blocks per scale level that are compressed to
+	 * estimate the stored size and write time of a dry run.
+	 *
+	 * @param numPlanSamples
+	 *            number of sample blocks per scale level
+	 */
+	public void setNumPlanSamples(final int numPlanSamples) {
+
+		this.numPlanSamples = numPlanSamples;
+	}
+
+	/**
+	 * Sets how existing data is removed when overwriting. The default is
+	 * {@link DatasetRemover.Strategy#SYNCHRONOUS};
+	 * {@link DatasetRemover.Strategy#ASYNC} moves the data out of the way and
+	 * deletes it in the background.
+	 *
+	 * @param removalStrategy
+	 *            the removal strategy
+	 */
+	public void setRemovalStrategy(final DatasetRemover.Strategy removalStrategy) {
+
+		this.removalStrategy = removalStrategy;
+	}
+
+	/**
+	 * Restricts this exporter to writing the blocks (or shards) assigned to the
+	 * given partition. Several processes, each with a different partition of
+	 * the same count, together write every block exactly once.
+	 * <p>
+	 * Partitioned exports never remove existing data, do not create datasets,
+	 * and do not write metadata. Before the partitions, run the exporter once
+	 * with {@link #setPrepareOnly(boolean)} to remove existing data and create
+	 * the datasets. After all partitions complete, run it once more with
+	 * {@link #setFinalizeOnly(boolean)} to write the metadata.
+	 *
+	 * @param partition
+	 *            the partition, or null to write everything
+	 */
+	public void setPartition(final ExportPartition partition) {
+
+		this.partition = partition;
+	}
+
+	/**
+	 * If true, remove existing data as configured for overwriting, and create
+	 * every dataset of the export, but write no blocks or metadata. This is
+	 * the first step of a partitioned export, run once before the partitions.
+	 *
+	 * @param prepareOnly
+	 *            whether to only remove existing data and create the datasets
+	 * @see #setPartition(ExportPartition)
+	 */
+	public void setPrepareOnly(final boolean prepareOnly) {
+
+		this.prepareOnly = prepareOnly;
+	}
+
+	/**
+	 * If true, write all metadata for the export, but no blocks. This is the
+	 * final step of a partitioned export.
+	 *
+	 * @param finalizeOnly
+	 *            whether to write only metadata
+	 * @see #setPartition(ExportPartition)
+	 */
+	public void setFinalizeOnly(final boolean finalizeOnly) {
+
+		this.finalizeOnly = finalizeOnly;
+	}
+
 	/**
 	 * Set the custom metadata mapper to use programmatically.
 	 *
@@ -562,113 +681,190 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 			metadataStyle = metadataStyleArg.equals(N5Importer.MetadataOmeZarrKey) && (n5 instanceof ZarrV3KeyValueWriter) ?
 					N5Importer.MetadataOmeZarrV05Key : metadataStyle;
 
-			if( !promptOverwriteAndDelete(n5, dataset, doGroupExistsWarning))
+			if (isPartitioned() && n5 instanceof N5HDF5Writer) {
+				final String message = "Partitioned export is not supported for HDF5, which allows only one writer per file.";
+				if (ui != null)
+					ui.showDialog(message, MessageType.ERROR_MESSAGE);
+				else
+					System.err.println(message);
 				return;
+			}
 
-			// get the image to save
-			final RandomAccessibleInterval<T> baseImg = getBaseImage();
+			// partitions run concurrently and are finalized separately, so only
+			// the prepare step that runs before them may remove existing data
+			if (!isPartitioned() && !promptOverwriteAndDelete(n5, dataset, doGroupExistsWarning))
+				return;
 
-			M baseMetadata = setupMetadata();
-			M currentChannelMetadata = copyMetadata(baseMetadata);
-			M currentMetadata;
+			exportChannels(n5, compression);
+		}
+	}
 
-			// TODO should have better behavior for chunk size parsing when splitting channels this might be done
-			final int totalNumDims = baseImg.numDimensions();
-			baseResolution = new double[totalNumDims];
-			fillResolution(baseMetadata, baseResolution);
+	/**
+	 * Plans the export with the current options without writing to the
+	 * container. A few blocks of every scale level are compressed and written
+	 * to a temporary directory to estimate the compression ratio and
+	 * throughput.
+	 *
+	 * @return the plan
+	 * @throws IOException
+	 *             if the temporary directory could not be created
+	 * @throws InterruptedException
+	 *             if interrupted
+	 * @throws ExecutionException
+	 *             if sampling failed
+	 */
+	public ExportPlan plan() throws IOException, InterruptedException, ExecutionException {
 
-			// channel splitting may modify currentBlockSize, currentAbsoluteDownsampling, and channelMetadata
-			final List<RandomAccessibleInterval<T>> channelImgs = splitChannels(currentChannelMetadata, baseImg);
-			for (int c = 0; c < channelImgs.size(); c++) {
+		if (metadataStyle == null)
+			metadataStyle = metadataStyleArg;
 
-				currentMetadata = copyMetadata((M)currentChannelMetadata);
-				final String channelDataset = getChannelDatasetName(c);
-				RandomAccessibleInterval<T> currentChannelImg = channelImgs.get(c);
+		final Path sampleDir = Files.createTempDirectory("n5-ij-export-plan-");
+		exportPlan = new ExportPlan(compressionArg, nThreads);
+		planSampleWriter = new N5FSWriter(sampleDir.toString());
+		try {
+			exportChannels(null, getCompression());
+			return exportPlan;
+		} finally {
+			planSampleWriter.remove();
+			planSampleWriter.close();
+			planSampleWriter = null;
+			exportPlan = null;
+		}
+	}
 
-				final boolean computeScales = createPyramidIfPossible && metadataSupportsScales();
-				validateParameters(currentChannelImg.dimensionsAsLongArray(), baseResolution);
+	/**
+	 * Writes every channel and scale level of the image, or when planning a
+	 * dry run, records them in the export plan without writing anything. The
+	 * writer is null during a dry run.
+	 */
+	private void exportChannels(
+			final N5Writer n5,
+			final Compression compression) throws IOException, InterruptedException, ExecutionException {
 
-				final int nd = currentChannelImg.numDimensions();
+		// the metadata of all channels and scale levels is buffered, and every
+		// group and dataset is written once at the end, only if all data were
+		// written
+		metadataTransaction = n5 == null ? null : new MetadataTransaction(n5);
+		try {
+			exportChannelsAndScales(n5, compression);
+			if (metadataTransaction != null)
+				metadataTransaction.commit();
+		} finally {
+			if (metadataTransaction != null)
+				metadataTransaction.discard();
+
+			metadataTransaction = null;
+		}
+	}
 
-				// every channel starts at the original scale level reset
-				// downsampling factors to 1
-				currentAbsoluteDownsampling = new long[nd];
-				Arrays.fill(currentAbsoluteDownsampling, 1);
+	@SuppressWarnings("unchecked")
+	private <T extends RealType<T> & NativeType<T>, M extends N5DatasetMetadata, N extends SpatialMetadataGroup<?>> void exportChannelsAndScales(
+			final N5Writer n5,
+			final Compression compression) throws IOException, InterruptedException, ExecutionException {
 
-				currentResolution = new double[nd];
-				Arrays.fill(currentResolution, 1.0); // Initialize with default
-				System.arraycopy(baseResolution, 0, currentResolution, 0, nd);
+		// get the image to save
+		final RandomAccessibleInterval<T> baseImg = getBaseImage();
 
-				currentBlockSize = new int[nd];
-				if (baseShardSizes != null) {
-					currentShardSize = new int[nd];
-				}
+		M baseMetadata = setupMetadata();
+		M currentChannelMetadata = copyMetadata(baseMetadata);
+		M currentMetadata;
 
-				final N multiscaleMetadata = initializeMultiscaleMetadata((M)currentMetadata, channelDataset);
-				currentTranslation = new double[nd];
+		// TODO should have better behavior for chunk size parsing when splitting channels this might be done
+		final int totalNumDims = baseImg.numDimensions();
+		baseResolution = new double[totalNumDims];
+		fillResolution(baseMetadata, baseResolution);
 
-				// write scale levels
-				final int numScales = computeScales ? baseBlockSizes.length : 1;
-				boolean anyScalesWritten = false;
-				for (int s = 0; s < numScales; s++) {
+		// channel splitting may modify currentBlockSize, currentAbsoluteDownsampling, and channelMetadata
+		final List<RandomAccessibleInterval<T>> channelImgs = splitChannels(currentChannelMetadata, baseImg);
+		for (int c = 0; c < channelImgs.size(); c++) {
 
-					System.arraycopy(baseBlockSizes[s], 0, currentBlockSize, 0, nd);
-					if (baseShardSizes != null) {
-						System.arraycopy(baseShardSizes[s], 0, currentShardSize, 0, nd);
-					}
+			currentMetadata = copyMetadata((M)currentChannelMetadata);
+			final String channelDataset = getChannelDatasetName(c);
+			RandomAccessibleInterval<T> currentChannelImg = channelImgs.get(c);
 
-					final String dset = getScaleDatasetName(c, s);
-					// downsample when relevant
-					long[] relativeFactors = new long[nd];
-					Arrays.fill(relativeFactors, 1);
+			final boolean computeScales = createPyramidIfPossible && metadataSupportsScales();
+			validateParameters(currentChannelImg.dimensionsAsLongArray(), baseResolution);
 
-					if (s > 0) {
-						relativeFactors = getRelativeDownsampleFactors(currentMetadata, currentChannelImg, s, currentAbsoluteDownsampling);
+			final int nd = currentChannelImg.numDimensions();
 
-						// update absolute downsampling factors
-						for (int i = 0; i < nd; i++)
-							currentAbsoluteDownsampling[i] *= relativeFactors[i];
+			// every channel starts at the original scale level reset
+			// downsampling factors to 1
+			currentAbsoluteDownsampling = new long[nd];
+			Arrays.fill(currentAbsoluteDownsampling, 1);
 
-						currentChannelImg = downsampleMethod((RandomAccessibleInterval<T>)getPreviousScaleImage(c, s), relativeFactors);
+			currentResolution = new double[nd];
+			Arrays.fill(currentResolution, 1.0); // Initialize with default
+			System.arraycopy(baseResolution, 0, currentResolution, 0, nd);
 
-						// update resolution
-						Arrays.setAll(currentResolution, i -> {
-							return currentAbsoluteDownsampling[i] * baseResolution[i];
-						});
+			currentBlockSize = new int[nd];
+			if (baseShardSizes != null) {
+				currentShardSize = new int[nd];
+			}
 
-						if (downsampleMethod.equals(DOWN_AVERAGE))
-							Arrays.setAll(currentTranslation, i -> {
-								if (currentAbsoluteDownsampling[i] > 1)
-									return baseResolution[i] * (0.5 * currentAbsoluteDownsampling[i] - 0.5);
-								else
-									return 0.0;
-							});
-					}
+			final N multiscaleMetadata = initializeMultiscaleMetadata((M)currentMetadata, channelDataset);
+			currentTranslation = new double[nd];
+
+			// write scale levels
+			final int numScales = computeScales ? baseBlockSizes.length : 1;
+			boolean anyScalesWritten = false;
+			for (int s = 0; s < numScales; s++) {
 
-					// update metadata to reflect this scale level, returns new metadata instance
-					currentMetadata = (M)metadataForThisScale(dset, currentMetadata, downsampleMethod,
-							baseResolution,
-							currentAbsoluteDownsampling,
-							currentResolution,
-							currentTranslation);
-
-					// write to the appropriate dataset
-					// if dataset exists and not overwritten, don't write metadata
-					if (!write(currentChannelImg, n5, dset, compression, currentMetadata))
-						continue;
-
-					storeScaleReference(c, s, currentChannelImg);
-					updateMultiscaleMetadata(multiscaleMetadata, currentMetadata);
-					anyScalesWritten = true;
+				System.arraycopy(baseBlockSizes[s], 0, currentBlockSize, 0, nd);
+				if (baseShardSizes != null) {
+					System.arraycopy(baseShardSizes[s], 0, currentShardSize, 0, nd);
 				}
 
-				if (anyScalesWritten)
-					writeMetadata(
-							// this returns null when not multiscale
-							finalizeMultiscaleMetadata(channelDataset, multiscaleMetadata),
-							n5,
-							channelDataset);
+				final String dset = getScaleDatasetName(c, s);
+				// downsample when relevant
+				long[] relativeFactors = new long[nd];
+				Arrays.fill(relativeFactors, 1);
+
+				if (s > 0) {
+					relativeFactors = getRelativeDownsampleFactors(currentMetadata, currentChannelImg, s, currentAbsoluteDownsampling);
+
+					// update absolute downsampling factors
+					for (int i = 0; i < nd; i++)
+						currentAbsoluteDownsampling[i] *= relativeFactors[i];
+
+					currentChannelImg = downsampleMethod((RandomAccessibleInterval<T>)getPreviousScaleImage(c, s), relativeFactors);
+
+					// update resolution
+					Arrays.setAll(currentResolution, i -> {
+						return currentAbsoluteDownsampling[i] * baseResolution[i];
+					});
+
+					if (downsampleMethod.equals(DOWN_AVERAGE))
+						Arrays.setAll(currentTranslation, i -> {
+							if (currentAbsoluteDownsampling[i] > 1)
+								return baseResolution[i] * (0.5 * currentAbsoluteDownsampling[i] - 0.5);
+							else
+								return 0.0;
+						});
+				}
+
+				// update metadata to reflect this scale level, returns new metadata instance
+				currentMetadata = (M)metadataForThisScale(dset, currentMetadata, downsampleMethod,
+						baseResolution,
+						currentAbsoluteDownsampling,
+						currentResolution,
+						currentTranslation);
+
+				// write to the appropriate dataset
+				// if dataset exists and not overwritten, don't write metadata
+				if (!write(currentChannelImg, n5, dset, compression, currentMetadata))
+					continue;
+
+				storeScaleReference(c, s, currentChannelImg);
+				updateMultiscaleMetadata(multiscaleMetadata, currentMetadata);
+				anyScalesWritten = true;
 			}
+
+			if (anyScalesWritten && writesMetadata())
+				writeMetadata(
+						// this returns null when not multiscale
+						finalizeMultiscaleMetadata(channelDataset, multiscaleMetadata),
+						n5,
+						channelDataset);
 		}
 	}
 
@@ -1334,7 +1530,11 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 
 			if (writer != null)
 				try {
-					((N5MetadataWriter<M>)writer).writeMetadata(metadata, n5, dataset);
+					// buffered until the end of the export, if one is running
+					if (metadataTransaction != null)
+						metadataTransaction.writeMetadata((N5MetadataWriter<M>)writer, metadata, dataset);
+					else
+						((N5MetadataWriter<M>)writer).writeMetadata(metadata, n5, dataset);
 				} catch (final Exception e) {
 					e.printStackTrace();
 				}
@@ -1467,7 +1667,7 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 				overwrite = promptOverwriteWarning(n5, containerRoot, deleteThisPathToOverwrite);
 
 			if (overwrite) {
-				n5.remove(deleteThisPathToOverwrite);
+				DatasetRemover.remove(n5, deleteThisPathToOverwrite, removalStrategy, nThreads);
 			} else {
 				return false; // data set exists but not overwriting
 		}
@@ -1542,15 +1742,80 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 		
 		final RandomAccessibleInterval<T> image = finalizeScaleImage(imageArg);
 
+		if (exportPlan != null) {
+			planScaleLevel(image, dataset, compression);
+			return true;
+		}
+
 		// Here, either allowing overwrite, or not allowing, but the dataset does not exist.
 		// use threadPool even for single threaded execution for progress monitoring
 		threadPool = new ThreadPoolExecutor(nThreads, nThreads, 0L, TimeUnit.MILLISECONDS,
 				new LinkedBlockingQueue<Runnable>());
 		progressMonitor(threadPool);
 
+		// the prepare step of a partitioned export created the dataset, and its
+		// partitions only read the format-specific attributes to encode blocks
+		final DatasetAttributes attributes = isPartitioned()
+				? n5.getDatasetAttributes(dataset)
+				: n5.createDataset(dataset, createDatasetAttributes(image, n5, compression, metadata));
+		if (attributes == null) {
+			threadPool.shutdown();
+			throw new IllegalStateException("Dataset " + dataset + " does not exist, "
+					+ "run the prepare step of the partitioned export first.");
+		}
+
+		if (prepareOnly || finalizeOnly) {
+			// blocks are written by the partitioned exports
+		} else if (partition != null) {
+			writePartition(image, n5, dataset, attributes);
+		} else if (writesRgbBaseLevel(attributes)) {
+			// packed blocks directly from the int[] planes, hdf5 writes must be serialized
+			RgbBlockWriter.writePacked(this.image, n5, dataset, attributes, n5 instanceof N5HDF5Writer ? null : threadPool);
+		} else if (currentShardSize == null && n5 instanceof N5HDF5Writer && nThreads > 1) {
+			// hdf5 writes must be serialized, but blocks can be computed in parallel
+			SerializedBlockWriter.write(image, n5, dataset, attributes, threadPool, 4 * nThreads);
+		} else if (currentShardSize == null) {
+			N5Utils.saveBlock(image, n5, dataset, attributes);
+		} else {
+			final int nd = image.numDimensions();
+			N5Utils.saveBlock(image, n5, dataset, attributes, new long[nd], threadPool);
+		}
+
+		threadPool.shutdown();
+
+		// virtual imports must not keep showing the blocks of earlier data
+		SharedBlockCache.getInstance().invalidate(n5.getURI().toString(), dataset);
+
+		if (writesMetadata())
+			writeMetadata(metadata, n5, dataset);
+
+		return true;
+	}
+
+	/**
+	 * The unsharded base level of an RGB image is written by
+	 * {@link RgbBlockWriter}, without per-pixel converters, if its dataset has
+	 * the dimensions of the image, i.e. its axes are not reordered or padded by
+	 * the metadata.
+	 */
+	private boolean writesRgbBaseLevel(final DatasetAttributes attributes) {
+
+		return image.getType() == ImagePlus.COLOR_RGB
+				&& currentShardSize == null
+				&& !isOmeZarr()
+				&& Arrays.stream(currentAbsoluteDownsampling).allMatch(f -> f == 1)
+				&& attributes.getDataType() == DataType.UINT32
+				&& Arrays.equals(attributes.getDimensions(), RgbBlockWriter.dimensions(image));
+	}
+
+	private <T extends RealType<T> & NativeType<T>, M extends N5Metadata> DatasetAttributes createDatasetAttributes(
+			final RandomAccessibleInterval<T> image,
+			final N5Writer n5,
+			final Compression compression,
+			final M metadata) {
+
 		if( currentShardSize == null ) {
 
-			DatasetAttributes datasetAttributes;
 			if (n5 instanceof ZarrV3KeyValueWriter) {
 
 				final String[] dimensionNames = Arrays.stream(getAxes(metadata, image.numDimensions()))
@@ -1559,21 +1824,18 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 
 				// make a special purpose ZarrV3DatasetAttributes
 				// so that the dimension names are set correctly
-				datasetAttributes = ZarrV3DatasetAttributes.builder(image.dimensionsAsLongArray(), N5Utils.dataType(image.getType()))
+				return ZarrV3DatasetAttributes.builder(image.dimensionsAsLongArray(), N5Utils.dataType(image.getType()))
 						.blockSize(currentBlockSize)
 						.dimensionNames(dimensionNames)
 						.compression(compression)
 						.build();
 
 			} else {
-				datasetAttributes = new DatasetAttributes(image.dimensionsAsLongArray(),
+				return new DatasetAttributes(image.dimensionsAsLongArray(),
 						currentBlockSize,
 						N5Utils.dataType(image.getType()),
 						compression);
 			}
-
-			final DatasetAttributes attrs = n5.createDataset(dataset, datasetAttributes);
-			N5Utils.saveBlock(image, n5, dataset, attrs);
 		}
 		else {
 
@@ -1581,23 +1843,102 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 					.map(ax -> ax.getName())
 					.toArray(n -> new String[n]);
 
-			final ZarrV3DatasetAttributes datasetAttributes = ZarrV3DatasetAttributes
+			return ZarrV3DatasetAttributes
 					.builder( image.dimensionsAsLongArray(), N5Utils.dataType(image.getType()))
 					.blockSize(currentShardSize)
 					.chunkSize(currentBlockSize)
 					.dimensionNames(dimensionNames)
 					.compression(compression)
 					.build();
+		}
+	}
 
-			final int nd = image.numDimensions();
-			final DatasetAttributes attributes = n5.createDataset(dataset, datasetAttributes);
-			N5Utils.saveBlock(image, n5, dataset, attributes, new long[nd], threadPool);
+	/**
+	 * Writes the blocks, or shards if sharded, of the image that are assigned
+	 * to this exporter's partition.
+	 */
+	private <T extends RealType<T> & NativeType<T>> void writePartition(
+			final RandomAccessibleInterval<T> image,
+			final N5Writer n5,
+			final String dataset,
+			final DatasetAttributes attributes) throws InterruptedException, ExecutionException {
+
+		final int[] unitSize = currentShardSize == null ? currentBlockSize : currentShardSize;
+		final long[] dimensions = image.dimensionsAsLongArray();
+
+		final List<Future<?>> futures = new ArrayList<>();
+		for (final long[] gridPosition : partition.gridPositions(dimensions, unitSize)) {
+
+			final Interval unit = ExportPartition.unitInterval(gridPosition, dimensions, unitSize);
+			futures.add(threadPool.submit(() -> {
+				N5Utils.saveBlock(Views.zeroMin(Views.interval(image, unit)), n5, dataset, attributes, gridPosition);
+			}));
 		}
 
-		threadPool.shutdown();
-		writeMetadata(metadata, n5, dataset);
+		for (final Future<?> f : futures)
+			f.get();
+	}
 
-		return true;
+	/**
+	 * Adds the given scale level to the export plan, and writes a few sample
+	 * blocks, evenly spread over the block grid, to measure their stored size
+	 * and the time to compute and write them.
+	 */
+	private <T extends RealType<T> & NativeType<T>> void planScaleLevel(
+			final RandomAccessibleInterval<T> image,
+			final String dataset,
+			final Compression compression) {
+
+		final long[] dimensions = image.dimensionsAsLongArray();
+		final DataType dataType = N5Utils.dataType(image.getType());
+		final ExportPlan.ScaleLevel level = new ExportPlan.ScaleLevel(dataset, dimensions, currentBlockSize, currentShardSize, dataType);
+		exportPlan.add(level);
+
+		final long numBlocks = level.getNumBlocks();
+		final int numSamples = (int)Math.min(numPlanSamples, numBlocks);
+		if (numSamples <= 0)
+			return;
+
+		final String sampleDataset = "sample-" + exportPlan.getLevels().size();
+		final DatasetAttributes attributes = new DatasetAttributes(dimensions, currentBlockSize, dataType, compression);
+		planSampleWriter.createDataset(sampleDataset, attributes);
+
+		final long[] gridDims = BlockGrid.gridDimensions(dimensions, currentBlockSize);
+		final long[] gridPosition = new long[dimensions.length];
+		long rawBytes = 0;
+		final long start = System.nanoTime();
+		for (int i = 0; i < numSamples; i++) {
+
+			// the middle of each of numSamples equal ranges of the flat block index
+			final long index = (2 * i + 1) * numBlocks / (2 * numSamples);
+			IntervalIndexer.indexToPosition(index, gridDims, gridPosition);
+
+			final Interval block = ExportPartition.unitInterval(gridPosition, dimensions, currentBlockSize);
+			N5Utils.saveBlock(Views.zeroMin(Views.interval(image, block)), planSampleWriter, sampleDataset, attributes, gridPosition);
+			rawBytes += Intervals.numElements(block) * BlockGrid.bytesPerElement(dataType);
+		}
+		final long nanos = System.nanoTime() - start;
+
+		final Path sampleDir = Paths.get(planSampleWriter.getURI()).resolve(sampleDataset);
+		try (final Stream<Path> files = Files.walk(sampleDir)) {
+			final long storedBytes = files
+					.filter(f -> Files.isRegularFile(f) && !f.getFileName().toString().equals("attributes.json"))
+					.mapToLong(f -> f.toFile().length())
+					.sum();
+			level.addSample(rawBytes, storedBytes, nanos);
+		} catch (final IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private boolean writesMetadata() {
+
+		return partition == null && exportPlan == null && !prepareOnly;
+	}
+
+	private boolean isPartitioned() {
+
+		return partition != null || finalizeOnly;
 	}
 	
 	
@@ -1758,13 +2099,25 @@ public class N5ScalePyramidExporter extends ContextCommand implements WindowList
 		} else {
 
 			try {
-				processMultiscale();
+				if (dryRun)
+					showPlan(plan());
+				else
+					processMultiscale();
 			} catch (IOException | InterruptedException | ExecutionException e) {
 				e.printStackTrace();
 			}
 		}
 	}
 
+	private void showPlan(final ExportPlan plan) {
+
+		final String report = plan.toString();
+		if (ui != null)
+			ui.showDialog(report, "Export plan", MessageType.INFORMATION_MESSAGE);
+		else
+			System.out.println(report);
+	}
+
 	private void progressMonitor(final ThreadPoolExecutor exec) {
 
 		new Thread() {
@@ -0,0 +1,366 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.metadata.imagej.ImageplusMetadata;
+import org.janelia.saalfeldlab.n5.metadata.imagej.N5ImagePlusMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+
+import ij.CompositeImage;
+import ij.IJ;
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.Prefs;
+import ij.VirtualStack;
+import ij.plugin.Animator;
+import ij.process.ImageProcessor;
+
+/**
+ * A virtual stack for playing back time series, that decodes the planes of
+ * the upcoming frames in the background.
+ * <p>
+ * Every plane that is shown schedules the planes at the same slice (and the
+ * same channel, or all channels of composite images) of the next frames in
+ * the direction of playback, looping at the ends as ImageJ's animation does.
+ * The planes are read by background workers into a bounded buffer, from
+ * which they are taken when shown. As many frames are buffered as are shown
+ * in {@value #SECONDS_PREF} seconds at the animation rate of the image, but
+ * at most as many planes as fit into {@value #BUFFER_BYTES_PREF} bytes.
+ * Jumps to another slice or frame drop all buffered frames that are no longer
+ * ahead, and cancel their reads.
+ * <p>
+ * The importer opens virtual time series with this stack if enabled by the
+ * ImageJ preference {@value #ENABLED_PREF}, see {@link #setEnabled(boolean)}.
+ */
+public class PlaybackVirtualStack extends VirtualStack implements ImageListener {
+
+	public static final String ENABLED_PREF = "n5.virtual.playback";
+
+	public static final String SECONDS_PREF = "n5.playback.seconds";
+
+	public static final double DEFAULT_SECONDS = 2;
+
+	public static final String BUFFER_BYTES_PREF = "n5.playback.bufferBytes";
+
+	public static final long DEFAULT_BUFFER_BYTES = 256L * 1024 * 1024;
+
+	private static ExecutorService sharedExecutor;
+
+	private final ImageStack planes;
+
+	private final int nChannels;
+
+	private final int nSlices;
+
+	private final int nFrames;
+
+	private final int numFrames;
+
+	private final ExecutorService workers;
+
+	private final Map<Integer, Future<ImageProcessor>> buffer = new LinkedHashMap<>();
+
+	private ImagePlus imp;
+
+	private int lastFrame = -1;
+
+	private int direction = 1;
+
+	/**
+	 * @param planes
+	 *            the stack to read planes from
+	 * @param nChannels
+	 *            the number of channels
+	 * @param nSlices
+	 *            the number of slices
+	 * @param nFrames
+	 *            the number of frames
+	 * @param workers
+	 *            the executor service that reads the planes ahead
+	 */
+	public PlaybackVirtualStack(final ImageStack planes, final int nChannels, final int nSlices, final int nFrames,
+			final ExecutorService workers) {
+
+		this(planes, nChannels, nSlices, nFrames, 0, workers);
+	}
+
+	/**
+	 * @param numFrames
+	 *            the number of frames to buffer, zero for the number shown in
+	 *            {@value #SECONDS_PREF} seconds at the animation rate
+	 */
+	PlaybackVirtualStack(final ImageStack planes, final int nChannels, final int nSlices, final int nFrames,
+			final int numFrames, final ExecutorService workers) {
+
+		super(planes.getWidth(), planes.getHeight(), null, null);
+
+		if (nChannels * nSlices * nFrames != planes.getSize())
+			throw new IllegalArgumentException("The dimensions do not match the size of the stack");
+
+		this.planes = planes;
+		this.nChannels = nChannels;
+		this.nSlices = nSlices;
+		this.nFrames = nFrames;
+		this.numFrames = numFrames;
+		this.workers = workers;
+	}
+
+	/**
+	 * @return whether the importer opens virtual time series for playback,
+	 *         read from the ImageJ preference {@value #ENABLED_PREF}
+	 */
+	public static boolean isEnabled() {
+
+		return Prefs.get(ENABLED_PREF, false);
+	}
+
+	/**
+	 * @param enabled
+	 *            whether the importer opens virtual time series for playback
+	 */
+	public static void setEnabled(final boolean enabled) {
+
+		Prefs.set(ENABLED_PREF, enabled);
+	}
+
+	/**
+	 * @param datasetMeta
+	 *            the metadata of the dataset
+	 * @return true if the dataset is a time series that can be opened for
+	 *         playback
+	 */
+	public static boolean isSupported(final N5DatasetMetadata datasetMeta) {
+
+		final DataType type = datasetMeta.getAttributes().getDataType();
+		final boolean isRGB = (datasetMeta instanceof N5ImagePlusMetadata) &&
+				((N5ImagePlusMetadata)datasetMeta).getType() == ImagePlus.COLOR_RGB;
+		if (!BlockwiseImagePlusLoader.isSupported(type, isRGB))
+			return false;
+
+		final int[] axes = ReslicedVirtualStack.imagePlusAxes(datasetMeta);
+		return axes[0] >= 0 && axes[1] >= 0 && axes[4] >= 0 && datasetMeta.getAttributes().getDimensions()[axes[4]] > 1;
+	}
+
+	/**
+	 * Opens a time series as a virtual image for playback, with the planes
+	 * read blockwise as by {@link ReslicedVirtualStack}.
+	 *
+	 * @param <M>
+	 *            the metadata type
+	 * @param n5
+	 *            the reader
+	 * @param exec
+	 *            the executor service that reads the blocks of a plane
+	 * @param datasetMeta
+	 *            the metadata of the dataset
+	 * @param ipMeta
+	 *            the metadata writer for the image, may be null
+	 * @return the image
+	 * @throws IOException
+	 *             io
+	 */
+	public static <M extends N5DatasetMetadata> ImagePlus open(
+			final N5Reader n5,
+			final ExecutorService exec,
+			final N5DatasetMetadata datasetMeta,
+			final ImageplusMetadata<M> ipMeta) throws IOException {
+
+		final ImagePlus imp = ReslicedVirtualStack.open(n5, exec, datasetMeta, "XYZ", ipMeta);
+		imp.setTitle(datasetMeta.getPath());
+		if (!(imp.getStack() instanceof ReslicedVirtualStack) || imp.getNFrames() <= 1)
+			return imp;
+
+		final PlaybackVirtualStack stack = new PlaybackVirtualStack(imp.getStack(),
+				imp.getNChannels(), imp.getNSlices(), imp.getNFrames(), getSharedExecutor());
+		imp.setStack(stack, imp.getNChannels(), imp.getNSlices(), imp.getNFrames());
+		imp.setOpenAsHyperStack(true);
+		stack.attach(imp);
+		return imp;
+	}
+
+	private static synchronized ExecutorService getSharedExecutor() {
+
+		if (sharedExecutor == null) {
+			sharedExecutor = Executors.newFixedThreadPool(
+					Math.max(2, Runtime.getRuntime().availableProcessors() / 4),
+					r -> {
+						final Thread t = new Thread(r, "n5-playback");
+						t.setDaemon(true);
+						return t;
+					});
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * Buffers for an image, with its animation rate and channel display, until
+	 * it is closed.
+	 *
+	 * @param imp
+	 *            the image that shows this stack
+	 */
+	public synchronized void attach(final ImagePlus imp) {
+
+		this.imp = imp;
+		ImagePlus.addImageListener(this);
+	}
+
+	/**
+	 * Drops all buffered planes and cancels their reads.
+	 */
+	public synchronized void clear() {
+
+		for (final Future<ImageProcessor> f : buffer.values())
+			f.cancel(true);
+
+		buffer.clear();
+	}
+
+	/**
+	 * @return the stack indexes (starting at 1) of the buffered planes,
+	 *         including those that are still read, nearest first
+	 */
+	public synchronized Set<Integer> getBuffered() {
+
+		return new LinkedHashSet<>(buffer.keySet());
+	}
+
+	@Override
+	public void imageOpened(final ImagePlus opened) {}
+
+	@Override
+	public void imageClosed(final ImagePlus closed) {
+
+		if (closed == imp) {
+			ImagePlus.removeImageListener(this);
+			clear();
+		}
+	}
+
+	@Override
+	public void imageUpdated(final ImagePlus updated) {}
+
+	@Override
+	public ImageProcessor getProcessor(final int n) {
+
+		final Future<ImageProcessor> buffered;
+		synchronized (this) {
+			buffered = buffer.remove(n);
+			schedule(n);
+		}
+
+		if (buffered != null) {
+			try {
+				return buffered.get();
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (final ExecutionException e) {
+				// read it again below, and fail on this thread
+			}
+		}
+		return planes.getProcessor(n);
+	}
+
+	/**
+	 * Buffers the planes ahead of a plane in the direction of playback, and
+	 * drops all others.
+	 */
+	private void schedule(final int n) {
+
+		final int i = n - 1;
+		final int c = i % nChannels + 1;
+		final int z = (i / nChannels) % nSlices + 1;
+		final int t = i / (nChannels * nSlices) + 1;
+
+		// steps by one frame, looping at the ends, keep or set the direction
+		if (lastFrame > 0 && t != lastFrame) {
+			if (t == lastFrame + 1 || (lastFrame == nFrames && t == 1))
+				direction = 1;
+			else if (t == lastFrame - 1 || (lastFrame == 1 && t == nFrames))
+				direction = -1;
+		}
+		lastFrame = t;
+
+		// composite images show all channels at once
+		final boolean allChannels = imp != null && imp.isComposite() && ((CompositeImage)imp).getMode() == IJ.COMPOSITE;
+		final int cMin = allChannels ? 1 : c;
+		final int cMax = allChannels ? nChannels : c;
+
+		final List<Integer> wanted = new ArrayList<>();
+		final int frames = Math.min(nFrames - 1, bufferedFrames(cMax - cMin + 1));
+		for (int k = 1; k <= frames; k++) {
+			final int frame = Math.floorMod(t - 1 + k * direction, nFrames) + 1;
+			for (int ch = cMin; ch <= cMax; ch++)
+				wanted.add(ch + (z - 1) * nChannels + (frame - 1) * nChannels * nSlices);
+		}
+
+		final Iterator<Map.Entry<Integer, Future<ImageProcessor>>> it = buffer.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<Integer, Future<ImageProcessor>> e = it.next();
+			if (!wanted.contains(e.getKey())) {
+				e.getValue().cancel(true);
+				it.remove();
+			}
+		}
+
+		for (final Integer index : wanted)
+			if (!buffer.containsKey(index))
+				buffer.put(index, workers.submit(() -> planes.getProcessor(index)));
+	}
+
+	/**
+	 * @return the number of frames to buffer, for the given number of planes
+	 *         per frame
+	 */
+	private int bufferedFrames(final int planesPerFrame) {
+
+		int frames = numFrames;
+		if (frames <= 0) {
+			final double fps = imp != null && imp.getCalibration().fps > 0
+					? imp.getCalibration().fps
+					: Animator.getFrameRate();
+			frames = (int)Math.ceil(fps * Prefs.get(SECONDS_PREF, DEFAULT_SECONDS));
+		}
+
+		final int bitDepth = planes.getBitDepth();
+		final long planeBytes = (long)getWidth() * getHeight() * (bitDepth == 24 ? 4 : Math.max(1, bitDepth / 8));
+		final long maxPlanes = (long)Prefs.get(BUFFER_BYTES_PREF, DEFAULT_BUFFER_BYTES) / planeBytes;
+		return (int)Math.max(1, Math.min(frames, maxPlanes / planesPerFrame));
+	}
+
+	@Override
+	public int getSize() {
+
+		return planes.getSize();
+	}
+
+	@Override
+	public String getSliceLabel(final int n) {
+
+		return planes.getSliceLabel(n);
+	}
+
+	@Override
+	public int getBitDepth() {
+
+		return planes.getBitDepth();
+	}
+
+	@Override
+	public void setPixels(final Object pixels, final int n) {}
+
+}
@@ -0,0 +1,229 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.axes.AxisMetadata;
+
+import ij.IJ;
+
+/**
+ * Picks the finest level of a multiscale pyramid that fits a memory budget.
+ * <p>
+ * The levels are the datasets directly below the multiscale group, as parsed
+ * with their metadata (OME-NGFF, COSEM, N5Viewer, ...), so the chosen level
+ * carries its own transform and the calibration of the opened image is that
+ * of the level. The budget is a maximum number of bytes of the opened
+ * {@link ij.ImagePlus}, a maximum width and height, or both.
+ */
+public class PyramidLevelSelector {
+
+	private final long maxBytes;
+
+	private final long maxXY;
+
+	/**
+	 * @param maxBytes
+	 *            the maximum size in bytes, zero or less for no limit
+	 * @param maxXY
+	 *            the maximum width and height, zero or less for no limit
+	 */
+	public PyramidLevelSelector(final long maxBytes, final long maxXY) {
+
+		this.maxBytes = maxBytes;
+		this.maxXY = maxXY;
+	}
+
+	/**
+	 * @return true if any limit is set
+	 */
+	public boolean isLimited() {
+
+		return maxBytes > 0 || maxXY > 0;
+	}
+
+	/**
+	 * Selects the finest level that fits the budget, or the coarsest level if
+	 * none fits.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param discoverer
+	 *            the discoverer holding the metadata parsers to use
+	 * @param path
+	 *            a multiscale group, or one of its levels
+	 * @return the metadata of the selected level, or null if the path is
+	 *         neither a dataset nor a multiscale group
+	 */
+	public N5DatasetMetadata select(final N5Reader n5, final N5DatasetDiscoverer discoverer, final String path) {
+
+		final List<N5DatasetMetadata> levels = levels(n5, discoverer, path);
+		if (levels.isEmpty())
+			return null;
+
+		for (final N5DatasetMetadata level : levels)
+			if (fits(level))
+				return level;
+
+		final N5DatasetMetadata coarsest = levels.get(levels.size() - 1);
+		IJ.log("No scale level of " + path + " fits the budget, opening " + coarsest.getPath());
+		return coarsest;
+	}
+
+	/**
+	 * @param level
+	 *            the metadata of a dataset
+	 * @return true if the dataset fits the budget
+	 */
+	public boolean fits(final N5DatasetMetadata level) {
+
+		if (maxBytes > 0 && imagePlusBytes(level) > maxBytes)
+			return false;
+
+		if (maxXY > 0) {
+			final long[] dimensions = level.getAttributes().getDimensions();
+			for (final int d : xyDimensions(level))
+				if (dimensions[d] > maxXY)
+					return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the levels of the multiscale group containing the path, finest
+	 * first. If the path is a dataset that is not part of a multiscale group,
+	 * only its own metadata is returned.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param discoverer
+	 *            the discoverer holding the metadata parsers to use
+	 * @param path
+	 *            a multiscale group, or one of its levels
+	 * @return the levels
+	 */
+	public static List<N5DatasetMetadata> levels(final N5Reader n5, final N5DatasetDiscoverer discoverer, final String path) {
+
+		final String normalPath = N5URI.normalizeGroupPath(path);
+		final String group = multiscaleGroup(n5, normalPath);
+
+		final List<N5DatasetMetadata> levels = new ArrayList<>();
+		if (group != null) {
+			final N5TreeNode node;
+			try {
+				node = discoverer.discoverAndParseRecursive(group);
+			} catch (final Exception e) {
+				throw new N5Exception("Failure to parse " + group, e);
+			}
+
+			for (final N5TreeNode child : node.childrenList())
+				if (child.getMetadata() instanceof N5DatasetMetadata)
+					levels.add((N5DatasetMetadata)child.getMetadata());
+		}
+
+		if (levels.isEmpty()) {
+			final N5DatasetMetadata meta = DatasetMetadataResolver.resolve(n5, discoverer, normalPath);
+			if (meta != null)
+				levels.add(meta);
+		}
+
+		levels.sort(Comparator.comparingLong((N5DatasetMetadata x) -> numElements(x)).reversed());
+		return levels;
+	}
+
+	/**
+	 * Returns the group holding the levels for a path: the path itself if it
+	 * is a group, the nearest group with multiscales metadata, or the parent of
+	 * a dataset named like a scale level ("s0", "s1", ...).
+	 */
+	private static String multiscaleGroup(final N5Reader n5, final String path) {
+
+		if (!n5.datasetExists(path))
+			return path;
+
+		final String multiscales = DatasetMetadataResolver.nearestMultiscalesGroup(n5, path);
+		if (multiscales != null)
+			return multiscales;
+
+		final int i = path.lastIndexOf('/');
+		final String name = path.substring(i + 1);
+		if (name.matches("s\\d+"))
+			return i < 0 ? "" : path.substring(0, i);
+
+		return null;
+	}
+
+	/**
+	 * @param meta
+	 *            the dataset metadata
+	 * @return the number of bytes of the {@link ij.ImagePlus} the importer
+	 *         creates for the dataset
+	 */
+	public static long imagePlusBytes(final N5DatasetMetadata meta) {
+
+		return numElements(meta) * BlockGrid.imagePlusBytesPerElement(meta.getAttributes().getDataType());
+	}
+
+	private static long numElements(final N5DatasetMetadata meta) {
+
+		long n = 1;
+		for (final long d : meta.getAttributes().getDimensions())
+			n *= d;
+
+		return n;
+	}
+
+	/**
+	 * @return the dimensions of the x and y axes, the first two dimensions
+	 *         if the metadata has no axes named x and y
+	 */
+	static int[] xyDimensions(final N5DatasetMetadata meta) {
+
+		final int nd = meta.getAttributes().getNumDimensions();
+		if (meta instanceof AxisMetadata) {
+			final String[] labels = ((AxisMetadata)meta).getAxisLabels();
+			int x = -1;
+			int y = -1;
+			for (int d = 0; labels != null && d < labels.length && d < nd; d++) {
+				final String label = labels[d].toLowerCase(Locale.ROOT);
+				if (label.equals("x"))
+					x = d;
+				else if (label.equals("y"))
+					y = d;
+			}
+			if (x >= 0 && y >= 0)
+				return new int[]{x, y};
+		}
+		return nd < 2 ? new int[]{0} : new int[]{0, 1};
+	}
+
+	/**
+	 * Parses a size in bytes with an optional unit suffix (k, M, G, T, in
+	 * powers of 1024).
+	 *
+	 * @param size
+	 *            the size, for example "512M"
+	 * @return the size in bytes, or 0 if empty
+	 */
+	public static long parseBytes(final String size) {
+
+		final String s = size == null ? "" : size.trim();
+		if (s.isEmpty())
+			return 0;
+
+		final String units = "KMGT";
+		final char last = Character.toUpperCase(s.charAt(s.length() - 1));
+		final int exponent = units.indexOf(last) + 1;
+		final String number = exponent > 0 ? s.substring(0, s.length() - 1) : s;
+		return (long)(Double.parseDouble(number) * Math.pow(1024, exponent));
+	}
+
+}
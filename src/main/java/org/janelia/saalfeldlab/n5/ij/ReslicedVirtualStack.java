@@ -0,0 +1,408 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.metadata.imagej.ImageplusMetadata;
+import org.janelia.saalfeldlab.n5.metadata.imagej.N5ImagePlusMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.axes.AxisMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.axes.AxisUtils;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.Prefs;
+import ij.VirtualStack;
+import ij.measure.Calibration;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.imageplus.ImagePlusImg;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.view.Views;
+
+/**
+ * A virtual stack that shows a dataset in another axis order, for example
+ * with the Z axis of the default import as the Y axis of the planes (XZY).
+ * <p>
+ * Every plane is assembled from only the blocks it intersects, copied as by
+ * {@link BlockwiseImagePlusLoader}, so showing an XZ plane reads a row of
+ * blocks rather than all XY planes it crosses. Decoded blocks are kept in a
+ * small cache, such that the neighboring planes that cross the same blocks
+ * do not read them again. The cache holds at least the blocks of one plane
+ * and otherwise as many blocks as fit into the number of bytes of the ImageJ
+ * preference {@value #CACHE_BYTES_PREF}.
+ * <p>
+ * Channels and frames are kept. Only data types that are shown without a
+ * global conversion are supported, see
+ * {@link BlockwiseImagePlusLoader#isSupported(DataType, boolean)}.
+ */
+public class ReslicedVirtualStack extends VirtualStack {
+
+	public static final String CACHE_BYTES_PREF = "n5.reslice.cacheBytes";
+
+	public static final long DEFAULT_CACHE_BYTES = 256L * 1024 * 1024;
+
+	private static final String SPATIAL_AXES = "XYZ";
+
+	private final N5Reader n5;
+
+	private final String dataset;
+
+	private final DatasetAttributes attributes;
+
+	private final boolean isRGB;
+
+	private final int[] axes;
+
+	private final int nChannels;
+
+	private final int nSlices;
+
+	private final int nFrames;
+
+	private final ExecutorService exec;
+
+	private final LinkedHashMap<String, DataBlock<?>> blocks;
+
+	private final int maxBlocks;
+
+	/**
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @param isRGB
+	 *            whether a uint32 dataset holds packed RGB values
+	 * @param axes
+	 *            the dataset dimensions of the x and y axes of the planes, and
+	 *            of the channels, slices, and frames, -1 for none
+	 * @param exec
+	 *            the executor service that reads the blocks of a plane, may be
+	 *            null to read them on the calling thread
+	 */
+	public ReslicedVirtualStack(
+			final N5Reader n5,
+			final String dataset,
+			final boolean isRGB,
+			final int[] axes,
+			final ExecutorService exec) {
+
+		this(n5, dataset, n5.getDatasetAttributes(dataset), isRGB, axes, exec);
+	}
+
+	private ReslicedVirtualStack(
+			final N5Reader n5,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final boolean isRGB,
+			final int[] axes,
+			final ExecutorService exec) {
+
+		super(dimension(attributes, axes[0]), dimension(attributes, axes[1]), null, null);
+
+		this.n5 = n5;
+		this.dataset = dataset;
+		this.attributes = attributes;
+		this.isRGB = isRGB;
+		this.axes = axes;
+		this.exec = exec;
+
+		if (!BlockwiseImagePlusLoader.isSupported(attributes.getDataType(), isRGB))
+			throw new IllegalArgumentException("Cannot reslice datasets of type " + attributes.getDataType());
+
+		if (axes[0] < 0 || axes[1] < 0)
+			throw new IllegalArgumentException("The planes need two dataset dimensions");
+
+		final long[] dimensions = attributes.getDimensions();
+		for (int d = 0; d < dimensions.length; d++)
+			if (dimensions[d] > 1 && indexOf(axes, d) < 0)
+				throw new IllegalArgumentException("Dataset dimension " + d + " is not part of the image");
+
+		nChannels = dimension(attributes, axes[2]);
+		nSlices = dimension(attributes, axes[3]);
+		nFrames = dimension(attributes, axes[4]);
+
+		// at least the blocks of one plane, so that the next plane can reuse them
+		final int[] blockSize = attributes.getBlockSize();
+		final long blocksPerPlane = numBlocks(getWidth(), blockSize, axes[0]) * numBlocks(getHeight(), blockSize, axes[1]);
+		long blockBytes = BlockGrid.bytesPerElement(attributes.getDataType());
+		for (final int s : blockSize)
+			blockBytes *= s;
+
+		final long cacheBytes = (long)Prefs.get(CACHE_BYTES_PREF, DEFAULT_CACHE_BYTES);
+		maxBlocks = (int)Math.min(Integer.MAX_VALUE, Math.max(blocksPerPlane, cacheBytes / blockBytes));
+		blocks = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Opens a dataset as a virtual image in another axis order. Datasets
+	 * whose type is not supported are opened as by
+	 * {@link N5Importer#read(N5Reader, ExecutorService, N5DatasetMetadata, net.imglib2.Interval, boolean, ImageplusMetadata)}.
+	 *
+	 * @param <M>
+	 *            the metadata type
+	 * @param n5
+	 *            the reader
+	 * @param exec
+	 *            the executor service
+	 * @param datasetMeta
+	 *            the metadata of the dataset
+	 * @param axisOrder
+	 *            the order of the X, Y, and Z axes of the default import in
+	 *            the image, for example "XZY"
+	 * @param ipMeta
+	 *            the metadata writer for the image, may be null
+	 * @return the image
+	 * @throws IOException
+	 *             io
+	 */
+	@SuppressWarnings("unchecked")
+	public static <M extends N5DatasetMetadata> ImagePlus open(
+			final N5Reader n5,
+			final ExecutorService exec,
+			final N5DatasetMetadata datasetMeta,
+			final String axisOrder,
+			final ImageplusMetadata<M> ipMeta) throws IOException {
+
+		final int[] order = parseAxisOrder(axisOrder);
+		final String d = datasetMeta.getPath();
+		final DataType type = datasetMeta.getAttributes().getDataType();
+		final boolean isRGB = (datasetMeta instanceof N5ImagePlusMetadata) &&
+				((N5ImagePlusMetadata)datasetMeta).getType() == ImagePlus.COLOR_RGB;
+		if (!BlockwiseImagePlusLoader.isSupported(type, isRGB)) {
+			IJ.log("Can not reslice " + d + " of type " + type + ", opening it in the default axis order.");
+			return N5Importer.read(n5, exec, datasetMeta, null, true, ipMeta);
+		}
+
+		// the dataset dimensions of the axes x, y, c, z, t of the default import
+		final int[] imagePlusAxes = imagePlusAxes(datasetMeta);
+		final int[] spatial = new int[]{imagePlusAxes[0], imagePlusAxes[1], imagePlusAxes[3]};
+		final int[] axes = new int[]{
+				spatial[order[0]], spatial[order[1]], imagePlusAxes[2], spatial[order[2]], imagePlusAxes[4]};
+
+		final ReslicedVirtualStack stack = new ReslicedVirtualStack(n5, d, isRGB, axes, exec);
+		final ImagePlus imp = new ImagePlus(d + " " + axisOrder.toUpperCase(Locale.ROOT), stack);
+		imp.setDimensions(stack.nChannels, stack.nSlices, stack.nFrames);
+		if (stack.nChannels > 1 || stack.nFrames > 1)
+			imp.setOpenAsHyperStack(true);
+
+		// the calibration of the default import, with its axes reordered
+		final ImagePlus reference = new ImagePlus(d, new ByteProcessor(1, 1));
+		if (ipMeta != null) {
+			try {
+				ipMeta.writeMetadata((M)datasetMeta, reference);
+			} catch (final Exception e) {
+				System.err.println("Failed to convert metadata to Imageplus for " + d);
+			}
+		}
+		imp.setCalibration(reorder(reference.getCalibration(), order));
+
+		return imp;
+	}
+
+	/**
+	 * Parses an axis order.
+	 *
+	 * @param axisOrder
+	 *            a permutation of "XYZ", in any case
+	 * @return the indexes of the X (0), Y (1), and Z (2) axes in the order
+	 */
+	public static int[] parseAxisOrder(final String axisOrder) {
+
+		final String o = axisOrder == null ? "" : axisOrder.trim().toUpperCase(Locale.ROOT);
+		final int[] order = new int[3];
+		if (o.length() != 3)
+			throw new IllegalArgumentException("The axis order must be a permutation of XYZ: " + axisOrder);
+
+		for (int i = 0; i < 3; i++) {
+			order[i] = SPATIAL_AXES.indexOf(o.charAt(i));
+			if (order[i] < 0 || o.indexOf(o.charAt(i)) != i)
+				throw new IllegalArgumentException("The axis order must be a permutation of XYZ: " + axisOrder);
+		}
+		return order;
+	}
+
+	/**
+	 * @return the dataset dimensions of the axes x, y, c, z, t of the image
+	 *         the importer opens by default, -1 for none
+	 */
+	static int[] imagePlusAxes(final N5DatasetMetadata datasetMeta) {
+
+		final FinalInterval source = new FinalInterval(datasetMeta.getAttributes().getDimensions());
+		final int nd = source.numDimensions();
+		if (!(datasetMeta instanceof AxisMetadata))
+			return new int[]{0, nd > 1 ? 1 : -1, -1, nd > 2 ? 2 : -1, nd > 3 ? 3 : -1};
+
+		final int[] p = AxisUtils.findImagePlusPermutation((AxisMetadata)datasetMeta);
+		final RandomAccessibleInterval<LongType> probe = AxisUtils.permuteImageAndMetadataForImagePlus(
+				p, BlockwiseImagePlusLoader.probe(source), datasetMeta).getA();
+
+		final int[] s = BlockwiseImagePlusLoader.sourceDimensions(probe, source);
+		final int[] axes = new int[5];
+		Arrays.fill(axes, -1);
+		System.arraycopy(s, 0, axes, 0, Math.min(5, s.length));
+		return axes;
+	}
+
+	private static Calibration reorder(final Calibration cal, final int[] order) {
+
+		final double[] size = new double[]{cal.pixelWidth, cal.pixelHeight, cal.pixelDepth};
+		final double[] origin = new double[]{cal.xOrigin, cal.yOrigin, cal.zOrigin};
+		final String[] unit = new String[]{cal.getXUnit(), cal.getYUnit(), cal.getZUnit()};
+
+		final Calibration out = cal.copy();
+		out.pixelWidth = size[order[0]];
+		out.pixelHeight = size[order[1]];
+		out.pixelDepth = size[order[2]];
+		out.xOrigin = origin[order[0]];
+		out.yOrigin = origin[order[1]];
+		out.zOrigin = origin[order[2]];
+		out.setXUnit(unit[order[0]]);
+		out.setYUnit(unit[order[1]]);
+		out.setZUnit(unit[order[2]]);
+		return out;
+	}
+
+	@Override
+	public ImageProcessor getProcessor(final int n) {
+
+		final int i = n - 1;
+		final long[] position = new long[]{0, 0, i % nChannels, (i / nChannels) % nSlices, i / (nChannels * nSlices)};
+
+		// the plane in dataset coordinates
+		final int nd = attributes.getNumDimensions();
+		final long[] min = new long[nd];
+		final long[] max = new long[nd];
+		for (int a = 0; a < axes.length; a++) {
+			if (axes[a] >= 0) {
+				min[axes[a]] = position[a];
+				max[axes[a]] = position[a];
+			}
+		}
+		max[axes[0]] = getWidth() - 1;
+		max[axes[1]] = getHeight() - 1;
+
+		final ImagePlusImg<?, ?> img = BlockwiseImagePlusLoader.createImg(
+				BlockwiseImagePlusLoader.imagePlusType(attributes.getDataType(), isRGB),
+				new long[]{getWidth(), getHeight()});
+		try {
+			BlockwiseImagePlusLoader.copyBlocks(this::block, attributes, new FinalInterval(min, max), this::toPlane,
+					img, exec);
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ExecutionException e) {
+			throw new N5Exception("Could not read plane " + n + " of " + dataset, e.getCause());
+		}
+		return img.getImagePlus().getProcessor();
+	}
+
+	@Override
+	public int getSize() {
+
+		return nChannels * nSlices * nFrames;
+	}
+
+	@Override
+	public String getSliceLabel(final int n) {
+
+		return null;
+	}
+
+	@Override
+	public int getBitDepth() {
+
+		switch (attributes.getDataType()) {
+		case UINT8:
+		case INT8:
+			return 8;
+		case UINT16:
+		case INT16:
+			return 16;
+		case UINT32:
+			return 24;
+		default:
+			return 32;
+		}
+	}
+
+	@Override
+	public void setPixels(final Object pixels, final int n) {}
+
+	/**
+	 * @return the number of blocks held by the cache
+	 */
+	public int getNumCachedBlocks() {
+
+		synchronized (blocks) {
+			return blocks.size();
+		}
+	}
+
+	/**
+	 * Returns a block from the cache, reading it if necessary.
+	 */
+	private DataBlock<?> block(final long[] gridPosition) {
+
+		final String key = Arrays.toString(gridPosition);
+		synchronized (blocks) {
+			final DataBlock<?> block = blocks.get(key);
+			if (block != null || blocks.containsKey(key))
+				return block;
+		}
+
+		final DataBlock<?> block = n5.readBlock(dataset, attributes, gridPosition);
+		synchronized (blocks) {
+			blocks.put(key, block);
+			while (blocks.size() > maxBlocks)
+				blocks.remove(blocks.keySet().iterator().next());
+		}
+		return block;
+	}
+
+	/**
+	 * Moves the axes of the plane to the front and drops all others, which
+	 * are singletons in the interval of a plane.
+	 */
+	private RandomAccessibleInterval<LongType> toPlane(final RandomAccessibleInterval<LongType> img) {
+
+		final int x = axes[0];
+		final int y = axes[1];
+		RandomAccessibleInterval<LongType> plane = Views.moveAxis(img, x, 0);
+		plane = Views.moveAxis(plane, y < x ? y + 1 : y, 1);
+		for (int d = plane.numDimensions() - 1; d >= 2; d--)
+			plane = Views.hyperSlice(plane, d, plane.min(d));
+
+		return plane;
+	}
+
+	private static int indexOf(final int[] values, final int value) {
+
+		for (int i = 0; i < values.length; i++)
+			if (values[i] == value)
+				return i;
+
+		return -1;
+	}
+
+	private static int dimension(final DatasetAttributes attributes, final int d) {
+
+		return d < 0 ? 1 : (int)attributes.getDimensions()[d];
+	}
+
+	private static long numBlocks(final long size, final int[] blockSize, final int d) {
+
+		return d < 0 ? 1 : (size + blockSize[d] - 1) / blockSize[d];
+	}
+
+}
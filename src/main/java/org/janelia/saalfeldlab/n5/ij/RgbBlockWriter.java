@@ -0,0 +1,387 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.Compression;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Writer;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Writes RGB {@link ImagePlus}es blockwise, directly from the {@code int[]}
+ * pixel arrays of the stack.
+ * <p>
+ * Every block is filled in one pass over the packed pixels, for all output
+ * datasets at once, without per-pixel {@code ARGBType} converters. Blocks
+ * are computed and written in parallel if an {@link ExecutorService} is
+ * given. For virtual stacks, each task covers all blocks of a range of
+ * planes, so that every plane is loaded once.
+ * <p>
+ * Dimensions follow {@link net.imglib2.img.VirtualStackAdapter}: X, Y, then
+ * channels, slices and frames, skipping singleton dimensions.
+ */
+public class RgbBlockWriter {
+
+	public static enum Mode {
+		/** One uint32 dataset with the packed ARGB values. */
+		PACKED,
+		/** Three uint8 datasets "red", "green", and "blue". */
+		CHANNELS,
+		/**
+		 * Two uint8 datasets, "gray" containing the red channel, and "mask"
+		 * that is 1 where all color channels are equal and 0 elsewhere.
+		 */
+		MASKED_GRAY
+	};
+
+	public static final String RED = "red";
+	public static final String GREEN = "green";
+	public static final String BLUE = "blue";
+	public static final String GRAY = "gray";
+	public static final String MASK = "mask";
+
+	private RgbBlockWriter() {}
+
+	/**
+	 * Returns the names of the datasets written for a mode, relative to the
+	 * group passed to {@link #save}. The {@link Mode#PACKED} dataset is the
+	 * group path itself, and has the name "".
+	 *
+	 * @param mode
+	 *            the mode
+	 * @return the dataset names
+	 */
+	public static String[] datasetNames(final Mode mode) {
+
+		switch (mode) {
+		case CHANNELS:
+			return new String[]{RED, GREEN, BLUE};
+		case MASKED_GRAY:
+			return new String[]{MASK, GRAY};
+		default:
+			return new String[]{""};
+		}
+	}
+
+	/**
+	 * Saves an RGB image.
+	 *
+	 * @param imp
+	 *            the RGB image
+	 * @param n5
+	 *            the writer
+	 * @param path
+	 *            the dataset for {@link Mode#PACKED}, otherwise the group of
+	 *            the datasets
+	 * @param blockSize
+	 *            the block size
+	 * @param compression
+	 *            the compression
+	 * @param mode
+	 *            what to write
+	 * @param exec
+	 *            executor service for parallel writing, may be null
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             if writing a block failed
+	 */
+	public static void save(
+			final ImagePlus imp,
+			final N5Writer n5,
+			final String path,
+			final int[] blockSize,
+			final Compression compression,
+			final Mode mode,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		if (imp.getType() != ImagePlus.COLOR_RGB)
+			throw new IllegalArgumentException("Expected an RGB image");
+
+		final long[] dimensions = dimensions(imp);
+		final int nd = dimensions.length;
+		final int[] fullBlockSize = expandBlockSize(blockSize, nd);
+
+		final DataType dataType = mode == Mode.PACKED ? DataType.UINT32 : DataType.UINT8;
+		final String[] names = datasetNames(mode);
+		final String[] datasets = new String[names.length];
+		final DatasetAttributes[] attributes = new DatasetAttributes[names.length];
+
+		if (mode != Mode.PACKED)
+			n5.createGroup(path);
+
+		for (int i = 0; i < names.length; i++) {
+			datasets[i] = names[i].isEmpty() ? path : path + "/" + names[i];
+			attributes[i] = n5.createDataset(datasets[i],
+					new DatasetAttributes(dimensions, fullBlockSize, dataType, compression));
+		}
+
+		writeBlocks(imp, n5, datasets, attributes, mode, exec);
+	}
+
+	/**
+	 * Writes the packed ARGB values of an RGB image into an existing uint32
+	 * dataset, e.g. one that was created with format-specific attributes. The
+	 * dimensions of the dataset must be {@link #dimensions(ImagePlus)}.
+	 *
+	 * @param imp
+	 *            the RGB image
+	 * @param n5
+	 *            the writer
+	 * @param dataset
+	 *            the dataset
+	 * @param attributes
+	 *            the attributes of the dataset
+	 * @param exec
+	 *            executor service for parallel writing, may be null
+	 * @throws InterruptedException
+	 *             interrupted
+	 * @throws ExecutionException
+	 *             if writing a block failed
+	 */
+	public static void writePacked(
+			final ImagePlus imp,
+			final N5Writer n5,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		if (imp.getType() != ImagePlus.COLOR_RGB)
+			throw new IllegalArgumentException("Expected an RGB image");
+		if (attributes.getDataType() != DataType.UINT32 || !Arrays.equals(attributes.getDimensions(), dimensions(imp)))
+			throw new IllegalArgumentException("Dataset " + dataset + " does not match the RGB image");
+
+		writeBlocks(imp, n5, new String[]{dataset}, new DatasetAttributes[]{attributes}, Mode.PACKED, exec);
+	}
+
+	private static void writeBlocks(
+			final ImagePlus imp,
+			final N5Writer n5,
+			final String[] datasets,
+			final DatasetAttributes[] attributes,
+			final Mode mode,
+			final ExecutorService exec) throws InterruptedException, ExecutionException {
+
+		final long[] dimensions = attributes[0].getDimensions();
+		final int nd = dimensions.length;
+		final int[] fullBlockSize = attributes[0].getBlockSize();
+
+		final ImageStack stack = imp.getStack();
+		final long[] gridDims = BlockGrid.gridDimensions(dimensions, fullBlockSize);
+		final long[] planeGridDims = new long[nd - 2];
+		System.arraycopy(gridDims, 2, planeGridDims, 0, nd - 2);
+		final long numPlaneBlocks = numElements(planeGridDims);
+		final long numXYBlocks = gridDims[0] * gridDims[1];
+
+		// virtual stacks load planes on access, so then write all xy blocks of
+		// a range of planes in one task
+		final boolean allXYPerTask = stack.isVirtual();
+		final List<Runnable> tasks = new ArrayList<>();
+		for (long p = 0; p < numPlaneBlocks; p++) {
+
+			final long[] planeGridPosition = new long[nd - 2];
+			IntervalIndexer.indexToPosition(p, planeGridDims, planeGridPosition);
+			if (allXYPerTask) {
+				tasks.add(() -> {
+					final int[][] planes = loadPlanes(stack, dimensions, fullBlockSize, planeGridPosition);
+					for (long xy = 0; xy < numXYBlocks; xy++)
+						writeBlock(planes, n5, datasets, attributes, mode, dimensions, fullBlockSize,
+								xy % gridDims[0], xy / gridDims[0], planeGridPosition);
+				});
+			} else {
+				for (long xy = 0; xy < numXYBlocks; xy++) {
+					final long bx = xy % gridDims[0];
+					final long by = xy / gridDims[0];
+					tasks.add(() -> {
+						final int[][] planes = loadPlanes(stack, dimensions, fullBlockSize, planeGridPosition);
+						writeBlock(planes, n5, datasets, attributes, mode, dimensions, fullBlockSize, bx, by, planeGridPosition);
+					});
+				}
+			}
+		}
+
+		if (exec == null) {
+			for (final Runnable task : tasks)
+				task.run();
+		} else {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (final Runnable task : tasks)
+				futures.add(exec.submit(task));
+
+			for (final Future<?> f : futures)
+				f.get();
+		}
+	}
+
+	/**
+	 * @param imp
+	 *            the image
+	 * @return dimensions in {@link net.imglib2.img.VirtualStackAdapter} order
+	 */
+	static long[] dimensions(final ImagePlus imp) {
+
+		final int[] impDims = imp.getDimensions(); // x, y, c, z, t
+		final List<Long> dims = new ArrayList<>();
+		dims.add((long)impDims[0]);
+		dims.add((long)impDims[1]);
+		for (int d = 2; d < 5; d++)
+			if (impDims[d] > 1)
+				dims.add((long)impDims[d]);
+
+		return dims.stream().mapToLong(Long::longValue).toArray();
+	}
+
+	private static int[] expandBlockSize(final int[] blockSize, final int nd) {
+
+		final int[] out = new int[nd];
+		for (int d = 0; d < nd; d++)
+			out[d] = blockSize[Math.min(d, blockSize.length - 1)];
+
+		return out;
+	}
+
+	/**
+	 * Returns the pixel arrays of all planes of a block of planes, in flat
+	 * order over the plane dimensions. The flat plane index over dimensions
+	 * 2 and up is the stack index minus one.
+	 */
+	private static int[][] loadPlanes(final ImageStack stack, final long[] dimensions, final int[] blockSize,
+			final long[] planeGridPosition) {
+
+		final int nd = dimensions.length;
+		final long[] planeDims = new long[nd - 2];
+		final long[] min = new long[nd - 2];
+		final int[] size = new int[nd - 2];
+		for (int d = 2; d < nd; d++) {
+			planeDims[d - 2] = dimensions[d];
+			min[d - 2] = planeGridPosition[d - 2] * blockSize[d];
+			size[d - 2] = (int)Math.min(blockSize[d], dimensions[d] - min[d - 2]);
+		}
+
+		final int numPlanes = (int)numElements(size);
+		final int[][] planes = new int[numPlanes][];
+		final long[] offset = new long[nd - 2];
+		final long[] position = new long[nd - 2];
+		for (int i = 0; i < numPlanes; i++) {
+			IntervalIndexer.indexToPosition(i, size, offset);
+			for (int d = 0; d < nd - 2; d++)
+				position[d] = min[d] + offset[d];
+
+			planes[i] = (int[])stack.getPixels((int)IntervalIndexer.positionToIndex(position, planeDims) + 1);
+		}
+		return planes;
+	}
+
+	private static void writeBlock(
+			final int[][] planes,
+			final N5Writer n5,
+			final String[] datasets,
+			final DatasetAttributes[] attributes,
+			final Mode mode,
+			final long[] dimensions,
+			final int[] blockSize,
+			final long bx,
+			final long by,
+			final long[] planeGridPosition) {
+
+		final int nd = dimensions.length;
+		final int width = (int)dimensions[0];
+
+		final long[] gridPosition = new long[nd];
+		gridPosition[0] = bx;
+		gridPosition[1] = by;
+		System.arraycopy(planeGridPosition, 0, gridPosition, 2, nd - 2);
+
+		final int[] size = new int[nd];
+		for (int d = 0; d < nd; d++)
+			size[d] = (int)Math.min(blockSize[d], dimensions[d] - gridPosition[d] * blockSize[d]);
+
+		final int x0 = (int)(bx * blockSize[0]);
+		final int y0 = (int)(by * blockSize[1]);
+		final int sx = size[0];
+		final int sy = size[1];
+
+		final DataBlock<?>[] blocks = new DataBlock<?>[datasets.length];
+		for (int i = 0; i < datasets.length; i++)
+			blocks[i] = attributes[i].getDataType().createDataBlock(size, gridPosition);
+
+		// planes are in the same flat order as the block's plane dimensions
+		int j = 0;
+		switch (mode) {
+		case PACKED: {
+			final int[] packed = (int[])blocks[0].getData();
+			for (final int[] pixels : planes)
+				for (int y = 0; y < sy; y++, j += sx)
+					System.arraycopy(pixels, (y0 + y) * width + x0, packed, j, sx);
+			break;
+		}
+		case CHANNELS: {
+			final byte[] red = (byte[])blocks[0].getData();
+			final byte[] green = (byte[])blocks[1].getData();
+			final byte[] blue = (byte[])blocks[2].getData();
+			for (final int[] pixels : planes) {
+				for (int y = 0; y < sy; y++) {
+					int k = (y0 + y) * width + x0;
+					for (int x = 0; x < sx; x++, j++, k++) {
+						final int argb = pixels[k];
+						red[j] = (byte)(argb >> 16);
+						green[j] = (byte)(argb >> 8);
+						blue[j] = (byte)argb;
+					}
+				}
+			}
+			break;
+		}
+		case MASKED_GRAY: {
+			final byte[] mask = (byte[])blocks[0].getData();
+			final byte[] gray = (byte[])blocks[1].getData();
+			for (final int[] pixels : planes) {
+				for (int y = 0; y < sy; y++) {
+					int k = (y0 + y) * width + x0;
+					for (int x = 0; x < sx; x++, j++, k++) {
+						final int argb = pixels[k];
+						final int r = (argb >> 16) & 0xff;
+						final int g = (argb >> 8) & 0xff;
+						final int b = argb & 0xff;
+						mask[j] = (byte)(r == g && g == b ? 1 : 0);
+						gray[j] = (byte)r;
+					}
+				}
+			}
+			break;
+		}
+		}
+
+		for (int i = 0; i < datasets.length; i++)
+			n5.writeBlock(datasets[i], attributes[i], blocks[i]);
+	}
+
+	private static long numElements(final long[] dims) {
+
+		long n = 1;
+		for (final long d : dims)
+			n *= d;
+
+		return n;
+	}
+
+	private static long numElements(final int[] dims) {
+
+		long n = 1;
+		for (final int d : dims)
+			n *= d;
+
+		return n;
+	}
+
+}
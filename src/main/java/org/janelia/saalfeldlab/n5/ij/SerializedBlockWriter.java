@@ -0,0 +1,122 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Writer;
+
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.blocks.BlockSupplier;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.view.Views;
+
+/**
+ * Writes a dataset with many threads through a writer that must only be
+ * used by one thread at a time, such as an HDF5 file.
+ * <p>
+ * Worker threads compute the contents of blocks (including any lazy
+ * downsampling or conversion) and fill {@link DataBlock}s in parallel, while
+ * the calling thread is the only one to write, committing blocks in grid
+ * order. At most {@code window} blocks are in flight, which bounds memory use.
+ */
+public class SerializedBlockWriter {
+
+	private SerializedBlockWriter() {}
+
+	/**
+	 * Writes the image to an existing dataset.
+	 *
+	 * @param <T>
+	 *            the image type
+	 * @param image
+	 *            the image, with the same dimensions as the dataset
+	 * @param n5
+	 *            the writer
+	 * @param dataset
+	 *            the dataset
+	 * @param attributes
+	 *            the dataset attributes
+	 * @param exec
+	 *            the executor for workers
+	 * @param window
+	 *            the maximum number of blocks computed ahead of the writer
+	 * @throws InterruptedException
+	 *             if interrupted
+	 * @throws ExecutionException
+	 *             if computing a block failed
+	 */
+	public static <T extends NativeType<T>> void write(
+			final RandomAccessibleInterval<T> image,
+			final N5Writer n5,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final ExecutorService exec,
+			final int window) throws InterruptedException, ExecutionException {
+
+		final RandomAccessibleInterval<T> zeroMinImage = Views.zeroMin(image);
+		final BlockSupplier<T> blocks = BlockSupplier.of(zeroMinImage).threadSafe();
+
+		final long[] dimensions = attributes.getDimensions();
+		final int[] blockSize = attributes.getBlockSize();
+		final long[] gridDims = BlockGrid.gridDimensions(dimensions, blockSize);
+		final long numBlocks = numElements(gridDims);
+
+		final ArrayDeque<Future<DataBlock<?>>> inFlight = new ArrayDeque<>();
+		long next = 0;
+		try {
+			while (next < numBlocks || !inFlight.isEmpty()) {
+
+				// keep the workers busy, up to the window size
+				while (next < numBlocks && inFlight.size() < Math.max(1, window)) {
+					final long index = next++;
+					inFlight.add(exec.submit(() -> readBlock(blocks, attributes, gridDims, index)));
+				}
+
+				// the single writer commits blocks in order
+				n5.writeBlock(dataset, attributes, inFlight.poll().get());
+			}
+		} finally {
+			for (final Future<?> f : inFlight)
+				f.cancel(true);
+		}
+	}
+
+	private static <T extends NativeType<T>> DataBlock<?> readBlock(
+			final BlockSupplier<T> blocks,
+			final DatasetAttributes attributes,
+			final long[] gridDims,
+			final long index) {
+
+		final long[] dimensions = attributes.getDimensions();
+		final int[] blockSize = attributes.getBlockSize();
+		final int nd = dimensions.length;
+
+		final long[] gridPosition = new long[nd];
+		IntervalIndexer.indexToPosition(index, gridDims, gridPosition);
+
+		final Interval interval = ExportPartition.unitInterval(gridPosition, dimensions, blockSize);
+		final int[] size = new int[nd];
+		for (int d = 0; d < nd; d++)
+			size[d] = (int)interval.dimension(d);
+
+		final DataBlock<?> block = attributes.getDataType().createDataBlock(size, gridPosition);
+		blocks.copy(interval.minAsLongArray(), block.getData(), size);
+		return block;
+	}
+
+	private static long numElements(final long[] dims) {
+
+		long n = 1;
+		for (final long d : dims)
+			n *= d;
+
+		return n;
+	}
+
+}
@@ -0,0 +1,406 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.imglib2.N5CellLoader;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+
+import ij.Prefs;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.LoadedCellCacheLoader;
+import net.imglib2.img.basictypeaccess.AccessFlags;
+import net.imglib2.img.basictypeaccess.ArrayDataAccessFactory;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Intervals;
+
+/**
+ * A cache of decoded blocks that is shared by all images opened through it,
+ * bounded by the total number of bytes of the cached blocks.
+ * <p>
+ * Blocks are keyed by container URI, dataset, the data type, dimensions, and
+ * block size of the dataset, and grid position, so a dataset that was
+ * rewritten with other attributes never gets the blocks of the old one.
+ * Blocks are evicted in least-recently-used order once the total size
+ * exceeds the maximum. Writers of a dataset with unchanged attributes must
+ * {@link #invalidate(String, String) invalidate} it.
+ * Unlike the soft-reference caches of {@link N5Utils#open(N5Reader, String)},
+ * the memory used by many open images is predictable, and blocks of a
+ * dataset opened more than once are shared.
+ * <p>
+ * The maximum size of the {@link #getInstance() shared instance} is read from
+ * the ImageJ preference {@value #MAX_BYTES_PREF}, and defaults to a quarter of
+ * the maximum heap size.
+ */
+public class SharedBlockCache {
+
+	public static final String MAX_BYTES_PREF = "n5.cache.maxBytes";
+
+	private static SharedBlockCache instance;
+
+	private final LinkedHashMap<Key, Cell<?>> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final Map<Key, FutureTask<Cell<?>>> loading = new ConcurrentHashMap<>();
+
+	private final HashMap<Key, Long> sizes = new HashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	private long maxBytes;
+
+	private long bytes = 0;
+
+	public SharedBlockCache(final long maxBytes) {
+
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return the cache shared by all virtual imports
+	 */
+	public static synchronized SharedBlockCache getInstance() {
+
+		if (instance == null)
+			instance = new SharedBlockCache(
+					(long)Prefs.get(MAX_BYTES_PREF, Runtime.getRuntime().maxMemory() / 4));
+
+		return instance;
+	}
+
+	/**
+	 * Opens a dataset as a {@link CachedCellImg} whose cells are stored in
+	 * this cache.
+	 *
+	 * @param <T>
+	 *            the image type
+	 * @param n5
+	 *            the reader
+	 * @param dataset
+	 *            the dataset
+	 * @return the image
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public <T extends NativeType<T>> CachedCellImg<T, ?> open(final N5Reader n5, final String dataset) {
+
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final T type = N5Utils.type(attributes.getDataType());
+		if (type == null)
+			return N5Utils.open(n5, dataset);
+
+		final int[] blockSize = attributes.getBlockSize();
+		final CellGrid grid = new CellGrid(attributes.getDimensions(), blockSize);
+		final Set<AccessFlags> flags = AccessFlags.setOf();
+		final CacheLoader loader = LoadedCellCacheLoader.get(grid,
+				new N5CellLoader<>(n5, dataset, blockSize), type, flags);
+
+		final DatasetCache cache = new DatasetCache(n5.getURI().toString(), dataset, format(attributes),
+				BlockGrid.bytesPerElement(attributes.getDataType()));
+
+		return new CachedCellImg(grid, type, cache.withLoader(loader), ArrayDataAccessFactory.get(type, flags));
+	}
+
+	public long getHitCount() {
+
+		return hits.get();
+	}
+
+	public long getMissCount() {
+
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of requests for blocks that were not cached yet but
+	 *         already being loaded for another request, and waited for that
+	 *         load instead of loading the block again
+	 */
+	public long getCoalescedCount() {
+
+		return coalesced.get();
+	}
+
+	public long getEvictionCount() {
+
+		return evictions.get();
+	}
+
+	/**
+	 * @return the total size of the cached blocks in bytes
+	 */
+	public synchronized long getSizeInBytes() {
+
+		return bytes;
+	}
+
+	/**
+	 * @return the number of cached blocks
+	 */
+	public synchronized int getNumBlocks() {
+
+		return blocks.size();
+	}
+
+	public synchronized long getMaxBytes() {
+
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the maximum total size, evicting blocks if necessary.
+	 *
+	 * @param maxBytes
+	 *            the maximum size in bytes
+	 */
+	public synchronized void setMaxBytes(final long maxBytes) {
+
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * Removes all blocks of a dataset, or of all datasets in a group, for
+	 * example after it was overwritten or removed.
+	 *
+	 * @param uri
+	 *            the container URI
+	 * @param path
+	 *            the dataset or group
+	 */
+	public void invalidate(final String uri, final String path) {
+
+		final String normalPath = N5URI.normalizeGroupPath(path);
+		invalidateIf(k -> k.uri.equals(uri)
+				&& (normalPath.isEmpty() || k.dataset.equals(normalPath) || k.dataset.startsWith(normalPath + "/")));
+	}
+
+	/**
+	 * Removes all blocks.
+	 */
+	public void clear() {
+
+		invalidateIf(k -> true);
+	}
+
+	@Override
+	public String toString() {
+
+		return String.format("SharedBlockCache: %d blocks, %d / %d bytes, %d hits, %d misses, %d coalesced, %d evictions",
+				getNumBlocks(), getSizeInBytes(), getMaxBytes(), getHitCount(), getMissCount(), getCoalescedCount(),
+				getEvictionCount());
+	}
+
+	private synchronized void invalidateIf(final Predicate<Key> condition) {
+
+		final Iterator<Key> it = blocks.keySet().iterator();
+		while (it.hasNext()) {
+			final Key key = it.next();
+			if (condition.test(key)) {
+				it.remove();
+				bytes -= sizes.remove(key);
+			}
+		}
+	}
+
+	/**
+	 * @return a description of the attributes of a dataset that determine
+	 *         the shape and type of its cells
+	 */
+	private static String format(final DatasetAttributes attributes) {
+
+		return attributes.getDataType() + " " + Arrays.toString(attributes.getDimensions()) + " "
+				+ Arrays.toString(attributes.getBlockSize());
+	}
+
+	private synchronized Cell<?> getIfPresent(final Key key) {
+
+		return blocks.get(key);
+	}
+
+	private Cell<?> get(final Key key, final CacheLoader<Long, Cell<?>> loader, final int bytesPerElement)
+			throws ExecutionException {
+
+		final Cell<?> cached = getIfPresent(key);
+		if (cached != null) {
+			hits.incrementAndGet();
+			return cached;
+		}
+
+		// load each block once, also when it is requested concurrently
+		final FutureTask<Cell<?>> task = new FutureTask<>(() -> loader.get(key.index));
+		final FutureTask<Cell<?>> running = loading.putIfAbsent(key, task);
+		if (running != null) {
+			coalesced.incrementAndGet();
+			return await(running);
+		}
+
+		misses.incrementAndGet();
+		try {
+			task.run();
+			final Cell<?> cell = await(task);
+			put(key, cell, Intervals.numElements(cell) * bytesPerElement);
+			return cell;
+		} finally {
+			loading.remove(key, task);
+		}
+	}
+
+	private static Cell<?> await(final FutureTask<Cell<?>> task) throws ExecutionException {
+
+		try {
+			return task.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExecutionException(e);
+		}
+	}
+
+	private synchronized void put(final Key key, final Cell<?> cell, final long size) {
+
+		if (blocks.put(key, cell) == null)
+			bytes += size;
+		else
+			bytes += size - sizes.get(key);
+
+		sizes.put(key, size);
+		evict();
+	}
+
+	private void evict() {
+
+		final Iterator<Map.Entry<Key, Cell<?>>> it = blocks.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			final Key key = it.next().getKey();
+			it.remove();
+			bytes -= sizes.remove(key);
+			evictions.incrementAndGet();
+		}
+	}
+
+	private static class Key {
+
+		private final String uri;
+
+		private final String dataset;
+
+		private final String format;
+
+		/**
+		 * The flat index of the grid position
+		 */
+		private final long index;
+
+		private final int hashCode;
+
+		public Key(final String uri, final String dataset, final String format, final long index) {
+
+			this.uri = uri;
+			this.dataset = dataset;
+			this.format = format;
+			this.index = index;
+			hashCode = Arrays.hashCode(new Object[]{uri, dataset, format, index});
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+
+			if (!(other instanceof Key))
+				return false;
+
+			final Key k = (Key)other;
+			return index == k.index && uri.equals(k.uri) && dataset.equals(k.dataset) && format.equals(k.format);
+		}
+
+		@Override
+		public int hashCode() {
+
+			return hashCode;
+		}
+	}
+
+	/**
+	 * The view of the shared cache for a single dataset.
+	 */
+	private class DatasetCache implements LoaderCache<Long, Cell<?>> {
+
+		private final String uri;
+
+		private final String dataset;
+
+		private final String format;
+
+		private final int bytesPerElement;
+
+		public DatasetCache(final String uri, final String dataset, final String format, final int bytesPerElement) {
+
+			this.uri = uri;
+			this.dataset = N5URI.normalizeGroupPath(dataset);
+			this.format = format;
+			this.bytesPerElement = bytesPerElement;
+		}
+
+		private Key key(final Long index) {
+
+			return new Key(uri, dataset, format, index);
+		}
+
+		@Override
+		public Cell<?> getIfPresent(final Long index) {
+
+			return SharedBlockCache.this.getIfPresent(key(index));
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Cell<?> get(final Long index, final CacheLoader<? super Long, ? extends Cell<?>> loader)
+				throws ExecutionException {
+
+			return SharedBlockCache.this.get(key(index), (CacheLoader<Long, Cell<?>>)loader, bytesPerElement);
+		}
+
+		public void invalidate(final Long index) {
+
+			final Key k = key(index);
+			SharedBlockCache.this.invalidateIf(x -> x.equals(k));
+		}
+
+		public void invalidateIf(final long parallelismThreshold, final Predicate<Long> condition) {
+
+			SharedBlockCache.this.invalidateIf(k -> k.uri.equals(uri) && k.dataset.equals(dataset) && k.format.equals(format)
+					&& condition.test(k.index));
+		}
+
+		public void invalidateAll(final long parallelismThreshold) {
+
+			SharedBlockCache.this.invalidate(uri, dataset);
+		}
+
+		@Override
+		public void invalidateAll() {
+
+			SharedBlockCache.this.invalidate(uri, dataset);
+		}
+	}
+
+}
@@ -0,0 +1,336 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.UnaryOperator;
+
+import ij.CompositeImage;
+import ij.IJ;
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.Prefs;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Intervals;
+
+/**
+ * Loads the blocks of planes ahead of the current position of a virtual
+ * {@link ImagePlus} in the background.
+ * <p>
+ * The prefetcher listens to slice changes of the image. Once the user moves
+ * through Z or T, the cells of the next {@code depth} planes in that direction
+ * are loaded into the cache of the {@link CachedCellImg} that backs the image,
+ * nearest first, so that they are available when the planes are shown.
+ * Requests for planes that are no longer ahead of the current position are
+ * cancelled. Before any movement, the neighboring planes in both directions
+ * are loaded.
+ * <p>
+ * The depth is read from the ImageJ preference {@value #DEPTH_PREF}, see
+ * {@link #setDefaultDepth(int)}. A depth of zero disables prefetching.
+ */
+public class VirtualStackPrefetcher implements ImageListener {
+
+	public static final String DEPTH_PREF = "n5.prefetch.depth";
+
+	public static final int DEFAULT_DEPTH = 2;
+
+	private static ExecutorService sharedExecutor;
+
+	private final ImagePlus imp;
+
+	private final RandomAccessibleInterval<?> cells;
+
+	private final CellGrid grid;
+
+	private final Interval source;
+
+	private final long[] planeDimensions;
+
+	private final int[] sourceDimensions;
+
+	private final int depth;
+
+	private final ExecutorService exec;
+
+	private final Map<Integer, Future<?>> pending = new HashMap<>();
+
+	private volatile Set<Integer> wanted = Collections.emptySet();
+
+	private int[] lastPosition;
+
+	/**
+	 * @param imp
+	 *            the virtual image
+	 * @param img
+	 *            the cell image that backs the virtual image
+	 * @param interval
+	 *            the interval of img that is shown, or null for all of img
+	 * @param permutation
+	 *            the view transformation from img to the axis order of the
+	 *            image, or null for none
+	 * @param depth
+	 *            the number of planes to load ahead
+	 * @param exec
+	 *            the executor service that loads cells
+	 */
+	public VirtualStackPrefetcher(
+			final ImagePlus imp,
+			final CachedCellImg<?, ?> img,
+			final Interval interval,
+			final UnaryOperator<RandomAccessibleInterval<LongType>> permutation,
+			final int depth,
+			final ExecutorService exec) {
+
+		this.imp = imp;
+		this.cells = img.getCells();
+		this.grid = img.getCellGrid();
+		this.source = interval == null ? new FinalInterval(img) : interval;
+		this.depth = depth;
+		this.exec = exec;
+
+		final RandomAccessibleInterval<LongType> probe = permutation == null
+				? BlockwiseImagePlusLoader.probe(source)
+				: permutation.apply(BlockwiseImagePlusLoader.probe(source));
+
+		sourceDimensions = BlockwiseImagePlusLoader.sourceDimensions(probe, source);
+		final long[] outDimensions = probe.dimensionsAsLongArray();
+		planeDimensions = new long[Math.max(0, outDimensions.length - 2)];
+		System.arraycopy(outDimensions, 2, planeDimensions, 0, planeDimensions.length);
+	}
+
+	/**
+	 * Starts prefetching for a virtual image with the default depth and
+	 * executor service. Prefetching stops when the image is closed.
+	 *
+	 * @param imp
+	 *            the virtual image
+	 * @param img
+	 *            the cell image that backs the virtual image
+	 * @param interval
+	 *            the interval of img that is shown, or null for all of img
+	 * @param permutation
+	 *            the view transformation from img to the axis order of the
+	 *            image, or null for none
+	 * @return the prefetcher, or null if prefetching is disabled or not
+	 *         possible for this image
+	 */
+	public static VirtualStackPrefetcher attach(
+			final ImagePlus imp,
+			final CachedCellImg<?, ?> img,
+			final Interval interval,
+			final UnaryOperator<RandomAccessibleInterval<LongType>> permutation) {
+
+		final int depth = getDefaultDepth();
+		if (depth <= 0 || imp.getStackSize() <= 1)
+			return null;
+
+		final VirtualStackPrefetcher prefetcher;
+		try {
+			prefetcher = new VirtualStackPrefetcher(imp, img, interval, permutation, depth, getSharedExecutor());
+		} catch (final IllegalArgumentException e) {
+			IJ.log("Prefetching disabled for " + imp.getTitle() + ": " + e.getMessage());
+			return null;
+		}
+
+		ImagePlus.addImageListener(prefetcher);
+		return prefetcher;
+	}
+
+	/**
+	 * @return the number of planes loaded ahead by {@link #attach}
+	 */
+	public static int getDefaultDepth() {
+
+		return Prefs.getInt(DEPTH_PREF, DEFAULT_DEPTH);
+	}
+
+	/**
+	 * Sets the number of planes loaded ahead by {@link #attach}, zero to
+	 * disable prefetching.
+	 *
+	 * @param depth
+	 *            the depth
+	 */
+	public static void setDefaultDepth(final int depth) {
+
+		Prefs.set(DEPTH_PREF, Math.max(0, depth));
+	}
+
+	private static synchronized ExecutorService getSharedExecutor() {
+
+		if (sharedExecutor == null) {
+			sharedExecutor = Executors.newFixedThreadPool(
+					Math.max(2, Runtime.getRuntime().availableProcessors() / 4),
+					r -> {
+						final Thread t = new Thread(r, "n5-prefetch");
+						t.setDaemon(true);
+						return t;
+					});
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * Stops prefetching and cancels pending requests.
+	 */
+	public synchronized void detach() {
+
+		ImagePlus.removeImageListener(this);
+		request(new LinkedHashSet<>());
+	}
+
+	/**
+	 * @return the stack indexes (starting at 1) of planes that are requested
+	 *         and not yet loaded
+	 */
+	public synchronized Set<Integer> getPending() {
+
+		pending.values().removeIf(Future::isDone);
+		return new LinkedHashSet<>(pending.keySet());
+	}
+
+	@Override
+	public void imageOpened(final ImagePlus updated) {}
+
+	@Override
+	public void imageClosed(final ImagePlus closed) {
+
+		if (closed == imp)
+			detach();
+	}
+
+	@Override
+	public void imageUpdated(final ImagePlus updated) {
+
+		if (updated != imp)
+			return;
+
+		final int[] position = imp.convertIndexToPosition(imp.getCurrentSlice());
+		synchronized (this) {
+			if (lastPosition != null && position[1] == lastPosition[1] && position[2] == lastPosition[2])
+				return;
+
+			if (lastPosition == null) {
+				// no direction yet, so load the neighbors in z, or in t for time series
+				final int dz = imp.getNSlices() > 1 ? 1 : 0;
+				final int dt = dz == 0 ? 1 : 0;
+				final LinkedHashSet<Integer> planes = new LinkedHashSet<>();
+				addPlanes(planes, position, dz, dt, 1);
+				addPlanes(planes, position, -dz, -dt, 1);
+				request(planes);
+			} else {
+				final int dz = Integer.signum(position[1] - lastPosition[1]);
+				final int dt = Integer.signum(position[2] - lastPosition[2]);
+				final LinkedHashSet<Integer> planes = new LinkedHashSet<>();
+				addPlanes(planes, position, dz, dt, depth);
+				request(planes);
+			}
+			lastPosition = position;
+		}
+	}
+
+	/**
+	 * Adds the stack indexes of the planes ahead of a position, nearest first.
+	 */
+	private void addPlanes(final Set<Integer> planes, final int[] position, final int dz, final int dt, final int n) {
+
+		if (dz == 0 && dt == 0)
+			return;
+
+		// composite images show all channels at once
+		final boolean allChannels = imp.isComposite() && ((CompositeImage)imp).getMode() == IJ.COMPOSITE;
+		final int cMin = allChannels ? 1 : position[0];
+		final int cMax = allChannels ? imp.getNChannels() : position[0];
+
+		for (int i = 1; i <= n; i++) {
+			final int z = position[1] + i * dz;
+			final int t = position[2] + i * dt;
+			if (z < 1 || z > imp.getNSlices() || t < 1 || t > imp.getNFrames())
+				break;
+
+			for (int c = cMin; c <= cMax; c++)
+				planes.add(imp.getStackIndex(c, z, t));
+		}
+	}
+
+	/**
+	 * Requests the given planes, cancelling pending requests for all other
+	 * planes.
+	 *
+	 * @param stackIndexes
+	 *            the planes, in the order in which to load them
+	 */
+	synchronized void request(final Set<Integer> stackIndexes) {
+
+		wanted = Collections.unmodifiableSet(new LinkedHashSet<>(stackIndexes));
+
+		final Iterator<Map.Entry<Integer, Future<?>>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			final Map.Entry<Integer, Future<?>> e = it.next();
+			if (e.getValue().isDone())
+				it.remove();
+			else if (!stackIndexes.contains(e.getKey())) {
+				// do not interrupt, a running task stops between cells
+				e.getValue().cancel(false);
+				it.remove();
+			}
+		}
+
+		for (final Integer index : stackIndexes)
+			if (!pending.containsKey(index))
+				pending.put(index, exec.submit(() -> loadPlane(index)));
+	}
+
+	/**
+	 * Loads all cells of a plane into the cache.
+	 */
+	private void loadPlane(final int stackIndex) {
+
+		final int nd = source.numDimensions();
+		final long[] min = source.minAsLongArray();
+		final long[] max = source.maxAsLongArray();
+
+		final long[] planePosition = new long[planeDimensions.length];
+		IntervalIndexer.indexToPosition(stackIndex - 1, planeDimensions, planePosition);
+		for (int o = 2; o < sourceDimensions.length; o++) {
+			final int d = sourceDimensions[o];
+			if (d >= 0)
+				min[d] = max[d] = source.min(d) + planePosition[o - 2];
+		}
+
+		final long[] cellMin = new long[nd];
+		final long[] cellMax = new long[nd];
+		for (int d = 0; d < nd; d++) {
+			cellMin[d] = min[d] / grid.cellDimension(d);
+			cellMax[d] = max[d] / grid.cellDimension(d);
+		}
+
+		final FinalInterval cellInterval = new FinalInterval(cellMin, cellMax);
+		final long[] cellDims = cellInterval.dimensionsAsLongArray();
+		final long numCells = Intervals.numElements(cellInterval);
+		final long[] cellPosition = new long[nd];
+		final RandomAccess<?> access = cells.randomAccess();
+		for (long i = 0; i < numCells; i++) {
+			if (!wanted.contains(stackIndex))
+				return;
+
+			IntervalIndexer.indexToPositionWithOffset(i, cellDims, cellMin, cellPosition);
+			access.setPosition(cellPosition);
+			access.get();
+		}
+	}
+
+}
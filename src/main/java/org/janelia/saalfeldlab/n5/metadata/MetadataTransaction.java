@@ -0,0 +1,234 @@
+package org.janelia.saalfeldlab.n5.metadata;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Writer;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5Metadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5MetadataWriter;
+import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.OmeNgffMetadataParser;
+import org.janelia.saalfeldlab.n5.zarr.v3.ZarrV3KeyValueWriter;
+
+/**
+ * Batches attribute writes so that each group or dataset is written once.
+ * <p>
+ * Metadata writers often call {@link N5Writer#setAttribute(String, String, Object)}
+ * once per key. For most backends, every call reads, modifies, and rewrites
+ * the attributes of the path, which is slow for many keys, especially on
+ * cloud storage. The writer returned by {@link #getWriter()} buffers
+ * {@code setAttribute} and {@code setAttributes} calls per path, and
+ * {@link #commit()} writes each path with a single
+ * {@link N5Writer#setAttributes(String, Map)} call.
+ * <p>
+ * Any other call to the returned writer first writes buffered attributes,
+ * so readers through it always see earlier writes.
+ * <p>
+ * The returned writer only implements the interfaces of the container's
+ * writer, so checks on its class fail. Metadata writers that depend on the
+ * class, such as the OME-NGFF writer, or that write to zarr v3 or HDF5
+ * containers, are instead called with the real writer on {@link #commit()}
+ * when they are passed to
+ * {@link #writeMetadata(N5MetadataWriter, N5Metadata, String)}.
+ * {@link #discard()} drops everything that was not committed.
+ *
+ * <pre>
+ * final MetadataTransaction tx = new MetadataTransaction(n5);
+ * tx.writeMetadata(metadataWriter, metadata, dataset);
+ * tx.commit();
+ * </pre>
+ *
+ * or equivalently {@link #writeMetadata(N5MetadataWriter, N5Metadata, N5Writer, String)}.
+ */
+public class MetadataTransaction implements InvocationHandler {
+
+	private final N5Writer n5;
+
+	private final N5Writer proxy;
+
+	private final LinkedHashMap<String, LinkedHashMap<String, Object>> pending = new LinkedHashMap<>();
+
+	private final ArrayList<Callable<Void>> deferred = new ArrayList<>();
+
+	public MetadataTransaction(final N5Writer n5) {
+
+		this.n5 = n5;
+
+		// implement all interfaces of the writer so that interface checks on it
+		// still succeed, checks on its class can not
+		final List<Class<?>> interfaces = ClassUtils.getAllInterfaces(n5.getClass());
+		interfaces.removeIf(i -> !Modifier.isPublic(i.getModifiers()));
+		if (!interfaces.contains(N5Writer.class))
+			interfaces.add(N5Writer.class);
+
+		proxy = (N5Writer)Proxy.newProxyInstance(
+				n5.getClass().getClassLoader(),
+				interfaces.toArray(new Class<?>[interfaces.size()]),
+				this);
+	}
+
+	/**
+	 * Writes metadata with the given writer, committing all of its attribute
+	 * writes at once.
+	 *
+	 * @param <M>
+	 *            the metadata type
+	 * @param metadataWriter
+	 *            the metadata writer
+	 * @param metadata
+	 *            the metadata
+	 * @param n5
+	 *            the n5 writer
+	 * @param path
+	 *            the group or dataset
+	 * @throws Exception
+	 *             the exception thrown by the metadata writer
+	 */
+	public static <M extends N5Metadata> void writeMetadata(final N5MetadataWriter<M> metadataWriter, final M metadata,
+			final N5Writer n5, final String path) throws Exception {
+
+		final MetadataTransaction transaction = new MetadataTransaction(n5);
+		transaction.writeMetadata(metadataWriter, metadata, path);
+		transaction.commit();
+	}
+
+	/**
+	 * Writes metadata with the given writer as part of this transaction.
+	 * Writers that depend on the class of the container's writer are called
+	 * with the real writer on {@link #commit()}, all others write through
+	 * {@link #getWriter()} right away.
+	 *
+	 * @param <M>
+	 *            the metadata type
+	 * @param metadataWriter
+	 *            the metadata writer
+	 * @param metadata
+	 *            the metadata
+	 * @param path
+	 *            the group or dataset
+	 * @throws Exception
+	 *             the exception thrown by the metadata writer
+	 */
+	public synchronized <M extends N5Metadata> void writeMetadata(final N5MetadataWriter<M> metadataWriter, final M metadata,
+			final String path) throws Exception {
+
+		if (needsRealWriter(metadataWriter)) {
+			deferred.add(() -> {
+				metadataWriter.writeMetadata(metadata, n5, path);
+				return null;
+			});
+		} else
+			metadataWriter.writeMetadata(metadata, proxy, path);
+	}
+
+	private boolean needsRealWriter(final N5MetadataWriter<?> metadataWriter) {
+
+		return metadataWriter instanceof OmeNgffMetadataParser || n5 instanceof ZarrV3KeyValueWriter || n5 instanceof N5HDF5Writer;
+	}
+
+	/**
+	 * @return a writer that buffers attribute writes until {@link #commit()}
+	 */
+	public N5Writer getWriter() {
+
+		return proxy;
+	}
+
+	/**
+	 * Writes all buffered attributes, one call per path, then runs the
+	 * metadata writers that need the real writer.
+	 */
+	public synchronized void commit() {
+
+		flush();
+
+		final ArrayList<Callable<Void>> writes = new ArrayList<>(deferred);
+		deferred.clear();
+		for (final Callable<Void> write : writes) {
+			try {
+				write.call();
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Exception e) {
+				throw new N5Exception("Failed to write metadata", e);
+			}
+		}
+	}
+
+	/**
+	 * Drops all buffered attributes and metadata writes that were not
+	 * committed.
+	 */
+	public synchronized void discard() {
+
+		pending.clear();
+		deferred.clear();
+	}
+
+	private void flush() {
+
+		for (final Map.Entry<String, LinkedHashMap<String, Object>> e : pending.entrySet())
+			n5.setAttributes(e.getKey(), e.getValue());
+
+		pending.clear();
+	}
+
+	/**
+	 * @return the number of paths with buffered attributes
+	 */
+	public synchronized int numPendingPaths() {
+
+		return pending.size();
+	}
+
+	@Override
+	public synchronized Object invoke(final Object p, final Method method, final Object[] args) throws Throwable {
+
+		final String name = method.getName();
+		if (name.equals("setAttribute") && args != null && args.length == 3 && args[2] != null
+				&& args[0] instanceof String && args[1] instanceof String) {
+
+			buffer((String)args[0], (String)args[1], args[2]);
+			return null;
+
+		} else if (name.equals("setAttributes") && args != null && args.length == 2
+				&& args[0] instanceof String && args[1] instanceof Map
+				&& !((Map<?, ?>)args[1]).containsValue(null)) {
+
+			for (final Map.Entry<?, ?> e : ((Map<?, ?>)args[1]).entrySet())
+				buffer((String)args[0], e.getKey().toString(), e.getValue());
+
+			return null;
+		}
+
+		flush();
+		try {
+			return method.invoke(n5, args);
+		} catch (final InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void buffer(final String path, final String key, final Object value) {
+
+		final LinkedHashMap<String, Object> attributes = pending.computeIfAbsent(N5URI.normalizeGroupPath(path),
+				x -> new LinkedHashMap<>());
+
+		// move the key to the end, so that the order of writes is preserved
+		// for keys that are attribute paths of each other
+		attributes.remove(key);
+		attributes.put(key, value);
+	}
+
+}
@@ -136,8 +136,7 @@ public class MetadataTemplateMapper implements N5MetadataWriter<ImagePlusMetadat
 	public void writeMetadata(final ImagePlusMetadataTemplate t, final N5Writer n5, final String group) throws Exception {
 
 		final Map<String, ?> map = (Map<String, ?>)computeToMap(gson.toJson(t));
-		for (String key : map.keySet())
-			n5.setAttribute(group, key, map.get(key));
+		n5.setAttributes(group, map);
 	}
 
   	public String toJsonString( final ImagePlusMetadataTemplate t ) throws Exception
@@ -0,0 +1,776 @@
+package org.janelia.saalfeldlab.n5.ui;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GsonN5Reader;
+import org.janelia.saalfeldlab.n5.N5Exception;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.universe.translation.TranslatedN5Reader;
+import org.janelia.saalfeldlab.n5.util.CacheUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+
+import ij.Prefs;
+
+/**
+ * A persistent cache of the tree of a container, so that the
+ * {@link DatasetSelectorDialog} shows a container it has shown before
+ * immediately, rather than after listing and parsing it again.
+ * <p>
+ * A {@link Snapshot} holds the paths of all groups and datasets below a root
+ * path of a container, their attributes, and a version of each, and is stored
+ * as json under the directory {@value #DIRECTORY_PREF}, keyed by the container
+ * URI and the root path. A stored snapshot is only used while the attributes
+ * of its root are unchanged. The dialog parses the metadata from the snapshot
+ * with the same parsers as from the container (see
+ * {@link Snapshot#reader(N5Reader)}), shows them, and then revalidates the
+ * snapshot group by group in the background (see
+ * {@link #refresh(N5Reader, Snapshot, ExecutorService)}), and updates the tree
+ * where it changed.
+ * <p>
+ * The first snapshot of a container is built from the attributes that the
+ * dialog's discovery read anyway, see {@link Recorder}.
+ * <p>
+ * The dialog uses the cache if the ImageJ preference {@value #ENABLED_PREF} is
+ * set.
+ */
+public class ContainerTreeCache {
+
+	public static final String ENABLED_PREF = "n5.treeCache.enabled";
+
+	public static final String DIRECTORY_PREF = "n5.treeCache.directory";
+
+	private static final Pattern ATTRIBUTE_PATH = Pattern.compile("\\[(\\d+)\\]|[^/\\[]+");
+
+	private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
+
+	/*
+	 * the files of n5, zarr v2, and zarr v3 that hold attributes
+	 */
+	private static final String[] METADATA_FILES = new String[]{"attributes.json", ".zattrs", ".zarray", ".zgroup", "zarr.json"};
+
+	private final Path directory;
+
+	/**
+	 * @param directory
+	 *            the directory of the cache
+	 */
+	public ContainerTreeCache(final Path directory) {
+
+		this.directory = directory;
+	}
+
+	/**
+	 * @return the cache in the directory of the ImageJ preferences
+	 */
+	public static ContainerTreeCache getShared() {
+
+		final String defaultDirectory = Paths.get(System.getProperty("user.home"), ".cache", "n5-ij", "trees").toString();
+		return new ContainerTreeCache(Paths.get(Prefs.get(DIRECTORY_PREF, defaultDirectory)));
+	}
+
+	/**
+	 * @return whether the dialog caches the trees of containers, read from
+	 *         the ImageJ preference {@value #ENABLED_PREF}
+	 */
+	public static boolean isEnabled() {
+
+		return Prefs.get(ENABLED_PREF, false);
+	}
+
+	/**
+	 * @param enabled
+	 *            whether the dialog caches the trees of containers
+	 */
+	public static void setEnabled(final boolean enabled) {
+
+		Prefs.set(ENABLED_PREF, enabled);
+	}
+
+	/**
+	 * @param n5
+	 *            the reader
+	 * @return true if the tree of the container can be cached
+	 */
+	public static boolean isSupported(final N5Reader n5) {
+
+		return n5 instanceof GsonN5Reader && !(n5 instanceof TranslatedN5Reader) && n5.getURI() != null;
+	}
+
+	/**
+	 * The paths and attributes of all groups and datasets below a root path.
+	 */
+	public static class Snapshot {
+
+		private final String uri;
+
+		private final String root;
+
+		/*
+		 * all normalized paths, starting with the root, mapped to their
+		 * attributes
+		 */
+		private final LinkedHashMap<String, JsonElement> attributes;
+
+		/*
+		 * the version of every path, see ContainerTreeCache#version, empty if
+		 * unknown
+		 */
+		private final Map<String, String> versions;
+
+		private Snapshot(final String uri, final String root, final LinkedHashMap<String, JsonElement> attributes,
+				final Map<String, String> versions) {
+
+			this.uri = uri;
+			this.root = root;
+			this.attributes = attributes;
+			this.versions = versions;
+		}
+
+		public String getUri() {
+
+			return uri;
+		}
+
+		public String getRoot() {
+
+			return root;
+		}
+
+		/**
+		 * @return the normalized paths of the root and all its descendants
+		 */
+		public List<String> getPaths() {
+
+			return new ArrayList<>(attributes.keySet());
+		}
+
+		/**
+		 * @param path
+		 *            a path
+		 * @return true if the path is in this snapshot
+		 */
+		public boolean contains(final String path) {
+
+			return attributes.containsKey(N5URI.normalizeGroupPath(path));
+		}
+
+		/**
+		 * @return the attributes of a path, null if it has none
+		 */
+		public JsonElement getAttributes(final String path) {
+
+			final JsonElement json = attributes.get(N5URI.normalizeGroupPath(path));
+			return json == null || json.isJsonNull() ? null : json;
+		}
+
+		/**
+		 * @return the names of the children of a path
+		 */
+		public String[] list(final String path) {
+
+			final String p = N5URI.normalizeGroupPath(path);
+			final String prefix = p.isEmpty() ? "" : p + "/";
+			return attributes.keySet().stream()
+					.filter(x -> x.startsWith(prefix) && !x.equals(p) && x.indexOf('/', prefix.length()) < 0)
+					.map(x -> x.substring(prefix.length()))
+					.toArray(String[]::new);
+		}
+
+		/**
+		 * @return the paths of all descendants of a path, relative to it
+		 */
+		public String[] deepList(final String path) {
+
+			final String p = N5URI.normalizeGroupPath(path);
+			final String prefix = p.isEmpty() ? "" : p + "/";
+			return attributes.keySet().stream()
+					.filter(x -> x.startsWith(prefix) && !x.equals(p))
+					.map(x -> x.substring(prefix.length()))
+					.toArray(String[]::new);
+		}
+
+		/**
+		 * Returns a reader that lists the container and reads its attributes
+		 * from this snapshot, and reads everything else from n5. Metadata
+		 * parsed with this reader are those parsed from the container when the
+		 * snapshot was taken. The reader implements all public interfaces of
+		 * n5, see {@link CacheUtils#interfaces(Class)}, but is not an instance
+		 * of its class.
+		 *
+		 * @param n5
+		 *            the reader of the container
+		 * @return the reader
+		 */
+		public N5Reader reader(final N5Reader n5) {
+
+			final GsonN5Reader gsonN5 = (GsonN5Reader)n5;
+			return (N5Reader)Proxy.newProxyInstance(n5.getClass().getClassLoader(), CacheUtils.interfaces(n5.getClass()),
+					(proxy, method, args) -> {
+						if (args != null && args.length > 0 && args[0] instanceof String && contains((String)args[0])) {
+							final String path = (String)args[0];
+							switch (method.getName()) {
+							case "exists":
+								if (args.length == 1)
+									return true;
+								break;
+							case "list":
+								if (args.length == 1)
+									return list(path);
+								break;
+							case "deepList":
+								return deepList(path, args);
+							case "getAttributes":
+								if (args.length == 1)
+									return getAttributes(path);
+								break;
+							case "datasetExists":
+								if (args.length == 1)
+									return datasetAttributes(gsonN5, path) != null;
+								break;
+							case "getDatasetAttributes":
+								if (args.length == 1)
+									return datasetAttributes(gsonN5, path);
+								break;
+							case "getAttribute":
+								if (args.length == 3 && args[1] instanceof String && args[2] instanceof Type)
+									return attribute(gsonN5.getGson(), getAttributes(path), (String)args[1], (Type)args[2]);
+								break;
+							}
+						}
+
+						try {
+							return method.invoke(n5, args);
+						} catch (final InvocationTargetException e) {
+							throw e.getCause();
+						}
+					});
+		}
+
+		@SuppressWarnings("unchecked")
+		private String[] deepList(final String path, final Object[] args) {
+
+			final String[] paths = deepList(path);
+			for (final Object arg : args) {
+				if (arg instanceof Predicate) {
+					final String prefix = N5URI.normalizeGroupPath(path);
+					final Predicate<String> filter = (Predicate<String>)arg;
+					final List<String> filtered = new ArrayList<>();
+					for (final String p : paths)
+						if (filter.test(prefix.isEmpty() ? p : prefix + "/" + p))
+							filtered.add(p);
+
+					return filtered.toArray(new String[0]);
+				}
+			}
+			return paths;
+		}
+
+		private DatasetAttributes datasetAttributes(final GsonN5Reader n5, final String path) {
+
+			return ContainerTreeCache.datasetAttributes(n5, getAttributes(path));
+		}
+
+		/**
+		 * Snapshots are equal if they have the same paths and attributes,
+		 * regardless of the versions.
+		 */
+		@Override
+		public boolean equals(final Object obj) {
+
+			if (!(obj instanceof Snapshot))
+				return false;
+
+			final Snapshot other = (Snapshot)obj;
+			return uri.equals(other.uri) && root.equals(other.root) && attributes.equals(other.attributes);
+		}
+
+		@Override
+		public int hashCode() {
+
+			return Objects.hash(uri, root, attributes);
+		}
+	}
+
+	/**
+	 * Reads the attribute at a key from attributes, as the reader does.
+	 */
+	static Object attribute(final Gson gson, final JsonElement attributes, final String key, final Type type) {
+
+		JsonElement json = attributes;
+		final Matcher m = ATTRIBUTE_PATH.matcher(N5URI.normalizeAttributePath(key));
+		while (json != null && m.find()) {
+			if (m.group(1) != null) {
+				final int i = Integer.parseInt(m.group(1));
+				json = json.isJsonArray() && i < json.getAsJsonArray().size() ? json.getAsJsonArray().get(i) : null;
+			} else
+				json = json.isJsonObject() ? json.getAsJsonObject().get(m.group()) : null;
+		}
+
+		if (json == null || json.isJsonNull())
+			return null;
+
+		try {
+			return gson.fromJson(json, type);
+		} catch (final JsonParseException | ClassCastException | IllegalStateException | NumberFormatException e) {
+			throw new N5Exception.N5ClassCastException(e);
+		}
+	}
+
+	/**
+	 * Lists the container below a root path and reads the attributes of all
+	 * groups and datasets.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param rootPath
+	 *            the root path
+	 * @param exec
+	 *            the executor service that lists and reads in parallel
+	 * @return the snapshot
+	 * @throws ExecutionException
+	 *             listing or reading failed
+	 * @throws InterruptedException
+	 *             interrupted
+	 */
+	public static Snapshot read(final N5Reader n5, final String rootPath, final ExecutorService exec)
+			throws ExecutionException, InterruptedException {
+
+		final GsonN5Reader gsonN5 = (GsonN5Reader)n5;
+		final String root = N5URI.normalizeGroupPath(rootPath);
+		return snapshot(n5, root, n5.deepList(root, exec), p -> orNull(gsonN5.getAttributes(p)), exec);
+	}
+
+	/**
+	 * Builds a snapshot of the root and its descendants, with the attributes
+	 * of each path and its version, both in parallel.
+	 */
+	private static Snapshot snapshot(final N5Reader n5, final String root, final String[] descendants,
+			final Function<String, JsonElement> attributesOf, final ExecutorService exec)
+			throws ExecutionException, InterruptedException {
+
+		final GsonN5Reader gsonN5 = (GsonN5Reader)n5;
+		final List<String> paths = new ArrayList<>();
+		paths.add(root);
+		for (final String p : descendants)
+			paths.add(child(root, p));
+
+		final List<Future<Node>> futures = new ArrayList<>();
+		for (final String p : paths)
+			futures.add(exec.submit(() -> {
+				final JsonElement json = attributesOf.apply(p);
+				return new Node(json, version(n5, p, isDataset(gsonN5, json)), null);
+			}));
+
+		final LinkedHashMap<String, JsonElement> attributes = new LinkedHashMap<>();
+		final LinkedHashMap<String, String> versions = new LinkedHashMap<>();
+		for (int i = 0; i < paths.size(); i++) {
+			final Node node = futures.get(i).get();
+			attributes.put(paths.get(i), node.attributes == null ? JsonNull.INSTANCE : node.attributes);
+			versions.put(paths.get(i), node.version);
+		}
+
+		return new Snapshot(n5.getURI().toString(), root, attributes, versions);
+	}
+
+	/**
+	 * Revalidates a snapshot against the container, group by group from the
+	 * root down, in parallel per level of the tree.
+	 * <p>
+	 * A path whose version is known and unchanged keeps its attributes and
+	 * children from the snapshot, and is neither read nor listed. Only paths
+	 * that changed, or whose version is not known, are read and, if they are
+	 * groups, listed again; their new children are read. On the local file
+	 * system, the version of a path is the modification time of its
+	 * attribute files, and for groups that of their directory, which changes
+	 * when children are added or removed. Other storage has no version, so
+	 * every group is read and listed again.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param cached
+	 *            the snapshot to revalidate
+	 * @param exec
+	 *            the executor service that lists and reads in parallel
+	 * @return the current snapshot
+	 * @throws ExecutionException
+	 *             listing or reading failed
+	 * @throws InterruptedException
+	 *             interrupted
+	 */
+	public static Snapshot refresh(final N5Reader n5, final Snapshot cached, final ExecutorService exec)
+			throws ExecutionException, InterruptedException {
+
+		final GsonN5Reader gsonN5 = (GsonN5Reader)n5;
+		final LinkedHashMap<String, JsonElement> attributes = new LinkedHashMap<>();
+		final LinkedHashMap<String, String> versions = new LinkedHashMap<>();
+
+		List<String> level = Collections.singletonList(cached.root);
+		while (!level.isEmpty()) {
+
+			final List<Future<Node>> futures = new ArrayList<>();
+			for (final String p : level)
+				futures.add(exec.submit(() -> revalidate(gsonN5, cached, p)));
+
+			final List<String> next = new ArrayList<>();
+			for (int i = 0; i < level.size(); i++) {
+				final Node node = futures.get(i).get();
+				if (node == null)
+					continue;
+
+				attributes.put(level.get(i), node.attributes == null ? JsonNull.INSTANCE : node.attributes);
+				versions.put(level.get(i), node.version);
+				next.addAll(node.children);
+			}
+			level = next;
+		}
+
+		return new Snapshot(cached.uri, cached.root, attributes, versions);
+	}
+
+	/**
+	 * @return the current attributes, version, and children of a path, or
+	 *         null if it no longer exists
+	 */
+	private static Node revalidate(final GsonN5Reader n5, final Snapshot cached, final String path) {
+
+		final JsonElement cachedAttributes = cached.attributes.get(path);
+		final boolean wasDataset = isDataset(n5, cachedAttributes);
+		final String version = version(n5, path, wasDataset);
+		if (cachedAttributes != null && !version.isEmpty() && version.equals(cached.versions.get(path))) {
+			final List<String> children = new ArrayList<>();
+			for (final String c : cached.list(path))
+				children.add(child(path, c));
+
+			return new Node(cachedAttributes, version, children);
+		}
+
+		if (!n5.exists(path))
+			return null;
+
+		final JsonElement json = orNull(n5.getAttributes(path));
+		final boolean dataset = isDataset(n5, json);
+		final List<String> children = new ArrayList<>();
+		if (!dataset)
+			for (final String c : n5.list(path))
+				children.add(child(path, c));
+
+		return new Node(json, dataset == wasDataset ? version : version(n5, path, dataset), children);
+	}
+
+	/**
+	 * The version of a path on the local file system: the modification times
+	 * of its attribute files and, for groups, of its directory.
+	 *
+	 * @return the version, or an empty string if it is not known
+	 */
+	static String version(final N5Reader n5, final String path, final boolean dataset) {
+
+		final URI uri = n5.getURI();
+		if (uri == null || !"file".equals(uri.getScheme()))
+			return "";
+
+		try {
+			final Path dir = Paths.get(uri).resolve(path);
+			final StringBuilder version = new StringBuilder();
+			if (!dataset)
+				version.append(Files.getLastModifiedTime(dir).toMillis());
+
+			for (final String name : METADATA_FILES) {
+				final Path file = dir.resolve(name);
+				if (Files.exists(file))
+					version.append(',').append(name).append('=').append(Files.getLastModifiedTime(file).toMillis());
+			}
+			return version.toString();
+		} catch (final IOException | RuntimeException e) {
+			return "";
+		}
+	}
+
+	private static final class Node {
+
+		private final JsonElement attributes;
+
+		private final String version;
+
+		private final List<String> children;
+
+		private Node(final JsonElement attributes, final String version, final List<String> children) {
+
+			this.attributes = attributes;
+			this.version = version;
+			this.children = children;
+		}
+	}
+
+	/**
+	 * Records the attributes that are read through its reader, such that a
+	 * snapshot can be built after the container was discovered without
+	 * reading them again. The reader reads the attributes of every path once,
+	 * and answers all attribute and dataset attribute queries from them.
+	 */
+	public static class Recorder {
+
+		private final N5Reader n5;
+
+		private final GsonN5Reader gsonN5;
+
+		private final ConcurrentHashMap<String, JsonElement> attributes = new ConcurrentHashMap<>();
+
+		/**
+		 * @param n5
+		 *            the reader, see {@link ContainerTreeCache#isSupported(N5Reader)}
+		 */
+		public Recorder(final N5Reader n5) {
+
+			this.n5 = n5;
+			this.gsonN5 = (GsonN5Reader)n5;
+		}
+
+		/**
+		 * @return a reader that records the attributes read through it
+		 */
+		public N5Reader reader() {
+
+			return (N5Reader)Proxy.newProxyInstance(n5.getClass().getClassLoader(), CacheUtils.interfaces(n5.getClass()),
+					(proxy, method, args) -> {
+						if (args != null && args.length > 0 && args[0] instanceof String) {
+							final String path = (String)args[0];
+							switch (method.getName()) {
+							case "getAttributes":
+								if (args.length == 1)
+									return orNull(attributes(path));
+								break;
+							case "datasetExists":
+								if (args.length == 1)
+									return isDataset(gsonN5, attributes(path));
+								break;
+							case "getDatasetAttributes":
+								if (args.length == 1)
+									return datasetAttributes(gsonN5, attributes(path));
+								break;
+							case "getAttribute":
+								if (args.length == 3 && args[1] instanceof String && args[2] instanceof Type)
+									return attribute(gsonN5.getGson(), attributes(path), (String)args[1], (Type)args[2]);
+								break;
+							}
+						}
+
+						try {
+							return method.invoke(n5, args);
+						} catch (final InvocationTargetException e) {
+							throw e.getCause();
+						}
+					});
+		}
+
+		private JsonElement attributes(final String path) {
+
+			return attributes.computeIfAbsent(N5URI.normalizeGroupPath(path), p -> {
+				final JsonElement json = gsonN5.getAttributes(p);
+				return json == null ? JsonNull.INSTANCE : json;
+			});
+		}
+
+		/**
+		 * Builds the snapshot of a root path from the recorded attributes,
+		 * reading only those of paths that were not read through the reader.
+		 *
+		 * @param rootPath
+		 *            the root path
+		 * @param descendants
+		 *            the paths of all descendants of the root, relative to
+		 *            it, as listed during discovery
+		 * @param exec
+		 *            the executor service that reads in parallel
+		 * @return the snapshot
+		 * @throws ExecutionException
+		 *             reading failed
+		 * @throws InterruptedException
+		 *             interrupted
+		 */
+		public Snapshot snapshot(final String rootPath, final String[] descendants, final ExecutorService exec)
+				throws ExecutionException, InterruptedException {
+
+			return ContainerTreeCache.snapshot(n5, N5URI.normalizeGroupPath(rootPath), descendants,
+					p -> orNull(attributes(p)), exec);
+		}
+	}
+
+	private static String child(final String parent, final String name) {
+
+		return N5URI.normalizeGroupPath(parent.isEmpty() ? name : parent + "/" + name);
+	}
+
+	private static JsonElement orNull(final JsonElement json) {
+
+		return json == null || json.isJsonNull() ? null : json;
+	}
+
+	private static boolean isDataset(final GsonN5Reader n5, final JsonElement json) {
+
+		return datasetAttributes(n5, json) != null;
+	}
+
+	private static DatasetAttributes datasetAttributes(final GsonN5Reader n5, final JsonElement json) {
+
+		if (json == null || json.isJsonNull())
+			return null;
+
+		try {
+			return n5.createDatasetAttributes(json);
+		} catch (final RuntimeException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the stored snapshot of a container, if the attributes of its root
+	 * are unchanged.
+	 *
+	 * @param n5
+	 *            the reader
+	 * @param rootPath
+	 *            the root path
+	 * @return the snapshot, or null if there is none, or it is out of date
+	 */
+	public Snapshot load(final N5Reader n5, final String rootPath) {
+
+		final String uri = n5.getURI().toString();
+		final String root = N5URI.normalizeGroupPath(rootPath);
+		final Path file = file(uri, root);
+		if (!Files.isRegularFile(file))
+			return null;
+
+		final Snapshot snapshot;
+		try (final Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			snapshot = fromJson(GSON.fromJson(reader, JsonObject.class));
+		} catch (final IOException | RuntimeException e) {
+			return null;
+		}
+
+		if (snapshot == null || !snapshot.uri.equals(uri) || !snapshot.root.equals(root))
+			return null;
+
+		final JsonElement rootAttributes;
+		try {
+			rootAttributes = ((GsonN5Reader)n5).getAttributes(root);
+		} catch (final N5Exception e) {
+			return null;
+		}
+
+		return Objects.equals(rootAttributes, snapshot.getAttributes(root)) ? snapshot : null;
+	}
+
+	/**
+	 * Stores a snapshot, replacing the stored snapshot of the same container
+	 * and root path.
+	 *
+	 * @param snapshot
+	 *            the snapshot
+	 * @throws IOException
+	 *             the snapshot could not be written
+	 */
+	public void save(final Snapshot snapshot) throws IOException {
+
+		final Path file = file(snapshot.uri, snapshot.root);
+		Files.createDirectories(file.getParent());
+		final Path tmp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		try (final Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			GSON.toJson(toJson(snapshot), writer);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private Path file(final String uri, final String root) {
+
+		return directory.resolve(CacheUtils.sha1(uri + "?" + root) + ".json");
+	}
+
+	private static JsonObject toJson(final Snapshot snapshot) {
+
+		final JsonObject json = new JsonObject();
+		json.addProperty("uri", snapshot.uri);
+		json.addProperty("root", snapshot.root);
+
+		final JsonArray nodes = new JsonArray();
+		for (final Map.Entry<String, JsonElement> e : snapshot.attributes.entrySet()) {
+			final JsonObject node = new JsonObject();
+			node.addProperty("path", e.getKey());
+			node.add("attributes", e.getValue());
+			node.addProperty("version", snapshot.versions.getOrDefault(e.getKey(), ""));
+			nodes.add(node);
+		}
+		json.add("nodes", nodes);
+		return json;
+	}
+
+	private static Snapshot fromJson(final JsonObject json) {
+
+		if (json == null || !json.has("uri") || !json.has("root") || !json.has("nodes"))
+			return null;
+
+		final LinkedHashMap<String, JsonElement> attributes = new LinkedHashMap<>();
+		final LinkedHashMap<String, String> versions = new LinkedHashMap<>();
+		for (final JsonElement e : json.getAsJsonArray("nodes")) {
+			final JsonObject node = e.getAsJsonObject();
+			final String path = node.get("path").getAsString();
+			final JsonElement a = node.get("attributes");
+			final JsonElement v = node.get("version");
+			attributes.put(path, a == null ? JsonNull.INSTANCE : a);
+			versions.put(path, v == null || v.isJsonNull() ? "" : v.getAsString());
+		}
+		return new Snapshot(json.get("uri").getAsString(), json.get("root").getAsString(), attributes, versions);
+	}
+
+	/**
+	 * @return the paths of a snapshot that are not in another snapshot
+	 */
+	static List<String> removedPaths(final Snapshot previous, final Snapshot current) {
+
+		if (previous == null)
+			return Collections.emptyList();
+
+		final List<String> removed = new ArrayList<>();
+		for (final String p : previous.attributes.keySet())
+			if (!current.attributes.containsKey(p))
+				removed.add(p);
+
+		return removed;
+	}
+
+}
@@ -14,6 +14,7 @@ import java.text.Collator;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
@@ -554,6 +555,12 @@ public class DatasetSelectorDialog {
 
 	private N5DatasetDiscoverer makeDiscoverer() {
 
+		datasetDiscoverer = makeDiscoverer(n5);
+		return datasetDiscoverer;
+	}
+
+	private N5DatasetDiscoverer makeDiscoverer(final N5Reader n5) {
+
 		// copy list
 		final ArrayList<N5MetadataParser<?>> parserList = new ArrayList<>();
 
@@ -567,10 +574,8 @@ public class DatasetSelectorDialog {
 			parserList.addAll(Arrays.asList(parsers));
 
 		final List<N5MetadataParser<?>> groupParserList = Arrays.asList(groupParsers);
-		datasetDiscoverer = new N5DatasetDiscoverer(n5, loaderExecutor, n5NodeFilter,
+		return new N5DatasetDiscoverer(n5, loaderExecutor, n5NodeFilter,
 				parserList, groupParserList);
-
-		return datasetDiscoverer;
 	}
 
 	private N5Reader makeN5(final String n5Path) {
@@ -728,10 +733,21 @@ public class DatasetSelectorDialog {
 			});
 		};
 
+		final ContainerTreeCache treeCache = ContainerTreeCache.isEnabled() && ContainerTreeCache.isSupported(n5)
+				? ContainerTreeCache.getShared()
+				: null;
+
+		// records the attributes read during discovery, for the snapshot of the tree
+		final ContainerTreeCache.Recorder recorder = treeCache == null ? null : new ContainerTreeCache.Recorder(n5);
+		final N5DatasetDiscoverer discoverer = recorder == null ? datasetDiscoverer : makeDiscoverer(recorder.reader());
+
 		parseExec = Executors.newSingleThreadExecutor();
 		parseExec.submit(() -> {
 			try {
-				String[] datasetPaths;
+				String[] datasetPaths = null;
+
+					if (treeCache != null && openCachedTree(treeCache, rootPath, callback))
+						return;
 
 					if (ijProgressBar != null)
 						ijProgressBar.show(0.3);
@@ -741,7 +757,7 @@ public class DatasetSelectorDialog {
 						messageLabel.repaint();
 					});
 
-					datasetDiscoverer.discoverShallow(tmpRootNode, callback);
+					discoverer.discoverShallow(tmpRootNode, callback);
 					callback.accept(tmpRootNode);
 					sortRecursive(rootNode);
 
@@ -774,26 +790,18 @@ public class DatasetSelectorDialog {
 
 					// callback copies values from temporary tree into the ui
 					// when metadata is parsed
-					datasetDiscoverer.parseMetadataRecursive(tmpRootNode, callback, true);
-
-					if (ijProgressBar != null)
-						ijProgressBar.show(0.9);
-
-					SwingUtilities.invokeLater(() -> {
-						messageLabel.setText("Done");
-						messageLabel.repaint();
-					});
+					discoverer.parseMetadataRecursive(tmpRootNode, callback, true);
 
-					if (ijProgressBar != null)
-						ijProgressBar.show(1.1);
+					if (recorder != null && datasetPaths != null)
+						saveTree(treeCache, recorder.snapshot(rootPath, datasetPaths, loaderExecutor));
 
-					Thread.sleep(1000);
-					SwingUtilities.invokeLater(() -> {
-						messageLabel.setText("");
-						messageLabel.setVisible(false);
-						messageLabel.repaint();
-					});
+					done();
 
+			} catch (final ExecutionException e) {
+				System.err.println("Could not cache the tree of " + n5.getURI() + ": " + e.getMessage());
+				try {
+					done();
+				} catch (final InterruptedException ignore) {}
 			} catch (final InterruptedException e) {
 				// can ignore
 			}
@@ -810,6 +818,108 @@ public class DatasetSelectorDialog {
 		detectCalled = true;
 	}
 
+	private void done() throws InterruptedException {
+
+		if (ijProgressBar != null)
+			ijProgressBar.show(0.9);
+
+		SwingUtilities.invokeLater(() -> {
+			messageLabel.setText("Done");
+			messageLabel.repaint();
+		});
+
+		if (ijProgressBar != null)
+			ijProgressBar.show(1.1);
+
+		Thread.sleep(1000);
+		SwingUtilities.invokeLater(() -> {
+			messageLabel.setText("");
+			messageLabel.setVisible(false);
+			messageLabel.repaint();
+		});
+	}
+
+	/**
+	 * Shows the cached tree of the container, if there is one, and then
+	 * revalidates it against the container, rereading only what changed.
+	 *
+	 * @return false if there is no cached tree
+	 */
+	private boolean openCachedTree(final ContainerTreeCache treeCache, final String rootPath,
+			final Consumer<N5TreeNode> callback) throws InterruptedException {
+
+		final ContainerTreeCache.Snapshot cached = treeCache.load(n5, rootPath);
+		if (cached == null)
+			return false;
+
+		try {
+			showTree(cached, rootPath, callback, Collections.emptyList());
+			containerTree.expandRow(0);
+
+			if (ijProgressBar != null)
+				ijProgressBar.show(0.6);
+
+			SwingUtilities.invokeLater(() -> {
+				messageLabel.setText("Refreshing...");
+				messageLabel.repaint();
+			});
+
+			final ContainerTreeCache.Snapshot current = ContainerTreeCache.refresh(n5, cached, loaderExecutor);
+			if (!current.equals(cached))
+				showTree(current, rootPath, callback, ContainerTreeCache.removedPaths(cached, current));
+
+			// the versions may have changed even if the tree did not
+			saveTree(treeCache, current);
+		} catch (final IOException | ExecutionException | N5Exception e) {
+			System.err.println("Could not refresh the tree of " + n5.getURI() + ": " + e.getMessage());
+		}
+
+		done();
+		return true;
+	}
+
+	/**
+	 * Parses the metadata of a snapshot of the container and shows them in
+	 * the tree, replacing those shown before, and removes the nodes at the
+	 * removed paths.
+	 */
+	private void showTree(final ContainerTreeCache.Snapshot snapshot, final String rootPath,
+			final Consumer<N5TreeNode> callback, final List<String> removedPaths) throws IOException {
+
+		final N5TreeNode parsed = makeDiscoverer(snapshot.reader(n5)).discoverAndParseRecursive(rootPath);
+		for (final String p : snapshot.getPaths())
+			rootNode.addPath(p);
+
+		N5TreeNode.flattenN5Tree(parsed).forEach(callback);
+
+		SwingUtilities.invokeLater(() -> {
+			// metadata that are no longer there
+			N5TreeNode.flattenN5Tree(parsed).filter(x -> x.getMetadata() == null).forEach(x -> {
+				rootNode.getDescendants(y -> pathsEqual(y.getPath(), x.getPath())).findFirst().ifPresent(node -> {
+					node.setMetadata(null);
+					treeModel.nodeChanged((N5SwingTreeNode)node);
+				});
+			});
+
+			for (final String p : removedPaths) {
+				rootNode.getDescendants(y -> pathsEqual(y.getPath(), p)).findFirst().ifPresent(node -> {
+					if (((N5SwingTreeNode)node).getParent() != null)
+						treeModel.removeNodeFromParent((N5SwingTreeNode)node);
+				});
+			}
+			sortRecursive(rootNode);
+		});
+	}
+
+	private void saveTree(final ContainerTreeCache treeCache, final ContainerTreeCache.Snapshot snapshot) {
+
+		try {
+			treeCache.save(snapshot);
+		} catch (final IOException e) {
+			System.err.println("Could not cache the tree of " + n5.getURI() + ": " + e.getMessage());
+		}
+	}
+
 	public boolean waitUntilDiscoveryIsFinished(long maxWaitingMillis) {
 		final long waitingPeriodMillis = 100;
 		while (messageLabel.isVisible() && maxWaitingMillis > 0) {
@@ -0,0 +1,59 @@
+package org.janelia.saalfeldlab.n5.util;
+
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Helpers shared by the caches of the importer and the dataset selector
+ * dialog.
+ */
+public final class CacheUtils {
+
+	private CacheUtils() {}
+
+	/**
+	 * @param type
+	 *            a class
+	 * @return all public interfaces of the class, for proxies that stand in
+	 *         for its instances
+	 */
+	public static Class<?>[] interfaces(final Class<?> type) {
+
+		final Set<Class<?>> interfaces = new LinkedHashSet<>();
+		for (Class<?> c = type; c != null; c = c.getSuperclass())
+			collectInterfaces(c.getInterfaces(), interfaces);
+
+		return interfaces.toArray(new Class<?>[0]);
+	}
+
+	private static void collectInterfaces(final Class<?>[] types, final Set<Class<?>> interfaces) {
+
+		for (final Class<?> t : types)
+			if (Modifier.isPublic(t.getModifiers()) && interfaces.add(t))
+				collectInterfaces(t.getInterfaces(), interfaces);
+	}
+
+	/**
+	 * @param s
+	 *            a string
+	 * @return the SHA-1 hash of the string in hex, for names of cache entries
+	 */
+	public static String sha1(final String s) {
+
+		try {
+			final byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder hex = new StringBuilder();
+			for (final byte b : digest)
+				hex.append(String.format("%02x", b));
+
+			return hex.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
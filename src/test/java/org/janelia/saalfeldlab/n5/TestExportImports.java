@@ -791,6 +791,31 @@ public class TestExportImports
 		}
 	}
 
+	@Test
+	public void testOmeZarrV05Metadata() throws IOException {
+
+		final String root = baseDir.getAbsolutePath() + "/ome-v05.zarr";
+		final String dset = "omeV05";
+		final ImagePlus imp = NewImage.createImage("test", 32, 32, 8, 8, NewImage.FILL_NOISE);
+
+		final N5ScalePyramidExporter exp = new N5ScalePyramidExporter();
+		exp.setOptions(imp, root, dset, N5ScalePyramidExporter.ZARR3_FORMAT, "8,8,8", true,
+				N5ScalePyramidExporter.DOWN_AVERAGE, N5Importer.MetadataOmeZarrV05Key, N5ScalePyramidExporter.RAW_COMPRESSION);
+		exp.run();
+
+		// the OME-NGFF writer sees the zarr v3 writer, not a buffering proxy
+		try (final N5Reader n5 = new N5Factory().openReader(StorageFormat.ZARR, root)) {
+			assertEquals("0.5", n5.getAttribute(dset, "ome/version", String.class));
+			assertNotNull(n5.getAttribute(dset, "ome/multiscales", OmeNgffMultiScaleMetadata[].class));
+
+			final N5DatasetDiscoverer disc = new N5DatasetDiscoverer(n5,
+					Collections.singletonList(new N5GenericSingleScaleMetadataParser()),
+					Collections.singletonList(new OmeNgffMetadataParser()));
+			final N5Metadata meta = disc.discoverAndParseRecursive("").getDescendant(dset).get().getMetadata();
+			assertTrue(meta instanceof OmeNgffMetadata);
+		}
+	}
+
 	@Test
 	public void testDownsamplingIsotropy() throws IOException {
 
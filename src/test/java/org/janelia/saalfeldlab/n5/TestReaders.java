@@ -0,0 +1,98 @@
+package org.janelia.saalfeldlab.n5;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.saalfeldlab.n5.util.CacheUtils;
+
+/**
+ * Readers and key value accesses that pass every call on to another one,
+ * and let tests count, record, or slow down the calls, e.g. as a stand-in for
+ * cloud storage.
+ */
+public class TestReaders {
+
+	/**
+	 * Sees the calls of an observed reader or key value access before they
+	 * are passed on.
+	 */
+	@FunctionalInterface
+	public interface Observer {
+
+		void call(String method, Object[] args) throws Exception;
+	}
+
+	/**
+	 * @param n5
+	 *            a reader
+	 * @param observer
+	 *            the observer of all calls
+	 * @return a reader with all public interfaces of n5 that passes every
+	 *         call on to n5 after the observer saw it
+	 */
+	public static N5Reader observed(final N5Reader n5, final Observer observer) {
+
+		return (N5Reader)proxy(n5, CacheUtils.interfaces(n5.getClass()), observer);
+	}
+
+	/**
+	 * @param kva
+	 *            a key value access
+	 * @param observer
+	 *            the observer of all calls
+	 * @return a key value access that passes every call on to kva after the
+	 *         observer saw it
+	 */
+	public static KeyValueAccess observed(final KeyValueAccess kva, final Observer observer) {
+
+		return (KeyValueAccess)proxy(kva, new Class<?>[]{KeyValueAccess.class}, observer);
+	}
+
+	/**
+	 * @param n5
+	 *            a reader
+	 * @param numBlocksRead
+	 *            counts the blocks read
+	 * @param latencyMillis
+	 *            how long reading a block takes in addition
+	 * @return a reader that takes a while for every block and counts the
+	 *         blocks read through it
+	 */
+	public static N5Reader slowReader(final N5Reader n5, final AtomicInteger numBlocksRead, final long latencyMillis) {
+
+		return observed(n5, (method, args) -> {
+			if (method.equals("readBlock")) {
+				numBlocksRead.incrementAndGet();
+				if (latencyMillis > 0)
+					Thread.sleep(latencyMillis);
+			}
+		});
+	}
+
+	/**
+	 * @param n5
+	 *            a reader
+	 * @param numBlocksRead
+	 *            counts the blocks read
+	 * @return a reader that counts the blocks read through it
+	 */
+	public static N5Reader countingReader(final N5Reader n5, final AtomicInteger numBlocksRead) {
+
+		return slowReader(n5, numBlocksRead, 0);
+	}
+
+	private static Object proxy(final Object target, final Class<?>[] interfaces, final Observer observer) {
+
+		return Proxy.newProxyInstance(target.getClass().getClassLoader(), interfaces,
+				(proxy, method, args) -> {
+					observer.call(method.getName(), args);
+					try {
+						return method.invoke(target, args);
+					} catch (final InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+}
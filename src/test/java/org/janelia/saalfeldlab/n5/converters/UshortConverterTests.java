@@ -1,5 +1,10 @@
 package org.janelia.saalfeldlab.n5.converters;
 
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.janelia.saalfeldlab.n5.converters.UnsignedShortLinearConverter;
 import org.junit.Assert;
 import org.junit.Before;
@@ -10,7 +15,9 @@ import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.array.ArrayRandomAccess;
 import net.imglib2.img.basictypeaccess.array.LongArray;
 import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
 
 public class UshortConverterTests
 {
@@ -62,6 +69,59 @@ public class UshortConverterTests
 		Assert.assertEquals( "big lut, max to two", 2, v.getInteger() );
 	}
 
+	@Test
+	public void testParallelLUTConvert() throws Exception
+	{
+		// few unique values, including zero and negative values, many more pixels
+		final Random rnd = new Random( 42 );
+		final ArrayImg< LongType, LongArray > labels = ArrayImgs.longs( 64, 48, 20 );
+		for( final LongType t : labels )
+			t.set( ( rnd.nextInt( 3000 ) - 100 ) * 1000003L );
+
+		final ExecutorService exec = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			final UnsignedShortLUTConverter< LongType > serial = new UnsignedShortLUTConverter<>( labels );
+			final UnsignedShortLUTConverter< LongType > parallel = new UnsignedShortLUTConverter<>( labels, exec );
+
+			final TreeSet< LongType > expected = UnsignedShortLUTConverter.uniqueValues( labels );
+			final long[] unique = UnsignedShortLUTConverter.uniqueValues( labels, exec );
+			Assert.assertEquals( expected.size(), unique.length );
+
+			final UnsignedShortType a = new UnsignedShortType();
+			final UnsignedShortType b = new UnsignedShortType();
+			int i = 0;
+			for( final LongType t : expected )
+			{
+				Assert.assertEquals( t.get(), unique[ i ] );
+				serial.convert( t, a );
+				parallel.convert( t, b );
+				Assert.assertEquals( i, a.getInteger() );
+				Assert.assertEquals( i, b.getInteger() );
+				i++;
+			}
+
+			// values above Long.MAX_VALUE are ordered as unsigned
+			final ArrayImg< UnsignedLongType, LongArray > ulongs = ArrayImgs.unsignedLongs( new long[]{ -1, 0, 5, Long.MIN_VALUE, 5 }, 5 );
+			final UnsignedShortLUTConverter< UnsignedLongType > conv = new UnsignedShortLUTConverter<>( ulongs, exec );
+			final UnsignedShortLUTConverter< UnsignedLongType > convSerial = new UnsignedShortLUTConverter<>( Views.flatIterable( ulongs ) );
+			final int[] expectedIndexes = new int[]{ 3, 0, 1, 2, 1 };
+			i = 0;
+			for( final UnsignedLongType t : ulongs )
+			{
+				conv.convert( t, a );
+				convSerial.convert( t, b );
+				Assert.assertEquals( expectedIndexes[ i ], a.getInteger() );
+				Assert.assertEquals( expectedIndexes[ i ], b.getInteger() );
+				i++;
+			}
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+	}
+
 	@Test
 	public void testLinearConvert()
 	{
@@ -90,4 +150,46 @@ public class UshortConverterTests
 
 	}
 
+	@Test
+	public void testParallelLinearConvert() throws Exception
+	{
+		final Random rnd = new Random( 7 );
+		final ArrayImg< LongType, LongArray > data = ArrayImgs.longs( 64, 48, 20 );
+		for( final LongType t : data )
+			t.set( rnd.nextInt( 1000000 ) - 20000 );
+
+		data.randomAccess().setPositionAndGet( 10, 20, 15 ).set( -30000 );
+		data.randomAccess().setPositionAndGet( 40, 2, 3 ).set( 2000000 );
+
+		final ExecutorService exec = Executors.newFixedThreadPool( 4 );
+		try
+		{
+			final long[] expected = UnsignedShortLinearConverter.minMax( data );
+			Assert.assertArrayEquals( new long[]{ -30000, 2000000 }, expected );
+			Assert.assertArrayEquals( expected, UnsignedShortLinearConverter.minMax( data, exec, Long.MIN_VALUE, Long.MAX_VALUE ) );
+
+			// stopping early at the known bounds gives the same range
+			Assert.assertArrayEquals( expected, UnsignedShortLinearConverter.minMax( data, exec, -30000, 2000000 ) );
+
+			final UnsignedShortLinearConverter< LongType > serial = new UnsignedShortLinearConverter<>( data );
+			final UnsignedShortLinearConverter< LongType > parallel = new UnsignedShortLinearConverter<>( data, exec );
+			final UnsignedShortType a = new UnsignedShortType();
+			final UnsignedShortType b = new UnsignedShortType();
+			for( final LongType t : data )
+			{
+				serial.convert( t, a );
+				parallel.convert( t, b );
+				Assert.assertEquals( a.get(), b.get() );
+			}
+
+			final LongType in = new LongType( 2000000 );
+			parallel.convert( in, b );
+			Assert.assertEquals( maxUshort, b.get() );
+		}
+		finally
+		{
+			exec.shutdown();
+		}
+	}
+
 }
@@ -0,0 +1,163 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.TestReaders;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.Roi;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+
+public class BatchCropExtractorTest {
+
+	private static final long[] DIMENSIONS = new long[]{20, 18, 9};
+
+	private File baseDir;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-batch-crop-test-").toFile();
+		exec = Executors.newFixedThreadPool(4);
+
+		final ArrayImg<UnsignedShortType, ?> img = ArrayImgs.unsignedShorts(DIMENSIONS);
+		final RandomAccess<UnsignedShortType> ra = img.randomAccess();
+		for (int z = 0; z < DIMENSIONS[2]; z++)
+			for (int y = 0; y < DIMENSIONS[1]; y++)
+				for (int x = 0; x < DIMENSIONS[0]; x++) {
+					ra.setPosition(new int[]{x, y, z});
+					ra.get().set(value(x, y, z));
+				}
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			N5Utils.save(img, n5, "img", new int[]{8, 8, 4}, new GzipCompression());
+		}
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testExtract() throws IOException {
+
+		final List<Interval> crops = Arrays.asList(
+				new FinalInterval(new long[]{1, 1, 0}, new long[]{3, 4, 1}),
+				new FinalInterval(new long[]{2, 0, 1}, new long[]{6, 2, 2}),
+				new FinalInterval(new long[]{5, 6, 2}, new long[]{12, 10, 5}),
+				new FinalInterval(new long[]{30, 0, 0}, new long[]{40, 5, 5}),
+				new FinalInterval(new long[]{16, 16, 8}, new long[]{25, 25, 12}));
+
+		final AtomicInteger numBlocksRead = new AtomicInteger();
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final N5DatasetMetadata meta = DatasetMetadataResolver.resolve(n5, "img");
+			final List<ImagePlus> result = new BatchCropExtractor(TestReaders.countingReader(n5, numBlocksRead), meta, null)
+					.extract(crops, exec);
+
+			// the first two crops are within one of the eight blocks of the third, the last within one more
+			assertEquals(8 + 1, numBlocksRead.get());
+			assertEquals(crops.size(), result.size());
+			assertNull(result.get(3));
+
+			for (int i = 0; i < crops.size(); i++) {
+				if (i == 3)
+					continue;
+
+				final Interval crop = Intervals.intersect(crops.get(i), new FinalInterval(DIMENSIONS));
+				final ImagePlus imp = result.get(i);
+				assertEquals(crop.dimension(0), imp.getWidth());
+				assertEquals(crop.dimension(1), imp.getHeight());
+				assertEquals(crop.dimension(2), imp.getStackSize());
+				for (int z = 0; z < imp.getStackSize(); z++)
+					for (int y = 0; y < imp.getHeight(); y++)
+						for (int x = 0; x < imp.getWidth(); x++)
+							assertEquals(
+									value((int)crop.min(0) + x, (int)crop.min(1) + y, (int)crop.min(2) + z),
+									imp.getStack().getProcessor(z + 1).get(x, y));
+			}
+		}
+	}
+
+	@Test
+	public void testExtractFromUri() throws IOException {
+
+		final List<ImagePlus> result = BatchCropExtractor.extract(baseDir.getAbsolutePath() + "?img",
+				Arrays.asList(new FinalInterval(new long[]{4, 4, 4}, new long[]{9, 9, 4})), exec);
+
+		assertEquals(1, result.size());
+		assertEquals(6, result.get(0).getWidth());
+		assertEquals(value(5, 6, 4), result.get(0).getProcessor().get(1, 2));
+	}
+
+	@Test
+	public void testIntervals() {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final N5DatasetMetadata meta = DatasetMetadataResolver.resolve(n5, "img");
+			final Roi all = new Roi(2, 3, 4, 5);
+			final Roi slice = new Roi(0, 0, 8, 8);
+			slice.setPosition(0, 3, 0);
+
+			final List<Interval> intervals = BatchCropExtractor.intervals(new Roi[]{all, slice}, meta);
+			assertArrayEquals(new long[]{2, 3, 0}, intervals.get(0).minAsLongArray());
+			assertArrayEquals(new long[]{5, 7, 8}, intervals.get(0).maxAsLongArray());
+			assertArrayEquals(new long[]{0, 0, 2}, intervals.get(1).minAsLongArray());
+			assertArrayEquals(new long[]{7, 7, 2}, intervals.get(1).maxAsLongArray());
+		}
+	}
+
+	@Test
+	public void testReadCsv() throws IOException {
+
+		final File csv = new File(baseDir, "crops.csv");
+		Files.write(csv.toPath(), "min0,min1,max0,max1\n0,1,5,6\n\n 10, 10, 19, 17\n".getBytes(StandardCharsets.UTF_8));
+
+		final List<Interval> intervals = BatchCropExtractor.readCsv(csv.getAbsolutePath());
+		assertEquals(2, intervals.size());
+		assertArrayEquals(new long[]{0, 1}, intervals.get(0).minAsLongArray());
+		assertArrayEquals(new long[]{5, 6}, intervals.get(0).maxAsLongArray());
+		assertArrayEquals(new long[]{10, 10}, intervals.get(1).minAsLongArray());
+	}
+
+	private static int value(final int x, final int y, final int z) {
+
+		return x + 32 * y + 1024 * z;
+	}
+
+}
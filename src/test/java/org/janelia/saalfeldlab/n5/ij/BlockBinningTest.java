@@ -0,0 +1,195 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayCursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+
+public class BlockBinningTest {
+
+	private static final long[] DIMENSIONS = new long[]{10, 9, 7};
+
+	private File baseDir;
+
+	private ArrayImg<FloatType, ?> img;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-binning-test-").toFile();
+		exec = Executors.newFixedThreadPool(4);
+
+		img = ArrayImgs.floats(DIMENSIONS);
+		final Random random = new Random(7);
+		img.forEach(x -> x.set(random.nextInt(1000)));
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			N5Utils.save(img, n5, "img", new int[]{4, 4, 3}, new GzipCompression());
+		}
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testParse() {
+
+		assertNull(BlockBinning.parse("", "max"));
+		assertNull(BlockBinning.parse("1,1,1", "max"));
+
+		final BlockBinning binning = BlockBinning.parse("4, 4, 1", "");
+		assertArrayEquals(new long[]{4, 4, 1}, binning.getFactors());
+		assertEquals(BlockBinning.Mode.MEAN, binning.getMode());
+		assertEquals(BlockBinning.Mode.MAX, BlockBinning.parse("2", "max").getMode());
+		assertEquals(1, binning.factor(5));
+	}
+
+	@Test
+	public void testBinnedDimensions() {
+
+		final BlockBinning binning = new BlockBinning(new long[]{3, 2}, BlockBinning.Mode.MEAN);
+		assertArrayEquals(new long[]{4, 5, 7}, binning.binnedDimensions(new FinalInterval(DIMENSIONS)));
+	}
+
+	@Test
+	public void testMean() throws InterruptedException, ExecutionException {
+
+		testBinning(new BlockBinning(new long[]{3, 2, 2}, BlockBinning.Mode.MEAN), null);
+		testBinning(new BlockBinning(new long[]{3, 2, 2}, BlockBinning.Mode.MEAN),
+				new FinalInterval(new long[]{1, 2, 1}, new long[]{9, 8, 6}));
+	}
+
+	@Test
+	public void testMax() throws InterruptedException, ExecutionException {
+
+		testBinning(new BlockBinning(new long[]{4, 4, 3}, BlockBinning.Mode.MAX), null);
+		testBinning(new BlockBinning(new long[]{2, 3, 5}, BlockBinning.Mode.MAX),
+				new FinalInterval(new long[]{3, 0, 2}, new long[]{8, 7, 6}));
+	}
+
+	@Test
+	public void testImportCalibration() throws IOException {
+
+		final String root = new File(baseDir, "test.zarr").getAbsolutePath();
+		final ImagePlus imp = NewImage.createImage("test", 64, 64, 1, 8, NewImage.FILL_RAMP);
+		imp.getCalibration().pixelWidth = 0.5;
+		imp.getCalibration().pixelHeight = 0.5;
+		new N5ScalePyramidExporter(imp, root, "img", N5ScalePyramidExporter.ZARR2_FORMAT, "16", true,
+				N5ScalePyramidExporter.DOWN_SAMPLE, N5Importer.MetadataOmeZarrKey,
+				N5ScalePyramidExporter.GZIP_COMPRESSION).run();
+
+		final N5Importer importer = new N5Importer();
+		importer.setShow(false);
+		importer.setBinning(new BlockBinning(new long[]{4, 4}, BlockBinning.Mode.MEAN));
+
+		final List<ImagePlus> result = importer.process(root + "?img/s0", false);
+		assertEquals(1, result.size());
+
+		final ImagePlus binned = result.get(0);
+		assertEquals(16, binned.getWidth());
+		assertEquals(16, binned.getHeight());
+		assertEquals(2.0, binned.getCalibration().pixelWidth, 1e-9);
+		assertEquals(2.0, binned.getCalibration().pixelHeight, 1e-9);
+
+		// the mean of the first four columns of the ramp
+		final double expected = (imp.getProcessor().getf(0, 0) + imp.getProcessor().getf(1, 0)
+				+ imp.getProcessor().getf(2, 0) + imp.getProcessor().getf(3, 0)) / 4;
+		assertEquals(expected, binned.getProcessor().getf(0, 0), 1e-9);
+	}
+
+	private void testBinning(final BlockBinning binning, final FinalInterval interval)
+			throws InterruptedException, ExecutionException {
+
+		final FinalInterval source = interval == null ? new FinalInterval(DIMENSIONS) : interval;
+		final ArrayImg<FloatType, ?> expected = reference(binning, source);
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			final ArrayImg<FloatType, ?> binned = binning.read(n5, "img", interval, exec);
+			assertArrayEquals(Intervals.dimensionsAsLongArray(expected), Intervals.dimensionsAsLongArray(binned));
+
+			final ArrayCursor<FloatType> e = expected.cursor();
+			final ArrayCursor<FloatType> b = binned.cursor();
+			while (e.hasNext())
+				assertEquals(e.next().get(), b.next().get(), 1e-3);
+		}
+	}
+
+	/**
+	 * Bins the image pixel by pixel.
+	 */
+	private ArrayImg<FloatType, ?> reference(final BlockBinning binning, final FinalInterval source) {
+
+		final ArrayImg<FloatType, ?> sums = ArrayImgs.floats(binning.binnedDimensions(source));
+		final ArrayImg<FloatType, ?> counts = ArrayImgs.floats(binning.binnedDimensions(source));
+		final boolean max = binning.getMode() == BlockBinning.Mode.MAX;
+		if (max)
+			sums.forEach(x -> x.set(Float.NEGATIVE_INFINITY));
+
+		final RandomAccess<FloatType> in = img.randomAccess();
+		final RandomAccess<FloatType> s = sums.randomAccess();
+		final RandomAccess<FloatType> c = counts.randomAccess();
+		final long[] position = new long[3];
+		for (long z = source.min(2); z <= source.max(2); z++)
+			for (long y = source.min(1); y <= source.max(1); y++)
+				for (long x = source.min(0); x <= source.max(0); x++) {
+					in.setPosition(new long[]{x, y, z});
+					position[0] = (x - source.min(0)) / binning.factor(0);
+					position[1] = (y - source.min(1)) / binning.factor(1);
+					position[2] = (z - source.min(2)) / binning.factor(2);
+					s.setPosition(position);
+					c.setPosition(position);
+
+					final float v = in.get().get();
+					if (max)
+						s.get().set(Math.max(s.get().get(), v));
+					else
+						s.get().set(s.get().get() + v);
+
+					c.get().set(c.get().get() + 1);
+				}
+
+		if (!max) {
+			final ArrayCursor<FloatType> sc = sums.cursor();
+			final ArrayCursor<FloatType> cc = counts.cursor();
+			while (sc.hasNext())
+				sc.next().div(cc.next());
+		}
+		return sums;
+	}
+
+}
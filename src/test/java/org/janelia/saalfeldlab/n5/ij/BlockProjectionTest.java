@@ -0,0 +1,189 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Intervals;
+
+public class BlockProjectionTest {
+
+	private static final long[] DIMENSIONS = new long[]{9, 7, 11};
+
+	private File baseDir;
+
+	private ArrayImg<UnsignedShortType, ?> img;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-projection-test-").toFile();
+		exec = Executors.newFixedThreadPool(4);
+
+		img = ArrayImgs.unsignedShorts(DIMENSIONS);
+		final Random random = new Random(11);
+		img.forEach(x -> x.set(random.nextInt(4000)));
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			N5Utils.save(img, n5, "img", new int[]{4, 3, 4}, new GzipCompression());
+		}
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testParse() {
+
+		assertNull(BlockProjection.parse("", "z", ""));
+
+		final BlockProjection projection = BlockProjection.parse("std", "", "");
+		assertEquals(BlockBinning.Mode.STD, projection.getMode());
+		assertEquals('z', projection.getAxis());
+		assertEquals(0, projection.getLevel());
+		assertEquals(2, BlockProjection.parse("max", "T", "2").getLevel());
+	}
+
+	@Test
+	public void testProjections() throws InterruptedException, ExecutionException {
+
+		for (final BlockBinning.Mode mode : BlockBinning.Mode.values())
+			for (final char axis : new char[]{'x', 'y', 'z'})
+				testProjection(new BlockProjection(axis, mode, 0));
+	}
+
+	@Test
+	public void testImport() {
+
+		final String root = new File(baseDir, "test.zarr").getAbsolutePath();
+		final ImagePlus imp = NewImage.createImage("test", 64, 64, 8, 16, NewImage.FILL_RAMP);
+		imp.getCalibration().pixelDepth = 2.0;
+		new N5ScalePyramidExporter(imp, root, "img", N5ScalePyramidExporter.ZARR2_FORMAT, "16", true,
+				N5ScalePyramidExporter.DOWN_SAMPLE, N5Importer.MetadataOmeZarrKey,
+				N5ScalePyramidExporter.GZIP_COMPRESSION).run();
+
+		final N5Importer importer = new N5Importer();
+		importer.setShow(false);
+		importer.setProjection(new BlockProjection('z', BlockBinning.Mode.MAX, 0));
+
+		final ImagePlus max = importer.process(root + "?img/s0", false).get(0);
+		assertEquals(64, max.getWidth());
+		assertEquals(64, max.getHeight());
+		assertEquals(1, max.getNSlices());
+		assertEquals(16, max.getBitDepth());
+		assertEquals(16.0, max.getCalibration().pixelDepth, 1e-9);
+		assertEquals(imp.getStack().getProcessor(1).get(40, 0), max.getProcessor().get(40, 0));
+
+		// the mean of a coarser level
+		importer.setProjection(new BlockProjection('z', BlockBinning.Mode.MEAN, 1));
+		final List<ImagePlus> result = importer.process(root + "?img/s0", false);
+		final ImagePlus mean = result.get(0);
+		assertEquals(32, mean.getWidth());
+		assertEquals(1, mean.getNSlices());
+		assertEquals(32, mean.getBitDepth());
+
+		// a crop of the requested level is scaled to the coarser level
+		final ImagePlus cropped = importer.process(root + "?img/s0", false,
+				Intervals.createMinMax(16, 8, 0, 47, 39, 7)).get(0);
+		assertEquals(16, cropped.getWidth());
+		assertEquals(16, cropped.getHeight());
+		assertEquals(1, cropped.getNSlices());
+		for (int y = 0; y < 16; y++)
+			for (int x = 0; x < 16; x++)
+				assertEquals(mean.getProcessor().getf(x + 8, y + 4), cropped.getProcessor().getf(x, y), 1e-6);
+	}
+
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private void testProjection(final BlockProjection projection) throws InterruptedException, ExecutionException {
+
+		final int axis = "xyz".indexOf(projection.getAxis());
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final ArrayImg projected = projection.read(n5, "img", null, exec);
+			final long[] expectedDimensions = DIMENSIONS.clone();
+			expectedDimensions[axis] = 1;
+			assertArrayEquals(expectedDimensions, Intervals.dimensionsAsLongArray(projected));
+
+			final RandomAccess<UnsignedShortType> in = img.randomAccess();
+			final RandomAccess<RealType> out = projected.randomAccess();
+			final long[] position = new long[3];
+			for (position[0] = 0; position[0] < expectedDimensions[0]; position[0]++)
+				for (position[1] = 0; position[1] < expectedDimensions[1]; position[1]++)
+					for (position[2] = 0; position[2] < expectedDimensions[2]; position[2]++) {
+
+						final double[] values = new double[(int)DIMENSIONS[axis]];
+						in.setPosition(position);
+						for (int i = 0; i < values.length; i++) {
+							in.setPosition(i, axis);
+							values[i] = in.get().getRealDouble();
+						}
+
+						out.setPosition(position);
+						assertEquals(projection.getMode() + " along " + projection.getAxis(),
+								expected(values, projection.getMode()), out.get().getRealDouble(), 1e-2);
+					}
+		}
+	}
+
+	private static double expected(final double[] values, final BlockBinning.Mode mode) {
+
+		double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		for (final double v : values) {
+			sum += v;
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+
+		final double mean = sum / values.length;
+		double squares = 0;
+		for (final double v : values)
+			squares += (v - mean) * (v - mean);
+
+		switch (mode) {
+		case MAX:
+			return max;
+		case MIN:
+			return min;
+		case SUM:
+			return sum;
+		case MEAN:
+			return mean;
+		default:
+			return Math.sqrt(squares / (values.length - 1));
+		}
+	}
+
+}
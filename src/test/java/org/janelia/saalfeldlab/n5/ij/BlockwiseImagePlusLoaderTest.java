@@ -0,0 +1,141 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imglib2.FinalInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.DoubleArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.DoubleType;
+import net.imglib2.view.Views;
+
+public class BlockwiseImagePlusLoaderTest {
+
+	private File baseDir;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-blockwise-test-").toFile();
+		exec = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+
+		// dimensions not divisible by the block size
+		final ArrayImg<UnsignedShortType, ShortArray> img = ArrayImgs.unsignedShorts(13, 11, 5);
+		int i = 0;
+		for (final UnsignedShortType t : img)
+			t.set(i++);
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			N5Utils.save(img, n5, "data", new int[]{4, 4, 2}, new GzipCompression());
+
+			final ImagePlus imp = BlockwiseImagePlusLoader.load(n5, "data", null, null, false, exec);
+			assertEquals(13, imp.getWidth());
+			assertEquals(11, imp.getHeight());
+			assertEquals(5, imp.getStackSize());
+			for (int z = 0; z < 5; z++)
+				for (int y = 0; y < 11; y++)
+					for (int x = 0; x < 13; x++)
+						assertEquals(x + 13 * (y + 11 * z), imp.getStack().getProcessor(z + 1).get(x, y));
+
+			// crop
+			final FinalInterval crop = new FinalInterval(new long[]{3, 2, 1}, new long[]{9, 10, 3});
+			final ImagePlus cropped = BlockwiseImagePlusLoader.load(n5, "data", crop, null, false, null);
+			assertEquals(7, cropped.getWidth());
+			assertEquals(9, cropped.getHeight());
+			assertEquals(3, cropped.getStackSize());
+			for (int z = 0; z < 3; z++)
+				for (int y = 0; y < 9; y++)
+					for (int x = 0; x < 7; x++)
+						assertEquals((x + 3) + 13 * ((y + 2) + 11 * (z + 1)), cropped.getStack().getProcessor(z + 1).get(x, y));
+
+			// swap x and z, and add a singleton dimension in between
+			final ImagePlus permuted = BlockwiseImagePlusLoader.load(n5, "data", null,
+					x -> Views.permute(Views.addDimension(Views.permute(x, 0, 2), 0, 0), 2, 3),
+					false, exec);
+			assertEquals(5, permuted.getWidth());
+			assertEquals(11, permuted.getHeight());
+			assertEquals(13, permuted.getStackSize());
+			for (int z = 0; z < 5; z++)
+				for (int y = 0; y < 11; y++)
+					for (int x = 0; x < 13; x++)
+						assertEquals(x + 13 * (y + 11 * z), permuted.getStack().getProcessor(x + 1).get(z, y));
+		}
+	}
+
+	@Test
+	public void testDoubleToFloat() throws Exception {
+
+		final ArrayImg<DoubleType, DoubleArray> img = ArrayImgs.doubles(9, 7);
+		int i = 0;
+		for (final DoubleType t : img)
+			t.set(0.5 * i++);
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			N5Utils.save(img, n5, "double", new int[]{4, 4}, new GzipCompression());
+			final ImagePlus imp = BlockwiseImagePlusLoader.load(n5, "double", null, null, false, exec);
+			assertEquals(ImagePlus.GRAY32, imp.getType());
+			for (int y = 0; y < 7; y++)
+				for (int x = 0; x < 9; x++)
+					assertEquals(0.5 * (x + 9 * y), imp.getProcessor().getf(x, y), 1e-6);
+		}
+	}
+
+	@Test
+	public void testImporterMatchesVirtual() throws Exception {
+
+		final ImagePlus imp = NewImage.createImage("test", 21, 17, 2 * 3 * 2, 16, NewImage.FILL_NOISE);
+		imp.setDimensions(2, 3, 2);
+
+		final String root = new File(baseDir, "test.zarr").getAbsolutePath();
+		final N5ScalePyramidExporter writer = new N5ScalePyramidExporter(imp, root, "img",
+				N5ScalePyramidExporter.ZARR2_FORMAT, "8,8,2", false, N5ScalePyramidExporter.DOWN_SAMPLE,
+				N5Importer.MetadataOmeZarrKey, N5ScalePyramidExporter.GZIP_COMPRESSION);
+		writer.run();
+
+		final ImagePlus loaded = N5Importer.open(root + "?img/s0", false);
+		final ImagePlus virtual = N5Importer.openVirtual(root + "?img/s0", false);
+
+		assertArrayEquals(imp.getDimensions(), loaded.getDimensions());
+		assertArrayEquals(virtual.getDimensions(), loaded.getDimensions());
+		for (int s = 1; s <= imp.getStackSize(); s++)
+			assertArrayEquals("slice " + s,
+					(short[])imp.getStack().getPixels(s),
+					(short[])loaded.getStack().getPixels(s));
+	}
+
+}
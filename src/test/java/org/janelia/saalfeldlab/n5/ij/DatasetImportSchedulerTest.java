@@ -0,0 +1,102 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class DatasetImportSchedulerTest {
+
+	@Test
+	public void testByteBudget() throws Exception {
+
+		final AtomicLong running = new AtomicLong();
+		final AtomicLong maxRunning = new AtomicLong();
+
+		try (final DatasetImportScheduler scheduler = new DatasetImportScheduler(4, 10)) {
+
+			final List<Future<Long>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				final long bytes = i == 3 ? 20 : 4;
+				futures.add(scheduler.submit(bytes, () -> {
+					final long r = running.addAndGet(bytes);
+					maxRunning.accumulateAndGet(r, Math::max);
+					Thread.sleep(20);
+					running.addAndGet(-bytes);
+					return bytes;
+				}));
+			}
+
+			for (final Future<Long> f : futures)
+				f.get();
+		}
+
+		// the large task ran alone, the others at most two at a time
+		assertEquals(20, maxRunning.get());
+		assertEquals(0, running.get());
+	}
+
+	@Test
+	public void testSerial() throws Exception {
+
+		try (final DatasetImportScheduler scheduler = new DatasetImportScheduler(1, 10)) {
+			final Thread caller = Thread.currentThread();
+			final Future<Boolean> f = scheduler.submit(100, () -> Thread.currentThread() == caller);
+			assertTrue(f.isDone());
+			assertTrue(f.get());
+			assertEquals(0, scheduler.getBytes());
+		}
+	}
+
+	@Test
+	public void testImportInSelectionOrder() throws IOException {
+
+		final File baseDir = Files.createTempDirectory("n5-import-scheduler-test-").toFile();
+		final ExecutorService exec = Executors.newFixedThreadPool(2);
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final List<N5DatasetMetadata> selection = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				// later datasets are smaller and finish first
+				final ArrayImg<UnsignedByteType, ByteArray> img = ArrayImgs.unsignedBytes(64 * (6 - i), 64, 4);
+				img.forEach(t -> t.set(7));
+				N5Utils.save(img, n5, "c" + i, new int[]{32, 32, 1}, new GzipCompression());
+				selection.add(DatasetMetadataResolver.resolve(n5, "c" + i));
+			}
+
+			final List<ImagePlus> imps = N5Importer.process(n5, baseDir.getAbsolutePath(), exec, selection, false, null, false,
+					new N5Importer().getImagePlusMetadataWriterMap());
+
+			assertEquals(6, imps.size());
+			for (int i = 0; i < 6; i++)
+				assertEquals(64 * (6 - i), imps.get(i).getWidth());
+
+		} finally {
+			exec.shutdown();
+			try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+				n5.remove();
+			} catch (final Exception e) {}
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.junit.Test;
+
+import ij.ImagePlus;
+
+public class DatasetMetadataResolverTest {
+
+	@Test
+	public void testAncestors() {
+
+		assertEquals(Arrays.asList("a/b", "a", ""), DatasetMetadataResolver.ancestors("a/b/c"));
+		assertEquals(Collections.singletonList(""), DatasetMetadataResolver.ancestors("a"));
+		assertEquals(Collections.emptyList(), DatasetMetadataResolver.ancestors(""));
+	}
+
+	@Test
+	public void testResolveDataset() {
+
+		try (final N5Reader n5 = new N5Factory().openReader("src/test/resources/test.n5")) {
+
+			final N5DatasetMetadata meta = DatasetMetadataResolver.resolve(n5, "cosem_ms/s0");
+			assertNotNull(meta);
+			assertEquals("cosem_ms/s0", N5URI.normalizeGroupPath(meta.getPath()));
+			assertArrayEquals(new long[]{512, 512, 260}, meta.getAttributes().getDimensions());
+
+			// a group is not a dataset
+			assertNull(DatasetMetadataResolver.nearestMultiscalesGroup(n5, "cosem_ms/s0"));
+			assertNull(DatasetMetadataResolver.resolve(n5, "cosem_ms"));
+		}
+	}
+
+	@Test
+	public void testResolveOmeNgffScaleLevel() {
+
+		final String n5Root = "src/test/resources/v0.5.ome.zarr/Tonsil1.zarr";
+		try (final N5Reader n5 = new N5Factory().openReader(n5Root)) {
+
+			assertEquals("", DatasetMetadataResolver.nearestMultiscalesGroup(n5, "4"));
+
+			final N5DatasetMetadata meta = DatasetMetadataResolver.resolve(n5, "4");
+			assertNotNull(meta);
+			assertEquals("4", N5URI.normalizeGroupPath(meta.getPath()));
+
+			// the targeted open matches the open through full discovery
+			final ImagePlus imp = N5Importer.open(n5, "4", false);
+			final ImagePlus discovered = N5Importer.open(n5Root + "?4", false);
+			assertEquals(168, imp.getWidth());
+			assertEquals(discovered.getWidth(), imp.getWidth());
+			assertEquals(discovered.getNChannels(), imp.getNChannels());
+			assertEquals(discovered.getCalibration().pixelWidth, imp.getCalibration().pixelWidth, 1e-9);
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ByteArray;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class DatasetRemoverTest {
+
+	private File baseDir;
+
+	private File containerDir;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-remove-test-").toFile();
+		containerDir = new File(baseDir, "test.n5");
+	}
+
+	@After
+	public void after() throws IOException {
+
+		try (final N5Writer n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		}
+	}
+
+	@Test
+	public void testRemoveStrategies() throws Exception {
+
+		try (final N5Writer n5 = new N5FSWriter(containerDir.getAbsolutePath())) {
+
+			for (final DatasetRemover.Strategy strategy : DatasetRemover.Strategy.values()) {
+
+				final String group = "group-" + strategy;
+				writeData(n5, group + "/a");
+				writeData(n5, group + "/b");
+				assertTrue(n5.datasetExists(group + "/a"));
+
+				DatasetRemover.remove(n5, group, strategy, 2);
+				assertFalse(strategy + " group still exists", n5.exists(group));
+				assertFalse(strategy + " dataset still exists", n5.datasetExists(group + "/a"));
+
+				// the path is usable right away
+				writeData(n5, group + "/a");
+				assertTrue(n5.datasetExists(group + "/a"));
+			}
+		}
+
+		assertTrue(DatasetRemover.awaitPendingRemovals(1, TimeUnit.MINUTES));
+
+		// nothing was written next to the container, and all trash has been deleted
+		final String[] siblings = baseDir.list();
+		assertEquals(1, siblings.length);
+		assertEquals(containerDir.getName(), siblings[0]);
+		for (final String name : containerDir.list())
+			assertFalse(name, name.startsWith("."));
+	}
+
+	private static void writeData(final N5Writer n5, final String dataset) {
+
+		final ArrayImg<UnsignedByteType, ByteArray> img = ArrayImgs.unsignedBytes(32, 32, 8);
+		N5Utils.save(img, n5, dataset, new int[]{8, 8, 8}, new RawCompression());
+	}
+
+}
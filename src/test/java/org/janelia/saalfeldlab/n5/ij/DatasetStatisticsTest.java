@@ -0,0 +1,239 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.FloatArrayDataBlock;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
+import org.janelia.saalfeldlab.n5.converters.UnsignedShortLinearConverter;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class DatasetStatisticsTest {
+
+	private static final long[] DIMENSIONS = new long[]{10, 9, 7};
+
+	private static final int[] BLOCK_SIZE = new int[]{4, 4, 3};
+
+	private File baseDir;
+
+	private ArrayImg<UnsignedShortType, ?> shorts;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-statistics-test-").toFile();
+		exec = Executors.newFixedThreadPool(4);
+
+		final Random random = new Random(5);
+		shorts = ArrayImgs.unsignedShorts(DIMENSIONS);
+		shorts.forEach(x -> x.set(random.nextInt(5) == 0 ? 0 : random.nextInt(60000)));
+		final ArrayImg<FloatType, ?> floats = ArrayImgs.floats(DIMENSIONS);
+		floats.forEach(x -> x.set(random.nextFloat() * 10 - 5));
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			N5Utils.save(shorts, n5, "shorts", BLOCK_SIZE, new GzipCompression());
+			N5Utils.save(floats, n5, "floats", BLOCK_SIZE, new GzipCompression());
+		}
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testCompute() throws InterruptedException, ExecutionException {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final DatasetStatistics stats = DatasetStatistics.compute(n5, "shorts", exec);
+			assertReference(shorts, stats);
+			assertNull(DatasetStatistics.load(n5, "shorts"));
+		}
+	}
+
+	@Test
+	public void testIncrementalUpdate() throws InterruptedException, ExecutionException, IOException {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final DatasetStatistics first = DatasetStatistics.update(n5, "shorts", exec);
+			assertEquals(27, first.getNumBlocksRead());
+			assertNotNull(DatasetStatistics.load(n5, "shorts"));
+			assertEquals(first.getMax(), DatasetStatistics.load(n5, "shorts").getMax(), 0);
+
+			// the summaries are hidden in the dataset directory, not a dataset of their own
+			assertTrue(Files.exists(baseDir.toPath().resolve("shorts").resolve(DatasetStatistics.SUMMARIES_FILE)));
+			assertEquals(new HashSet<>(Arrays.asList("floats", "shorts")), new HashSet<>(Arrays.asList(n5.list(""))));
+			assertEquals(new HashSet<>(Arrays.asList("floats", "shorts")), new HashSet<>(Arrays.asList(n5.deepList("", exec))));
+
+			// nothing changed
+			assertEquals(0, DatasetStatistics.update(n5, "shorts", exec).getNumBlocksRead());
+
+			// rewrite one block with a new maximum
+			final DatasetAttributes attributes = n5.getDatasetAttributes("shorts");
+			final short[] data = new short[4 * 4 * 3];
+			Arrays.fill(data, (short)65000);
+			n5.writeBlock("shorts", attributes, new ShortArrayDataBlock(BLOCK_SIZE, new long[]{1, 1, 1}, data));
+			touch("shorts", 1, 1, 1);
+
+			// the stored statistics are out of date
+			assertNull(DatasetStatistics.load(n5, "shorts"));
+
+			final DatasetStatistics updated = DatasetStatistics.update(n5, "shorts", exec);
+			assertEquals(1, updated.getNumBlocksRead());
+			assertEquals(65000, updated.getMax(), 0);
+			assertEquals(65000, DatasetStatistics.load(n5, "shorts").getMax(), 0);
+			assertStatisticsEqual(DatasetStatistics.compute(n5, "shorts", exec), updated);
+		}
+	}
+
+	@Test
+	public void testIncrementalUpdateOfRange() throws InterruptedException, ExecutionException, IOException {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			DatasetStatistics.update(n5, "floats", exec);
+
+			// a new maximum changes the range of the histogram of all blocks
+			final DatasetAttributes attributes = n5.getDatasetAttributes("floats");
+			final float[] data = new float[2 * 4 * 3];
+			Arrays.fill(data, 20f);
+			n5.writeBlock("floats", attributes, new FloatArrayDataBlock(new int[]{2, 4, 3}, new long[]{2, 0, 2}, data));
+			touch("floats", 2, 0, 2);
+
+			final DatasetStatistics updated = DatasetStatistics.update(n5, "floats", exec);
+			assertEquals(1, updated.getNumBlocksRead());
+			assertEquals(20.0, updated.getHistogramMax(), 0);
+			assertStatisticsEqual(DatasetStatistics.compute(n5, "floats", exec), updated);
+		}
+	}
+
+	@Test
+	public void testDisplayRange() throws InterruptedException, ExecutionException {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final DatasetStatistics stats = DatasetStatistics.compute(n5, "shorts", exec);
+			final double[] range = stats.displayRange(1.0);
+			assertEquals(0, range[0], 0);
+			assertEquals(stats.getMax(), range[1], 0);
+		}
+	}
+
+	@Test
+	public void testLinearConverter() throws InterruptedException, ExecutionException {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final RandomAccessibleInterval<UnsignedShortType> img = N5Utils.open(n5, "shorts");
+			final UnsignedShortType in = new UnsignedShortType(12345);
+			final UnsignedShortType expected = new UnsignedShortType();
+			final UnsignedShortType actual = new UnsignedShortType();
+
+			new UnsignedShortLinearConverter<>(img, exec).convert(in, expected);
+			DatasetStatistics.linearConverter(n5, "shorts", img, exec).convert(in, actual);
+			assertEquals(expected, actual);
+
+			DatasetStatistics.update(n5, "shorts", exec);
+			DatasetStatistics.linearConverter(n5, "shorts", img, exec).convert(in, actual);
+			assertEquals(expected, actual);
+
+			// a new maximum after the update is not missed
+			final short[] data = new short[4 * 4 * 3];
+			Arrays.fill(data, (short)65000);
+			n5.writeBlock("shorts", n5.getDatasetAttributes("shorts"), new ShortArrayDataBlock(BLOCK_SIZE, new long[]{2, 2, 2}, data));
+			touch("shorts", 2, 2, 2);
+
+			final RandomAccessibleInterval<UnsignedShortType> rewritten = N5Utils.open(n5, "shorts");
+			new UnsignedShortLinearConverter<>(rewritten, exec).convert(in, expected);
+			DatasetStatistics.linearConverter(n5, "shorts", rewritten, exec).convert(in, actual);
+			assertEquals(expected, actual);
+		}
+	}
+
+	/**
+	 * Moves the modification time of a block ahead, so that the update sees
+	 * it on file systems with a coarse time resolution.
+	 */
+	private void touch(final String dataset, final long... gridPosition) throws IOException {
+
+		Path path = baseDir.toPath().resolve(dataset);
+		for (final long p : gridPosition)
+			path = path.resolve(Long.toString(p));
+
+		Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() + 10000));
+	}
+
+	private static void assertReference(final ArrayImg<UnsignedShortType, ?> img, final DatasetStatistics stats) {
+
+		final long[] histogram = new long[DatasetStatistics.NUM_BINS];
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY, sum = 0;
+		long nonZero = 0;
+		for (final UnsignedShortType t : img) {
+			final int v = t.get();
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+			sum += v;
+			if (v != 0)
+				nonZero++;
+			histogram[v / 256]++;
+		}
+
+		assertEquals(img.size(), stats.getCount());
+		assertEquals(nonZero, stats.getNonZeroCount());
+		assertEquals(min, stats.getMin(), 0);
+		assertEquals(max, stats.getMax(), 0);
+		assertEquals(sum, stats.getSum(), 1e-6);
+		assertEquals(sum / img.size(), stats.getMean(), 1e-9);
+		assertArrayEquals(histogram, stats.getHistogram());
+	}
+
+	private static void assertStatisticsEqual(final DatasetStatistics expected, final DatasetStatistics actual) {
+
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getNonZeroCount(), actual.getNonZeroCount());
+		assertEquals(expected.getMin(), actual.getMin(), 0);
+		assertEquals(expected.getMax(), actual.getMax(), 0);
+		assertEquals(expected.getSum(), actual.getSum(), 1e-6);
+		assertEquals(expected.getHistogramMin(), actual.getHistogramMin(), 0);
+		assertEquals(expected.getHistogramMax(), actual.getHistogramMax(), 0);
+		assertArrayEquals(expected.getHistogram(), actual.getHistogram());
+	}
+
+}
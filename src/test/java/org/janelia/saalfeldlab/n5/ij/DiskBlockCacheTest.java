@@ -0,0 +1,293 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.KeyValueAccess;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5KeyValueReader;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.ShortArrayDataBlock;
+import org.janelia.saalfeldlab.n5.TestReaders;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpServer;
+
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class DiskBlockCacheTest {
+
+	private static final long LATENCY_MILLIS = 20;
+
+	private File baseDir;
+
+	private Path cacheDir;
+
+	private N5FSWriter n5;
+
+	private DatasetAttributes attributes;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-disk-cache-test-").toFile();
+		cacheDir = Files.createTempDirectory("n5-disk-cache-");
+
+		final ArrayImg<UnsignedShortType, ?> img = ArrayImgs.unsignedShorts(32, 32, 4);
+		final AtomicInteger i = new AtomicInteger();
+		img.forEach(x -> x.set(i.getAndIncrement() % 65536));
+
+		n5 = new N5FSWriter(baseDir.getAbsolutePath());
+		N5Utils.save(img, n5, "img", new int[]{8, 8, 4}, new GzipCompression());
+		attributes = n5.getDatasetAttributes("img");
+	}
+
+	@After
+	public void after() throws IOException {
+
+		n5.close();
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+		try (final Stream<Path> files = Files.walk(cacheDir)) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	public void testRepeatedSessions() throws IOException {
+
+		final AtomicInteger numBlocksRead = new AtomicInteger();
+		final long[] p = new long[]{1, 2, 0};
+
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, Long.MAX_VALUE, Long.MAX_VALUE, null);
+		final N5Reader cached = cachedReader(cache, numBlocksRead);
+
+		final DataBlock<?> expected = n5.readBlock("img", attributes, p);
+		assertArrayEquals((short[])expected.getData(), (short[])cached.readBlock("img", attributes, p).getData());
+		assertArrayEquals((short[])expected.getData(), (short[])cached.readBlock("img", attributes, p).getData());
+		assertEquals(1, numBlocksRead.get());
+		assertEquals(1, cache.getHits());
+
+		// another session reads from the same directory
+		final DiskBlockCache nextSession = new DiskBlockCache(cacheDir, Long.MAX_VALUE, Long.MAX_VALUE, null);
+		final DataBlock<?> block = cachedReader(nextSession, numBlocksRead).readBlock("img", attributes, p);
+		assertArrayEquals(expected.getSize(), block.getSize());
+		assertArrayEquals(expected.getGridPosition(), block.getGridPosition());
+		assertArrayEquals((short[])expected.getData(), (short[])block.getData());
+		assertEquals(1, numBlocksRead.get());
+		assertTrue(nextSession.getSize() > 0);
+
+		// missing blocks are cached, too
+		final long[] missing = new long[]{10, 10, 10};
+		assertNull(cached.readBlock("img", attributes, missing));
+		assertNull(cached.readBlock("img", attributes, missing));
+		assertEquals(2, numBlocksRead.get());
+	}
+
+	@Test
+	public void testValidatedOncePerSession() throws IOException {
+
+		final AtomicInteger numTokens = new AtomicInteger();
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, Long.MAX_VALUE, Long.MAX_VALUE, uri -> {
+			numTokens.incrementAndGet();
+			return DiskBlockCache.defaultToken(uri);
+		});
+		final N5Reader cached = cachedReader(cache, new AtomicInteger());
+		final long[] p = new long[]{0, 1, 0};
+
+		for (int i = 0; i < 3; i++)
+			cached.readBlock("img", attributes, p);
+
+		assertEquals(1, numTokens.get());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testModifiedBlock() throws IOException {
+
+		final AtomicInteger numBlocksRead = new AtomicInteger();
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, Long.MAX_VALUE, Long.MAX_VALUE, null);
+		final long[] p = new long[]{0, 0, 0};
+		cachedReader(cache, numBlocksRead).readBlock("img", attributes, p);
+
+		final short[] data = new short[8 * 8 * 4];
+		data[0] = 42;
+		n5.writeBlock("img", attributes, new ShortArrayDataBlock(new int[]{8, 8, 4}, p, data));
+		final Path blockPath = Paths.get(baseDir.getAbsolutePath(), "img", "0", "0", "0");
+		Files.setLastModifiedTime(blockPath, FileTime.fromMillis(System.currentTimeMillis() + 10000));
+
+		// the next session validates the block again
+		final DiskBlockCache nextSession = new DiskBlockCache(cacheDir, Long.MAX_VALUE, Long.MAX_VALUE, null);
+		assertEquals(42, ((short[])cachedReader(nextSession, numBlocksRead).readBlock("img", attributes, p).getData())[0]);
+		assertEquals(2, numBlocksRead.get());
+		assertEquals(0, nextSession.getHits());
+	}
+
+	@Test
+	public void testExpiredBlock() throws IOException, InterruptedException {
+
+		final AtomicInteger numBlocksRead = new AtomicInteger();
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, Long.MAX_VALUE, 1, uri -> "");
+		final N5Reader cached = cachedReader(cache, numBlocksRead);
+		final long[] p = new long[]{0, 0, 0};
+
+		cached.readBlock("img", attributes, p);
+		Thread.sleep(10);
+		cached.readBlock("img", attributes, p);
+		assertEquals(2, numBlocksRead.get());
+	}
+
+	@Test
+	public void testUnvalidatedBlock() throws IOException, URISyntaxException {
+
+		final AtomicInteger numBlocksRead = new AtomicInteger();
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, Long.MAX_VALUE, 0, uri -> "");
+		final N5Reader cached = cachedReader(cache, numBlocksRead);
+		final long[] p = new long[]{0, 0, 0};
+
+		// without a token or an expiry, blocks are read through
+		cached.readBlock("img", attributes, p);
+		cached.readBlock("img", attributes, p);
+		assertEquals(2, numBlocksRead.get());
+		assertFalse(Files.exists(entryPath(cache, p)));
+	}
+
+	@Test
+	public void testHttpToken() throws IOException {
+
+		final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", exchange -> {
+			final String path = exchange.getRequestURI().getPath();
+			if (path.equals("/etag"))
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+			else if (path.equals("/modified"))
+				exchange.getResponseHeaders().add("Last-Modified", "Mon, 19 Oct 2026 10:00:00 GMT");
+
+			exchange.sendResponseHeaders(path.equals("/missing") ? 404 : 200, -1);
+			exchange.close();
+		});
+		server.start();
+		try {
+			final String base = "http://localhost:" + server.getAddress().getPort();
+			assertEquals("etag:\"v1\"", DiskBlockCache.httpToken(base + "/etag"));
+			assertTrue(DiskBlockCache.httpToken(base + "/modified").startsWith("modified:"));
+			assertEquals("missing", DiskBlockCache.httpToken(base + "/missing"));
+			assertEquals("", DiskBlockCache.httpToken(base + "/unversioned"));
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testCorruptEntry() throws IOException, URISyntaxException {
+
+		final AtomicInteger numBlocksRead = new AtomicInteger();
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, Long.MAX_VALUE, Long.MAX_VALUE, null);
+		final N5Reader cached = cachedReader(cache, numBlocksRead);
+		final long[] p = new long[]{2, 1, 0};
+		final DataBlock<?> expected = cached.readBlock("img", attributes, p);
+
+		final Path entry = entryPath(cache, p);
+		final byte[] bytes = Files.readAllBytes(entry);
+		bytes[bytes.length - 12] ^= 0xff;
+		Files.write(entry, bytes);
+
+		assertArrayEquals((short[])expected.getData(), (short[])cached.readBlock("img", attributes, p).getData());
+		assertEquals(2, numBlocksRead.get());
+
+		// the entry was replaced
+		cached.readBlock("img", attributes, p);
+		assertEquals(2, numBlocksRead.get());
+	}
+
+	@Test
+	public void testEviction() throws IOException, URISyntaxException {
+
+		final AtomicInteger numBlocksRead = new AtomicInteger();
+		final long maxBytes = 2048;
+		final DiskBlockCache cache = new DiskBlockCache(cacheDir, maxBytes, Long.MAX_VALUE, null);
+		final N5Reader cached = cachedReader(cache, numBlocksRead);
+
+		for (int y = 0; y < 4; y++)
+			for (int x = 0; x < 4; x++)
+				cached.readBlock("img", attributes, new long[]{x, y, 0});
+
+		assertTrue(cache.getSize() <= maxBytes);
+		assertFalse(Files.exists(entryPath(cache, new long[]{0, 0, 0})));
+		assertTrue(Files.exists(entryPath(cache, new long[]{3, 3, 0})));
+
+		cache.clear();
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testRemote() {
+
+		assertTrue(DiskBlockCache.isRemote(URI.create("s3://bucket/container.zarr")));
+		assertTrue(DiskBlockCache.isRemote(URI.create("https://example.org/container.n5")));
+		assertFalse(DiskBlockCache.isRemote(new File("container.n5").toURI()));
+	}
+
+	@Test
+	public void testMetadataReadThrough() {
+
+		assertTrue(DiskBlockCache.isBlock("img/0/0/0"));
+		assertTrue(DiskBlockCache.isBlock("img/c/0/0/0"));
+		assertFalse(DiskBlockCache.isBlock("img/attributes.json"));
+		assertFalse(DiskBlockCache.isBlock("img/.zarray"));
+		assertFalse(DiskBlockCache.isBlock("img/zarr.json"));
+	}
+
+	/**
+	 * A reader of the test container whose blocks are read through the cache
+	 * from a key value access that takes a while for every block, as a
+	 * stand-in for cloud storage, and counts the blocks read through it.
+	 */
+	private N5Reader cachedReader(final DiskBlockCache cache, final AtomicInteger numBlocksRead) {
+
+		final KeyValueAccess kva = n5.getKeyValueAccess();
+		final KeyValueAccess slow = TestReaders.observed(kva, (method, args) -> {
+			if (method.equals("lockForReading") && DiskBlockCache.isBlock((String)args[0])) {
+				numBlocksRead.incrementAndGet();
+				Thread.sleep(LATENCY_MILLIS);
+			}
+		});
+
+		return new N5KeyValueReader(cache.wrap(slow), baseDir.getAbsolutePath(), new GsonBuilder(), false);
+	}
+
+	private Path entryPath(final DiskBlockCache cache, final long[] gridPosition) throws URISyntaxException {
+
+		final KeyValueAccess kva = n5.getKeyValueAccess();
+		return cache.entryPath(kva.uri(n5.absoluteDataBlockPath("img", gridPosition)).toString());
+	}
+
+}
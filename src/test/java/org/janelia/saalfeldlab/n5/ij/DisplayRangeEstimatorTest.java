@@ -0,0 +1,112 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.imglib2.Cursor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class DisplayRangeEstimatorTest {
+
+	private File baseDir;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-display-range-test-").toFile();
+		exec = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testSampleGridPositions() {
+
+		final DatasetAttributes attributes = new DatasetAttributes(new long[]{32, 30}, new int[]{8, 8},
+				DataType.UINT8, new RawCompression());
+
+		final long[][] positions = DisplayRangeEstimator.sampleGridPositions(attributes, 4);
+		assertEquals(4, positions.length);
+		assertArrayEquals(new long[]{2, 0}, positions[0]);
+		assertArrayEquals(new long[]{2, 1}, positions[1]);
+		assertArrayEquals(new long[]{2, 2}, positions[2]);
+		assertArrayEquals(new long[]{2, 3}, positions[3]);
+
+		// never more positions than blocks
+		assertEquals(16, DisplayRangeEstimator.sampleGridPositions(attributes, 100).length);
+	}
+
+	@Test
+	public void testPercentile() {
+
+		final long[] histogram = new long[]{10, 0, 30, 40, 20};
+		assertEquals(0, DisplayRangeEstimator.percentile(histogram, 0, 0, 5, 1, false), 0);
+		assertEquals(5, DisplayRangeEstimator.percentile(histogram, 1, 0, 5, 1, true), 0);
+		assertEquals(4, DisplayRangeEstimator.percentile(histogram, 0.8, 0, 5, 1, true), 0);
+		assertEquals(2, DisplayRangeEstimator.percentile(histogram, 0.2, 0, 5, 1, false), 0);
+	}
+
+	@Test
+	public void testEstimate() throws Exception {
+
+		// constant within each block row, 100 per row of blocks
+		final ArrayImg<UnsignedShortType, ShortArray> img = ArrayImgs.unsignedShorts(64, 64, 4);
+		final Cursor<UnsignedShortType> c = img.localizingCursor();
+		while (c.hasNext()) {
+			c.fwd();
+			c.get().set(100 + 100 * (c.getIntPosition(1) / 16) + 1000 * c.getIntPosition(2));
+		}
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			N5Utils.save(img, n5, "data", new int[]{16, 16, 1}, new GzipCompression());
+			final N5DatasetMetadata meta = DatasetMetadataResolver.resolve(n5, "data");
+
+			// all blocks
+			final double[] all = new DisplayRangeEstimator(1000, 0, 1).estimate(n5, meta, exec);
+			assertArrayEquals(new double[]{100, 3400}, all, 0);
+
+			// a sample of one block per slice and block row covers every value
+			final double[] sampled = new DisplayRangeEstimator(16, 0, 1).estimate(n5, meta, exec);
+			assertArrayEquals(new double[]{100, 3400}, sampled, 0);
+
+			final double[] percentiles = new DisplayRangeEstimator(16, 0.25, 0.75).estimate(n5, meta, exec);
+			assertEquals(400, percentiles[0], 0);
+			assertEquals(2400, percentiles[1], 1);
+
+			N5Utils.save(ArrayImgs.ints(8, 8), n5, "ints", new int[]{8, 8}, new GzipCompression());
+			assertNull(DisplayRangeEstimator.getDefault().estimate(n5, DatasetMetadataResolver.resolve(n5, "ints"), exec));
+		}
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.janelia.saalfeldlab.n5.DataType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+
+public class ExportPlanTest {
+
+	private File baseDir;
+
+	@Before
+	public void before() throws IOException {
+
+		System.setProperty("java.awt.headless", "true");
+		baseDir = Files.createTempDirectory("n5-plan-test-").toFile();
+	}
+
+	@After
+	public void after() {
+
+		baseDir.delete();
+	}
+
+	@Test
+	public void testDryRunWritesNothing() throws Exception {
+
+		final ImagePlus imp = NewImage.createImage("test", 100, 80, 12, 16, NewImage.FILL_NOISE);
+		final File root = new File(baseDir, "plan.n5");
+
+		final N5ScalePyramidExporter writer = new N5ScalePyramidExporter();
+		writer.setOptions(imp, root.getAbsolutePath(), "data", N5ScalePyramidExporter.N5_FORMAT, "32,32,8", true,
+				N5ScalePyramidExporter.DOWN_SAMPLE, N5Importer.MetadataN5ViewerKey, N5ScalePyramidExporter.RAW_COMPRESSION);
+
+		final ExportPlan plan = writer.plan();
+		assertFalse("dry run created the container", root.exists());
+
+		assertTrue("expected a multiscale plan", plan.getLevels().size() > 1);
+		final ExportPlan.ScaleLevel s0 = plan.getLevels().get(0);
+		assertEquals("data/c0/s0", s0.getDataset());
+		assertArrayEquals(new long[]{100, 80, 12}, s0.getDimensions());
+		assertEquals(DataType.UINT16, s0.getDataType());
+		assertNull(s0.getShardSize());
+		assertEquals(4 * 3 * 2, s0.getNumBlocks());
+		assertEquals(s0.getNumBlocks(), s0.getNumObjects());
+		assertEquals(100 * 80 * 12 * 2, s0.getRawBytes());
+
+		// raw blocks store the data plus a small header
+		final long estimated = plan.getEstimatedBytes(s0);
+		assertTrue(estimated >= s0.getRawBytes());
+		assertTrue(estimated < 1.1 * s0.getRawBytes());
+		assertTrue(plan.getEstimatedSeconds() >= 0);
+	}
+
+}
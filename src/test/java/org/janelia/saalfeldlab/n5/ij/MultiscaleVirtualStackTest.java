@@ -0,0 +1,171 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.ImageStack;
+import ij.gui.NewImage;
+import ij.process.FloatProcessor;
+import ij.process.ImageProcessor;
+
+public class MultiscaleVirtualStackTest {
+
+	private File baseDir;
+
+	private String root;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-multiscale-stack-test-").toFile();
+		root = new File(baseDir, "test.zarr").getAbsolutePath();
+		exec = Executors.newFixedThreadPool(2);
+
+		final ImagePlus imp = NewImage.createImage("test", 64, 64, 4, 16, NewImage.FILL_RAMP);
+		for (int z = 1; z <= 4; z++)
+			imp.getStack().getProcessor(z).add(1000 * z);
+
+		final N5ScalePyramidExporter writer = new N5ScalePyramidExporter(imp, root, "img",
+				N5ScalePyramidExporter.ZARR2_FORMAT, "16", true, N5ScalePyramidExporter.DOWN_SAMPLE,
+				N5Importer.MetadataOmeZarrKey, N5ScalePyramidExporter.GZIP_COMPRESSION);
+		writer.run();
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testLevelMapping() {
+
+		final ImagePlus finest = NewImage.createFloatImage("finest", 8, 6, 4, NewImage.FILL_BLACK);
+		final ImagePlus coarse = NewImage.createFloatImage("coarse", 4, 3, 2, NewImage.FILL_BLACK);
+		final MultiscaleVirtualStack stack = new MultiscaleVirtualStack(Arrays.asList(finest, coarse), exec);
+
+		assertEquals(2, stack.getNumLevels());
+		assertEquals(2.0, stack.getDownsamplingFactor(1), 1e-9);
+		assertEquals(0, stack.targetLevel(1.0));
+		assertEquals(0, stack.targetLevel(0.75));
+		assertEquals(1, stack.targetLevel(0.5));
+		assertEquals(1, stack.targetLevel(0.1));
+
+		// slices are downsampled too
+		assertEquals(1, stack.levelIndex(1, 1));
+		assertEquals(1, stack.levelIndex(1, 2));
+		assertEquals(2, stack.levelIndex(1, 3));
+		assertEquals(2, stack.levelIndex(1, 4));
+
+		final FloatProcessor ip = new FloatProcessor(4, 3);
+		for (int i = 0; i < 12; i++)
+			ip.setf(i, i + 0.5f);
+
+		final ImageProcessor up = stack.upsample(ip, 1);
+		assertEquals(8, up.getWidth());
+		assertEquals(6, up.getHeight());
+		for (int y = 0; y < 6; y++)
+			for (int x = 0; x < 8; x++)
+				assertEquals(ip.getf(x / 2, y / 2), up.getf(x, y), 0);
+	}
+
+	@Test
+	public void testUnusedImageIsCollected() throws InterruptedException {
+
+		final ScheduledExecutorService scheduled = Executors.newSingleThreadScheduledExecutor();
+		try {
+			// an image that is never shown nor closed, and then dropped
+			final WeakReference<MultiscaleVirtualStack> ref = watchedStack(scheduled);
+			for (int i = 0; i < 50 && ref.get() != null; i++) {
+				System.gc();
+				Thread.sleep(50);
+			}
+			assertNull(ref.get());
+		} finally {
+			scheduled.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testOpen() throws IOException {
+
+		final N5Importer importer = new N5Importer();
+		importer.setShow(false);
+
+		// display only, so not used unless enabled
+		final boolean enabled = MultiscaleVirtualStack.isEnabled();
+		MultiscaleVirtualStack.setEnabled(false);
+		assertFalse(importer.process(root + "?img/s0", true).get(0).getStack() instanceof MultiscaleVirtualStack);
+
+		final List<ImagePlus> virtual;
+		try {
+			MultiscaleVirtualStack.setEnabled(true);
+			virtual = importer.process(root + "?img/s0", true);
+		} finally {
+			MultiscaleVirtualStack.setEnabled(enabled);
+		}
+		assertEquals(1, virtual.size());
+		assertTrue(virtual.get(0).getTitle().endsWith(MultiscaleVirtualStack.DISPLAY_ONLY_LABEL));
+
+		final ImageStack stack = virtual.get(0).getStack();
+		assertTrue(stack instanceof MultiscaleVirtualStack);
+		assertTrue(((MultiscaleVirtualStack)stack).getNumLevels() >= 2);
+		assertEquals(0, ((MultiscaleVirtualStack)stack).getTargetLevel());
+
+		// images that are not shown are served at full resolution
+		final ImagePlus full = importer.process(root + "?img/s0", false).get(0);
+		assertEquals(full.getStackSize(), stack.getSize());
+		for (int n = 1; n <= stack.getSize(); n++) {
+			assertArrayEquals((short[])full.getStack().getPixels(n), (short[])stack.getPixels(n));
+			assertArrayEquals((short[])full.getStack().getPixels(n),
+					(short[])((MultiscaleVirtualStack)stack).getFullResolutionProcessor(n).getPixels());
+		}
+
+		// opening a coarser level uses it and the levels below it
+		final ImageStack s1;
+		try {
+			MultiscaleVirtualStack.setEnabled(true);
+			s1 = importer.process(root + "?img/s1", true).get(0).getStack();
+		} finally {
+			MultiscaleVirtualStack.setEnabled(enabled);
+		}
+		assertEquals(32, s1.getWidth());
+		if (s1 instanceof MultiscaleVirtualStack)
+			assertEquals(((MultiscaleVirtualStack)stack).getNumLevels() - 1, ((MultiscaleVirtualStack)s1).getNumLevels());
+	}
+
+	private static WeakReference<MultiscaleVirtualStack> watchedStack(final ScheduledExecutorService exec) {
+
+		final ImagePlus finest = NewImage.createFloatImage("finest", 8, 6, 4, NewImage.FILL_BLACK);
+		final ImagePlus coarse = NewImage.createFloatImage("coarse", 4, 3, 2, NewImage.FILL_BLACK);
+		final MultiscaleVirtualStack stack = new MultiscaleVirtualStack(Arrays.asList(finest, coarse), exec);
+		stack.setImagePlus(new ImagePlus());
+		return new WeakReference<>(stack);
+	}
+
+}
@@ -0,0 +1,94 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.LongArray;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.LongType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class N5IJUtilsLoadTest {
+
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-ijutils-load-test-").toFile();
+		n5 = new N5FSWriter(baseDir.getAbsolutePath());
+		exec = Executors.newFixedThreadPool(4);
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		n5.remove();
+		n5.close();
+	}
+
+	@Test
+	public void testParallelMatchesSerial() throws Exception {
+
+		final ArrayImg<UnsignedShortType, ShortArray> img = ArrayImgs.unsignedShorts(19, 14, 6);
+		int i = 0;
+		for (final UnsignedShortType t : img)
+			t.set((i++ * 31) % 65536);
+
+		N5Utils.save(img, n5, "ushort", new int[]{8, 8, 4}, new GzipCompression());
+
+		final ImagePlus serial = N5IJUtils.load(n5, "ushort");
+		final ImagePlus parallel = N5IJUtils.loadParallel(n5, "ushort", exec);
+
+		assertArrayEquals(serial.getDimensions(), parallel.getDimensions());
+		for (int s = 1; s <= serial.getStackSize(); s++)
+			assertArrayEquals((short[])serial.getStack().getPixels(s), (short[])parallel.getStack().getPixels(s));
+	}
+
+	@Test
+	public void testLongTypes() throws Exception {
+
+		final ArrayImg<LongType, LongArray> longs = ArrayImgs.longs(9, 5, 3);
+		int i = 0;
+		for (final LongType t : longs)
+			t.set(i++ - 50);
+
+		N5Utils.save(longs, n5, "int64", new int[]{4, 4, 2}, new GzipCompression());
+		final ImagePlus impLong = N5IJUtils.loadParallel(n5, "int64", exec);
+		assertNotNull(impLong);
+		assertEquals(ImagePlus.GRAY32, impLong.getType());
+		assertEquals(-50, impLong.getStack().getProcessor(1).getf(0, 0), 0);
+		assertEquals(9 * 5 * 3 - 51, impLong.getStack().getProcessor(3).getf(8, 4), 0);
+
+		final ArrayImg<UnsignedLongType, LongArray> ulongs = ArrayImgs.unsignedLongs(4, 4);
+		ulongs.firstElement().set(-1L); // 2^64 - 1
+		N5Utils.save(ulongs, n5, "uint64", new int[]{4, 4}, new GzipCompression());
+		final ImagePlus impULong = N5IJUtils.loadParallel(n5, "uint64", exec);
+		assertEquals(Math.pow(2, 64), impULong.getProcessor().getf(0, 0), 1e12);
+		assertEquals(0, impULong.getProcessor().getf(1, 0), 0);
+	}
+
+}
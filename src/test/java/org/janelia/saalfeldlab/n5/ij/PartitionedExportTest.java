@@ -0,0 +1,192 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+
+import ij.IJ;
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+
+public class PartitionedExportTest {
+
+	private static final int NUM_PARTITIONS = 3;
+
+	private File baseDir;
+
+	private ImagePlus imp;
+
+	private String imagePath;
+
+	@Before
+	public void before() throws IOException {
+
+		System.setProperty("java.awt.headless", "true");
+		baseDir = Files.createTempDirectory("n5-partition-test-").toFile();
+
+		imp = NewImage.createImage("test", 64, 56, 10, 16, NewImage.FILL_NOISE);
+		imagePath = new File(baseDir, "test.tif").getAbsolutePath();
+		IJ.saveAsTiff(imp, imagePath);
+	}
+
+	@After
+	public void after() {
+
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testPartitionsCoverGrid() {
+
+		final long[] dims = new long[]{64, 56, 10};
+		final int[] unitSize = new int[]{16, 16, 4};
+
+		final Set<String> seen = new HashSet<>();
+		int total = 0;
+		for (int i = 0; i < 7; i++) {
+			for (final long[] p : new ExportPartition(i, 7).gridPositions(dims, unitSize)) {
+				assertTrue("unit written twice", seen.add(p[0] + "," + p[1] + "," + p[2]));
+				total++;
+			}
+		}
+		assertEquals(4 * 4 * 3, total);
+
+		// more partitions than units leaves some partitions empty
+		assertTrue(new ExportPartition(5, 100).gridPositions(new long[]{16}, new int[]{16}).isEmpty());
+		assertEquals(1, new ExportPartition(99, 100).gridPositions(new long[]{16}, new int[]{16}).size());
+
+		assertEquals("2/5", ExportPartition.parse(" 2 / 5").toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPartition() {
+
+		ExportPartition.parse("3/3");
+	}
+
+	@Test
+	public void testMultiProcessExport() throws Exception {
+
+		final String root = new File(baseDir, "partitioned.n5").getAbsolutePath();
+		final String referenceRoot = new File(baseDir, "reference.n5").getAbsolutePath();
+		final String dataset = "data";
+
+		// a partition can not run before the datasets are created
+		final Process early = launch(root, dataset, "--partition", "0/" + NUM_PARTITIONS);
+		assertTrue("partition timed out", early.waitFor(5, TimeUnit.MINUTES));
+		assertTrue("partition ran without prepare", early.exitValue() != 0);
+
+		final Process prepare = launch(root, dataset, "--prepare");
+		assertTrue("prepare timed out", prepare.waitFor(5, TimeUnit.MINUTES));
+		assertEquals("prepare failed", 0, prepare.exitValue());
+		try (final N5Reader n5 = new N5Factory().openReader(root)) {
+			assertTrue("dataset not created by prepare", n5.datasetExists(dataset + "/c0/s0"));
+		}
+
+		// each partition in its own jvm
+		final List<Process> processes = new ArrayList<>();
+		for (int i = 0; i < NUM_PARTITIONS; i++)
+			processes.add(launch(root, dataset, "--partition", i + "/" + NUM_PARTITIONS));
+
+		for (final Process p : processes) {
+			assertTrue("partition timed out", p.waitFor(5, TimeUnit.MINUTES));
+			assertEquals("partition failed", 0, p.exitValue());
+		}
+
+		try (final N5Reader n5 = new N5Factory().openReader(root)) {
+			assertNull("metadata written before finalize",
+					n5.getAttribute(dataset + "/c0/s0", "pixelResolution", JsonElement.class));
+		}
+
+		final Process finalizer = launch(root, dataset, "--finalize");
+		assertTrue("finalize timed out", finalizer.waitFor(5, TimeUnit.MINUTES));
+		assertEquals("finalize failed", 0, finalizer.exitValue());
+
+		final N5ScalePyramidExporter writer = new N5ScalePyramidExporter();
+		writer.setOptions(imp, referenceRoot, dataset, N5ScalePyramidExporter.N5_FORMAT, "16,16,4", true,
+				N5ScalePyramidExporter.DOWN_SAMPLE, N5Importer.MetadataN5ViewerKey, N5ScalePyramidExporter.RAW_COMPRESSION);
+		writer.run();
+
+		try (final N5Reader n5 = new N5Factory().openReader(root);
+				final N5Reader ref = new N5Factory().openReader(referenceRoot)) {
+
+			int s = 0;
+			String path = dataset + "/c0/s0";
+			while (ref.datasetExists(path)) {
+
+				assertTrue(path + " missing", n5.datasetExists(path));
+				assertArrayEquals(ref.getDatasetAttributes(path).getDimensions(), n5.getDatasetAttributes(path).getDimensions());
+				assertEquals(ref.getAttribute(path, "pixelResolution", JsonElement.class),
+						n5.getAttribute(path, "pixelResolution", JsonElement.class));
+				assertEquals(ref.getAttribute(path, "downsamplingFactors", JsonElement.class),
+						n5.getAttribute(path, "downsamplingFactors", JsonElement.class));
+
+				final RandomAccessibleInterval<UnsignedShortType> expected = N5Utils.open(ref, path);
+				final RandomAccessibleInterval<UnsignedShortType> actual = N5Utils.open(n5, path);
+				for (final Pair<UnsignedShortType, UnsignedShortType> p : Views.flatIterable(Views.interval(Views.pair(expected, actual), expected)))
+					assertEquals(path, p.getA().get(), p.getB().get());
+
+				s++;
+				path = dataset + "/c0/s" + s;
+			}
+			assertTrue("expected a multiscale pyramid", s > 1);
+		}
+	}
+
+	private Process launch(final String root, final String dataset, final String... extraArgs) throws IOException {
+
+		final List<String> command = new ArrayList<>();
+		command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+		command.add("-Djava.awt.headless=true");
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(N5ScalePyramidExportCli.class.getName());
+		command.add("-i");
+		command.add(imagePath);
+		command.add("-o");
+		command.add(root);
+		command.add("-d");
+		command.add(dataset);
+		command.add("-f");
+		command.add(N5ScalePyramidExporter.N5_FORMAT);
+		command.add("-c");
+		command.add("16,16,4");
+		command.add("-p");
+		command.add("-m");
+		command.add(N5Importer.MetadataN5ViewerKey);
+		command.add("-z");
+		command.add(N5ScalePyramidExporter.RAW_COMPRESSION);
+		for (final String a : extraArgs)
+			command.add(a);
+
+		return new ProcessBuilder(command).inheritIO().start();
+	}
+
+}
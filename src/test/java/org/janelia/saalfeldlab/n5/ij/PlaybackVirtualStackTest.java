@@ -0,0 +1,182 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.VirtualStack;
+import ij.process.ByteProcessor;
+import ij.process.ImageProcessor;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class PlaybackVirtualStackTest {
+
+	private static final int NUM_FRAMES = 10;
+
+	private ExecutorService workers;
+
+	@Before
+	public void before() {
+
+		workers = Executors.newFixedThreadPool(2);
+	}
+
+	@After
+	public void after() {
+
+		workers.shutdownNow();
+	}
+
+	@Test
+	public void testBufferAhead() throws InterruptedException {
+
+		final CountingStack planes = new CountingStack(NUM_FRAMES);
+		final PlaybackVirtualStack stack = new PlaybackVirtualStack(planes, 1, 1, NUM_FRAMES, 3, workers);
+
+		assertEquals(1, stack.getProcessor(1).get(0, 0));
+		assertEquals(set(2, 3, 4), stack.getBuffered());
+
+		// the next frame is taken from the buffer
+		awaitRead(planes, 2);
+		assertEquals(2, stack.getProcessor(2).get(0, 0));
+		assertEquals(1, planes.reads(2));
+		assertEquals(set(3, 4, 5), stack.getBuffered());
+	}
+
+	@Test
+	public void testJumps() {
+
+		final CountingStack planes = new CountingStack(NUM_FRAMES);
+		final PlaybackVirtualStack stack = new PlaybackVirtualStack(planes, 1, 1, NUM_FRAMES, 3, workers);
+
+		stack.getProcessor(1);
+		stack.getProcessor(2);
+
+		// a jump drops the stale frames, and loops at the end
+		assertEquals(8, stack.getProcessor(8).get(0, 0));
+		assertEquals(set(9, 10, 1), stack.getBuffered());
+
+		// one step back plays backwards
+		stack.getProcessor(7);
+		assertEquals(set(6, 5, 4), stack.getBuffered());
+	}
+
+	@Test
+	public void testSlicesAndChannels() {
+
+		// 2 channels, 3 slices, 10 frames
+		final CountingStack planes = new CountingStack(2 * 3 * NUM_FRAMES);
+		final PlaybackVirtualStack stack = new PlaybackVirtualStack(planes, 2, 3, NUM_FRAMES, 2, workers);
+
+		// channel 2, slice 3, frame 1
+		stack.getProcessor(6);
+		assertEquals(set(12, 18), stack.getBuffered());
+	}
+
+	@Test
+	public void testOpen() throws IOException {
+
+		final File baseDir = Files.createTempDirectory("n5-playback-test-").toFile();
+		final ArrayImg<UnsignedByteType, ?> img = ArrayImgs.unsignedBytes(8, 6, 2, 5);
+		final AtomicInteger i = new AtomicInteger();
+		img.forEach(x -> x.set(i.getAndIncrement() % 256));
+
+		final boolean enabled = PlaybackVirtualStack.isEnabled();
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			N5Utils.save(img, n5, "img", new int[]{4, 4, 1, 1}, new GzipCompression());
+
+			PlaybackVirtualStack.setEnabled(true);
+			final N5Importer importer = new N5Importer();
+			importer.setShow(false);
+			final ImagePlus imp = importer.process(baseDir.getAbsolutePath() + "?img", true).get(0);
+
+			assertTrue(imp.getStack() instanceof PlaybackVirtualStack);
+			assertEquals(5, imp.getNFrames());
+			imp.setPosition(1, 1, 3);
+			assertEquals(2 * 8 * 6 * 2 % 256, imp.getProcessor().get(0, 0));
+		} finally {
+			PlaybackVirtualStack.setEnabled(enabled);
+			try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+				n5.remove();
+			} catch (final Exception e) {}
+		}
+	}
+
+	private static LinkedHashSet<Integer> set(final Integer... indexes) {
+
+		return new LinkedHashSet<>(Arrays.asList(indexes));
+	}
+
+	private static void awaitRead(final CountingStack planes, final int n) throws InterruptedException {
+
+		for (int i = 0; i < 500 && planes.reads(n) == 0; i++)
+			Thread.sleep(10);
+	}
+
+	/**
+	 * Planes filled with their stack index, counting how often each is read.
+	 */
+	private static class CountingStack extends VirtualStack {
+
+		private final int size;
+
+		private final Map<Integer, AtomicInteger> reads = new ConcurrentHashMap<>();
+
+		private CountingStack(final int size) {
+
+			super(4, 4, null, null);
+			this.size = size;
+		}
+
+		private int reads(final int n) {
+
+			final AtomicInteger count = reads.get(n);
+			return count == null ? 0 : count.get();
+		}
+
+		@Override
+		public ImageProcessor getProcessor(final int n) {
+
+			reads.computeIfAbsent(n, k -> new AtomicInteger()).incrementAndGet();
+			final ByteProcessor ip = new ByteProcessor(4, 4);
+			ip.setValue(n);
+			ip.fill();
+			return ip;
+		}
+
+		@Override
+		public int getSize() {
+
+			return size;
+		}
+
+		@Override
+		public int getBitDepth() {
+
+			return 8;
+		}
+	}
+
+}
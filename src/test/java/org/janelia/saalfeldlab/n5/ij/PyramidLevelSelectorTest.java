@@ -0,0 +1,112 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.OmeNgffMetadataParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+
+public class PyramidLevelSelectorTest {
+
+	private File baseDir;
+
+	private String root;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-pyramid-budget-test-").toFile();
+		root = new File(baseDir, "test.zarr").getAbsolutePath();
+
+		final ImagePlus imp = NewImage.createImage("test", 64, 64, 1, 8, NewImage.FILL_RAMP);
+		imp.getCalibration().pixelWidth = 0.5;
+		imp.getCalibration().pixelHeight = 0.5;
+
+		final N5ScalePyramidExporter writer = new N5ScalePyramidExporter(imp, root, "img",
+				N5ScalePyramidExporter.ZARR2_FORMAT, "16", true, N5ScalePyramidExporter.DOWN_SAMPLE,
+				N5Importer.MetadataOmeZarrKey, N5ScalePyramidExporter.GZIP_COMPRESSION);
+		writer.run();
+	}
+
+	@After
+	public void after() {
+
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testParseBytes() {
+
+		assertEquals(0, PyramidLevelSelector.parseBytes(""));
+		assertEquals(1000, PyramidLevelSelector.parseBytes("1000"));
+		assertEquals(2048, PyramidLevelSelector.parseBytes("2k"));
+		assertEquals(512L * 1024 * 1024, PyramidLevelSelector.parseBytes("512M"));
+		assertEquals(3L * 1024 * 1024 * 1024, PyramidLevelSelector.parseBytes("3G"));
+	}
+
+	@Test
+	public void testSelect() {
+
+		try (final N5Writer n5 = new N5Factory().openWriter(root)) {
+
+			final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(n5,
+					N5DatasetDiscoverer.fromParsers(N5Importer.PARSERS),
+					Collections.singletonList(new OmeNgffMetadataParser()));
+
+			final List<N5DatasetMetadata> levels = PyramidLevelSelector.levels(n5, discoverer, "img");
+			assertTrue(levels.size() >= 3);
+			assertEquals("img/s0", N5URI.normalizeGroupPath(levels.get(0).getPath()));
+
+			// the group, or any of its levels, select the same level
+			assertEquals("img/s0", selected(new PyramidLevelSelector(0, 0), n5, discoverer, "img/s0"));
+			assertEquals("img/s1", selected(new PyramidLevelSelector(0, 40), n5, discoverer, "img"));
+			assertEquals("img/s1", selected(new PyramidLevelSelector(0, 40), n5, discoverer, "img/s0"));
+			assertEquals("img/s2", selected(new PyramidLevelSelector(16 * 16, 0), n5, discoverer, "img/s0"));
+
+			// nothing fits, open the coarsest
+			final String coarsest = N5URI.normalizeGroupPath(levels.get(levels.size() - 1).getPath());
+			assertEquals(coarsest, selected(new PyramidLevelSelector(1, 1), n5, discoverer, "img"));
+		}
+	}
+
+	@Test
+	public void testImportWithinBudget() {
+
+		final N5Importer importer = new N5Importer();
+		importer.setShow(false);
+		importer.setScaleLevelBudget(0, 40);
+
+		final List<ImagePlus> result = importer.process(root + "?img", false);
+		assertEquals(1, result.size());
+
+		final ImagePlus imp = result.get(0);
+		assertEquals(32, imp.getWidth());
+		assertEquals(32, imp.getHeight());
+		assertEquals(1.0, imp.getCalibration().pixelWidth, 1e-9);
+	}
+
+	private static String selected(final PyramidLevelSelector selector, final N5Writer n5,
+			final N5DatasetDiscoverer discoverer, final String path) {
+
+		return N5URI.normalizeGroupPath(selector.select(n5, discoverer, path).getPath());
+	}
+
+}
@@ -0,0 +1,149 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.process.ImageProcessor;
+import net.imglib2.RandomAccess;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class ReslicedVirtualStackTest {
+
+	private static final long[] DIMENSIONS = new long[]{12, 10, 8};
+
+	private File baseDir;
+
+	private ArrayImg<UnsignedShortType, ?> img;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-reslice-test-").toFile();
+		exec = Executors.newFixedThreadPool(4);
+
+		img = ArrayImgs.unsignedShorts(DIMENSIONS);
+		final RandomAccess<UnsignedShortType> ra = img.randomAccess();
+		for (int z = 0; z < DIMENSIONS[2]; z++)
+			for (int y = 0; y < DIMENSIONS[1]; y++)
+				for (int x = 0; x < DIMENSIONS[0]; x++) {
+					ra.setPosition(new int[]{x, y, z});
+					ra.get().set(value(x, y, z));
+				}
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			N5Utils.save(img, n5, "img", new int[]{5, 4, 3}, new GzipCompression());
+		}
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testParseAxisOrder() {
+
+		assertArrayEquals(new int[]{0, 2, 1}, ReslicedVirtualStack.parseAxisOrder("XZY"));
+		assertArrayEquals(new int[]{2, 1, 0}, ReslicedVirtualStack.parseAxisOrder("zyx"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidAxisOrder() {
+
+		ReslicedVirtualStack.parseAxisOrder("XXY");
+	}
+
+	@Test
+	public void testPlanes() {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			// XZ planes along Y
+			final ReslicedVirtualStack stack = new ReslicedVirtualStack(n5, "img", false, new int[]{0, 2, -1, 1, -1}, exec);
+			assertEquals(DIMENSIONS[0], stack.getWidth());
+			assertEquals(DIMENSIONS[2], stack.getHeight());
+			assertEquals(DIMENSIONS[1], stack.getSize());
+
+			for (int y = 0; y < DIMENSIONS[1]; y++) {
+				final ImageProcessor ip = stack.getProcessor(y + 1);
+				for (int z = 0; z < DIMENSIONS[2]; z++)
+					for (int x = 0; x < DIMENSIONS[0]; x++)
+						assertEquals(value(x, y, z), ip.get(x, z));
+			}
+
+			// YZ planes along X, with Y as the vertical axis
+			final ReslicedVirtualStack zy = new ReslicedVirtualStack(n5, "img", false, new int[]{2, 1, -1, 0, -1}, exec);
+			final ImageProcessor ip = zy.getProcessor(7);
+			for (int y = 0; y < DIMENSIONS[1]; y++)
+				for (int z = 0; z < DIMENSIONS[2]; z++)
+					assertEquals(value(6, y, z), ip.get(z, y));
+		}
+	}
+
+	@Test
+	public void testNeighboringPlanesReuseBlocks() {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final ReslicedVirtualStack stack = new ReslicedVirtualStack(n5, "img", false, new int[]{0, 2, -1, 1, -1}, exec);
+
+			// the planes y = 0..3 cross the same 3 x 3 blocks
+			stack.getProcessor(1);
+			assertEquals(9, stack.getNumCachedBlocks());
+			stack.getProcessor(4);
+			assertEquals(9, stack.getNumCachedBlocks());
+			stack.getProcessor(5);
+			assertEquals(18, stack.getNumCachedBlocks());
+		}
+	}
+
+	@Test
+	public void testImport() {
+
+		final N5Importer importer = new N5Importer();
+		importer.setShow(false);
+		importer.setAxisOrder("XZY");
+
+		final List<ImagePlus> result = importer.process(baseDir.getAbsolutePath() + "?img", true);
+		assertEquals(1, result.size());
+
+		final ImagePlus imp = result.get(0);
+		assertEquals(DIMENSIONS[0], imp.getWidth());
+		assertEquals(DIMENSIONS[2], imp.getHeight());
+		assertEquals(DIMENSIONS[1], imp.getNSlices());
+
+		imp.setSlice(3);
+		assertEquals(value(4, 2, 5), imp.getProcessor().get(4, 5));
+	}
+
+	private static int value(final int x, final int y, final int z) {
+
+		return x + 16 * y + 256 * z;
+	}
+
+}
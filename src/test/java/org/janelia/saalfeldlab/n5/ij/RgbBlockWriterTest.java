@@ -0,0 +1,123 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imglib2.RandomAccess;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+import net.imglib2.type.numeric.integer.UnsignedIntType;
+
+public class RgbBlockWriterTest {
+
+	private N5Writer n5;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		n5 = new N5FSWriter(Files.createTempDirectory("n5-rgb-test-").toString());
+		exec = Executors.newFixedThreadPool(3);
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		n5.remove();
+		n5.close();
+	}
+
+	@Test
+	public void testModes() throws Exception {
+
+		final int w = 21, h = 13, nz = 3;
+		final ImagePlus imp = NewImage.createImage("rgb", w, h, nz, 24, NewImage.FILL_BLACK);
+
+		// random colors, with every third pixel gray
+		final Random random = new Random(7);
+		for (int z = 0; z < nz; z++) {
+			final int[] pixels = (int[])imp.getStack().getPixels(z + 1);
+			for (int i = 0; i < pixels.length; i++)
+				pixels[i] = i % 3 == 0 ? 0xff000000 | random.nextInt(256) * 0x010101
+						: 0xff000000 | random.nextInt(0x1000000);
+		}
+
+		final int[] blockSize = new int[]{8, 5, 2};
+		RgbBlockWriter.save(imp, n5, "packed", blockSize, new RawCompression(), RgbBlockWriter.Mode.PACKED, exec);
+		RgbBlockWriter.save(imp, n5, "channels", blockSize, new RawCompression(), RgbBlockWriter.Mode.CHANNELS, exec);
+		RgbBlockWriter.save(imp, n5, "masked", blockSize, new RawCompression(), RgbBlockWriter.Mode.MASKED_GRAY, null);
+
+		assertArrayEquals(new long[]{w, h, nz}, n5.getDatasetAttributes("packed").getDimensions());
+
+		final RandomAccess<UnsignedIntType> packed = N5Utils.<UnsignedIntType>open(n5, "packed").randomAccess();
+		final RandomAccess<UnsignedByteType> red = N5Utils.<UnsignedByteType>open(n5, "channels/red").randomAccess();
+		final RandomAccess<UnsignedByteType> green = N5Utils.<UnsignedByteType>open(n5, "channels/green").randomAccess();
+		final RandomAccess<UnsignedByteType> blue = N5Utils.<UnsignedByteType>open(n5, "channels/blue").randomAccess();
+		final RandomAccess<UnsignedByteType> mask = N5Utils.<UnsignedByteType>open(n5, "masked/mask").randomAccess();
+		final RandomAccess<UnsignedByteType> gray = N5Utils.<UnsignedByteType>open(n5, "masked/gray").randomAccess();
+
+		for (int z = 0; z < nz; z++) {
+			final int[] pixels = (int[])imp.getStack().getPixels(z + 1);
+			for (int y = 0; y < h; y++)
+				for (int x = 0; x < w; x++) {
+
+					final int argb = pixels[y * w + x];
+					final int r = (argb >> 16) & 0xff;
+					final int g = (argb >> 8) & 0xff;
+					final int b = argb & 0xff;
+					final long[] p = new long[]{x, y, z};
+
+					assertEquals(argb & 0xffffffffL, get(packed, p));
+					assertEquals(r, get(red, p));
+					assertEquals(g, get(green, p));
+					assertEquals(b, get(blue, p));
+					assertEquals(r == g && g == b ? 1 : 0, get(mask, p));
+					assertEquals(r, get(gray, p));
+				}
+		}
+	}
+
+	@Test
+	public void testExportedBaseLevel() throws Exception {
+
+		final ImagePlus imp = NewImage.createImage("rgb", 19, 11, 2, 24, NewImage.FILL_RANDOM);
+
+		final N5ScalePyramidExporter writer = new N5ScalePyramidExporter();
+		writer.setOptions(imp, n5.getURI().getPath(), "exported", N5ScalePyramidExporter.N5_FORMAT, "8,8,2", false,
+				N5ScalePyramidExporter.DOWN_SAMPLE, N5Importer.MetadataN5ViewerKey, N5ScalePyramidExporter.RAW_COMPRESSION);
+		writer.run();
+
+		final RandomAccess<UnsignedIntType> packed = N5Utils.<UnsignedIntType>open(n5, "exported/c0/s0").randomAccess();
+		for (int z = 0; z < 2; z++) {
+			final int[] pixels = (int[])imp.getStack().getPixels(z + 1);
+			for (int y = 0; y < 11; y++)
+				for (int x = 0; x < 19; x++)
+					assertEquals(pixels[y * 19 + x] & 0xffffffffL, get(packed, new long[]{x, y, z}));
+		}
+	}
+
+	private static long get(final RandomAccess<? extends IntegerType<?>> ra, final long[] p) {
+
+		ra.setPosition(p);
+		return ra.get().getIntegerLong();
+	}
+
+}
@@ -0,0 +1,73 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Writer;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.util.Pair;
+import net.imglib2.view.Views;
+
+public class SerializedBlockWriterTest {
+
+	private File baseDir;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-serialized-test-").toFile();
+	}
+
+	@After
+	public void after() {
+
+		for (final File f : baseDir.listFiles())
+			f.delete();
+
+		baseDir.delete();
+	}
+
+	@Test
+	public void testHdf5ParallelEncode() throws Exception {
+
+		// dimensions not divisible by the block size
+		final ArrayImg<UnsignedShortType, ShortArray> img = ArrayImgs.unsignedShorts(70, 45, 13);
+		int i = 0;
+		for (final UnsignedShortType t : img)
+			t.set(i++ % 65536);
+
+		final ExecutorService exec = Executors.newFixedThreadPool(4);
+		final String path = new File(baseDir, "test.h5").getAbsolutePath();
+		try (final N5HDF5Writer h5 = new N5HDF5Writer(path, 16, 16, 8)) {
+
+			final DatasetAttributes attributes = h5.createDataset("data",
+					new DatasetAttributes(img.dimensionsAsLongArray(), new int[]{16, 16, 8},
+							N5Utils.dataType(new UnsignedShortType()), new GzipCompression()));
+
+			SerializedBlockWriter.write(img, h5, "data", attributes, exec, 3);
+
+			final RandomAccessibleInterval<UnsignedShortType> read = N5Utils.open(h5, "data");
+			for (final Pair<UnsignedShortType, UnsignedShortType> p : Views.flatIterable(Views.interval(Views.pair(img, read), img)))
+				assertEquals(p.getA().get(), p.getB().get());
+		} finally {
+			exec.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.TestReaders;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.array.ArrayImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.basictypeaccess.array.ShortArray;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+import net.imglib2.view.Views;
+
+public class SharedBlockCacheTest {
+
+	private File baseDir;
+
+	private N5FSWriter n5;
+
+	private ArrayImg<UnsignedShortType, ShortArray> img;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-shared-cache-test-").toFile();
+		n5 = new N5FSWriter(baseDir.getAbsolutePath());
+
+		// 4 x 4 blocks of 8 x 8 x 2 bytes
+		img = ArrayImgs.unsignedShorts(32, 32);
+		int i = 0;
+		for (final UnsignedShortType t : img)
+			t.set(i++);
+
+		N5Utils.save(img, n5, "data", new int[]{8, 8}, new GzipCompression());
+	}
+
+	@After
+	public void after() {
+
+		n5.remove();
+		n5.close();
+	}
+
+	@Test
+	public void testSharedAcrossImages() {
+
+		final SharedBlockCache cache = new SharedBlockCache(Long.MAX_VALUE);
+
+		final RandomAccessibleInterval<UnsignedShortType> a = cache.open(n5, "data");
+		assertEqualImages(img, a);
+		assertEquals(16, cache.getMissCount());
+		assertEquals(16, cache.getNumBlocks());
+		assertEquals(16 * 8 * 8 * 2, cache.getSizeInBytes());
+
+		// a second image of the same dataset only hits
+		final RandomAccessibleInterval<UnsignedShortType> b = cache.open(n5, "/data");
+		assertEqualImages(img, b);
+		assertEquals(16, cache.getMissCount());
+		assertTrue(cache.getHitCount() > 0);
+		assertEquals(0, cache.getEvictionCount());
+
+		cache.invalidate(n5.getURI().toString(), "data");
+		assertEquals(0, cache.getNumBlocks());
+		assertEquals(0, cache.getSizeInBytes());
+	}
+
+	@Test
+	public void testRewrittenDataset() {
+
+		final SharedBlockCache cache = new SharedBlockCache(Long.MAX_VALUE);
+		assertEqualImages(img, cache.open(n5, "data"));
+
+		// the same dataset written again with other blocks does not get the old cells
+		final ArrayImg<UnsignedShortType, ShortArray> other = ArrayImgs.unsignedShorts(32, 32);
+		for (final UnsignedShortType t : other)
+			t.set(7);
+
+		N5Utils.save(other, n5, "data", new int[]{16, 16}, new GzipCompression());
+		assertEqualImages(other, cache.open(n5, "data"));
+		assertEquals(16 + 4, cache.getMissCount());
+	}
+
+	@Test
+	public void testRemovedDataset() {
+
+		final SharedBlockCache cache = SharedBlockCache.getInstance();
+		cache.clear();
+		assertEqualImages(img, cache.open(n5, "data"));
+		assertEquals(16, cache.getNumBlocks());
+
+		DatasetRemover.remove(n5, "data", DatasetRemover.Strategy.SYNCHRONOUS, 1);
+		assertEquals(0, cache.getNumBlocks());
+	}
+
+	@Test
+	public void testBounded() {
+
+		final long blockBytes = 8 * 8 * 2;
+		final SharedBlockCache cache = new SharedBlockCache(3 * blockBytes);
+
+		final RandomAccessibleInterval<UnsignedShortType> a = cache.open(n5, "data");
+		assertEqualImages(img, a);
+		assertEquals(3, cache.getNumBlocks());
+		assertTrue(cache.getMissCount() >= 16);
+		assertEquals(cache.getMissCount() - 3, cache.getEvictionCount());
+		assertTrue(cache.getSizeInBytes() <= cache.getMaxBytes());
+
+		final long evictions = cache.getEvictionCount();
+		cache.setMaxBytes(blockBytes);
+		assertEquals(1, cache.getNumBlocks());
+		assertEquals(evictions + 2, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testConcurrentLoad() throws Exception {
+
+		final int numThreads = 8;
+		final SharedBlockCache cache = new SharedBlockCache(Long.MAX_VALUE);
+		final AtomicInteger numBlocksRead = new AtomicInteger();
+		final N5Reader slow = TestReaders.slowReader(n5, numBlocksRead, 200);
+		final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+
+		final ExecutorService exec = Executors.newFixedThreadPool(numThreads);
+		try {
+			final List<Future<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < numThreads; i++) {
+				futures.add(exec.submit(() -> {
+					final RandomAccess<UnsignedShortType> access = cache.<UnsignedShortType>open(slow, "data").randomAccess();
+					barrier.await();
+					access.setPosition(new long[]{1, 2});
+					return access.get().get();
+				}));
+			}
+			for (final Future<Integer> f : futures)
+				assertEquals(2 * 32 + 1, (int)f.get());
+		} finally {
+			exec.shutdown();
+		}
+
+		// the block is loaded once, waiting for a load is not a hit
+		assertEquals(1, numBlocksRead.get());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(numThreads - 1, cache.getHitCount() + cache.getCoalescedCount());
+		assertTrue(cache.getCoalescedCount() > 0);
+	}
+
+	private static void assertEqualImages(
+			final RandomAccessibleInterval<UnsignedShortType> expected,
+			final RandomAccessibleInterval<UnsignedShortType> actual) {
+
+		Views.flatIterable(Views.interval(Views.pair(expected, actual), expected)).forEach(p -> assertEquals(p.getA().get(), p.getB().get()));
+	}
+
+}
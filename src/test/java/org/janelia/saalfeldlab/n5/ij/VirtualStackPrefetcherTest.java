@@ -0,0 +1,123 @@
+package org.janelia.saalfeldlab.n5.ij;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ij.ImagePlus;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.img.display.imagej.ImageJFunctions;
+import net.imglib2.type.numeric.integer.UnsignedByteType;
+
+public class VirtualStackPrefetcherTest {
+
+	private File baseDir;
+
+	private ExecutorService exec;
+
+	private final Set<String> readBlocks = ConcurrentHashMap.newKeySet();
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-prefetch-test-").toFile();
+		exec = Executors.newFixedThreadPool(2);
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			N5Utils.save(ArrayImgs.unsignedBytes(16, 16, 10), n5, "data", new int[]{8, 8, 1}, new GzipCompression());
+		}
+	}
+
+	@After
+	public void after() {
+
+		exec.shutdown();
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+	}
+
+	@Test
+	public void testPrefetchInDirection() throws Exception {
+
+		final N5FSReader n5 = new N5FSReader(baseDir.getAbsolutePath()) {
+
+			@Override
+			public DataBlock<?> readBlock(final String pathName, final DatasetAttributes datasetAttributes,
+					final long... gridPosition) {
+
+				readBlocks.add(gridPosition[0] + "," + gridPosition[1] + "," + gridPosition[2]);
+				return super.readBlock(pathName, datasetAttributes, gridPosition);
+			}
+		};
+
+		final CachedCellImg<UnsignedByteType, ?> img = N5Utils.open(n5, "data");
+		final ImagePlus imp = ImageJFunctions.wrap(img, "data");
+		imp.setDimensions(1, 10, 1);
+
+		final VirtualStackPrefetcher prefetcher = new VirtualStackPrefetcher(imp, img, null, null, 3, exec);
+
+		// no direction yet, load both neighbors
+		imp.setSlice(5);
+		prefetcher.imageUpdated(imp);
+		awaitPending(prefetcher);
+		assertTrue(isPlaneRead(3));
+		assertTrue(isPlaneRead(5));
+		assertFalse(isPlaneRead(6));
+
+		// moving forward loads the next three planes
+		imp.setSlice(6);
+		prefetcher.imageUpdated(imp);
+		awaitPending(prefetcher);
+		for (int z = 6; z <= 8; z++)
+			assertTrue("plane " + z, isPlaneRead(z));
+
+		assertFalse(isPlaneRead(9));
+
+		// only planes ahead stay requested
+		imp.setSlice(3);
+		prefetcher.imageUpdated(imp);
+		for (final int index : prefetcher.getPending())
+			assertTrue(index < 3);
+
+		awaitPending(prefetcher);
+		prefetcher.detach();
+		assertEquals(0, prefetcher.getPending().size());
+	}
+
+	private boolean isPlaneRead(final int z) {
+
+		for (int y = 0; y < 2; y++)
+			for (int x = 0; x < 2; x++)
+				if (!readBlocks.contains(x + "," + y + "," + z))
+					return false;
+
+		return true;
+	}
+
+	private static void awaitPending(final VirtualStackPrefetcher prefetcher) throws InterruptedException {
+
+		for (int i = 0; i < 500 && !prefetcher.getPending().isEmpty(); i++)
+			Thread.sleep(10);
+	}
+
+}
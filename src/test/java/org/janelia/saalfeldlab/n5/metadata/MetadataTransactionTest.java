@@ -0,0 +1,121 @@
+package org.janelia.saalfeldlab.n5.metadata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.universe.StorageFormat;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5SingleScaleMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5SingleScaleMetadataParser;
+import org.janelia.saalfeldlab.n5.zarr.v3.ZarrV3KeyValueWriter;
+import org.junit.Test;
+
+import net.imglib2.realtransform.AffineTransform3D;
+
+public class MetadataTransactionTest {
+
+	@Test
+	public void testBatchedAttributes() throws IOException {
+
+		final String root = Files.createTempDirectory("n5-transaction-test-").toString();
+		try (final N5Writer n5 = new N5FSWriter(root)) {
+
+			n5.createGroup("a");
+			n5.createGroup("b");
+
+			final MetadataTransaction tx = new MetadataTransaction(n5);
+			final N5Writer batched = tx.getWriter();
+			assertTrue(batched instanceof N5Writer);
+
+			batched.setAttribute("a", "x", 1);
+			batched.setAttribute("a", "y", "why");
+			batched.setAttribute("b", "z", new double[]{1, 2});
+			batched.setAttribute("a", "x", 2);
+			assertEquals(2, tx.numPendingPaths());
+
+			// nothing written before commit
+			assertNull(n5.getAttribute("a", "x", Integer.class));
+
+			tx.commit();
+			assertEquals(0, tx.numPendingPaths());
+			assertEquals(2, (int)n5.getAttribute("a", "x", Integer.class));
+			assertEquals("why", n5.getAttribute("a", "y", String.class));
+			assertArrayEquals(new double[]{1, 2}, n5.getAttribute("b", "z", double[].class), 1e-9);
+
+			// reads through the batched writer see buffered writes
+			batched.setAttribute("b", "w", 7);
+			assertEquals(7, (int)batched.getAttribute("b", "w", Integer.class));
+
+			n5.remove();
+		}
+	}
+
+	@Test
+	public void testMetadataWriter() throws Exception {
+
+		final String root = Files.createTempDirectory("n5-transaction-test-").toString();
+		try (final N5Writer n5 = new N5FSWriter(root)) {
+
+			n5.createGroup("s0");
+			final N5SingleScaleMetadata meta = new N5SingleScaleMetadata("s0",
+					new AffineTransform3D(),
+					new double[]{2, 2, 1}, new double[]{3, 4, 5}, new double[]{0, 0, 0}, "um", null);
+
+			MetadataTransaction.writeMetadata(new N5SingleScaleMetadataParser(), meta, n5, "s0");
+			assertArrayEquals(new double[]{2, 2, 1}, n5.getAttribute("s0", "downsamplingFactors", double[].class), 1e-9);
+
+			n5.remove();
+		}
+	}
+
+	@Test
+	public void testRealWriter() throws Exception {
+
+		final String root = Files.createTempDirectory("n5-transaction-test-").toString() + "/test.zarr";
+		try (final N5Writer n5 = new N5Factory().openWriter(StorageFormat.ZARR, root)) {
+
+			assertTrue(n5 instanceof ZarrV3KeyValueWriter);
+			n5.createGroup("s0");
+			final N5SingleScaleMetadata meta = new N5SingleScaleMetadata("s0",
+					new AffineTransform3D(),
+					new double[]{2, 2, 1}, new double[]{3, 4, 5}, new double[]{0, 0, 0}, "um", null);
+
+			// zarr v3 metadata is written with the real writer on commit
+			final MetadataTransaction tx = new MetadataTransaction(n5);
+			tx.writeMetadata(new N5SingleScaleMetadataParser(), meta, "s0");
+			assertNull(n5.getAttribute("s0", "downsamplingFactors", double[].class));
+
+			tx.commit();
+			assertArrayEquals(new double[]{2, 2, 1}, n5.getAttribute("s0", "downsamplingFactors", double[].class), 1e-9);
+
+			n5.remove();
+		}
+	}
+
+	@Test
+	public void testDiscard() throws Exception {
+
+		final String root = Files.createTempDirectory("n5-transaction-test-").toString();
+		try (final N5Writer n5 = new N5FSWriter(root)) {
+
+			n5.createGroup("a");
+			final MetadataTransaction tx = new MetadataTransaction(n5);
+			tx.getWriter().setAttribute("a", "x", 1);
+			tx.discard();
+			tx.commit();
+
+			assertEquals(0, tx.numPendingPaths());
+			assertNull(n5.getAttribute("a", "x", Integer.class));
+
+			n5.remove();
+		}
+	}
+
+}
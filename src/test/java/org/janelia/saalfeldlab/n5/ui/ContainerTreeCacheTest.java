@@ -0,0 +1,297 @@
+package org.janelia.saalfeldlab.n5.ui;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5URI;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.n5.TestReaders;
+import org.janelia.saalfeldlab.n5.ij.N5Importer;
+import org.janelia.saalfeldlab.n5.ij.N5ScalePyramidExporter;
+import org.janelia.saalfeldlab.n5.imglib2.N5Utils;
+import org.janelia.saalfeldlab.n5.universe.N5DatasetDiscoverer;
+import org.janelia.saalfeldlab.n5.universe.N5Factory;
+import org.janelia.saalfeldlab.n5.universe.N5TreeNode;
+import org.janelia.saalfeldlab.n5.universe.StorageFormat;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5DatasetMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.N5Metadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.OmeNgffMetadata;
+import org.janelia.saalfeldlab.n5.universe.metadata.ome.ngff.OmeNgffMetadataParser;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+
+import ij.ImagePlus;
+import ij.gui.NewImage;
+import net.imglib2.img.array.ArrayImgs;
+
+public class ContainerTreeCacheTest {
+
+	private static final String[] METADATA_METHODS = new String[]{
+			"list", "deepList", "exists", "datasetExists", "getAttribute", "getAttributes", "getDatasetAttributes"};
+
+	private File baseDir;
+
+	private File cacheDir;
+
+	private ExecutorService exec;
+
+	@Before
+	public void before() throws IOException {
+
+		baseDir = Files.createTempDirectory("n5-tree-cache-test-").toFile();
+		cacheDir = Files.createTempDirectory("n5-tree-cache-").toFile();
+		exec = Executors.newFixedThreadPool(4);
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+			N5Utils.save(ArrayImgs.unsignedBytes(8, 6, 4), n5, "a/img", new int[]{4, 4, 4}, new GzipCompression());
+			N5Utils.save(ArrayImgs.unsignedShorts(5, 5), n5, "b/c/img", new int[]{5, 5}, new GzipCompression());
+			n5.setAttribute("a", "description", "group a");
+		}
+	}
+
+	@After
+	public void after() throws IOException {
+
+		exec.shutdown();
+		try (final N5Writer n5 = new N5Factory().openWriter(baseDir.getAbsolutePath())) {
+			n5.remove();
+		} catch (final Exception e) {}
+		try (final Stream<Path> files = Files.walk(cacheDir.toPath())) {
+			files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	public void testSaveAndLoad() throws IOException, ExecutionException, InterruptedException {
+
+		final ContainerTreeCache cache = new ContainerTreeCache(cacheDir.toPath());
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			assertTrue(ContainerTreeCache.isSupported(n5));
+			assertNull(cache.load(n5, ""));
+
+			final ContainerTreeCache.Snapshot snapshot = ContainerTreeCache.read(n5, "", exec);
+			assertEquals(
+					new HashSet<>(Arrays.asList("", "a", "a/img", "b", "b/c", "b/c/img")),
+					new HashSet<>(snapshot.getPaths()));
+			assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(Arrays.asList(snapshot.list(""))));
+			assertArrayEquals(new String[]{"img"}, snapshot.list("b/c"));
+
+			cache.save(snapshot);
+			assertEquals(snapshot, cache.load(n5, ""));
+			assertNull(cache.load(n5, "b"));
+
+			// changes below the root are found when refreshing
+			n5.createGroup("a/new");
+			final ContainerTreeCache.Snapshot current = ContainerTreeCache.read(n5, "", exec);
+			assertEquals(snapshot, cache.load(n5, ""));
+			assertTrue(!current.equals(snapshot));
+			assertEquals(Collections.emptyList(), ContainerTreeCache.removedPaths(snapshot, current));
+			assertEquals(Collections.singletonList("a/new"), ContainerTreeCache.removedPaths(current, snapshot));
+
+			// the root attributes invalidate the stored snapshot
+			n5.setAttribute("", "description", "changed");
+			assertNull(cache.load(n5, ""));
+		}
+	}
+
+	@Test
+	public void testParseFromSnapshot() throws IOException, ExecutionException, InterruptedException {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final ContainerTreeCache.Snapshot snapshot = ContainerTreeCache.read(n5, "", exec);
+			final AtomicInteger numCalls = new AtomicInteger();
+			final N5Reader reader = snapshot.reader(countingReader(n5, numCalls));
+
+			final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(reader,
+					N5DatasetDiscoverer.fromParsers(N5Importer.PARSERS),
+					Collections.singletonList(new OmeNgffMetadataParser()));
+			final N5TreeNode root = discoverer.discoverAndParseRecursive("");
+
+			final N5DatasetMetadata meta = (N5DatasetMetadata)root.getDescendant("a/img").get().getMetadata();
+			assertNotNull(meta);
+			assertArrayEquals(new long[]{8, 6, 4}, meta.getAttributes().getDimensions());
+			assertNotNull(root.getDescendant("b/c/img").get().getMetadata());
+			assertEquals("group a", reader.getAttribute("a", "description", String.class));
+
+			// nothing was listed or read from the container
+			assertEquals(0, numCalls.get());
+		}
+	}
+
+	@Test
+	public void testRecorder() throws IOException, ExecutionException, InterruptedException {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final ContainerTreeCache.Recorder recorder = new ContainerTreeCache.Recorder(n5);
+			final List<String> read = new CopyOnWriteArrayList<>();
+			final ContainerTreeCache.Recorder counted = new ContainerTreeCache.Recorder(recordingReader(n5, read));
+
+			final N5DatasetDiscoverer discoverer = new N5DatasetDiscoverer(counted.reader(),
+					N5DatasetDiscoverer.fromParsers(N5Importer.PARSERS),
+					Collections.singletonList(new OmeNgffMetadataParser()));
+			final N5TreeNode root = discoverer.discoverAndParseRecursive("");
+			assertNotNull(root.getDescendant("a/img").get().getMetadata());
+
+			// every path is read once during discovery, and not again for the snapshot
+			final int numRead = read.size();
+			final ContainerTreeCache.Snapshot snapshot = counted.snapshot("", n5.deepList("", exec), exec);
+			assertEquals(numRead, read.size());
+			assertEquals(new HashSet<>(read).size(), read.size());
+			assertTrue(read.containsAll(snapshot.getPaths()));
+
+			assertEquals(ContainerTreeCache.read(n5, "", exec), snapshot);
+			assertEquals(snapshot, recorder.snapshot("", n5.deepList("", exec), exec));
+		}
+	}
+
+	@Test
+	public void testRefresh() throws IOException, ExecutionException, InterruptedException {
+
+		try (final N5FSWriter n5 = new N5FSWriter(baseDir.getAbsolutePath())) {
+
+			final ContainerTreeCache.Snapshot snapshot = ContainerTreeCache.read(n5, "", exec);
+
+			// nothing changed, nothing is read
+			final List<String> read = new CopyOnWriteArrayList<>();
+			assertEquals(snapshot, ContainerTreeCache.refresh(recordingReader(n5, read), snapshot, exec));
+			assertTrue(read.isEmpty());
+
+			n5.setAttribute("a", "description", "changed");
+			n5.createGroup("b/new");
+			n5.remove("b/c");
+			final long later = System.currentTimeMillis() + 10000;
+			Files.setLastModifiedTime(baseDir.toPath().resolve("a").resolve("attributes.json"), FileTime.fromMillis(later));
+			Files.setLastModifiedTime(baseDir.toPath().resolve("b"), FileTime.fromMillis(later));
+
+			final ContainerTreeCache.Snapshot refreshed = ContainerTreeCache.refresh(recordingReader(n5, read), snapshot, exec);
+			assertEquals(ContainerTreeCache.read(n5, "", exec), refreshed);
+			assertEquals("changed", refreshed.getAttributes("a").getAsJsonObject().get("description").getAsString());
+			assertEquals(new HashSet<>(Arrays.asList("b/c", "b/c/img")),
+					new HashSet<>(ContainerTreeCache.removedPaths(snapshot, refreshed)));
+
+			// the datasets were not read again
+			assertTrue(read.contains("a"));
+			assertTrue(read.contains("b/new"));
+			assertFalse(read.contains("a/img"));
+			assertFalse(read.contains(""));
+		}
+	}
+
+	@Test
+	public void testParseZarrThroughReaders() throws IOException, ExecutionException, InterruptedException {
+
+		assertSameMetadata(StorageFormat.ZARR2, N5ScalePyramidExporter.ZARR2_FORMAT, N5Importer.MetadataOmeZarrKey);
+		assertSameMetadata(StorageFormat.ZARR, N5ScalePyramidExporter.ZARR3_FORMAT, N5Importer.MetadataOmeZarrV05Key);
+	}
+
+	/**
+	 * Exports a multiscale OME-Zarr, and checks that the readers of snapshots
+	 * and recorders parse the same metadata as the reader of the container.
+	 */
+	private void assertSameMetadata(final StorageFormat storageFormat, final String format, final String metadataKey)
+			throws IOException, ExecutionException, InterruptedException {
+
+		final String root = new File(baseDir, "ome-" + format + ".zarr").getAbsolutePath();
+		final ImagePlus imp = NewImage.createImage("test", 32, 32, 8, 8, NewImage.FILL_NOISE);
+		final N5ScalePyramidExporter exp = new N5ScalePyramidExporter();
+		exp.setOptions(imp, root, "img", format, "8,8,8", true,
+				N5ScalePyramidExporter.DOWN_AVERAGE, metadataKey, N5ScalePyramidExporter.RAW_COMPRESSION);
+		exp.run();
+
+		try (final N5Reader n5 = new N5Factory().openReader(storageFormat, root)) {
+
+			assertTrue(ContainerTreeCache.isSupported(n5));
+			final N5TreeNode expected = discover(n5);
+			assertTrue(expected.getDescendant("img").get().getMetadata() instanceof OmeNgffMetadata);
+
+			final N5TreeNode fromSnapshot = discover(ContainerTreeCache.read(n5, "", exec).reader(n5));
+			final N5TreeNode recorded = discover(new ContainerTreeCache.Recorder(n5).reader());
+			for (final N5TreeNode parsed : Arrays.asList(fromSnapshot, recorded)) {
+				for (final String path : Arrays.asList("img", "img/s0", "img/s1")) {
+					final N5Metadata meta = expected.getDescendant(path).get().getMetadata();
+					assertNotNull(path, meta);
+					assertEquals(path, meta.getClass(), parsed.getDescendant(path).get().getMetadata().getClass());
+				}
+
+				assertArrayEquals(
+						((N5DatasetMetadata)expected.getDescendant("img/s0").get().getMetadata()).getAttributes().getDimensions(),
+						((N5DatasetMetadata)parsed.getDescendant("img/s0").get().getMetadata()).getAttributes().getDimensions());
+			}
+		}
+	}
+
+	private static N5TreeNode discover(final N5Reader n5) throws IOException {
+
+		return new N5DatasetDiscoverer(n5,
+				N5DatasetDiscoverer.fromParsers(N5Importer.PARSERS),
+				Collections.singletonList(new OmeNgffMetadataParser())).discoverAndParseRecursive("");
+	}
+
+	@Test
+	public void testAttribute() {
+
+		final Gson gson = new Gson();
+		final JsonElement json = gson.fromJson("{\"a\":{\"b\":[1,2,3]},\"c\":\"x\"}", JsonElement.class);
+
+		assertEquals(2, ContainerTreeCache.attribute(gson, json, "a/b[1]", Integer.class));
+		assertEquals("x", ContainerTreeCache.attribute(gson, json, "/c", String.class));
+		assertArrayEquals(new int[]{1, 2, 3}, (int[])ContainerTreeCache.attribute(gson, json, "a/b", int[].class));
+		assertEquals(json, ContainerTreeCache.attribute(gson, json, "/", JsonElement.class));
+		assertNull(ContainerTreeCache.attribute(gson, json, "a/d", String.class));
+	}
+
+	/**
+	 * A reader that records the paths whose attributes are read.
+	 */
+	private static N5Reader recordingReader(final N5Reader n5, final List<String> paths) {
+
+		return TestReaders.observed(n5, (method, args) -> {
+			if (method.equals("getAttributes"))
+				paths.add(N5URI.normalizeGroupPath((String)args[0]));
+		});
+	}
+
+	/**
+	 * A reader that counts how often the container is listed or its
+	 * attributes are read.
+	 */
+	private static N5Reader countingReader(final N5Reader n5, final AtomicInteger numCalls) {
+
+		return TestReaders.observed(n5, (method, args) -> {
+			if (Arrays.asList(METADATA_METHODS).contains(method))
+				numCalls.incrementAndGet();
+		});
+	}
+
+}